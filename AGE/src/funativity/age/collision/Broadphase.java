@@ -0,0 +1,74 @@
+package funativity.age.collision;
+
+import java.util.List;
+
+/**
+ * The first stage of collision detection for a CollisionManager layer. A
+ * Broadphase uses the bounds of each shape to quickly find the pairs of shapes
+ * that could be touching. Only those pairs are passed on to the shapes'
+ * CollisionListeners, instead of every pair in the layer.
+ *
+ * A Broadphase may report pairs that are not touching, but must never leave
+ * out a pair that is.
+ *
+ * Each layer needs its own Broadphase. The CollisionManager tells the
+ * Broadphase about every shape added to or removed from its layer, so a
+ * Broadphase can keep data about the shapes between frames.
+ *
+ * A Broadphase is also used to answer queries like raycasts, by finding the
+ * shapes near a box.
+ *
+ */
+public interface Broadphase
+{
+	/**
+	 * Called after a shape is added to the end of the layer.
+	 *
+	 * @param shape
+	 *            the shape that was added
+	 */
+	public void add(CollisionShape shape);
+
+	/**
+	 * Called after a shape is removed from the layer. Unless it was the last
+	 * shape in the layer, the last shape has moved into its index; no other
+	 * shape has moved.
+	 *
+	 * @param index
+	 *            index the shape had in the layer
+	 */
+	public void remove(int index);
+
+	/**
+	 * Finds the pairs of shapes in a layer that could be touching.
+	 *
+	 * @param shapes
+	 *            all shapes in the layer
+	 * @param pairs
+	 *            buffer to add the indices (into shapes) of each candidate pair
+	 *            to. Pairs may be added in any order, and more than once.
+	 */
+	public void findPairs(List<CollisionShape> shapes, CollisionPairs pairs);
+
+	/**
+	 * Finds the shapes in a layer whose bounds could overlap a box. Uses the
+	 * bounds the Broadphase knew at the last findPairs call, so callers must
+	 * still test each shape found.
+	 *
+	 * @param shapes
+	 *            all shapes in the layer
+	 * @return number of shapes found. Read them with getResult until the next
+	 *         query.
+	 */
+	public int query(List<CollisionShape> shapes, float minX, float minY,
+			float minZ, float maxX, float maxY, float maxZ);
+
+	/**
+	 * Gets a shape found by the last query
+	 *
+	 * @param i
+	 *            which result, from 0 up to the count the query returned
+	 * @return index of the shape in the layer
+	 */
+	public int getResult(int i);
+}
@@ -135,23 +135,17 @@ public class CollisionAAB extends CollisionShape
 	}
 
 	@Override
-	public boolean isIntersect(CollisionShape other)
+	public float getExtentX()
 	{
-		// Check if this class knows how to handle the other shape
-		if (other instanceof CollisionAAB)
-		{
-			return CollisionDetect.isIntersectAAB(this, (CollisionAAB) other);
-		}
-		else if (other instanceof CollisionSphere)
-		{
-			return CollisionDetect.isIntersectAABToSphere(this,
-					(CollisionSphere) other);
-		}
-		else
-		{
-			// If this class does not know how to handle the shape, see if the
-			// other shape knows how to handle this shape.
-			return other.isIntersect(this);
-		}
+		return width / 2f;
 	}
+
+	@Override
+	public float getExtentY()
+	{
+		return height / 2f;
+	}
+
+	// NOTE: boxes have no depth and collide at any z, so getExtentZ() is left
+	// unbounded
 }
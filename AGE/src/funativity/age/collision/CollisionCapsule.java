@@ -0,0 +1,154 @@
+package funativity.age.collision;
+
+import funativity.age.opengl.Entity;
+import funativity.age.util.Geometry3f;
+
+/**
+ * A capsule used as a collision boundary: every point within a radius of a
+ * line segment, like a box with round ends. Like CollisionAAB, capsules are
+ * flat on the x-y plane and collide at any z.
+ *
+ * The segment lies along the capsule's own x-axis, centered on the entity's
+ * position plus the offset, and turns with the entity's z rotation plus an
+ * angle of its own.
+ *
+ */
+public class CollisionCapsule extends CollisionShape
+{
+	// distance between the centers of the two round ends
+	private float length;
+	private float radius;
+
+	// extra rotation in degrees, on top of the entity's
+	private float angle;
+
+	/**
+	 * Creates a capsule shaped collision boundary.
+	 *
+	 * @param entity
+	 *            mesh container
+	 * @param listener
+	 *            event handler for collisions
+	 * @param length
+	 *            distance between the centers of the round ends
+	 * @param radius
+	 *            distance from the segment to the edge of the capsule
+	 */
+	public CollisionCapsule(Entity entity, CollisionListener listener,
+			float length, float radius)
+	{
+		this(entity, listener, new Geometry3f(), length, radius);
+	}
+
+	/**
+	 * Creates a capsule shaped collision boundary.
+	 *
+	 * @param entity
+	 *            mesh container
+	 * @param listener
+	 *            event handler for collisions
+	 * @param offset
+	 *            distance away from the entity's position
+	 * @param length
+	 *            distance between the centers of the round ends
+	 * @param radius
+	 *            distance from the segment to the edge of the capsule
+	 */
+	public CollisionCapsule(Entity entity, CollisionListener listener,
+			Geometry3f offset, float length, float radius)
+	{
+		super(entity, listener, offset);
+		setLength(length);
+		setRadius(radius);
+	}
+
+	/**
+	 * Gets the distance between the centers of the round ends
+	 *
+	 * @return length of the segment
+	 */
+	public float getLength()
+	{
+		return length;
+	}
+
+	/**
+	 * Sets the distance between the centers of the round ends
+	 *
+	 * @param length
+	 *            length of the segment
+	 */
+	public void setLength(float length)
+	{
+		this.length = length;
+	}
+
+	/**
+	 * Gets the radius of this CollisionCapsule
+	 *
+	 * @return distance from the segment to the edge
+	 */
+	public float getRadius()
+	{
+		return radius;
+	}
+
+	/**
+	 * Sets the radius of this CollisionCapsule
+	 *
+	 * @param radius
+	 *            distance from the segment to the edge
+	 */
+	public void setRadius(float radius)
+	{
+		this.radius = radius;
+	}
+
+	/**
+	 * Gets the rotation of this capsule relative to its entity
+	 *
+	 * @return angle in degrees
+	 */
+	public float getAngle()
+	{
+		return angle;
+	}
+
+	/**
+	 * Sets the rotation of this capsule relative to its entity
+	 *
+	 * @param angle
+	 *            angle in degrees, counter-clockwise
+	 */
+	public void setAngle(float angle)
+	{
+		this.angle = angle;
+	}
+
+	/**
+	 * Gets how far this capsule is turned, including its entity's z rotation
+	 *
+	 * @return angle in degrees
+	 */
+	public float getRotation()
+	{
+		return angle + getEntity().getRZ();
+	}
+
+	@Override
+	public float getExtentX()
+	{
+		float radians = (float) Math.toRadians(getRotation());
+		return Math.abs((float) Math.cos(radians)) * length / 2f + radius;
+	}
+
+	@Override
+	public float getExtentY()
+	{
+		float radians = (float) Math.toRadians(getRotation());
+		return Math.abs((float) Math.sin(radians)) * length / 2f + radius;
+	}
+
+	// NOTE: capsules have no depth and collide at any z, so getExtentZ() is
+	// left unbounded
+}
@@ -0,0 +1,388 @@
+package funativity.age.collision;
+
+import java.util.List;
+
+import funativity.age.opengl.Entity;
+import funativity.age.util.Geometry3f;
+
+/**
+ * A collision boundary made of several parts, such as the hull, wings and
+ * turrets of a big ship. The parts are the compound's children, and must move
+ * with the compound's entity, usually by using the same entity with their own
+ * offsets.
+ *
+ * The compound's bounds cover all of its parts, and the parts are kept in a
+ * small bounding volume tree relative to the entity. Testing the compound
+ * against another shape only tests the parts whose bounds overlap it, and
+ * when the compound's listener reports a collision, only those parts are
+ * passed on to their own listeners.
+ *
+ * Part bounds are made big enough to hold the part at any z rotation, so the
+ * tree does not change when the entity turns. Call refit() after moving or
+ * resizing parts, or changing the list of children.
+ *
+ */
+public class CollisionCompound extends CollisionShape
+{
+	// bounds of each part relative to the entity's position, as of refit()
+	private CollisionShape[] parts;
+	private float[] partMinX, partMinY, partMinZ, partMaxX, partMaxY,
+			partMaxZ;
+
+	// tree nodes in depth-first order. Leaves hold one part, branches hold
+	// -1. A node's skip is the next node after its subtree.
+	private float[] nodeMinX, nodeMinY, nodeMinZ, nodeMaxX, nodeMaxY,
+			nodeMaxZ;
+	private int[] nodePart;
+	private int[] nodeSkip;
+	private int nodeCount;
+
+	// part indices, reordered while building
+	private int[] items;
+
+	/**
+	 * Creates a collision boundary out of several parts.
+	 *
+	 * @param entity
+	 *            mesh container the parts move with
+	 * @param listener
+	 *            event handler for collisions with the whole compound
+	 * @param parts
+	 *            shapes making up the compound, which must move with entity
+	 */
+	public CollisionCompound(Entity entity, CollisionListener listener,
+			List<CollisionShape> parts)
+	{
+		super(entity, listener, new Geometry3f(), parts);
+		refit();
+	}
+
+	@Override
+	public CollisionShape setChildren(List<CollisionShape> children)
+	{
+		super.setChildren(children);
+
+		// the constructor refits once everything is set up
+		if (parts != null)
+			refit();
+
+		return this;
+	}
+
+	/**
+	 * Recomputes the bounds of the parts and rebuilds the tree. Must be
+	 * called after a part is moved or resized relative to the entity, or the
+	 * list of children changes.
+	 */
+	public void refit()
+	{
+		List<CollisionShape> children = getChildren();
+		int count = children == null ? 0 : children.size();
+
+		if (parts == null || parts.length != count)
+		{
+			parts = new CollisionShape[count];
+			partMinX = new float[count];
+			partMinY = new float[count];
+			partMinZ = new float[count];
+			partMaxX = new float[count];
+			partMaxY = new float[count];
+			partMaxZ = new float[count];
+			items = new int[count];
+
+			int nodes = Math.max(1, count * 2 - 1);
+			nodeMinX = new float[nodes];
+			nodeMinY = new float[nodes];
+			nodeMinZ = new float[nodes];
+			nodeMaxX = new float[nodes];
+			nodeMaxY = new float[nodes];
+			nodeMaxZ = new float[nodes];
+			nodePart = new int[nodes];
+			nodeSkip = new int[nodes];
+		}
+
+		Entity entity = getEntity();
+		for (int i = 0; i < count; i++)
+		{
+			CollisionShape part = children.get(i);
+			parts[i] = part;
+
+			// a circle around the part's bounds holds it at any rotation
+			float ex = part.getExtentX();
+			float ey = part.getExtentY();
+			float radius = (float) Math.sqrt(ex * ex + ey * ey);
+
+			float x = part.getCenterX() - entity.getX();
+			float y = part.getCenterY() - entity.getY();
+			float z = part.getCenterZ() - entity.getZ();
+			float ez = part.getExtentZ();
+
+			partMinX[i] = x - radius;
+			partMinY[i] = y - radius;
+			partMinZ[i] = z - ez;
+			partMaxX[i] = x + radius;
+			partMaxY[i] = y + radius;
+			partMaxZ[i] = z + ez;
+			items[i] = i;
+		}
+
+		nodeCount = 0;
+		if (count > 0)
+			buildNode(0, count);
+	}
+
+	/**
+	 * Gets the number of parts in the tree
+	 *
+	 * @return number of parts, as of the last refit()
+	 */
+	public int getPartCount()
+	{
+		return parts.length;
+	}
+
+	/**
+	 * Gets a part of this compound
+	 *
+	 * @param i
+	 *            index of the part in the children list, as of the last
+	 *            refit()
+	 * @return the part
+	 */
+	public CollisionShape getPart(int i)
+	{
+		return parts[i];
+	}
+
+	/**
+	 * Builds the subtree over items [start, end), splitting the longest side
+	 * of its bounds at the median part
+	 */
+	private void buildNode(int start, int end)
+	{
+		int node = nodeCount++;
+
+		float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+		float minZ = Float.POSITIVE_INFINITY, maxX = Float.NEGATIVE_INFINITY;
+		float maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+		for (int i = start; i < end; i++)
+		{
+			int part = items[i];
+			minX = Math.min(minX, partMinX[part]);
+			minY = Math.min(minY, partMinY[part]);
+			minZ = Math.min(minZ, partMinZ[part]);
+			maxX = Math.max(maxX, partMaxX[part]);
+			maxY = Math.max(maxY, partMaxY[part]);
+			maxZ = Math.max(maxZ, partMaxZ[part]);
+		}
+
+		nodeMinX[node] = minX;
+		nodeMinY[node] = minY;
+		nodeMinZ[node] = minZ;
+		nodeMaxX[node] = maxX;
+		nodeMaxY[node] = maxY;
+		nodeMaxZ[node] = maxZ;
+
+		if (end - start == 1)
+		{
+			nodePart[node] = items[start];
+			nodeSkip[node] = nodeCount;
+			return;
+		}
+
+		// parts are flat or unbounded along z more often than not, so only
+		// split along z when it is the longest finite side
+		float sizeX = maxX - minX;
+		float sizeY = maxY - minY;
+		float sizeZ = Float.isInfinite(maxZ - minZ) ? 0 : maxZ - minZ;
+		int axis = sizeX >= sizeY && sizeX >= sizeZ ? 0 : sizeY >= sizeZ ? 1
+				: 2;
+
+		// insertion sort by center, parts are few
+		for (int i = start + 1; i < end; i++)
+		{
+			int part = items[i];
+			float key = getPartCenter(part, axis);
+			int j = i - 1;
+			while (j >= start && getPartCenter(items[j], axis) > key)
+			{
+				items[j + 1] = items[j];
+				j--;
+			}
+			items[j + 1] = part;
+		}
+
+		int middle = (start + end) >>> 1;
+		nodePart[node] = -1;
+		buildNode(start, middle);
+		buildNode(middle, end);
+		nodeSkip[node] = nodeCount;
+	}
+
+	private float getPartCenter(int part, int axis)
+	{
+		switch (axis)
+		{
+			case 0:
+				return partMinX[part] + partMaxX[part];
+			case 1:
+				return partMinY[part] + partMaxY[part];
+			default:
+				return partMinZ[part] + partMaxZ[part];
+		}
+	}
+
+	@Override
+	public float getCenterX()
+	{
+		return getEntity().getX() + center(nodeMinX[0], nodeMaxX[0]);
+	}
+
+	@Override
+	public float getCenterY()
+	{
+		return getEntity().getY() + center(nodeMinY[0], nodeMaxY[0]);
+	}
+
+	@Override
+	public float getCenterZ()
+	{
+		return getEntity().getZ() + center(nodeMinZ[0], nodeMaxZ[0]);
+	}
+
+	@Override
+	public float getExtentX()
+	{
+		return extent(nodeMinX[0], nodeMaxX[0]);
+	}
+
+	@Override
+	public float getExtentY()
+	{
+		return extent(nodeMinY[0], nodeMaxY[0]);
+	}
+
+	@Override
+	public float getExtentZ()
+	{
+		return extent(nodeMinZ[0], nodeMaxZ[0]);
+	}
+
+	/**
+	 * Middle of a range, or 0 if it is unbounded
+	 */
+	private float center(float min, float max)
+	{
+		if (nodeCount == 0 || Float.isInfinite(min) || Float.isInfinite(max))
+			return 0;
+
+		return (min + max) / 2f;
+	}
+
+	/**
+	 * Half the length of a range, 0 for a compound without parts
+	 */
+	private float extent(float min, float max)
+	{
+		return nodeCount == 0 ? 0 : (max - min) / 2f;
+	}
+
+	/**
+	 * Determines whether any part of this compound overlaps another shape.
+	 * Only the parts whose bounds overlap the other shape's bounds are
+	 * tested.
+	 *
+	 * @param other
+	 *            second collision boundary
+	 * @return true if a part and the other shape are intersecting
+	 */
+	@Override
+	public boolean isIntersect(CollisionShape other)
+	{
+		return visitParts(other, 0, false);
+	}
+
+	/**
+	 * Checks if this compound collided with another shape. If the listener
+	 * reports a collision, the parts whose bounds overlap the other shape are
+	 * tested with their own listeners, instead of every child.
+	 *
+	 * @param other
+	 *            second collision boundary
+	 * @param delta
+	 *            time since last update (in seconds)
+	 * @return true if the listener is defined and detects a collision, false
+	 *         otherwise
+	 */
+	@Override
+	public boolean checkCollision(CollisionShape other, float delta)
+	{
+		CollisionListener listener = getListener();
+		if (listener == null || !listener.isCollide(this, other, delta))
+			return false;
+
+		visitParts(other, delta, true);
+		return true;
+	}
+
+	/**
+	 * Walks the tree looking for parts whose bounds overlap a shape. Only
+	 * reads the tree, so several threads can walk it at once.
+	 *
+	 * @param test
+	 *            true to pass every part found to testCollision, false to
+	 *            stop at the first part that intersects the shape
+	 * @return true if a part intersects the shape, when not testing
+	 */
+	private boolean visitParts(CollisionShape other, float delta, boolean test)
+	{
+		Entity entity = getEntity();
+
+		// the other shape's bounds, relative to this compound's entity
+		float x = other.getBoundsCenterX() - entity.getX();
+		float y = other.getBoundsCenterY() - entity.getY();
+		float z = other.getBoundsCenterZ() - entity.getZ();
+
+		// the closest way around, if the world wraps
+		CollisionManager world = getManager() != null ? getManager() : other
+				.getManager();
+		if (world != null)
+		{
+			x = world.wrapX(x);
+			y = world.wrapY(y);
+			z = world.wrapZ(z);
+		}
+
+		float ex = other.getBoundsExtentX();
+		float ey = other.getBoundsExtentY();
+		float ez = other.getBoundsExtentZ();
+		float minX = x - ex, minY = y - ey, minZ = z - ez;
+		float maxX = x + ex, maxY = y + ey, maxZ = z + ez;
+
+		int node = 0;
+		while (node < nodeCount)
+		{
+			if (nodeMinX[node] > maxX || minX > nodeMaxX[node]
+					|| nodeMinY[node] > maxY || minY > nodeMaxY[node]
+					|| nodeMinZ[node] > maxZ || minZ > nodeMaxZ[node])
+			{
+				// nothing in this subtree is close
+				node = nodeSkip[node];
+				continue;
+			}
+
+			int part = nodePart[node];
+			if (part >= 0)
+			{
+				if (test)
+					parts[part].testCollision(other, delta);
+				else if (parts[part].isIntersect(other))
+					return true;
+			}
+
+			node++;
+		}
+
+		return false;
+	}
+}
@@ -1,11 +1,19 @@
 package funativity.age.collision;
 
+import funativity.age.opengl.Entity;
+
 /**
  * Detects collision types between collision boundaries.
  * 
  */
 public class CollisionDetect
 {
+	/**
+	 * Returned by the time of impact tests when the shapes do not touch within
+	 * the given time
+	 */
+	public static final float NO_IMPACT = -1;
+
 	/**
 	 * Detects if two spheres are intersecting by finding the distance between
 	 * their centers, summing their radiuses, and checking if the distance is
@@ -20,9 +28,10 @@ public class CollisionDetect
 	public static boolean isIntersectSpheres(CollisionSphere sphere1,
 			CollisionSphere sphere2)
 	{
-		float distance = CollisionShape.getDistance(sphere1, sphere2);
+		// compare squared, so no square root is needed
+		float distance = CollisionShape.getDistanceSquared(sphere1, sphere2);
 		float minDistance = sphere1.getRadius() + sphere2.getRadius();
-		return distance < minDistance;
+		return distance < minDistance * minDistance;
 	}
 
 	/**
@@ -40,10 +49,8 @@ public class CollisionDetect
 	{
 		// combine the offsets for each box, and simulate moving box 1 to the
 		// origin
-		float dx = (box2.getEntity().getX() + box2.getOffset().getX())
-				- (box1.getEntity().getX() + box1.getOffset().getX());
-		float dy = (box2.getEntity().getY() + box2.getOffset().getY())
-				- (box1.getEntity().getY() + box1.getOffset().getY());
+		float dx = getOffsetX(box1, box2);
+		float dy = getOffsetY(box1, box2);
 
 		// enforce positive values
 		dx = Math.abs(dx);
@@ -85,8 +92,8 @@ public class CollisionDetect
 		float boxB = boxY - boxHH;
 
 		// get sphere properties (assume sphere is 2D)
-		float sphereX = sphere.getEntity().getX() + sphere.getOffset().getX();
-		float sphereY = sphere.getEntity().getY() + sphere.getOffset().getY();
+		float sphereX = boxX + getOffsetX(box, sphere);
+		float sphereY = boxY + getOffsetY(box, sphere);
 		float sphereR = sphere.getRadius();
 
 		// get offset in position
@@ -97,7 +104,7 @@ public class CollisionDetect
 		dx = dx < 0 ? -dx : dx;
 
 		// case 0. the 2 objects are no where near eachother
-		if (boxHW + sphereR < dx && boxHH + sphereR < dy)
+		if (boxHW + sphereR < dx || boxHH + sphereR < dy)
 			return false;
 
 		// case 1. Sphere is inside of box (the center of sphere is inside)
@@ -126,15 +133,15 @@ public class CollisionDetect
 		{
 			// Get the position of the circle compared to the correct corner of
 			// the box
-			float xCheck = sphereX - sphereX > boxX ? boxR : boxL;
-			float yCheck = sphereY - sphereY > boxY ? boxT : boxB;
+			float xCheck = sphereX - (sphereX > boxX ? boxR : boxL);
+			float yCheck = sphereY - (sphereY > boxY ? boxT : boxB);
 
 			float x2 = xCheck * xCheck;
 			float y2 = yCheck * yCheck;
 
 			// compare the distance from the center of the circle, to the corner
 			// of the box vs the length of the radius
-			if (x2 + y2 < sphereR)
+			if (x2 + y2 < sphereR * sphereR)
 			{
 				return true;
 			}
@@ -142,4 +149,1837 @@ public class CollisionDetect
 
 		return false;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Detects if two convex polygons are intersecting, using the separating
+	 * axis test: the polygons are apart if all of the corners of one are
+	 * outside of an edge of the other. The edge that kept the polygons apart
+	 * the last time they were tested is tried first. Polygons whose edges only
+	 * touch are intersecting.
+	 * 
+	 * @param polygon1
+	 *            first polygonal collision boundary
+	 * @param polygon2
+	 *            second polygonal collision boundary
+	 * @return true if the polygons are intersecting, false otherwise
+	 */
+	public static boolean isIntersectPolygons(CollisionPolygon polygon1,
+			CollisionPolygon polygon2)
+	{
+		float x1 = polygon1.getCenterX();
+		float y1 = polygon1.getCenterY();
+		float radians1 = (float) Math.toRadians(polygon1.getRotation());
+		float cos1 = (float) Math.cos(radians1);
+		float sin1 = (float) Math.sin(radians1);
+
+		float x2 = x1 + getOffsetX(polygon1, polygon2);
+		float y2 = y1 + getOffsetY(polygon1, polygon2);
+		float radians2 = (float) Math.toRadians(polygon2.getRotation());
+		float cos2 = (float) Math.cos(radians2);
+		float sin2 = (float) Math.sin(radians2);
+
+		// edges of the first polygon, then edges of the second
+		int count1 = polygon1.getVertexCount();
+		int axes = count1 + polygon2.getVertexCount();
+
+		int hint = polygon1.getHint(polygon2);
+		if (hint >= axes)
+			hint = -1;
+
+		if (hint >= 0)
+		{
+			boolean separated = hint < count1 ? isSeparatingEdge(polygon1, x1,
+					y1, cos1, sin1, hint, polygon2, x2, y2, cos2, sin2)
+					: isSeparatingEdge(polygon2, x2, y2, cos2, sin2, hint
+							- count1, polygon1, x1, y1, cos1, sin1);
+			if (separated)
+				return false;
+		}
+
+		for (int axis = 0; axis < axes; axis++)
+		{
+			if (axis == hint)
+				continue;
+
+			boolean separated = axis < count1 ? isSeparatingEdge(polygon1, x1,
+					y1, cos1, sin1, axis, polygon2, x2, y2, cos2, sin2)
+					: isSeparatingEdge(polygon2, x2, y2, cos2, sin2, axis
+							- count1, polygon1, x1, y1, cos1, sin1);
+			if (separated)
+			{
+				polygon1.setHint(polygon2, axis);
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Detects if a convex polygon and an Axis Aligned Box are intersecting,
+	 * using the separating axis test with the edges of the polygon and the x
+	 * and y axes. The axis that kept them apart the last time they were tested
+	 * is tried first.
+	 * 
+	 * @param polygon
+	 *            polygonal collision boundary
+	 * @param box
+	 *            axis aligned collision boundary
+	 * @return true if the shapes are intersecting, false otherwise
+	 */
+	public static boolean isIntersectPolygonToAAB(CollisionPolygon polygon,
+			CollisionAAB box)
+	{
+		float px = polygon.getCenterX();
+		float py = polygon.getCenterY();
+		float radians = (float) Math.toRadians(polygon.getRotation());
+		float cos = (float) Math.cos(radians);
+		float sin = (float) Math.sin(radians);
+
+		float bx = px + getOffsetX(polygon, box);
+		float by = py + getOffsetY(polygon, box);
+		float hw = box.getWidth() / 2f;
+		float hh = box.getHeight() / 2f;
+
+		// edges of the polygon, then the x-axis and the y-axis
+		int axes = polygon.getVertexCount() + 2;
+
+		int hint = polygon.getHint(box);
+		if (hint >= axes)
+			hint = -1;
+
+		if (hint >= 0
+				&& isSeparatingAxis(polygon, px, py, cos, sin, bx, by, hw, hh,
+						hint))
+			return false;
+
+		for (int axis = 0; axis < axes; axis++)
+		{
+			if (axis != hint
+					&& isSeparatingAxis(polygon, px, py, cos, sin, bx, by, hw,
+							hh, axis))
+			{
+				polygon.setHint(box, axis);
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Detects if a convex polygon and a sphere are intersecting. Like
+	 * isIntersectAABToSphere, the sphere is treated as a 2D circle.
+	 * 
+	 * @param polygon
+	 *            polygonal collision boundary
+	 * @param sphere
+	 *            spherical collision boundary
+	 * @return true if the shapes are intersecting, false otherwise
+	 */
+	public static boolean isIntersectPolygonToSphere(CollisionPolygon polygon,
+			CollisionSphere sphere)
+	{
+		float radians = (float) Math.toRadians(polygon.getRotation());
+		float cos = (float) Math.cos(radians);
+		float sin = (float) Math.sin(radians);
+
+		// the center of the circle, turned into the polygon's frame
+		float dx = getOffsetX(polygon, sphere);
+		float dy = getOffsetY(polygon, sphere);
+		float x = dx * cos + dy * sin;
+		float y = -dx * sin + dy * cos;
+		float r = sphere.getRadius();
+
+		boolean inside = true;
+		float closest = Float.POSITIVE_INFINITY;
+
+		int count = polygon.getVertexCount();
+		for (int i = 0; i < count; i++)
+		{
+			int next = i + 1 == count ? 0 : i + 1;
+			float ax = polygon.getVertexX(i);
+			float ay = polygon.getVertexY(i);
+			float bx = polygon.getVertexX(next);
+			float by = polygon.getVertexY(next);
+
+			// outside of any edge means the center is outside the polygon
+			if ((by - ay) * (x - ax) - (bx - ax) * (y - ay) > 0)
+				inside = false;
+
+			closest = Math.min(closest,
+					getDistanceSquaredToSegment(x, y, ax, ay, bx, by));
+		}
+
+		return inside || closest < r * r;
+	}
+
+	/**
+	 * Detects if a convex polygon and a capsule are intersecting
+	 * 
+	 * @param polygon
+	 *            polygonal collision boundary
+	 * @param capsule
+	 *            capsule shaped collision boundary
+	 * @return true if the shapes are intersecting, false otherwise
+	 */
+	public static boolean isIntersectPolygonToCapsule(CollisionPolygon polygon,
+			CollisionCapsule capsule)
+	{
+		float radians = (float) Math.toRadians(polygon.getRotation());
+		float cos = (float) Math.cos(radians);
+		float sin = (float) Math.sin(radians);
+
+		// half of the capsule's segment
+		float capsuleRadians = (float) Math.toRadians(capsule.getRotation());
+		float ux = (float) Math.cos(capsuleRadians) * capsule.getLength() / 2f;
+		float uy = (float) Math.sin(capsuleRadians) * capsule.getLength() / 2f;
+
+		// the capsule's segment, turned into the polygon's frame
+		float dx = getOffsetX(polygon, capsule);
+		float dy = getOffsetY(polygon, capsule);
+		float cx = dx * cos + dy * sin;
+		float cy = -dx * sin + dy * cos;
+		float hx = ux * cos + uy * sin;
+		float hy = -ux * sin + uy * cos;
+		float x0 = cx - hx;
+		float y0 = cy - hy;
+		float x1 = cx + hx;
+		float y1 = cy + hy;
+		float r = capsule.getRadius();
+
+		// clip the segment against each edge, if any of it is left then it is
+		// inside the polygon
+		float enter = 0;
+		float exit = 1;
+		boolean crosses = true;
+		float closest = Float.POSITIVE_INFINITY;
+
+		int count = polygon.getVertexCount();
+		for (int i = 0; i < count; i++)
+		{
+			int next = i + 1 == count ? 0 : i + 1;
+			float ax = polygon.getVertexX(i);
+			float ay = polygon.getVertexY(i);
+			float bx = polygon.getVertexX(next);
+			float by = polygon.getVertexY(next);
+
+			// outward normal of the edge
+			float nx = by - ay;
+			float ny = ax - bx;
+
+			float distance = nx * (ax - x0) + ny * (ay - y0);
+			float speed = nx * (x1 - x0) + ny * (y1 - y0);
+			if (speed == 0)
+			{
+				if (distance < 0)
+					crosses = false;
+			}
+			else if (speed < 0)
+			{
+				enter = Math.max(enter, distance / speed);
+			}
+			else
+			{
+				exit = Math.min(exit, distance / speed);
+			}
+
+			// if the segment misses, the closest points are an end of the
+			// segment and an edge, or a corner and the segment
+			closest = Math.min(closest,
+					getDistanceSquaredToSegment(x0, y0, ax, ay, bx, by));
+			closest = Math.min(closest,
+					getDistanceSquaredToSegment(x1, y1, ax, ay, bx, by));
+			closest = Math.min(closest,
+					getDistanceSquaredToSegment(ax, ay, x0, y0, x1, y1));
+		}
+
+		if (crosses && enter <= exit)
+			return true;
+
+		return closest < r * r;
+	}
+
+	/**
+	 * Detects if two capsules are intersecting
+	 * 
+	 * @param capsule1
+	 *            first capsule shaped collision boundary
+	 * @param capsule2
+	 *            second capsule shaped collision boundary
+	 * @return true if the capsules are intersecting, false otherwise
+	 */
+	public static boolean isIntersectCapsules(CollisionCapsule capsule1,
+			CollisionCapsule capsule2)
+	{
+		float radians1 = (float) Math.toRadians(capsule1.getRotation());
+		float ux1 = (float) Math.cos(radians1) * capsule1.getLength() / 2f;
+		float uy1 = (float) Math.sin(radians1) * capsule1.getLength() / 2f;
+		float x1 = capsule1.getCenterX();
+		float y1 = capsule1.getCenterY();
+
+		float radians2 = (float) Math.toRadians(capsule2.getRotation());
+		float ux2 = (float) Math.cos(radians2) * capsule2.getLength() / 2f;
+		float uy2 = (float) Math.sin(radians2) * capsule2.getLength() / 2f;
+		float x2 = x1 + getOffsetX(capsule1, capsule2);
+		float y2 = y1 + getOffsetY(capsule1, capsule2);
+
+		float r = capsule1.getRadius() + capsule2.getRadius();
+		return getDistanceSquaredBetweenSegments(x1 - ux1, y1 - uy1, x1 + ux1,
+				y1 + uy1, x2 - ux2, y2 - uy2, x2 + ux2, y2 + uy2) < r * r;
+	}
+
+	/**
+	 * Detects if a capsule and a sphere are intersecting. Like
+	 * isIntersectAABToSphere, the sphere is treated as a 2D circle.
+	 * 
+	 * @param capsule
+	 *            capsule shaped collision boundary
+	 * @param sphere
+	 *            spherical collision boundary
+	 * @return true if the shapes are intersecting, false otherwise
+	 */
+	public static boolean isIntersectCapsuleToSphere(CollisionCapsule capsule,
+			CollisionSphere sphere)
+	{
+		float radians = (float) Math.toRadians(capsule.getRotation());
+		float ux = (float) Math.cos(radians) * capsule.getLength() / 2f;
+		float uy = (float) Math.sin(radians) * capsule.getLength() / 2f;
+		float x = capsule.getCenterX();
+		float y = capsule.getCenterY();
+
+		float sx = x + getOffsetX(capsule, sphere);
+		float sy = y + getOffsetY(capsule, sphere);
+
+		float r = capsule.getRadius() + sphere.getRadius();
+		return getDistanceSquaredToSegment(sx, sy, x - ux, y - uy, x + ux,
+				y + uy) < r * r;
+	}
+
+	/**
+	 * Detects if a capsule and an Axis Aligned Box are intersecting
+	 * 
+	 * @param capsule
+	 *            capsule shaped collision boundary
+	 * @param box
+	 *            axis aligned collision boundary
+	 * @return true if the shapes are intersecting, false otherwise
+	 */
+	public static boolean isIntersectCapsuleToAAB(CollisionCapsule capsule,
+			CollisionAAB box)
+	{
+		float radians = (float) Math.toRadians(capsule.getRotation());
+		float ux = (float) Math.cos(radians) * capsule.getLength() / 2f;
+		float uy = (float) Math.sin(radians) * capsule.getLength() / 2f;
+
+		// the capsule's segment, relative to the center of the box
+		float cx = getOffsetX(box, capsule);
+		float cy = getOffsetY(box, capsule);
+		float x0 = cx - ux;
+		float y0 = cy - uy;
+		float x1 = cx + ux;
+		float y1 = cy + uy;
+		float hw = box.getWidth() / 2f;
+		float hh = box.getHeight() / 2f;
+		float r = capsule.getRadius();
+
+		// the segment passes through the box
+		if (sweepPointToBox(x0, y0, x1 - x0, y1 - y0, hw, hh) >= 0)
+			return true;
+
+		// otherwise the closest points are an end of the segment and the box,
+		// or a corner of the box and the segment
+		float closest = Math.min(getDistanceSquaredToBox(x0, y0, hw, hh),
+				getDistanceSquaredToBox(x1, y1, hw, hh));
+		closest = Math.min(closest,
+				getDistanceSquaredToSegment(-hw, -hh, x0, y0, x1, y1));
+		closest = Math.min(closest,
+				getDistanceSquaredToSegment(hw, -hh, x0, y0, x1, y1));
+		closest = Math.min(closest,
+				getDistanceSquaredToSegment(hw, hh, x0, y0, x1, y1));
+		closest = Math.min(closest,
+				getDistanceSquaredToSegment(-hw, hh, x0, y0, x1, y1));
+
+		return closest < r * r;
+	}
+
+	/**
+	 * Finds how far apart two shapes are. This may be less than the real gap
+	 * between them, but is never more, so shapes that have moved less than
+	 * the separation combined can not be touching yet.
+	 * 
+	 * @param shape1
+	 *            first collision boundary
+	 * @param shape2
+	 *            second collision boundary
+	 * @return distance between the shapes, or 0 if they touch or there is no
+	 *         test for these shapes
+	 */
+	public static float getSeparation(CollisionShape shape1,
+			CollisionShape shape2)
+	{
+		float separation = 0;
+
+		if (shape1 instanceof CollisionSphere
+				&& shape2 instanceof CollisionSphere)
+		{
+			separation = CollisionShape.getDistance(shape1, shape2)
+					- ((CollisionSphere) shape1).getRadius()
+					- ((CollisionSphere) shape2).getRadius();
+		}
+		else if (shape1 instanceof CollisionAAB
+				&& shape2 instanceof CollisionAAB)
+		{
+			CollisionAAB box1 = (CollisionAAB) shape1;
+			CollisionAAB box2 = (CollisionAAB) shape2;
+
+			// the gap along either axis is a lower bound of the real gap
+			float gapX = Math.abs(getOffsetX(box1, box2))
+					- (box1.getWidth() + box2.getWidth()) / 2f;
+			float gapY = Math.abs(getOffsetY(box1, box2))
+					- (box1.getHeight() + box2.getHeight()) / 2f;
+			separation = Math.max(gapX, gapY);
+		}
+		else if (shape1 instanceof CollisionAAB
+				&& shape2 instanceof CollisionSphere)
+		{
+			separation = getSeparationAABToSphere((CollisionAAB) shape1,
+					(CollisionSphere) shape2);
+		}
+		else if (shape1 instanceof CollisionSphere
+				&& shape2 instanceof CollisionAAB)
+		{
+			separation = getSeparationAABToSphere((CollisionAAB) shape2,
+					(CollisionSphere) shape1);
+		}
+
+		return separation > 0 ? separation : 0;
+	}
+
+	/**
+	 * Distance from a circle to the closest point of a box
+	 */
+	private static float getSeparationAABToSphere(CollisionAAB box,
+			CollisionSphere sphere)
+	{
+		float dx = Math.abs(getOffsetX(box, sphere)) - box.getWidth() / 2f;
+		float dy = Math.abs(getOffsetY(box, sphere)) - box.getHeight() / 2f;
+		dx = Math.max(dx, 0);
+		dy = Math.max(dy, 0);
+
+		return (float) Math.sqrt(dx * dx + dy * dy) - sphere.getRadius();
+	}
+
+	/**
+	 * Finds the direction and depth of the overlap between two touching
+	 * shapes, using the penetration test registered with CollisionDispatcher
+	 * for the pair. Pairs without one, like compounds or shapes of a game's
+	 * own classes, use their bounds and push along whichever axis the bounds
+	 * overlap least. Unbounded axes, like the z of a box, are never used.
+	 * 
+	 * @param shape1
+	 *            first collision boundary
+	 * @param shape2
+	 *            second collision boundary
+	 * @param normal
+	 *            set to the unit x, y and z of the direction from shape1 to
+	 *            shape2, or all 0 if there is none
+	 * @return how far shape2 must move along the normal to stop touching
+	 *         shape1, or 0 or less if they do not overlap
+	 */
+	public static float getPenetration(CollisionShape shape1,
+			CollisionShape shape2, float[] normal)
+	{
+		float depth = CollisionDispatcher.getPenetration(shape1, shape2,
+				normal);
+		if (Float.isNaN(depth))
+			return getPenetrationBounds(shape1, shape2, normal);
+
+		return depth;
+	}
+
+	/**
+	 * Finds the direction and depth of the overlap between two spheres
+	 * 
+	 * @param sphere1
+	 *            first spherical collision boundary
+	 * @param sphere2
+	 *            second spherical collision boundary
+	 * @param normal
+	 *            set to the direction from sphere1 to sphere2
+	 * @return how far sphere2 must move along the normal to stop touching
+	 *         sphere1, or 0 or less if they do not overlap
+	 */
+	public static float getPenetrationSpheres(CollisionSphere sphere1,
+			CollisionSphere sphere2, float[] normal)
+	{
+		float dx = getOffsetX(sphere1, sphere2);
+		float dy = getOffsetY(sphere1, sphere2);
+		float dz = getOffsetZ(sphere1, sphere2);
+		float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+
+		if (distance > 0)
+			setNormal(normal, dx / distance, dy / distance, dz / distance);
+		else
+			setNormal(normal, 1, 0, 0);
+
+		return sphere1.getRadius() + sphere2.getRadius() - distance;
+	}
+
+	/**
+	 * Finds the direction and depth of the overlap between an Axis Aligned Box
+	 * and a sphere, treated as a 2D circle
+	 * 
+	 * @param box
+	 *            AAB collision shape
+	 * @param sphere
+	 *            circle collision shape
+	 * @param normal
+	 *            set to the direction from the box to the sphere
+	 * @return how far the sphere must move along the normal to stop touching
+	 *         the box, or 0 or less if they do not overlap
+	 */
+	public static float getPenetrationAABToSphere(CollisionAAB box,
+			CollisionSphere sphere, float[] normal)
+	{
+		float hw = box.getWidth() / 2f;
+		float hh = box.getHeight() / 2f;
+		float px = getOffsetX(box, sphere);
+		float py = getOffsetY(box, sphere);
+		float radius = sphere.getRadius();
+
+		float dx = px - clamp(px, -hw, hw);
+		float dy = py - clamp(py, -hh, hh);
+		float distance = (float) Math.sqrt(dx * dx + dy * dy);
+
+		if (distance > 0)
+		{
+			// the center is outside, push away from the closest point
+			setNormal(normal, dx / distance, dy / distance, 0);
+			return radius - distance;
+		}
+
+		// the center is inside, push out through the closest side
+		float insideX = hw - Math.abs(px);
+		float insideY = hh - Math.abs(py);
+		if (insideX < insideY)
+		{
+			setNormal(normal, px < 0 ? -1 : 1, 0, 0);
+			return radius + insideX;
+		}
+
+		setNormal(normal, 0, py < 0 ? -1 : 1, 0);
+		return radius + insideY;
+	}
+
+	/**
+	 * Finds the direction and depth of the overlap between two Axis Aligned
+	 * Boxes
+	 * 
+	 * @param box1
+	 *            first AAB collision boundary
+	 * @param box2
+	 *            second AAB collision boundary
+	 * @param normal
+	 *            set to the direction from box1 to box2
+	 * @return how far box2 must move along the normal to stop touching box1,
+	 *         or 0 or less if they do not overlap
+	 */
+	public static float getPenetrationAAB(CollisionAAB box1,
+			CollisionAAB box2, float[] normal)
+	{
+		return getPenetrationRounded(box1.getWidth() / 2f,
+				box1.getHeight() / 2f, 0, 0, 0, getOffsetX(box1, box2),
+				getOffsetY(box1, box2), box2.getWidth() / 2f,
+				box2.getHeight() / 2f, 0, 0, 0, normal);
+	}
+
+	/**
+	 * Finds the direction and depth of the overlap between a capsule and an
+	 * Axis Aligned Box
+	 * 
+	 * @param capsule
+	 *            capsule shaped collision boundary
+	 * @param box
+	 *            axis aligned collision boundary
+	 * @param normal
+	 *            set to the direction from the capsule to the box
+	 * @return how far the box must move along the normal to stop touching the
+	 *         capsule, or 0 or less if they do not overlap
+	 */
+	public static float getPenetrationCapsuleToAAB(CollisionCapsule capsule,
+			CollisionAAB box, float[] normal)
+	{
+		return getPenetrationRounded(0, 0, getHalfSegmentX(capsule),
+				getHalfSegmentY(capsule), capsule.getRadius(),
+				getOffsetX(capsule, box), getOffsetY(capsule, box),
+				box.getWidth() / 2f, box.getHeight() / 2f, 0, 0, 0, normal);
+	}
+
+	/**
+	 * Finds the direction and depth of the overlap between two capsules
+	 * 
+	 * @param capsule1
+	 *            first capsule shaped collision boundary
+	 * @param capsule2
+	 *            second capsule shaped collision boundary
+	 * @param normal
+	 *            set to the direction from capsule1 to capsule2
+	 * @return how far capsule2 must move along the normal to stop touching
+	 *         capsule1, or 0 or less if they do not overlap
+	 */
+	public static float getPenetrationCapsules(CollisionCapsule capsule1,
+			CollisionCapsule capsule2, float[] normal)
+	{
+		return getPenetrationRounded(0, 0, getHalfSegmentX(capsule1),
+				getHalfSegmentY(capsule1), capsule1.getRadius(),
+				getOffsetX(capsule1, capsule2), getOffsetY(capsule1, capsule2),
+				0, 0, getHalfSegmentX(capsule2), getHalfSegmentY(capsule2),
+				capsule2.getRadius(), normal);
+	}
+
+	/**
+	 * Finds the direction and depth of the overlap between a capsule and a
+	 * sphere, treated as a 2D circle
+	 * 
+	 * @param capsule
+	 *            capsule shaped collision boundary
+	 * @param sphere
+	 *            spherical collision boundary
+	 * @param normal
+	 *            set to the direction from the capsule to the sphere
+	 * @return how far the sphere must move along the normal to stop touching
+	 *         the capsule, or 0 or less if they do not overlap
+	 */
+	public static float getPenetrationCapsuleToSphere(
+			CollisionCapsule capsule, CollisionSphere sphere, float[] normal)
+	{
+		return getPenetrationRounded(0, 0, getHalfSegmentX(capsule),
+				getHalfSegmentY(capsule), capsule.getRadius(),
+				getOffsetX(capsule, sphere), getOffsetY(capsule, sphere), 0, 0,
+				0, 0, sphere.getRadius(), normal);
+	}
+
+	/**
+	 * Finds the direction and depth of the overlap between two convex
+	 * polygons, along the edge normal they overlap least on
+	 * 
+	 * @param polygon1
+	 *            first polygonal collision boundary
+	 * @param polygon2
+	 *            second polygonal collision boundary
+	 * @param normal
+	 *            set to the direction from polygon1 to polygon2
+	 * @return how far polygon2 must move along the normal to stop touching
+	 *         polygon1, or 0 or less if they do not overlap
+	 */
+	public static float getPenetrationPolygons(CollisionPolygon polygon1,
+			CollisionPolygon polygon2, float[] normal)
+	{
+		float radians1 = (float) Math.toRadians(polygon1.getRotation());
+		float cos1 = (float) Math.cos(radians1);
+		float sin1 = (float) Math.sin(radians1);
+		float radians2 = (float) Math.toRadians(polygon2.getRotation());
+		float cos2 = (float) Math.cos(radians2);
+		float sin2 = (float) Math.sin(radians2);
+
+		// polygon1 at the origin
+		float x2 = getOffsetX(polygon1, polygon2);
+		float y2 = getOffsetY(polygon1, polygon2);
+
+		setNormal(normal, 0, 0, 0);
+		float depth = Float.POSITIVE_INFINITY;
+
+		// edges of the first polygon, then edges of the second
+		int count1 = polygon1.getVertexCount();
+		int axes = count1 + polygon2.getVertexCount();
+		for (int axis = 0; axis < axes; axis++)
+		{
+			float nx, ny;
+			if (axis < count1)
+			{
+				nx = getEdgeNormalX(polygon1, axis, cos1, sin1);
+				ny = getEdgeNormalY(polygon1, axis, cos1, sin1);
+			}
+			else
+			{
+				nx = getEdgeNormalX(polygon2, axis - count1, cos2, sin2);
+				ny = getEdgeNormalY(polygon2, axis - count1, cos2, sin2);
+			}
+
+			float length = (float) Math.sqrt(nx * nx + ny * ny);
+			if (length == 0)
+				continue;
+			nx /= length;
+			ny /= length;
+
+			depth = keepShallowest(depth, normal, nx, ny,
+					getPolygonMin(polygon1, 0, 0, cos1, sin1, nx, ny),
+					-getPolygonMin(polygon1, 0, 0, cos1, sin1, -nx, -ny),
+					getPolygonMin(polygon2, x2, y2, cos2, sin2, nx, ny),
+					-getPolygonMin(polygon2, x2, y2, cos2, sin2, -nx, -ny));
+		}
+
+		return Float.isInfinite(depth) ? 0 : depth;
+	}
+
+	/**
+	 * Finds the direction and depth of the overlap between a convex polygon
+	 * and an Axis Aligned Box
+	 * 
+	 * @param polygon
+	 *            polygonal collision boundary
+	 * @param box
+	 *            axis aligned collision boundary
+	 * @param normal
+	 *            set to the direction from the polygon to the box
+	 * @return how far the box must move along the normal to stop touching the
+	 *         polygon, or 0 or less if they do not overlap
+	 */
+	public static float getPenetrationPolygonToAAB(CollisionPolygon polygon,
+			CollisionAAB box, float[] normal)
+	{
+		return getPenetrationPolygonToRounded(polygon,
+				getOffsetX(polygon, box), getOffsetY(polygon, box),
+				box.getWidth() / 2f, box.getHeight() / 2f, 0, 0, 0, normal);
+	}
+
+	/**
+	 * Finds the direction and depth of the overlap between a convex polygon
+	 * and a sphere, treated as a 2D circle
+	 * 
+	 * @param polygon
+	 *            polygonal collision boundary
+	 * @param sphere
+	 *            spherical collision boundary
+	 * @param normal
+	 *            set to the direction from the polygon to the sphere
+	 * @return how far the sphere must move along the normal to stop touching
+	 *         the polygon, or 0 or less if they do not overlap
+	 */
+	public static float getPenetrationPolygonToSphere(
+			CollisionPolygon polygon, CollisionSphere sphere, float[] normal)
+	{
+		return getPenetrationPolygonToRounded(polygon,
+				getOffsetX(polygon, sphere), getOffsetY(polygon, sphere), 0, 0,
+				0, 0, sphere.getRadius(), normal);
+	}
+
+	/**
+	 * Finds the direction and depth of the overlap between a convex polygon
+	 * and a capsule
+	 * 
+	 * @param polygon
+	 *            polygonal collision boundary
+	 * @param capsule
+	 *            capsule shaped collision boundary
+	 * @param normal
+	 *            set to the direction from the polygon to the capsule
+	 * @return how far the capsule must move along the normal to stop touching
+	 *         the polygon, or 0 or less if they do not overlap
+	 */
+	public static float getPenetrationPolygonToCapsule(
+			CollisionPolygon polygon, CollisionCapsule capsule, float[] normal)
+	{
+		return getPenetrationPolygonToRounded(polygon,
+				getOffsetX(polygon, capsule), getOffsetY(polygon, capsule), 0,
+				0, getHalfSegmentX(capsule), getHalfSegmentY(capsule),
+				capsule.getRadius(), normal);
+	}
+
+	/*
+	 * The penetration tests below are separating axis tests that keep the
+	 * axis the shapes overlap least on. Boxes, spheres and capsules are all
+	 * taken as a rounded shape: a box of half size (hw, hh), swept along a
+	 * segment from -(hx, hy) to (hx, hy), and grown by a radius r. Its core is
+	 * the box and segment without the radius. Besides the edge normals, the
+	 * axes from each corner of a rounded core to the corners of the other
+	 * shape are tried, which finds how far curved sides overlap.
+	 */
+
+	/**
+	 * Penetration of two rounded shapes, the first at the origin and the
+	 * second at (x2, y2)
+	 */
+	private static float getPenetrationRounded(float hw1, float hh1,
+			float hx1, float hy1, float r1, float x2, float y2, float hw2,
+			float hh2, float hx2, float hy2, float r2, float[] normal)
+	{
+		setNormal(normal, 0, 0, 0);
+		float depth = Float.POSITIVE_INFINITY;
+
+		int corners1 = hw1 > 0 || hh1 > 0 ? 4 : 1;
+		int corners2 = hw2 > 0 || hh2 > 0 ? 4 : 1;
+		int points1 = corners1 * (hx1 != 0 || hy1 != 0 ? 2 : 1);
+		int points2 = corners2 * (hx2 != 0 || hy2 != 0 ? 2 : 1);
+
+		// the sides of the boxes, the normals of the segments, then the axes
+		// between the corners of the cores if either shape is rounded
+		int axes = 4 + (r1 > 0 || r2 > 0 ? points1 * points2 : 0);
+		for (int axis = 0; axis < axes; axis++)
+		{
+			float nx, ny;
+			switch (axis)
+			{
+				case 0:
+				case 1:
+					if (corners1 == 1 && corners2 == 1)
+						continue;
+					nx = axis == 0 ? 1 : 0;
+					ny = axis == 0 ? 0 : 1;
+					break;
+				case 2:
+				case 3:
+					nx = axis == 2 ? -hy1 : -hy2;
+					ny = axis == 2 ? hx1 : hx2;
+					break;
+				default:
+					// from a corner of one core to a corner of the other
+					int i = (axis - 4) / points2;
+					int j = (axis - 4) % points2;
+					nx = getCoreX(j, x2, hw2, hx2, corners2)
+							- getCoreX(i, 0, hw1, hx1, corners1);
+					ny = getCoreY(j, y2, hh2, hy2, corners2)
+							- getCoreY(i, 0, hh1, hy1, corners1);
+					break;
+			}
+
+			float length = (float) Math.sqrt(nx * nx + ny * ny);
+			if (length == 0)
+				continue;
+			nx /= length;
+			ny /= length;
+
+			float reach1 = getReach(hw1, hh1, hx1, hy1, r1, nx, ny);
+			float reach2 = getReach(hw2, hh2, hx2, hy2, r2, nx, ny);
+			float center2 = x2 * nx + y2 * ny;
+			depth = keepShallowest(depth, normal, nx, ny, -reach1, reach1,
+					center2 - reach2, center2 + reach2);
+		}
+
+		if (Float.isInfinite(depth))
+		{
+			// two circles on the same spot, any way out will do
+			setNormal(normal, 1, 0, 0);
+			return r1 + r2;
+		}
+
+		return depth;
+	}
+
+	/**
+	 * Penetration of a convex polygon at the origin and a rounded shape at
+	 * (x, y)
+	 */
+	private static float getPenetrationPolygonToRounded(
+			CollisionPolygon polygon, float x, float y, float hw, float hh,
+			float hx, float hy, float r, float[] normal)
+	{
+		float radians = (float) Math.toRadians(polygon.getRotation());
+		float cos = (float) Math.cos(radians);
+		float sin = (float) Math.sin(radians);
+
+		setNormal(normal, 0, 0, 0);
+		float depth = Float.POSITIVE_INFINITY;
+
+		int count = polygon.getVertexCount();
+		int corners = hw > 0 || hh > 0 ? 4 : 1;
+		int points = corners * (hx != 0 || hy != 0 ? 2 : 1);
+
+		// edges of the polygon, the sides of the box and the normal of the
+		// segment, then from each corner of the core to the polygon
+		int axes = count + 3 + (r > 0 ? points : 0);
+		for (int axis = 0; axis < axes; axis++)
+		{
+			float nx, ny;
+			if (axis < count)
+			{
+				nx = getEdgeNormalX(polygon, axis, cos, sin);
+				ny = getEdgeNormalY(polygon, axis, cos, sin);
+			}
+			else if (axis < count + 2)
+			{
+				if (corners == 1)
+					continue;
+				nx = axis == count ? 1 : 0;
+				ny = axis == count ? 0 : 1;
+			}
+			else if (axis == count + 2)
+			{
+				nx = -hy;
+				ny = hx;
+			}
+			else
+			{
+				// from the polygon's closest corner to this corner of the core
+				int point = axis - count - 3;
+				float px = getCoreX(point, x, hw, hx, corners);
+				float py = getCoreY(point, y, hh, hy, corners);
+				int vertex = getClosestVertex(polygon, cos, sin, px, py);
+				float vx = polygon.getVertexX(vertex);
+				float vy = polygon.getVertexY(vertex);
+				nx = px - (vx * cos - vy * sin);
+				ny = py - (vx * sin + vy * cos);
+			}
+
+			float length = (float) Math.sqrt(nx * nx + ny * ny);
+			if (length == 0)
+				continue;
+			nx /= length;
+			ny /= length;
+
+			float reach = getReach(hw, hh, hx, hy, r, nx, ny);
+			float center = x * nx + y * ny;
+			depth = keepShallowest(depth, normal, nx, ny,
+					getPolygonMin(polygon, 0, 0, cos, sin, nx, ny),
+					-getPolygonMin(polygon, 0, 0, cos, sin, -nx, -ny),
+					center - reach, center + reach);
+		}
+
+		return Float.isInfinite(depth) ? 0 : depth;
+	}
+
+	/**
+	 * Keeps the axis two ranges overlap least on. The normal is set to the
+	 * axis, or the opposite way, whichever the second range is pushed out
+	 * along.
+	 * 
+	 * @return the smaller of depth and the overlap along this axis
+	 */
+	private static float keepShallowest(float depth, float[] normal,
+			float nx, float ny, float min1, float max1, float min2,
+			float max2)
+	{
+		float forward = max1 - min2;
+		float backward = max2 - min1;
+
+		if (forward <= backward && forward < depth)
+		{
+			setNormal(normal, nx, ny, 0);
+			return forward;
+		}
+
+		if (backward < forward && backward < depth)
+		{
+			setNormal(normal, -nx, -ny, 0);
+			return backward;
+		}
+
+		return depth;
+	}
+
+	/**
+	 * How far a rounded shape reaches from its center along a unit axis
+	 */
+	private static float getReach(float hw, float hh, float hx, float hy,
+			float r, float nx, float ny)
+	{
+		return hw * Math.abs(nx) + hh * Math.abs(ny)
+				+ Math.abs(hx * nx + hy * ny) + r;
+	}
+
+	/**
+	 * X of a corner of a rounded shape's core, the box corners at each end of
+	 * the segment
+	 */
+	private static float getCoreX(int point, float x, float hw, float hx,
+			int corners)
+	{
+		int corner = point % corners;
+		return x + ((corner & 1) == 0 ? -hw : hw)
+				+ (point / corners == 0 ? -hx : hx);
+	}
+
+	/**
+	 * Y of a corner of a rounded shape's core, see getCoreX
+	 */
+	private static float getCoreY(int point, float y, float hh, float hy,
+			int corners)
+	{
+		int corner = point % corners;
+		return y + ((corner & 2) == 0 ? -hh : hh)
+				+ (point / corners == 0 ? -hy : hy);
+	}
+
+	/**
+	 * X of half of a capsule's segment, from its center to one end
+	 */
+	private static float getHalfSegmentX(CollisionCapsule capsule)
+	{
+		float radians = (float) Math.toRadians(capsule.getRotation());
+		return (float) Math.cos(radians) * capsule.getLength() / 2f;
+	}
+
+	/**
+	 * Y of half of a capsule's segment, see getHalfSegmentX
+	 */
+	private static float getHalfSegmentY(CollisionCapsule capsule)
+	{
+		float radians = (float) Math.toRadians(capsule.getRotation());
+		return (float) Math.sin(radians) * capsule.getLength() / 2f;
+	}
+
+	/**
+	 * X of the outward normal of an edge of a polygon, turned into the world.
+	 * Not of unit length.
+	 * 
+	 * @param edge
+	 *            index of the corner the edge starts at
+	 */
+	private static float getEdgeNormalX(CollisionPolygon polygon, int edge,
+			float cos, float sin)
+	{
+		int next = edge + 1 == polygon.getVertexCount() ? 0 : edge + 1;
+		float nx = polygon.getVertexY(next) - polygon.getVertexY(edge);
+		float ny = polygon.getVertexX(edge) - polygon.getVertexX(next);
+		return nx * cos - ny * sin;
+	}
+
+	/**
+	 * Y of the outward normal of an edge of a polygon, see getEdgeNormalX
+	 */
+	private static float getEdgeNormalY(CollisionPolygon polygon, int edge,
+			float cos, float sin)
+	{
+		int next = edge + 1 == polygon.getVertexCount() ? 0 : edge + 1;
+		float nx = polygon.getVertexY(next) - polygon.getVertexY(edge);
+		float ny = polygon.getVertexX(edge) - polygon.getVertexX(next);
+		return nx * sin + ny * cos;
+	}
+
+	/**
+	 * Lowest value of a polygon's corners along an axis, with the polygon's
+	 * center at (x, y)
+	 */
+	private static float getPolygonMin(CollisionPolygon polygon, float x,
+			float y, float cos, float sin, float nx, float ny)
+	{
+		float min = Float.POSITIVE_INFINITY;
+
+		int count = polygon.getVertexCount();
+		for (int i = 0; i < count; i++)
+		{
+			float vx = polygon.getVertexX(i);
+			float vy = polygon.getVertexY(i);
+			float px = x + vx * cos - vy * sin;
+			float py = y + vx * sin + vy * cos;
+			min = Math.min(min, px * nx + py * ny);
+		}
+
+		return min;
+	}
+
+	/**
+	 * Index of the corner of a polygon at the origin closest to a point
+	 */
+	private static int getClosestVertex(CollisionPolygon polygon, float cos,
+			float sin, float px, float py)
+	{
+		int closest = 0;
+		float best = Float.POSITIVE_INFINITY;
+
+		int count = polygon.getVertexCount();
+		for (int i = 0; i < count; i++)
+		{
+			float vx = polygon.getVertexX(i);
+			float vy = polygon.getVertexY(i);
+			float dx = px - (vx * cos - vy * sin);
+			float dy = py - (vx * sin + vy * cos);
+			float distance = dx * dx + dy * dy;
+			if (distance < best)
+			{
+				best = distance;
+				closest = i;
+			}
+		}
+
+		return closest;
+	}
+
+	private static float getPenetrationBounds(CollisionShape shape1,
+			CollisionShape shape2, float[] normal)
+	{
+		setNormal(normal, 0, 0, 0);
+		float depth = Float.POSITIVE_INFINITY;
+
+		for (int axis = 0; axis < 3; axis++)
+		{
+			float extent1, extent2, d;
+			switch (axis)
+			{
+				case 0:
+					extent1 = shape1.getExtentX();
+					extent2 = shape2.getExtentX();
+					d = getOffsetX(shape1, shape2);
+					break;
+				case 1:
+					extent1 = shape1.getExtentY();
+					extent2 = shape2.getExtentY();
+					d = getOffsetY(shape1, shape2);
+					break;
+				default:
+					extent1 = shape1.getExtentZ();
+					extent2 = shape2.getExtentZ();
+					d = getOffsetZ(shape1, shape2);
+					break;
+			}
+
+			if (Float.isInfinite(extent1) || Float.isInfinite(extent2))
+				continue;
+
+			float overlap = extent1 + extent2 - Math.abs(d);
+			if (overlap < depth)
+			{
+				depth = overlap;
+				setNormal(normal, 0, 0, 0);
+				normal[axis] = d < 0 ? -1 : 1;
+			}
+		}
+
+		return Float.isInfinite(depth) ? 0 : depth;
+	}
+
+	private static void setNormal(float[] normal, float x, float y, float z)
+	{
+		normal[0] = x;
+		normal[1] = y;
+		normal[2] = z;
+	}
+
+	/**
+	 * Finds when two shapes first touch as they move over the next delta
+	 * seconds. Each shape is moved in a straight line by its entity's
+	 * velocity (after adding its acceleration), the same way Entity.update
+	 * would move it. Nothing is cloned or moved, so this is cheap enough to run
+	 * on every pair in a layer.
+	 * 
+	 * @param shape1
+	 *            first collision boundary
+	 * @param shape2
+	 *            second collision boundary
+	 * @param delta
+	 *            time to look ahead (in seconds)
+	 * @return time in seconds from 0 to delta when the shapes first touch, 0 if
+	 *         they already touch, NO_IMPACT if they do not touch within delta,
+	 *         or Float.NaN if there is no swept test for these shapes
+	 */
+	public static float timeOfImpact(CollisionShape shape1,
+			CollisionShape shape2, float delta)
+	{
+		if (shape1 instanceof CollisionSphere)
+		{
+			if (shape2 instanceof CollisionSphere)
+				return timeOfImpactSpheres((CollisionSphere) shape1,
+						(CollisionSphere) shape2, delta);
+			if (shape2 instanceof CollisionAAB)
+				return timeOfImpactAABToSphere((CollisionAAB) shape2,
+						(CollisionSphere) shape1, delta);
+		}
+		else if (shape1 instanceof CollisionAAB)
+		{
+			if (shape2 instanceof CollisionAAB)
+				return timeOfImpactAAB((CollisionAAB) shape1,
+						(CollisionAAB) shape2, delta);
+			if (shape2 instanceof CollisionSphere)
+				return timeOfImpactAABToSphere((CollisionAAB) shape1,
+						(CollisionSphere) shape2, delta);
+		}
+
+		return Float.NaN;
+	}
+
+	/**
+	 * Finds when two moving spheres first touch within delta seconds, by
+	 * solving for when the distance between their centers equals the sum of
+	 * their radiuses.
+	 * 
+	 * @param sphere1
+	 *            first spherical collision boundary
+	 * @param sphere2
+	 *            second spherical collision boundary
+	 * @param delta
+	 *            time to look ahead (in seconds)
+	 * @return time in seconds from 0 to delta when the spheres first touch, or
+	 *         NO_IMPACT
+	 */
+	public static float timeOfImpactSpheres(CollisionSphere sphere1,
+			CollisionSphere sphere2, float delta)
+	{
+		// position and movement of sphere 2, as seen from sphere 1
+		float px = getOffsetX(sphere1, sphere2);
+		float py = getOffsetY(sphere1, sphere2);
+		float pz = getOffsetZ(sphere1, sphere2);
+		float mx = getMoveX(sphere2, delta) - getMoveX(sphere1, delta);
+		float my = getMoveY(sphere2, delta) - getMoveY(sphere1, delta);
+		float mz = getMoveZ(sphere2, delta) - getMoveZ(sphere1, delta);
+		float r = sphere1.getRadius() + sphere2.getRadius();
+
+		float t = sweepPointToSphere(px, py, pz, mx, my, mz, r);
+		return t < 0 ? NO_IMPACT : t * delta;
+	}
+
+	/**
+	 * Finds when two moving Axis Aligned Boxes first touch within delta
+	 * seconds. Like isIntersectAAB, only the x and y axes are used.
+	 * 
+	 * @param box1
+	 *            first AAB collision boundary
+	 * @param box2
+	 *            second AAB collision boundary
+	 * @param delta
+	 *            time to look ahead (in seconds)
+	 * @return time in seconds from 0 to delta when the boxes first touch, or
+	 *         NO_IMPACT
+	 */
+	public static float timeOfImpactAAB(CollisionAAB box1, CollisionAAB box2,
+			float delta)
+	{
+		// box 2's center, moving against a box as big as both boxes combined
+		float px = getOffsetX(box1, box2);
+		float py = getOffsetY(box1, box2);
+		float mx = getMoveX(box2, delta) - getMoveX(box1, delta);
+		float my = getMoveY(box2, delta) - getMoveY(box1, delta);
+		float hw = (box1.getWidth() + box2.getWidth()) / 2f;
+		float hh = (box1.getHeight() + box2.getHeight()) / 2f;
+
+		float t = sweepPointToBox(px, py, mx, my, hw, hh);
+		return t < 0 ? NO_IMPACT : t * delta;
+	}
+
+	/**
+	 * Finds when a moving Axis Aligned Box and a moving circle first touch
+	 * within delta seconds. Like isIntersectAABToSphere, the sphere is treated
+	 * as a 2D circle.
+	 * 
+	 * The circle's center touches the box when it enters the box grown by the
+	 * radius, with rounded corners. That shape is made of the box grown
+	 * sideways, the box grown up and down, and a circle on each corner, so the
+	 * earliest time the center enters any of them is the time of impact.
+	 * 
+	 * @param box
+	 *            AAB collision shape
+	 * @param sphere
+	 *            circle collision shape
+	 * @param delta
+	 *            time to look ahead (in seconds)
+	 * @return time in seconds from 0 to delta when the shapes first touch, or
+	 *         NO_IMPACT
+	 */
+	public static float timeOfImpactAABToSphere(CollisionAAB box,
+			CollisionSphere sphere, float delta)
+	{
+		float px = getOffsetX(box, sphere);
+		float py = getOffsetY(box, sphere);
+		float mx = getMoveX(sphere, delta) - getMoveX(box, delta);
+		float my = getMoveY(sphere, delta) - getMoveY(box, delta);
+		float hw = box.getWidth() / 2f;
+		float hh = box.getHeight() / 2f;
+		float r = sphere.getRadius();
+
+		float t = earliest(sweepPointToBox(px, py, mx, my, hw + r, hh),
+				sweepPointToBox(px, py, mx, my, hw, hh + r));
+
+		// corners
+		t = earliest(t, sweepPointToSphere(px - hw, py - hh, 0, mx, my, 0, r));
+		t = earliest(t, sweepPointToSphere(px + hw, py - hh, 0, mx, my, 0, r));
+		t = earliest(t, sweepPointToSphere(px - hw, py + hh, 0, mx, my, 0, r));
+		t = earliest(t, sweepPointToSphere(px + hw, py + hh, 0, mx, my, 0, r));
+
+		return t < 0 ? NO_IMPACT : t * delta;
+	}
+
+	/**
+	 * Finds where a ray first hits a shape. Compounds are hit where the ray
+	 * first hits one of their parts. Shapes CollisionDetect has no test for are
+	 * hit where the ray enters their bounds. In a wrapped world, the ray
+	 * starts from the copy of the origin closest to the shape.
+	 * 
+	 * @param shape
+	 *            shape to cast against
+	 * @param originX
+	 *            x value of where the ray starts
+	 * @param originY
+	 *            y value of where the ray starts
+	 * @param originZ
+	 *            z value of where the ray starts
+	 * @param dirX
+	 *            x value of the ray's direction, which must be normalized
+	 * @param dirY
+	 *            y value of the ray's direction
+	 * @param dirZ
+	 *            z value of the ray's direction
+	 * @param maxDistance
+	 *            length of the ray
+	 * @return distance along the ray to the hit, 0 if the ray starts inside the
+	 *         shape, or NO_IMPACT if the ray misses
+	 */
+	public static float raycast(CollisionShape shape, float originX,
+			float originY, float originZ, float dirX, float dirY, float dirZ,
+			float maxDistance)
+	{
+		// start from the copy of the origin closest to the shape
+		CollisionManager world = shape.getManager();
+		originX = getNearest(world, 0, originX, shape.getCenterX());
+		originY = getNearest(world, 1, originY, shape.getCenterY());
+		originZ = getNearest(world, 2, originZ, shape.getCenterZ());
+
+		if (shape instanceof CollisionCompound)
+		{
+			// the closest hit on any part
+			CollisionCompound compound = (CollisionCompound) shape;
+			float closest = NO_IMPACT;
+			for (int i = 0; i < compound.getPartCount(); i++)
+			{
+				float distance = raycast(compound.getPart(i), originX,
+						originY, originZ, dirX, dirY, dirZ, maxDistance);
+				if (distance >= 0 && (closest < 0 || distance < closest))
+					closest = distance;
+			}
+			return closest;
+		}
+
+		// treat the ray as a point moving from the origin to its end
+		float px = originX - shape.getCenterX();
+		float py = originY - shape.getCenterY();
+		float pz = originZ - shape.getCenterZ();
+		float mx = dirX * maxDistance;
+		float my = dirY * maxDistance;
+		float mz = dirZ * maxDistance;
+
+		float t;
+		if (shape instanceof CollisionSphere)
+		{
+			float r = ((CollisionSphere) shape).getRadius();
+			t = sweepPointToSphere(px, py, pz, mx, my, mz, r);
+		}
+		else if (shape instanceof CollisionAAB)
+		{
+			CollisionAAB box = (CollisionAAB) shape;
+			t = sweepPointToBox(px, py, mx, my, box.getWidth() / 2f,
+					box.getHeight() / 2f);
+		}
+		else
+		{
+			t = sweepPointToBox(px, py, pz, mx, my, mz, shape.getExtentX(),
+					shape.getExtentY(), shape.getExtentZ());
+		}
+
+		return t < 0 ? NO_IMPACT : t * maxDistance;
+	}
+
+	/**
+	 * Detects if a shape overlaps a box. Compounds overlap it if any part
+	 * does. Shapes CollisionDetect has no test for are checked using their
+	 * bounds.
+	 * 
+	 * @param shape
+	 *            shape to check
+	 * @return true if the shape and the box are touching
+	 */
+	public static boolean isIntersectBox(CollisionShape shape, float minX,
+			float minY, float minZ, float maxX, float maxY, float maxZ)
+	{
+		// move the box to its copy closest to the shape
+		CollisionManager world = shape.getManager();
+		float shiftX = getNearest(world, 0, (minX + maxX) / 2f,
+				shape.getCenterX()) - (minX + maxX) / 2f;
+		float shiftY = getNearest(world, 1, (minY + maxY) / 2f,
+				shape.getCenterY()) - (minY + maxY) / 2f;
+		float shiftZ = getNearest(world, 2, (minZ + maxZ) / 2f,
+				shape.getCenterZ()) - (minZ + maxZ) / 2f;
+		minX += shiftX;
+		maxX += shiftX;
+		minY += shiftY;
+		maxY += shiftY;
+		minZ += shiftZ;
+		maxZ += shiftZ;
+
+		if (shape instanceof CollisionCompound)
+		{
+			CollisionCompound compound = (CollisionCompound) shape;
+			for (int i = 0; i < compound.getPartCount(); i++)
+			{
+				if (isIntersectBox(compound.getPart(i), minX, minY, minZ,
+						maxX, maxY, maxZ))
+					return true;
+			}
+			return false;
+		}
+
+		float x = shape.getCenterX();
+		float y = shape.getCenterY();
+		float z = shape.getCenterZ();
+
+		if (shape instanceof CollisionSphere)
+		{
+			// distance from the center to the closest point in the box
+			float r = ((CollisionSphere) shape).getRadius();
+			float dx = x - clamp(x, minX, maxX);
+			float dy = y - clamp(y, minY, maxY);
+			float dz = z - clamp(z, minZ, maxZ);
+			return dx * dx + dy * dy + dz * dz <= r * r;
+		}
+
+		return x - shape.getExtentX() <= maxX && minX <= x + shape.getExtentX()
+				&& y - shape.getExtentY() <= maxY
+				&& minY <= y + shape.getExtentY()
+				&& z - shape.getExtentZ() <= maxZ
+				&& minZ <= z + shape.getExtentZ();
+	}
+
+	/**
+	 * Detects if a shape overlaps a sphere. Like isIntersectAABToSphere, boxes
+	 * are checked against a 2D circle, and compounds overlap it if any part
+	 * does. Shapes CollisionDetect has no test for are checked using their
+	 * bounds.
+	 * 
+	 * @param shape
+	 *            shape to check
+	 * @return true if the shape and the sphere are touching
+	 */
+	public static boolean isIntersectSphere(CollisionShape shape,
+			float centerX, float centerY, float centerZ, float radius)
+	{
+		// move the sphere to its copy closest to the shape
+		CollisionManager world = shape.getManager();
+		centerX = getNearest(world, 0, centerX, shape.getCenterX());
+		centerY = getNearest(world, 1, centerY, shape.getCenterY());
+		centerZ = getNearest(world, 2, centerZ, shape.getCenterZ());
+
+		if (shape instanceof CollisionCompound)
+		{
+			CollisionCompound compound = (CollisionCompound) shape;
+			for (int i = 0; i < compound.getPartCount(); i++)
+			{
+				if (isIntersectSphere(compound.getPart(i), centerX, centerY,
+						centerZ, radius))
+					return true;
+			}
+			return false;
+		}
+
+		float x = shape.getCenterX();
+		float y = shape.getCenterY();
+		float z = shape.getCenterZ();
+
+		if (shape instanceof CollisionSphere)
+		{
+			float dx = centerX - x;
+			float dy = centerY - y;
+			float dz = centerZ - z;
+			float r = radius + ((CollisionSphere) shape).getRadius();
+			return dx * dx + dy * dy + dz * dz <= r * r;
+		}
+
+		// distance from the center to the closest point in the bounds
+		float dx = centerX - clamp(centerX, x - shape.getExtentX(), x
+				+ shape.getExtentX());
+		float dy = centerY - clamp(centerY, y - shape.getExtentY(), y
+				+ shape.getExtentY());
+		float dz = 0;
+		if (!(shape instanceof CollisionAAB))
+		{
+			dz = centerZ - clamp(centerZ, z - shape.getExtentZ(), z
+					+ shape.getExtentZ());
+		}
+
+		return dx * dx + dy * dy + dz * dz <= radius * radius;
+	}
+
+	/**
+	 * Checks if every corner of polygon2 is outside of an edge of polygon1.
+	 * Corners exactly on the edge are not outside.
+	 * 
+	 * @param edge
+	 *            index of the corner the edge of polygon1 starts at
+	 */
+	private static boolean isSeparatingEdge(CollisionPolygon polygon1,
+			float x1, float y1, float cos1, float sin1, int edge,
+			CollisionPolygon polygon2, float x2, float y2, float cos2,
+			float sin2)
+	{
+		int next = edge + 1 == polygon1.getVertexCount() ? 0 : edge + 1;
+		float ax = polygon1.getVertexX(edge);
+		float ay = polygon1.getVertexY(edge);
+
+		// outward normal of the edge, in polygon1's frame
+		float nx = polygon1.getVertexY(next) - ay;
+		float ny = ax - polygon1.getVertexX(next);
+
+		// where polygon2 is, and how it is turned, in polygon1's frame
+		float dx = x2 - x1;
+		float dy = y2 - y1;
+		float ox = dx * cos1 + dy * sin1 - ax;
+		float oy = -dx * sin1 + dy * cos1 - ay;
+		float cos = cos1 * cos2 + sin1 * sin2;
+		float sin = cos1 * sin2 - sin1 * cos2;
+
+		int count = polygon2.getVertexCount();
+		for (int i = 0; i < count; i++)
+		{
+			float vx = polygon2.getVertexX(i);
+			float vy = polygon2.getVertexY(i);
+			float x = ox + vx * cos - vy * sin;
+			float y = oy + vx * sin + vy * cos;
+
+			if (nx * x + ny * y <= 0)
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Checks if an axis separates a polygon from a box
+	 * 
+	 * @param axis
+	 *            index of an edge of the polygon, or the number of corners for
+	 *            the x-axis and one more for the y-axis
+	 */
+	private static boolean isSeparatingAxis(CollisionPolygon polygon,
+			float px, float py, float cos, float sin, float bx, float by,
+			float hw, float hh, int axis)
+	{
+		int count = polygon.getVertexCount();
+
+		if (axis < count)
+		{
+			int next = axis + 1 == count ? 0 : axis + 1;
+			float ax = polygon.getVertexX(axis);
+			float ay = polygon.getVertexY(axis);
+
+			// outward normal of the edge, in the polygon's frame
+			float nx = polygon.getVertexY(next) - ay;
+			float ny = ax - polygon.getVertexX(next);
+
+			// center of the box in the polygon's frame, and how far the box
+			// reaches along the normal
+			float dx = bx - px;
+			float dy = by - py;
+			float x = dx * cos + dy * sin;
+			float y = -dx * sin + dy * cos;
+			float reach = hw * Math.abs(nx * cos - ny * sin) + hh
+					* Math.abs(nx * sin + ny * cos);
+
+			return nx * (x - ax) + ny * (y - ay) - reach > 0;
+		}
+
+		// one of the box's axes, compare the polygon's range along it
+		boolean xAxis = axis == count;
+		float min = Float.POSITIVE_INFINITY;
+		float max = Float.NEGATIVE_INFINITY;
+
+		for (int i = 0; i < count; i++)
+		{
+			float vx = polygon.getVertexX(i);
+			float vy = polygon.getVertexY(i);
+			float v = xAxis ? px + vx * cos - vy * sin : py + vx * sin + vy
+					* cos;
+			min = Math.min(min, v);
+			max = Math.max(max, v);
+		}
+
+		float center = xAxis ? bx : by;
+		float half = xAxis ? hw : hh;
+		return min > center + half || max < center - half;
+	}
+
+	/**
+	 * Squared distance from a point to the segment from a to b
+	 */
+	private static float getDistanceSquaredToSegment(float px, float py,
+			float ax, float ay, float bx, float by)
+	{
+		float ex = bx - ax;
+		float ey = by - ay;
+		float length = ex * ex + ey * ey;
+
+		// how far along the segment the closest point is, from 0 to 1
+		float t = 0;
+		if (length > 0)
+			t = clamp(((px - ax) * ex + (py - ay) * ey) / length, 0, 1);
+
+		float dx = px - (ax + ex * t);
+		float dy = py - (ay + ey * t);
+		return dx * dx + dy * dy;
+	}
+
+	/**
+	 * Squared distance between the segments a0 to a1 and b0 to b1
+	 */
+	private static float getDistanceSquaredBetweenSegments(float ax0,
+			float ay0, float ax1, float ay1, float bx0, float by0, float bx1,
+			float by1)
+	{
+		// segments that cross are touching
+		float side0 = cross(bx1 - bx0, by1 - by0, ax0 - bx0, ay0 - by0);
+		float side1 = cross(bx1 - bx0, by1 - by0, ax1 - bx0, ay1 - by0);
+		float side2 = cross(ax1 - ax0, ay1 - ay0, bx0 - ax0, by0 - ay0);
+		float side3 = cross(ax1 - ax0, ay1 - ay0, bx1 - ax0, by1 - ay0);
+		if (side0 * side1 < 0 && side2 * side3 < 0)
+			return 0;
+
+		// otherwise the closest points include an end of one of them
+		float closest = getDistanceSquaredToSegment(ax0, ay0, bx0, by0, bx1,
+				by1);
+		closest = Math.min(closest,
+				getDistanceSquaredToSegment(ax1, ay1, bx0, by0, bx1, by1));
+		closest = Math.min(closest,
+				getDistanceSquaredToSegment(bx0, by0, ax0, ay0, ax1, ay1));
+		closest = Math.min(closest,
+				getDistanceSquaredToSegment(bx1, by1, ax0, ay0, ax1, ay1));
+		return closest;
+	}
+
+	/**
+	 * Squared distance from a point to the box centered on the origin with the
+	 * given half width and half height
+	 */
+	private static float getDistanceSquaredToBox(float px, float py, float hw,
+			float hh)
+	{
+		float dx = Math.max(Math.abs(px) - hw, 0);
+		float dy = Math.max(Math.abs(py) - hh, 0);
+		return dx * dx + dy * dy;
+	}
+
+	private static float cross(float x1, float y1, float x2, float y2)
+	{
+		return x1 * y2 - y1 * x2;
+	}
+
+	private static float clamp(float value, float min, float max)
+	{
+		return value < min ? min : value > max ? max : value;
+	}
+
+	/**
+	 * Finds when a point moving from p to p + m first comes within r of the
+	 * origin
+	 * 
+	 * @return fraction of the move from 0 to 1, or NO_IMPACT
+	 */
+	private static float sweepPointToSphere(float px, float py, float pz,
+			float mx, float my, float mz, float r)
+	{
+		// solve |p + m * t| = r for t
+		float c = px * px + py * py + pz * pz - r * r;
+		if (c <= 0)
+			return 0;
+
+		float a = mx * mx + my * my + mz * mz;
+		float b = px * mx + py * my + pz * mz;
+
+		// not moving, or moving away
+		if (a == 0 || b >= 0)
+			return NO_IMPACT;
+
+		float discriminant = b * b - a * c;
+		if (discriminant < 0)
+			return NO_IMPACT;
+
+		float t = (-b - (float) Math.sqrt(discriminant)) / a;
+		return t <= 1 ? Math.max(t, 0) : NO_IMPACT;
+	}
+
+	/**
+	 * Finds when a point moving from p to p + m first enters the box centered
+	 * on the origin with the given half width and half height
+	 * 
+	 * @return fraction of the move from 0 to 1, or NO_IMPACT
+	 */
+	private static float sweepPointToBox(float px, float py, float mx,
+			float my, float hw, float hh)
+	{
+		float enter = 0;
+		float exit = 1;
+
+		// clip the move against the box's sides, one axis at a time
+		if (mx == 0)
+		{
+			if (px < -hw || px > hw)
+				return NO_IMPACT;
+		}
+		else
+		{
+			float t1 = (-hw - px) / mx;
+			float t2 = (hw - px) / mx;
+			enter = Math.max(enter, Math.min(t1, t2));
+			exit = Math.min(exit, Math.max(t1, t2));
+		}
+
+		if (my == 0)
+		{
+			if (py < -hh || py > hh)
+				return NO_IMPACT;
+		}
+		else
+		{
+			float t1 = (-hh - py) / my;
+			float t2 = (hh - py) / my;
+			enter = Math.max(enter, Math.min(t1, t2));
+			exit = Math.min(exit, Math.max(t1, t2));
+		}
+
+		return enter <= exit ? enter : NO_IMPACT;
+	}
+
+	/**
+	 * Finds when a point moving from p to p + m first enters the box centered
+	 * on the origin with the given half sizes, in 3D
+	 * 
+	 * @return fraction of the move from 0 to 1, or NO_IMPACT
+	 */
+	private static float sweepPointToBox(float px, float py, float pz,
+			float mx, float my, float mz, float hx, float hy, float hz)
+	{
+		float enter = 0;
+		float exit = 1;
+
+		// clip the move against each pair of sides
+		for (int axis = 0; axis < 3; axis++)
+		{
+			float p = axis == 0 ? px : axis == 1 ? py : pz;
+			float m = axis == 0 ? mx : axis == 1 ? my : mz;
+			float h = axis == 0 ? hx : axis == 1 ? hy : hz;
+
+			if (m == 0)
+			{
+				if (p < -h || p > h)
+					return NO_IMPACT;
+			}
+			else
+			{
+				float t1 = (-h - p) / m;
+				float t2 = (h - p) / m;
+				enter = Math.max(enter, Math.min(t1, t2));
+				exit = Math.min(exit, Math.max(t1, t2));
+			}
+		}
+
+		return enter <= exit ? enter : NO_IMPACT;
+	}
+
+	/**
+	 * Picks the earlier of two sweep results
+	 */
+	private static float earliest(float t1, float t2)
+	{
+		if (t1 < 0)
+			return t2;
+		if (t2 < 0)
+			return t1;
+		return Math.min(t1, t2);
+	}
+
+	/**
+	 * Gets how far along the x-axis the center of one shape is from the center
+	 * of another. If the shapes are in a CollisionManager whose world wraps
+	 * around, this is the shortest way around the world.
+	 * 
+	 * @param shape1
+	 *            collision boundary to measure from
+	 * @param shape2
+	 *            collision boundary to measure to
+	 * @return x value of shape2's center minus shape1's
+	 */
+	public static float getOffsetX(CollisionShape shape1, CollisionShape shape2)
+	{
+		float dx = shape2.getCenterX() - shape1.getCenterX();
+		CollisionManager world = getWorld(shape1, shape2);
+		return world == null ? dx : world.wrapX(dx);
+	}
+
+	/**
+	 * Gets how far along the y-axis the center of one shape is from the center
+	 * of another. See getOffsetX.
+	 * 
+	 * @param shape1
+	 *            collision boundary to measure from
+	 * @param shape2
+	 *            collision boundary to measure to
+	 * @return y value of shape2's center minus shape1's
+	 */
+	public static float getOffsetY(CollisionShape shape1, CollisionShape shape2)
+	{
+		float dy = shape2.getCenterY() - shape1.getCenterY();
+		CollisionManager world = getWorld(shape1, shape2);
+		return world == null ? dy : world.wrapY(dy);
+	}
+
+	/**
+	 * Gets how far along the z-axis the center of one shape is from the center
+	 * of another. See getOffsetX.
+	 * 
+	 * @param shape1
+	 *            collision boundary to measure from
+	 * @param shape2
+	 *            collision boundary to measure to
+	 * @return z value of shape2's center minus shape1's
+	 */
+	public static float getOffsetZ(CollisionShape shape1, CollisionShape shape2)
+	{
+		float dz = shape2.getCenterZ() - shape1.getCenterZ();
+		CollisionManager world = getWorld(shape1, shape2);
+		return world == null ? dz : world.wrapZ(dz);
+	}
+
+	/**
+	 * The manager whose world two shapes are in. Parts of a compound are not
+	 * in a manager themselves, so either shape's manager will do.
+	 */
+	private static CollisionManager getWorld(CollisionShape shape1,
+			CollisionShape shape2)
+	{
+		CollisionManager world = shape1.getManager();
+		return world != null ? world : shape2.getManager();
+	}
+
+	/**
+	 * The copy of a value in a wrapped world that is closest to another value
+	 * 
+	 * @param axis
+	 *            0 for x, 1 for y, 2 for z
+	 */
+	private static float getNearest(CollisionManager world, int axis,
+			float value, float to)
+	{
+		if (world == null)
+			return value;
+
+		float offset = value - to;
+		float wrapped = axis == 0 ? world.wrapX(offset)
+				: axis == 1 ? world.wrapY(offset) : world.wrapZ(offset);
+
+		// leave values that are already closest exactly as they were
+		return wrapped == offset ? value : to + wrapped;
+	}
+
+	/**
+	 * How far a shape moves along the x-axis in the next delta seconds, the
+	 * same way Entity.update moves it
+	 */
+	static float getMoveX(CollisionShape shape, float delta)
+	{
+		Entity entity = shape.getEntity();
+		return (entity.getDX() + entity.getAX() * delta) * delta;
+	}
+
+	/**
+	 * How far a shape moves along the y-axis in the next delta seconds
+	 */
+	static float getMoveY(CollisionShape shape, float delta)
+	{
+		Entity entity = shape.getEntity();
+		return (entity.getDY() + entity.getAY() * delta) * delta;
+	}
+
+	/**
+	 * How far a shape moves along the z-axis in the next delta seconds
+	 */
+	static float getMoveZ(CollisionShape shape, float delta)
+	{
+		Entity entity = shape.getEntity();
+		return (entity.getDZ() + entity.getAZ() * delta) * delta;
+	}
+}
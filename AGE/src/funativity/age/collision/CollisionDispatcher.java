@@ -0,0 +1,591 @@
+package funativity.age.collision;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Picks the intersection test for a pair of shapes. Every CollisionShape class
+ * is given a shape id, and tests are kept in a table indexed by the ids of the
+ * two shapes, so finding the test for a pair is two array lookups instead of a
+ * chain of instanceof checks. Penetration tests, which find how far touching
+ * shapes overlap for the ContactSolver, are kept in a table the same way.
+ *
+ * The built in shapes and their tests are registered when this class loads.
+ * Games can register their own shape classes and tests, but must do so before
+ * any collisions are checked, and before starting any threads that check
+ * them.
+ *
+ */
+public final class CollisionDispatcher
+{
+	/** Shape id of classes that were never registered */
+	public static final int UNKNOWN_SHAPE = -1;
+
+	/**
+	 * Tests whether two shapes intersect
+	 */
+	public interface IntersectTest
+	{
+		/**
+		 * Determines whether two collision boundaries are overlapping.
+		 *
+		 * @param shape1
+		 *            first collision boundary, of the first class the test was
+		 *            registered for
+		 * @param shape2
+		 *            second collision boundary, of the second class the test
+		 *            was registered for
+		 * @return true if the collision boundaries are intersecting
+		 */
+		public boolean isIntersect(CollisionShape shape1, CollisionShape shape2);
+	}
+
+	/**
+	 * Finds how far two touching shapes overlap
+	 */
+	public interface PenetrationTest
+	{
+		/**
+		 * Finds the direction and depth of the overlap between two shapes
+		 *
+		 * @param shape1
+		 *            first collision boundary, of the first class the test was
+		 *            registered for
+		 * @param shape2
+		 *            second collision boundary, of the second class the test
+		 *            was registered for
+		 * @param normal
+		 *            set to the unit x, y and z of the direction from shape1
+		 *            to shape2
+		 * @return how far shape2 must move along the normal to stop touching
+		 *         shape1, or 0 or less if they do not overlap
+		 */
+		public float getPenetration(CollisionShape shape1,
+				CollisionShape shape2, float[] normal);
+	}
+
+	private static final Map<Class<?>, Integer> shapeIds = new HashMap<Class<?>, Integer>();
+
+	// tests[id1][id2], replaced as a whole when a test is registered. Not
+	// volatile, since it is read for every pair and only changes at startup.
+	private static IntersectTest[][] tests = new IntersectTest[0][0];
+
+	// penetrationTests[id1][id2], replaced the same way
+	private static PenetrationTest[][] penetrationTests =
+			new PenetrationTest[0][0];
+
+	static
+	{
+		registerShape(CollisionSphere.class);
+		registerShape(CollisionAAB.class);
+		registerShape(CollisionOBB.class);
+		registerShape(CollisionCapsule.class);
+		registerShape(CollisionPolygon.class);
+
+		registerTest(CollisionSphere.class, CollisionSphere.class,
+				new IntersectTest()
+				{
+					@Override
+					public boolean isIntersect(CollisionShape shape1,
+							CollisionShape shape2)
+					{
+						return CollisionDetect.isIntersectSpheres(
+								(CollisionSphere) shape1,
+								(CollisionSphere) shape2);
+					}
+				});
+
+		registerTest(CollisionAAB.class, CollisionAAB.class,
+				new IntersectTest()
+				{
+					@Override
+					public boolean isIntersect(CollisionShape shape1,
+							CollisionShape shape2)
+					{
+						return CollisionDetect.isIntersectAAB(
+								(CollisionAAB) shape1, (CollisionAAB) shape2);
+					}
+				});
+
+		registerTest(CollisionAAB.class, CollisionSphere.class,
+				new IntersectTest()
+				{
+					@Override
+					public boolean isIntersect(CollisionShape shape1,
+							CollisionShape shape2)
+					{
+						return CollisionDetect.isIntersectAABToSphere(
+								(CollisionAAB) shape1, (CollisionSphere) shape2);
+					}
+				});
+
+		registerTest(CollisionCapsule.class, CollisionCapsule.class,
+				new IntersectTest()
+				{
+					@Override
+					public boolean isIntersect(CollisionShape shape1,
+							CollisionShape shape2)
+					{
+						return CollisionDetect.isIntersectCapsules(
+								(CollisionCapsule) shape1,
+								(CollisionCapsule) shape2);
+					}
+				});
+
+		registerTest(CollisionCapsule.class, CollisionSphere.class,
+				new IntersectTest()
+				{
+					@Override
+					public boolean isIntersect(CollisionShape shape1,
+							CollisionShape shape2)
+					{
+						return CollisionDetect.isIntersectCapsuleToSphere(
+								(CollisionCapsule) shape1,
+								(CollisionSphere) shape2);
+					}
+				});
+
+		registerTest(CollisionCapsule.class, CollisionAAB.class,
+				new IntersectTest()
+				{
+					@Override
+					public boolean isIntersect(CollisionShape shape1,
+							CollisionShape shape2)
+					{
+						return CollisionDetect.isIntersectCapsuleToAAB(
+								(CollisionCapsule) shape1,
+								(CollisionAAB) shape2);
+					}
+				});
+
+		// oriented boxes are polygons with four corners, so they share the
+		// polygon tests
+		Class<?>[] polygons = { CollisionPolygon.class, CollisionOBB.class };
+		for (int i = 0; i < polygons.length; i++)
+		{
+			for (int j = i; j < polygons.length; j++)
+			{
+				registerTest(polygons[i], polygons[j], new IntersectTest()
+				{
+					@Override
+					public boolean isIntersect(CollisionShape shape1,
+							CollisionShape shape2)
+					{
+						return CollisionDetect.isIntersectPolygons(
+								(CollisionPolygon) shape1,
+								(CollisionPolygon) shape2);
+					}
+				});
+			}
+
+			registerTest(polygons[i], CollisionAAB.class, new IntersectTest()
+			{
+				@Override
+				public boolean isIntersect(CollisionShape shape1,
+						CollisionShape shape2)
+				{
+					return CollisionDetect.isIntersectPolygonToAAB(
+							(CollisionPolygon) shape1, (CollisionAAB) shape2);
+				}
+			});
+
+			registerTest(polygons[i], CollisionSphere.class,
+					new IntersectTest()
+					{
+						@Override
+						public boolean isIntersect(CollisionShape shape1,
+								CollisionShape shape2)
+						{
+							return CollisionDetect.isIntersectPolygonToSphere(
+									(CollisionPolygon) shape1,
+									(CollisionSphere) shape2);
+						}
+					});
+
+			registerTest(polygons[i], CollisionCapsule.class,
+					new IntersectTest()
+					{
+						@Override
+						public boolean isIntersect(CollisionShape shape1,
+								CollisionShape shape2)
+						{
+							return CollisionDetect.isIntersectPolygonToCapsule(
+									(CollisionPolygon) shape1,
+									(CollisionCapsule) shape2);
+						}
+					});
+		}
+
+		registerPenetrationTests();
+	}
+
+	/**
+	 * Registers the penetration tests of the built in shapes
+	 */
+	private static void registerPenetrationTests()
+	{
+		registerPenetrationTest(CollisionSphere.class, CollisionSphere.class,
+				new PenetrationTest()
+				{
+					@Override
+					public float getPenetration(CollisionShape shape1,
+							CollisionShape shape2, float[] normal)
+					{
+						return CollisionDetect.getPenetrationSpheres(
+								(CollisionSphere) shape1,
+								(CollisionSphere) shape2, normal);
+					}
+				});
+
+		registerPenetrationTest(CollisionAAB.class, CollisionAAB.class,
+				new PenetrationTest()
+				{
+					@Override
+					public float getPenetration(CollisionShape shape1,
+							CollisionShape shape2, float[] normal)
+					{
+						return CollisionDetect.getPenetrationAAB(
+								(CollisionAAB) shape1, (CollisionAAB) shape2,
+								normal);
+					}
+				});
+
+		registerPenetrationTest(CollisionAAB.class, CollisionSphere.class,
+				new PenetrationTest()
+				{
+					@Override
+					public float getPenetration(CollisionShape shape1,
+							CollisionShape shape2, float[] normal)
+					{
+						return CollisionDetect.getPenetrationAABToSphere(
+								(CollisionAAB) shape1,
+								(CollisionSphere) shape2, normal);
+					}
+				});
+
+		registerPenetrationTest(CollisionCapsule.class,
+				CollisionCapsule.class, new PenetrationTest()
+				{
+					@Override
+					public float getPenetration(CollisionShape shape1,
+							CollisionShape shape2, float[] normal)
+					{
+						return CollisionDetect.getPenetrationCapsules(
+								(CollisionCapsule) shape1,
+								(CollisionCapsule) shape2, normal);
+					}
+				});
+
+		registerPenetrationTest(CollisionCapsule.class, CollisionSphere.class,
+				new PenetrationTest()
+				{
+					@Override
+					public float getPenetration(CollisionShape shape1,
+							CollisionShape shape2, float[] normal)
+					{
+						return CollisionDetect.getPenetrationCapsuleToSphere(
+								(CollisionCapsule) shape1,
+								(CollisionSphere) shape2, normal);
+					}
+				});
+
+		registerPenetrationTest(CollisionCapsule.class, CollisionAAB.class,
+				new PenetrationTest()
+				{
+					@Override
+					public float getPenetration(CollisionShape shape1,
+							CollisionShape shape2, float[] normal)
+					{
+						return CollisionDetect.getPenetrationCapsuleToAAB(
+								(CollisionCapsule) shape1,
+								(CollisionAAB) shape2, normal);
+					}
+				});
+
+		// oriented boxes share the polygon tests, as for intersection
+		Class<?>[] polygons = { CollisionPolygon.class, CollisionOBB.class };
+		for (int i = 0; i < polygons.length; i++)
+		{
+			for (int j = i; j < polygons.length; j++)
+			{
+				registerPenetrationTest(polygons[i], polygons[j],
+						new PenetrationTest()
+						{
+							@Override
+							public float getPenetration(CollisionShape shape1,
+									CollisionShape shape2, float[] normal)
+							{
+								return CollisionDetect.getPenetrationPolygons(
+										(CollisionPolygon) shape1,
+										(CollisionPolygon) shape2, normal);
+							}
+						});
+			}
+
+			registerPenetrationTest(polygons[i], CollisionAAB.class,
+					new PenetrationTest()
+					{
+						@Override
+						public float getPenetration(CollisionShape shape1,
+								CollisionShape shape2, float[] normal)
+						{
+							return CollisionDetect.getPenetrationPolygonToAAB(
+									(CollisionPolygon) shape1,
+									(CollisionAAB) shape2, normal);
+						}
+					});
+
+			registerPenetrationTest(polygons[i], CollisionSphere.class,
+					new PenetrationTest()
+					{
+						@Override
+						public float getPenetration(CollisionShape shape1,
+								CollisionShape shape2, float[] normal)
+						{
+							return CollisionDetect
+									.getPenetrationPolygonToSphere(
+											(CollisionPolygon) shape1,
+											(CollisionSphere) shape2, normal);
+						}
+					});
+
+			registerPenetrationTest(polygons[i], CollisionCapsule.class,
+					new PenetrationTest()
+					{
+						@Override
+						public float getPenetration(CollisionShape shape1,
+								CollisionShape shape2, float[] normal)
+						{
+							return CollisionDetect
+									.getPenetrationPolygonToCapsule(
+											(CollisionPolygon) shape1,
+											(CollisionCapsule) shape2, normal);
+						}
+					});
+		}
+	}
+
+	private CollisionDispatcher()
+	{
+	}
+
+	/**
+	 * Gives a shape class its own shape id. Subclasses of a registered class
+	 * that are not registered themselves use their superclass's id.
+	 *
+	 * @param type
+	 *            shape class
+	 * @return the class's shape id, the same one if it was already registered
+	 */
+	public static synchronized int registerShape(
+			Class<? extends CollisionShape> type)
+	{
+		Integer id = shapeIds.get(type);
+		if (id != null)
+			return id;
+
+		id = shapeIds.size();
+		shapeIds.put(type, id);
+
+		// grow the tables to fit the new id
+		IntersectTest[][] grown = new IntersectTest[id + 1][id + 1];
+		PenetrationTest[][] grownPenetration =
+				new PenetrationTest[id + 1][id + 1];
+		for (int i = 0; i < tests.length; i++)
+		{
+			System.arraycopy(tests[i], 0, grown[i], 0, tests.length);
+			System.arraycopy(penetrationTests[i], 0, grownPenetration[i], 0,
+					tests.length);
+		}
+		tests = grown;
+		penetrationTests = grownPenetration;
+
+		return id;
+	}
+
+	/**
+	 * Gets the shape id of a class. Only needs to be looked up once per shape,
+	 * CollisionShape keeps its id.
+	 *
+	 * @param type
+	 *            shape class
+	 * @return id of the class or the closest registered superclass, or
+	 *         UNKNOWN_SHAPE
+	 */
+	public static synchronized int getShapeId(Class<?> type)
+	{
+		for (Class<?> c = type; c != null; c = c.getSuperclass())
+		{
+			Integer id = shapeIds.get(c);
+			if (id != null)
+				return id;
+		}
+
+		return UNKNOWN_SHAPE;
+	}
+
+	/**
+	 * Sets the test used for a pair of shape classes, in either order. The
+	 * classes are registered if they were not already.
+	 *
+	 * @param type1
+	 *            class of the first shape the test takes
+	 * @param type2
+	 *            class of the second shape the test takes
+	 * @param test
+	 *            the test, which must not change the shapes
+	 */
+	@SuppressWarnings("unchecked")
+	public static synchronized void registerTest(Class<?> type1,
+			Class<?> type2, final IntersectTest test)
+	{
+		int id1 = registerShape((Class<? extends CollisionShape>) type1);
+		int id2 = registerShape((Class<? extends CollisionShape>) type2);
+
+		IntersectTest[][] updated = new IntersectTest[tests.length][];
+		for (int i = 0; i < tests.length; i++)
+		{
+			updated[i] = tests[i].clone();
+		}
+
+		updated[id1][id2] = test;
+		if (id1 != id2)
+		{
+			// the other order swaps the shapes back before testing
+			updated[id2][id1] = new IntersectTest()
+			{
+				@Override
+				public boolean isIntersect(CollisionShape shape1,
+						CollisionShape shape2)
+				{
+					return test.isIntersect(shape2, shape1);
+				}
+			};
+		}
+
+		tests = updated;
+	}
+
+	/**
+	 * Sets the penetration test used for a pair of shape classes, in either
+	 * order. The classes are registered if they were not already.
+	 *
+	 * @param type1
+	 *            class of the first shape the test takes
+	 * @param type2
+	 *            class of the second shape the test takes
+	 * @param test
+	 *            the test, which must not change the shapes
+	 */
+	@SuppressWarnings("unchecked")
+	public static synchronized void registerPenetrationTest(Class<?> type1,
+			Class<?> type2, final PenetrationTest test)
+	{
+		int id1 = registerShape((Class<? extends CollisionShape>) type1);
+		int id2 = registerShape((Class<? extends CollisionShape>) type2);
+
+		PenetrationTest[][] updated =
+				new PenetrationTest[penetrationTests.length][];
+		for (int i = 0; i < penetrationTests.length; i++)
+		{
+			updated[i] = penetrationTests[i].clone();
+		}
+
+		updated[id1][id2] = test;
+		if (id1 != id2)
+		{
+			// the other order swaps the shapes, and turns the normal around
+			updated[id2][id1] = new PenetrationTest()
+			{
+				@Override
+				public float getPenetration(CollisionShape shape1,
+						CollisionShape shape2, float[] normal)
+				{
+					float depth = test.getPenetration(shape2, shape1, normal);
+					normal[0] = -normal[0];
+					normal[1] = -normal[1];
+					normal[2] = -normal[2];
+					return depth;
+				}
+			};
+		}
+
+		penetrationTests = updated;
+	}
+
+	/**
+	 * Checks if there is a test for a pair of shape ids
+	 *
+	 * @return true if isIntersect has a test for shapes with these ids
+	 */
+	public static boolean hasTest(int shapeId1, int shapeId2)
+	{
+		IntersectTest[][] table = tests;
+		return shapeId1 >= 0 && shapeId2 >= 0 && shapeId1 < table.length
+				&& shapeId2 < table.length && table[shapeId1][shapeId2] != null;
+	}
+
+	/**
+	 * Determines whether two collision boundaries are overlapping, using the
+	 * test registered for their shape ids. If there is none and the second
+	 * shape's class was never registered, the second shape is asked instead,
+	 * so shapes that only override isIntersect keep working.
+	 *
+	 * @param shape1
+	 *            first collision boundary
+	 * @param shape2
+	 *            second collision boundary
+	 * @return true if the collision boundaries are compatible and intersecting,
+	 *         false otherwise
+	 */
+	public static boolean isIntersect(CollisionShape shape1,
+			CollisionShape shape2)
+	{
+		int id1 = shape1.getShapeId();
+		int id2 = shape2.getShapeId();
+
+		IntersectTest[][] table = tests;
+		if (id1 >= 0 && id2 >= 0 && id1 < table.length && id2 < table.length)
+		{
+			IntersectTest test = table[id1][id2];
+			if (test != null)
+				return test.isIntersect(shape1, shape2);
+		}
+
+		if (id1 != UNKNOWN_SHAPE && id2 == UNKNOWN_SHAPE)
+			return shape2.isIntersect(shape1);
+
+		return false;
+	}
+
+	/**
+	 * Finds the direction and depth of the overlap between two shapes, using
+	 * the penetration test registered for their shape ids
+	 *
+	 * @param shape1
+	 *            first collision boundary
+	 * @param shape2
+	 *            second collision boundary
+	 * @param normal
+	 *            set to the unit x, y and z of the direction from shape1 to
+	 *            shape2
+	 * @return how far shape2 must move along the normal to stop touching
+	 *         shape1, or Float.NaN if there is no test for these shapes
+	 */
+	public static float getPenetration(CollisionShape shape1,
+			CollisionShape shape2, float[] normal)
+	{
+		int id1 = shape1.getShapeId();
+		int id2 = shape2.getShapeId();
+
+		PenetrationTest[][] table = penetrationTests;
+		if (id1 >= 0 && id2 >= 0 && id1 < table.length && id2 < table.length)
+		{
+			PenetrationTest test = table[id1][id2];
+			if (test != null)
+				return test.getPenetration(shape1, shape2, normal);
+		}
+
+		return Float.NaN;
+	}
+}
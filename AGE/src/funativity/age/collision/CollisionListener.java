@@ -11,9 +11,10 @@ public interface CollisionListener
 	 * CollisionManager layer.
 	 * 
 	 * @param shape1
-	 *            always the earlier shape in the layer
+	 *            the earlier shape in the layer, or the moving shape if the
+	 *            other shape is static
 	 * @param shape2
-	 *            always the latter shape in the layer
+	 *            the latter shape in the layer, or the static shape
 	 * @param delta
 	 *            time since last update (in seconds)
 	 * @return true if a collision between the two shapes is compatible and
@@ -27,9 +28,10 @@ public interface CollisionListener
 	 * layer.
 	 * 
 	 * @param shape1
-	 *            always the earlier shape in the layer
+	 *            the earlier shape in the layer, or the moving shape if the
+	 *            other shape is static
 	 * @param shape2
-	 *            always the latter shape in the layer
+	 *            the latter shape in the layer, or the static shape
 	 * @param delta
 	 *            time since last update (in seconds)
 	 */
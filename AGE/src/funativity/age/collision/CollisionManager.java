@@ -1,103 +1,1890 @@
 package funativity.age.collision;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import android.util.SparseArray;
+import android.util.SparseBooleanArray;
 
 import funativity.age.state.Scene;
+import funativity.age.util.Geometry3f;
 
 /**
  * 
  * This class is responsible for managing all collsions within the game.
  * Collisions are added to layers in order to help organize the collisions.
- * Only CollisionShapes on the same layer can collide.
+ * Only CollisionShapes on the same layer can collide, unless two layers are
+ * set to collide with each other with setLayerCollision.
+ * 
+ * Within the layers, each shape's category and mask bits pick which other
+ * shapes it collides with, so a player can hit enemies and pickups without
+ * being added to several layers. Pairs whose categories do not match are
+ * never tested.
+ * 
+ * Shapes that never move, like walls and tiles, can be added as static
+ * shapes. Static shapes are never tested against each other, and are kept in
+ * a StaticShapeTree that is only rebuilt when the static shapes of the layer
+ * change. Each moving shape looks up the static shapes near it in the tree.
+ * 
+ * Layers can use continuous collision detection, so fast shapes like bullets
+ * can not pass through each other between frames.
+ * 
+ * The intersection tests can be spread over several threads by giving the
+ * manager an Executor. The listeners are still called on the thread calling
+ * checkForCollisions, in the same order as without the Executor.
+ * 
+ * Pairs whose first shape has a ContactListener are kept in a contact cache
+ * between frames, so the listener can be told when the shapes start and stop
+ * touching. In layers with a Broadphase, and against static shapes, the cache
+ * also remembers how far apart nearby pairs are, so they are not tested again
+ * until they could have moved close enough to touch.
+ * 
+ * Listeners can hand touching pairs to the manager's ContactSolver, which
+ * pushes them apart by their masses once every pair has been tested.
+ * 
+ * Raycasts and region queries use the same Broadphases and static trees to
+ * find the shapes near them.
+ * 
+ * With setPackedShapes, the bounds and category bits of each layer's moving
+ * shapes are copied into flat arrays once a frame, and the pair finding loops
+ * read the arrays instead of the shapes. Layers without a Broadphase then
+ * sort their shapes along the x-axis and sweep over them, testing only the
+ * pairs whose bounds overlap.
+ * 
+ * The world can wrap around at its edges, like in Asteroids, by giving the
+ * manager the size of the world with setWorldSize. Shapes near one edge then
+ * touch shapes near the opposite edge, and distances are measured the
+ * shortest way around. Only shapes whose bounds come near an edge are looked
+ * up again on the other side of the world, so a wrapped world costs about the
+ * same as one with edges.
+ * 
+ * Shapes that touch each frame are grouped into contact islands. When every
+ * entity in an island that can sleep has been still long enough, the whole
+ * island is put to sleep. Pairs of sleeping or static shapes are not tested,
+ * and their contacts are kept as they were. A sleeping island wakes when a
+ * moving shape touches it, or when one of its entities is woken.
+ * 
+ * Shapes added or removed are held until the next updateLists, which applies
+ * every change in one pass, in the order they were asked for. Each shape
+ * knows its index in its layer, and a removed shape is replaced by the last
+ * shape of the layer, so adding or removing a shape costs the same however
+ * many shapes the layer has. A shape can only be in one layer of one manager
+ * at a time; adding it again moves it.
+ * 
+ * Once its buffers have grown to fit the layers, checkForCollisions does not
+ * allocate anything unless shapes are added or removed, so it does not cause
+ * garbage collection pauses. The exception is a narrow phase Executor, which
+ * may allocate when it is handed tasks.
  * 
  */
 public class CollisionManager
 {
+	/** Layer mask that includes layers 0 to 31 in a query */
+	public static final int ALL_LAYERS = -1;
+
+	// copies of a box to look up in a wrapped world: along each axis, the box
+	// is either left where it is, or moved a world down or up
+	private static final int IMAGES = 27;
+
 	private SparseArray<List<CollisionShape>> layers = new SparseArray<List<CollisionShape>>();
-	private SparseArray<List<CollisionShape>> addList = new SparseArray<List<CollisionShape>>();
-	private SparseArray<List<CollisionShape>> removeList = new SparseArray<List<CollisionShape>>();
-	private List<Integer> updateLayers = new ArrayList<Integer>();
+	private SparseArray<List<CollisionShape>> staticLayers = new SparseArray<List<CollisionShape>>();
+	private SparseArray<StaticShapeTree> staticTrees = new SparseArray<StaticShapeTree>();
+	private SparseArray<Broadphase> broadphases = new SparseArray<Broadphase>();
+	private SparseBooleanArray continuousLayers = new SparseBooleanArray();
+
+	// shapes added or removed since the last updateLists, each listed once
+	private final List<CollisionShape> pending = new ArrayList<CollisionShape>();
+
+	// layers whose static shapes changed since the last updateLists
+	private final SparseBooleanArray staticChanged = new SparseBooleanArray();
+
+	// pairs of different layers that collide with each other, packed as
+	// (lower layer << 32) | higher layer, in ascending order
+	private long[] layerPairs = new long[0];
+
+	// layer indices of the candidate pairs between two layers
+	private final CollisionPairs crossPairs = new CollisionPairs();
+
+	// size of the world along each axis, 0 where it does not wrap around
+	private float worldWidth, worldHeight, worldDepth;
+
+	// bounds of each layer's moving shapes at the last checkForCollisions,
+	// laid out as in StaticShapeTree.getBounds. Only kept while the world
+	// wraps.
+	private final SparseArray<float[]> layerBounds = new SparseArray<float[]>();
+	private final float[] staticBounds = new float[6];
+
+	// a box being looked up in a wrapped world, and the copy of it being
+	// looked up now
+	private final float[] queryBox = new float[6];
+	private final float[] imageBox = new float[6];
+
+	// bounds and bits of each layer's moving shapes, copied once a frame
+	// while packed shapes are turned on
+	private boolean packed;
+	private final SparseArray<PackedShapes> packedLayers = new SparseArray<PackedShapes>();
+
+	// bounds of a packed shape being looked up
+	private final float[] shapeBox = new float[6];
+
+	// shapes found in every copy of a box, each listed once
+	private int[] foundShapes = new int[16];
+	private int foundCount;
+
+	// time of impact of the pair being passed to the listeners
+	private float timeOfImpact = CollisionDetect.NO_IMPACT;
+
+	// runs the intersection tests on other threads, null to run them here
+	private ParallelNarrowPhase narrowPhase;
+
+	// pairs with a ContactListener
+	private final ContactCache contacts = new ContactCache();
+
+	// pushes apart the pairs its listeners hand it
+	private final ContactSolver solver = new ContactSolver();
+
+	// counts calls to checkForCollisions, to find contacts that were not tested
+	private int frame;
+
+	// shapes near the current query
+	private CollisionShape[] nearShapes = new CollisionShape[64];
+	private int nearCount;
+
+	// reused every frame to hold the pairs found by a broadphase
+	private final CollisionPairs pairs = new CollisionPairs();
+
+	// number of pairs tested during the last checkForCollisions call
+	private long pairCount;
+
+	private final Scene scene;
+
+	/**
+	 * Create a CollisionManager using specified Scene.
+	 * 
+	 * @param scene
+	 */
+	public CollisionManager(Scene scene)
+	{
+		this.scene = scene;
+	}
+
+	/**
+	 * Add the child to the specified layer
+	 * 
+	 * @param child
+	 *            Child to be added to the collision manager
+	 * @param layerNum
+	 *            The layer the child should be added to
+	 */
+	public void addChild(CollisionShape child, int layerNum)
+	{
+		addChild(child, layerNum, false);
+	}
+
+	/**
+	 * Add the child to the specified layer. Static children must not move
+	 * while they are in the layer; to move one, add it to the layer again.
+	 * Adding a child that is already in another layer moves it to this one.
+	 * 
+	 * @param child
+	 *            Child to be added to the collision manager
+	 * @param layerNum
+	 *            The layer the child should be added to
+	 * @param isStatic
+	 *            true if the child never moves, so it is never tested against
+	 *            other static children
+	 */
+	public void addChild(CollisionShape child, int layerNum, boolean isStatic)
+	{
+		if (child == null)
+			return;
+
+		child.pendingAdd = true;
+		child.pendingLayer = layerNum;
+		child.pendingStatic = isStatic;
+		queue(child);
+	}
+
+	/**
+	 * Checks for collisions between shapes in each layer. Layers without a
+	 * Broadphase test every pair of shapes, otherwise only the pairs found by
+	 * the layer's Broadphase are tested. Either way, pairs are tested in the
+	 * order of the shapes in the layer.
+	 * 
+	 * Before that, each moving shape is tested against the static shapes whose
+	 * bounds it overlaps. The moving shape is always the first shape passed to
+	 * the listeners.
+	 * 
+	 * @param delta Delta passed in from the scene
+	 */
+	public void checkForCollisions(float delta)
+	{
+		updateLists();
+
+		pairCount = 0;
+		frame++;
+
+		resetIslands();
+
+		// Go through each layer
+		for (int layerIndex = 0; layerIndex < layers.size(); layerIndex++)
+		{
+			List<CollisionShape> layer = layers.valueAt(layerIndex);
+			Broadphase broadphase = broadphases.get(layers.keyAt(layerIndex));
+			boolean continuous = continuousLayers.get(layers.keyAt(layerIndex));
+
+			if (continuous)
+			{
+				// stretch each shape's bounds over where it moves this frame
+				for (int i = 0; i < layer.size(); i++)
+				{
+					CollisionShape shape = layer.get(i);
+					shape.setSweep(CollisionDetect.getMoveX(shape, delta),
+							CollisionDetect.getMoveY(shape, delta),
+							CollisionDetect.getMoveZ(shape, delta));
+				}
+			}
+
+			PackedShapes packedLayer = packLayer(layers.keyAt(layerIndex),
+					layer);
+
+			if (isWrapped())
+				measureLayer(layers.keyAt(layerIndex), layer);
+
+			if (narrowPhase != null)
+			{
+				checkLayerParallel(layers.keyAt(layerIndex), delta, continuous);
+				continue;
+			}
+
+			checkStaticCollisions(layer, packedLayer, layers.keyAt(layerIndex),
+					delta, continuous);
+
+			if (broadphase != null || packedLayer != null)
+			{
+				// only test the pairs whose bounds could be touching
+				findLayerPairs(layers.keyAt(layerIndex), layer, broadphase);
+
+				for (int i = 0; i < pairs.size(); i++)
+				{
+					CollisionShape csi = layer.get(pairs.getFirst(i));
+					CollisionShape csj = layer.get(pairs.getSecond(i));
+					testPair(csi, csj, delta, continuous, true);
+				}
+
+				pairCount += pairs.size();
+				continue;
+			}
+
+			// collide tests
+			for (int i = 0; i < layer.size(); i++)
+			{
+				// get the next thing to collide with (CollisionShape i)
+				CollisionShape csi = layer.get(i);
+
+				for (int j = i + 1; j < layer.size(); j++)
+				{
+					// get a different thing to collide with (CollisionShape j)
+					CollisionShape csj = layer.get(j);
+
+					// test for collisions
+					testPair(csi, csj, delta, continuous, false);
+				}
+			}
+
+			pairCount += (long) layer.size() * (layer.size() - 1) / 2;
+		}
+
+		// then the layers that collide with each other
+		for (int i = 0; i < layerPairs.length; i++)
+		{
+			int layerNum1 = (int) (layerPairs[i] >> 32);
+			int layerNum2 = (int) layerPairs[i];
+
+			if (layers.get(layerNum1) != null && layers.get(layerNum2) != null)
+				checkLayerPair(layerNum1, layerNum2, delta);
+		}
+
+		solver.solve(delta);
+
+		sleepIslands();
+		endContacts(delta);
+	}
+
+	/**
+	 * Wakes the islands of entities that were woken since the last frame, and
+	 * starts each awake shape in an island of its own
+	 */
+	private void resetIslands()
+	{
+		for (int layerIndex = 0; layerIndex < layers.size(); layerIndex++)
+		{
+			List<CollisionShape> layer = layers.valueAt(layerIndex);
+
+			for (int i = 0; i < layer.size(); i++)
+			{
+				CollisionShape shape = layer.get(i);
+
+				if (shape.islandNext != null && !shape.isSleeping())
+					wakeIsland(shape);
+
+				shape.islandParent = shape;
+				shape.islandAwake = false;
+			}
+		}
+	}
+
+	/**
+	 * Puts every island whose entities are all ready to sleep to sleep,
+	 * linking its shapes so they can be woken together
+	 */
+	private void sleepIslands()
+	{
+		// an island stays awake if any of its entities is not ready
+		for (int layerIndex = 0; layerIndex < layers.size(); layerIndex++)
+		{
+			List<CollisionShape> layer = layers.valueAt(layerIndex);
+
+			for (int i = 0; i < layer.size(); i++)
+			{
+				CollisionShape shape = layer.get(i);
+				if (!shape.isSleeping()
+						&& !shape.getEntity().isReadyToSleep())
+					findIsland(shape).islandAwake = true;
+			}
+		}
+
+		for (int layerIndex = 0; layerIndex < layers.size(); layerIndex++)
+		{
+			List<CollisionShape> layer = layers.valueAt(layerIndex);
+
+			for (int i = 0; i < layer.size(); i++)
+			{
+				CollisionShape shape = layer.get(i);
+				if (shape.isSleeping())
+					continue;
+
+				CollisionShape root = findIsland(shape);
+				if (root.islandAwake)
+					continue;
+
+				// add the shape to the ring of its island's root
+				if (root.islandNext == null)
+					root.islandNext = root;
+				if (shape != root)
+				{
+					shape.islandNext = root.islandNext;
+					root.islandNext = shape;
+				}
+
+				shape.getEntity().sleep();
+			}
+		}
+	}
+
+	/**
+	 * Joins the islands of two touching shapes, and wakes a sleeping shape
+	 * hit by a moving one
+	 */
+	private void touched(CollisionShape shape1, CollisionShape shape2)
+	{
+		// static shapes do not join islands
+		if (shape1.layerStatic || shape2.layerStatic)
+			return;
+
+		if (shape1.isSleeping() && !shape2.getEntity().isStill())
+			wakeIsland(shape1);
+		else if (shape2.isSleeping() && !shape1.getEntity().isStill())
+			wakeIsland(shape2);
+
+		CollisionShape root1 = findIsland(shape1);
+		CollisionShape root2 = findIsland(shape2);
+		if (root1 != root2)
+			root2.islandParent = root1;
+	}
+
+	/**
+	 * Finds the shape representing a shape's island, flattening the path to
+	 * it as it goes
+	 */
+	private static CollisionShape findIsland(CollisionShape shape)
+	{
+		while (shape.islandParent != shape)
+		{
+			shape.islandParent = shape.islandParent.islandParent;
+			shape = shape.islandParent;
+		}
+		return shape;
+	}
+
+	/**
+	 * Wakes every entity in the ring of shapes that fell asleep with a shape
+	 */
+	private void wakeIsland(CollisionShape shape)
+	{
+		CollisionShape next = shape;
+		do
+		{
+			CollisionShape current = next;
+			next = current.islandNext;
+			current.islandNext = null;
+			current.wokenFrame = frame;
+			current.getEntity().wake();
+		}
+		while (next != null && next != shape);
+	}
+
+	/**
+	 * Tests moving shapes against the static shapes of a layer near them
+	 * 
+	 * @param layer
+	 *            moving shapes to test
+	 * @param packedLayer
+	 *            packed bounds of the moving shapes, or null
+	 * @param staticLayerNum
+	 *            Layer whose static shapes are tested
+	 * @param delta
+	 *            Delta passed in from the scene
+	 * @param continuous
+	 *            true if the layer uses continuous collision detection
+	 */
+	private void checkStaticCollisions(List<CollisionShape> layer,
+			PackedShapes packedLayer, int staticLayerNum, float delta,
+			boolean continuous)
+	{
+		List<CollisionShape> staticLayer = staticLayers.get(staticLayerNum);
+		if (staticLayer == null || staticLayer.isEmpty())
+			return;
+
+		StaticShapeTree tree = staticTrees.get(staticLayerNum);
+		boolean wrapped = isWrapped() && tree.getBounds(staticBounds);
+
+		for (int i = 0; i < layer.size(); i++)
+		{
+			CollisionShape shape = layer.get(i);
+
+			int found;
+			if (wrapped)
+			{
+				setQueryBox(packedLayer, layer, i);
+				found = queryTree(tree);
+			}
+			else if (packedLayer != null)
+			{
+				packedLayer.getBox(i, shapeBox);
+				found = tree.query(shapeBox[0], shapeBox[1], shapeBox[2],
+						shapeBox[3], shapeBox[4], shapeBox[5]);
+			}
+			else
+			{
+				found = tree.query(shape);
+			}
+
+			for (int j = 0; j < found; j++)
+			{
+				int index = wrapped ? foundShapes[j] : tree.getResult(j);
+				testCandidate(shape, staticLayer.get(index), delta,
+						continuous, true);
+			}
+
+			pairCount += found;
+		}
+	}
+
+	/**
+	 * Tests the shapes of two different layers against each other. Each pair
+	 * is tested once, with the shape from the first layer first, in the order
+	 * of the shapes in the first layer and then in the second.
+	 * 
+	 * @param layerNum1
+	 *            first layer, whose shapes' listeners are used
+	 * @param layerNum2
+	 *            second layer
+	 * @param delta
+	 *            Delta passed in from the scene
+	 */
+	private void checkLayerPair(int layerNum1, int layerNum2, float delta)
+	{
+		List<CollisionShape> layer1 = layers.get(layerNum1);
+		List<CollisionShape> layer2 = layers.get(layerNum2);
+		Broadphase broadphase1 = broadphases.get(layerNum1);
+		Broadphase broadphase2 = broadphases.get(layerNum2);
+		boolean continuous = continuousLayers.get(layerNum1)
+				|| continuousLayers.get(layerNum2);
+
+		if (narrowPhase != null)
+			narrowPhase.clear();
+
+		PackedShapes packed1 = getPackedLayer(layerNum1);
+		PackedShapes packed2 = getPackedLayer(layerNum2);
+
+		// moving shapes against the other layer's static shapes
+		checkStaticCollisions(layer1, packed1, layerNum2, delta, continuous);
+		checkStaticCollisions(layer2, packed2, layerNum1, delta, continuous);
+
+		if (broadphase1 == null && broadphase2 == null && packed1 != null)
+		{
+			crossPairs.clear();
+			packed1.findCrossPairs(packed2, crossPairs, worldWidth,
+					worldHeight, worldDepth);
+
+			for (int i = 0; i < crossPairs.size(); i++)
+			{
+				testCandidate(layer1.get(crossPairs.getFirst(i)),
+						layer2.get(crossPairs.getSecond(i)), delta,
+						continuous, true);
+			}
+
+			pairCount += crossPairs.size();
+		}
+		else if (broadphase1 == null && broadphase2 == null)
+		{
+			for (int i = 0; i < layer1.size(); i++)
+			{
+				CollisionShape csi = layer1.get(i);
+
+				for (int j = 0; j < layer2.size(); j++)
+				{
+					testCandidate(csi, layer2.get(j), delta, continuous, false);
+				}
+			}
+
+			pairCount += (long) layer1.size() * layer2.size();
+		}
+		else
+		{
+			// look each shape up in the other layer's broadphase. Both
+			// broadphases already know this frame's bounds
+			crossPairs.clear();
+
+			if (broadphase2 != null)
+			{
+				for (int i = 0; i < layer1.size(); i++)
+				{
+					setQueryBox(packed1, layer1, i);
+					addCrossPairs(broadphase2, layerNum2, layer2, i, true);
+				}
+			}
+			else
+			{
+				for (int j = 0; j < layer2.size(); j++)
+				{
+					setQueryBox(packed2, layer2, j);
+					addCrossPairs(broadphase1, layerNum1, layer1, j, false);
+				}
+			}
+
+			crossPairs.sort();
+
+			for (int i = 0; i < crossPairs.size(); i++)
+			{
+				testCandidate(layer1.get(crossPairs.getFirst(i)),
+						layer2.get(crossPairs.getSecond(i)), delta,
+						continuous, true);
+			}
+
+			pairCount += crossPairs.size();
+		}
+
+		if (narrowPhase != null)
+		{
+			narrowPhase.testCandidates(delta, continuous);
+			dispatchHits(delta, continuous);
+		}
+	}
+
+	/**
+	 * Adds the pairs between a shape and the shapes of another layer whose
+	 * bounds could overlap the shape's bounds, which must be in the query box
+	 * 
+	 * @param index
+	 *            index of the shape in its own layer
+	 * @param first
+	 *            true if the shape's layer is the first of the pair
+	 */
+	private void addCrossPairs(Broadphase broadphase, int layerNum,
+			List<CollisionShape> layer, int index, boolean first)
+	{
+		float[] bounds = layerBounds.get(layerNum);
+		int images = isWrapped() ? IMAGES : 1;
+
+		for (int image = 0; image < images; image++)
+		{
+			if (!setImage(image, bounds))
+				continue;
+
+			int found = broadphase.query(layer, imageBox[0], imageBox[1],
+					imageBox[2], imageBox[3], imageBox[4], imageBox[5]);
+			for (int j = 0; j < found; j++)
+			{
+				if (first)
+					crossPairs.addCrossLayer(index, broadphase.getResult(j));
+				else
+					crossPairs.addCrossLayer(broadphase.getResult(j), index);
+			}
+		}
+	}
+
+	/**
+	 * Remembers the bounds of a layer's moving shapes, so copies of a box on
+	 * the other side of a wrapped world are only looked up if they could
+	 * reach a shape
+	 */
+	private void measureLayer(int layerNum, List<CollisionShape> layer)
+	{
+		float[] bounds = layerBounds.get(layerNum);
+		if (bounds == null)
+		{
+			bounds = new float[6];
+			layerBounds.put(layerNum, bounds);
+		}
+
+		PackedShapes packedLayer = getPackedLayer(layerNum);
+		if (packedLayer != null)
+		{
+			packedLayer.getBounds(bounds);
+			return;
+		}
+
+		float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+		float minZ = Float.POSITIVE_INFINITY, maxX = Float.NEGATIVE_INFINITY;
+		float maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+		for (int i = 0; i < layer.size(); i++)
+		{
+			CollisionShape shape = layer.get(i);
+			float x = shape.getBoundsCenterX();
+			float y = shape.getBoundsCenterY();
+			float z = shape.getBoundsCenterZ();
+			float ex = shape.getBoundsExtentX();
+			float ey = shape.getBoundsExtentY();
+			float ez = shape.getBoundsExtentZ();
+
+			minX = Math.min(minX, x - ex);
+			minY = Math.min(minY, y - ey);
+			minZ = Math.min(minZ, z - ez);
+			maxX = Math.max(maxX, x + ex);
+			maxY = Math.max(maxY, y + ey);
+			maxZ = Math.max(maxZ, z + ez);
+		}
+
+		bounds[0] = minX;
+		bounds[1] = minY;
+		bounds[2] = minZ;
+		bounds[3] = maxX;
+		bounds[4] = maxY;
+		bounds[5] = maxZ;
+	}
+
+	/**
+	 * Adds the pairs of a layer that touch across the edges of a wrapped
+	 * world to pairs. The broadphase only sees the shapes inside the world,
+	 * so each shape near an edge is also looked up on the other side.
+	 */
+	private void findWrappedPairs(int layerNum, List<CollisionShape> layer,
+			Broadphase broadphase)
+	{
+		float[] bounds = layerBounds.get(layerNum);
+
+		PackedShapes packedLayer = getPackedLayer(layerNum);
+
+		for (int i = 0; i < layer.size(); i++)
+		{
+			setQueryBox(packedLayer, layer, i);
+
+			// the box where it is was already looked up by findPairs
+			for (int image = 1; image < IMAGES; image++)
+			{
+				if (!setImage(image, bounds))
+					continue;
+
+				int found = broadphase.query(layer, imageBox[0], imageBox[1],
+						imageBox[2], imageBox[3], imageBox[4], imageBox[5]);
+				for (int j = 0; j < found; j++)
+				{
+					pairs.add(i, broadphase.getResult(j));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the static shapes whose bounds could overlap the query box in a
+	 * wrapped world. staticBounds must hold the bounds of the tree.
+	 * 
+	 * @return number of shapes found, which are put in foundShapes in order
+	 */
+	private int queryTree(StaticShapeTree tree)
+	{
+		foundCount = 0;
+
+		for (int image = 0; image < IMAGES; image++)
+		{
+			if (!setImage(image, staticBounds))
+				continue;
+
+			int found = tree.query(imageBox[0], imageBox[1], imageBox[2],
+					imageBox[3], imageBox[4], imageBox[5]);
+			for (int i = 0; i < found; i++)
+			{
+				if (foundCount == foundShapes.length)
+					foundShapes = Arrays.copyOf(foundShapes, foundCount * 2);
+
+				foundShapes[foundCount++] = tree.getResult(i);
+			}
+		}
+
+		// a shape found in more than one copy is only tested once
+		Sorting.sort(foundShapes, 0, foundCount);
+		int unique = 0;
+		for (int i = 0; i < foundCount; i++)
+		{
+			if (unique == 0 || foundShapes[unique - 1] != foundShapes[i])
+				foundShapes[unique++] = foundShapes[i];
+		}
+		foundCount = unique;
+
+		return foundCount;
+	}
+
+	/**
+	 * Sets the box to look up to the bounds of a shape in a layer, read from
+	 * the layer's packed shapes if it has them
+	 */
+	private void setQueryBox(PackedShapes packedLayer,
+			List<CollisionShape> layer, int index)
+	{
+		if (packedLayer == null)
+		{
+			setQueryBox(layer.get(index));
+			return;
+		}
+
+		packedLayer.getBox(index, shapeBox);
+		setQueryBox(shapeBox[0], shapeBox[1], shapeBox[2], shapeBox[3],
+				shapeBox[4], shapeBox[5]);
+	}
+
+	/**
+	 * Sets the box to look up to a shape's bounds
+	 */
+	private void setQueryBox(CollisionShape shape)
+	{
+		float x = shape.getBoundsCenterX();
+		float y = shape.getBoundsCenterY();
+		float z = shape.getBoundsCenterZ();
+		float ex = shape.getBoundsExtentX();
+		float ey = shape.getBoundsExtentY();
+		float ez = shape.getBoundsExtentZ();
+
+		setQueryBox(x - ex, y - ey, z - ez, x + ex, y + ey, z + ez);
+	}
+
+	/**
+	 * Sets the box to look up, moved into the world if it wraps. A box as
+	 * big as the world along an axis covers all of it.
+	 */
+	private void setQueryBox(float minX, float minY, float minZ, float maxX,
+			float maxY, float maxZ)
+	{
+		queryBox[0] = minX;
+		queryBox[1] = minY;
+		queryBox[2] = minZ;
+		queryBox[3] = maxX;
+		queryBox[4] = maxY;
+		queryBox[5] = maxZ;
+
+		for (int axis = 0; axis < 3; axis++)
+		{
+			float size = getWorldSize(axis);
+			float min = queryBox[axis];
+			float max = queryBox[axis + 3];
+			if (size <= 0 || Float.isInfinite(min) || Float.isInfinite(max))
+				continue;
+
+			if (max - min >= size)
+			{
+				queryBox[axis] = Float.NEGATIVE_INFINITY;
+				queryBox[axis + 3] = Float.POSITIVE_INFINITY;
+				continue;
+			}
+
+			float center = (min + max) / 2f;
+			float shift = wrap(center, size) - center;
+			queryBox[axis] = min + shift;
+			queryBox[axis + 3] = max + shift;
+		}
+	}
+
+	/**
+	 * Sets imageBox to a copy of the query box. Image 0 is the box itself,
+	 * the others are moved a world down or up along one or more axes.
+	 * 
+	 * @param bounds
+	 *            bounds of the shapes being looked up, or null if they are
+	 *            not known
+	 * @return false if the copy can not reach any of the shapes, or the world
+	 *         does not wrap along an axis it is moved along
+	 */
+	private boolean setImage(int image, float[] bounds)
+	{
+		for (int axis = 0; axis < 3; axis++)
+		{
+			int side = image % 3;
+			image /= 3;
+
+			float min = queryBox[axis];
+			float max = queryBox[axis + 3];
+			if (side == 0)
+			{
+				imageBox[axis] = min;
+				imageBox[axis + 3] = max;
+				continue;
+			}
+
+			float size = getWorldSize(axis);
+			if (size <= 0 || bounds == null || Float.isInfinite(min)
+					|| Float.isInfinite(max))
+				return false;
+
+			float shift = side == 1 ? -size : size;
+			if (max + shift < bounds[axis] || min + shift > bounds[axis + 3])
+				return false;
+
+			imageBox[axis] = min + shift;
+			imageBox[axis + 3] = max + shift;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Copies the bounds and bits of a layer's moving shapes into its packed
+	 * shapes, if packed shapes are turned on
+	 * 
+	 * @return the layer's packed shapes, or null
+	 */
+	private PackedShapes packLayer(int layerNum, List<CollisionShape> layer)
+	{
+		if (!packed)
+			return null;
+
+		PackedShapes packedLayer = packedLayers.get(layerNum);
+		if (packedLayer == null)
+		{
+			packedLayer = new PackedShapes();
+			packedLayers.put(layerNum, packedLayer);
+		}
+
+		packedLayer.update(layer);
+		return packedLayer;
+	}
+
+	/**
+	 * Gets the packed shapes of a layer, as of this frame
+	 * 
+	 * @return the layer's packed shapes, or null if packed shapes are turned
+	 *         off
+	 */
+	private PackedShapes getPackedLayer(int layerNum)
+	{
+		return packed ? packedLayers.get(layerNum) : null;
+	}
+
+	/**
+	 * Puts the candidate pairs of a layer in pairs, sorted. They are found by
+	 * the layer's Broadphase, or by its packed shapes if it has none.
+	 */
+	private void findLayerPairs(int layerNum, List<CollisionShape> layer,
+			Broadphase broadphase)
+	{
+		pairs.clear();
+		PackedShapes packedLayer = getPackedLayer(layerNum);
+
+		if (broadphase == null)
+		{
+			// sorted by the sweep, including the pairs across the edges
+			packedLayer.findPairs(pairs, worldWidth, worldHeight, worldDepth);
+			return;
+		}
+
+		if (packedLayer != null && broadphase instanceof PackedBroadphase)
+			((PackedBroadphase) broadphase).findPairs(packedLayer, pairs);
+		else
+			broadphase.findPairs(layer, pairs);
+
+		if (isWrapped())
+			findWrappedPairs(layerNum, layer, broadphase);
+		pairs.sort();
+	}
+
+	/**
+	 * Tests a pair of shapes now, or hands it to the ParallelNarrowPhase if
+	 * there is one
+	 */
+	private void testCandidate(CollisionShape shape1, CollisionShape shape2,
+			float delta, boolean continuous, boolean cacheApart)
+	{
+		if (narrowPhase != null)
+			narrowPhase.addCandidate(shape1, shape2);
+		else
+			testPair(shape1, shape2, delta, continuous, cacheApart);
+	}
+
+	/**
+	 * Checks a layer for collisions using the ParallelNarrowPhase. The same
+	 * pairs are tested, in the same order, as the serial path in
+	 * checkForCollisions. The listeners' isCollide runs on the test threads,
+	 * and the rest of the collision on this one for the pairs it accepted.
+	 * 
+	 * @param layerNum
+	 *            Layer to test
+	 * @param delta
+	 *            Delta passed in from the scene
+	 * @param continuous
+	 *            true if the layer uses continuous collision detection
+	 */
+	private void checkLayerParallel(int layerNum, float delta,
+			boolean continuous)
+	{
+		List<CollisionShape> layer = layers.get(layerNum);
+		Broadphase broadphase = broadphases.get(layerNum);
+		PackedShapes packedLayer = getPackedLayer(layerNum);
+
+		narrowPhase.clear();
+
+		// moving shapes against static shapes
+		checkStaticCollisions(layer, packedLayer, layerNum, delta, continuous);
+
+		// moving shapes against each other
+		if (broadphase != null || packedLayer != null)
+		{
+			findLayerPairs(layerNum, layer, broadphase);
+
+			for (int i = 0; i < pairs.size(); i++)
+			{
+				narrowPhase.addCandidate(layer.get(pairs.getFirst(i)),
+						layer.get(pairs.getSecond(i)));
+			}
+
+			pairCount += pairs.size();
+		}
+
+		narrowPhase.testCandidates(delta, continuous);
+		dispatchHits(delta, continuous);
+
+		if (broadphase == null && packedLayer == null)
+		{
+			narrowPhase.testAll(layer, delta, continuous);
+			dispatchHits(delta, continuous);
+
+			pairCount += (long) layer.size() * (layer.size() - 1) / 2;
+		}
+	}
+
+	/**
+	 * Passes each pair the ParallelNarrowPhase found colliding to the
+	 * listeners, in order. On continuous layers the pairs were only swept, so
+	 * isCollide is still called for them here, as the serial path does.
+	 * 
+	 * @param delta
+	 *            Delta passed in from the scene
+	 * @param continuous
+	 *            true if the layer uses continuous collision detection
+	 */
+	private void dispatchHits(float delta, boolean continuous)
+	{
+		for (int i = 0; i < narrowPhase.getHitCount(); i++)
+		{
+			if (continuous)
+				timeOfImpact = narrowPhase.getHitTime(i);
+
+			collide(narrowPhase.getHitFirst(i), narrowPhase.getHitSecond(i),
+					delta, false, !continuous);
+		}
+
+		timeOfImpact = CollisionDetect.NO_IMPACT;
+	}
+
+	/**
+	 * Tests a pair of shapes for a collision. In continuous layers the pair is
+	 * only passed to the listeners if the shapes touch within delta.
+	 * 
+	 * @param shape1
+	 *            first shape, whose listener is used
+	 * @param shape2
+	 *            second shape
+	 * @param delta
+	 *            Delta passed in from the scene
+	 * @param continuous
+	 *            true if the layer uses continuous collision detection
+	 * @param cacheApart
+	 *            true to keep contacts for pairs that are apart, so they can
+	 *            be skipped until they could touch
+	 */
+	private void testPair(CollisionShape shape1, CollisionShape shape2,
+			float delta, boolean continuous, boolean cacheApart)
+	{
+		if (!shape1.canCollideWith(shape2))
+			return;
+
+		// neither shape can have moved
+		if (shape1.isResting() && shape2.isResting())
+			return;
+
+		if (!continuous)
+		{
+			collide(shape1, shape2, delta, cacheApart, false);
+			return;
+		}
+
+		float time = CollisionDetect.timeOfImpact(shape1, shape2, delta);
+
+		// shapes without a swept test are only checked where they are now
+		if (Float.isNaN(time))
+		{
+			time = shape1.isIntersect(shape2) ? 0 : CollisionDetect.NO_IMPACT;
+		}
+
+		if (time < 0)
+			return;
+
+		timeOfImpact = time;
+		collide(shape1, shape2, delta, false, false);
+		timeOfImpact = CollisionDetect.NO_IMPACT;
+	}
+
+	/**
+	 * Tests a pair of shapes that may be touching, and updates their contact
+	 * if the first shape has a ContactListener
+	 * 
+	 * @param shape1
+	 *            first shape, whose listener is used
+	 * @param shape2
+	 *            second shape
+	 * @param delta
+	 *            Delta passed in from the scene
+	 * @param cacheApart
+	 *            true to keep contacts for pairs that are apart
+	 * @param accepted
+	 *            true if the listener's isCollide already accepted the pair
+	 */
+	private void collide(CollisionShape shape1, CollisionShape shape2,
+			float delta, boolean cacheApart, boolean accepted)
+	{
+		if (!(shape1.getListener() instanceof ContactListener))
+		{
+			if (checkCollision(shape1, shape2, delta, accepted))
+			{
+				touched(shape1, shape2);
+				shape1.performCollision(shape2, delta);
+			}
+			return;
+		}
+
+		ContactListener listener = (ContactListener) shape1.getListener();
+
+		Contact contact = contacts.get(shape1, shape2);
+
+		// skip pairs that have not moved enough to reach each other
+		if (contact != null && cacheApart && !contact.isTouching()
+				&& contact.isStillApart())
+		{
+			contact.lastFrame = frame;
+			return;
+		}
+
+		boolean touching = checkCollision(shape1, shape2, delta, accepted);
+		if (touching)
+		{
+			touched(shape1, shape2);
+			shape1.performCollision(shape2, delta);
+		}
+
+		if (contact == null)
+		{
+			if (!touching && !cacheApart)
+				return;
+
+			contact = contacts.add(shape1, shape2);
+		}
+
+		contact.lastFrame = frame;
+
+		if (touching)
+		{
+			if (contact.touch(true))
+				listener.onCollisionEnter(contact, delta);
+			else
+				listener.onCollisionStay(contact, delta);
+		}
+		else
+		{
+			endContact(contact, delta);
+
+			if (cacheApart)
+				contact.updateSeparation();
+			else
+				contacts.remove(contact);
+		}
+	}
+
+	/**
+	 * Calls the first shape's checkCollision, or only tests its children if
+	 * the listener already accepted the pair
+	 */
+	private static boolean checkCollision(CollisionShape shape1,
+			CollisionShape shape2, float delta, boolean accepted)
+	{
+		if (!accepted)
+			return shape1.checkCollision(shape2, delta);
+
+		shape1.checkChildren(shape2, delta);
+		return true;
+	}
+
+	/**
+	 * Ends every contact that was not tested this frame, because the shapes
+	 * are no longer close or were removed. Contacts between resting shapes
+	 * are kept as they are, as are contacts of shapes woken this frame, since
+	 * their pairs may have been skipped before they woke.
+	 * 
+	 * @param delta
+	 *            Delta passed in from the scene
+	 */
+	private void endContacts(float delta)
+	{
+		for (int i = contacts.size() - 1; i >= 0; i--)
+		{
+			Contact contact = contacts.get(i);
+			if (contact.lastFrame == frame)
+				continue;
+
+			if (!isRestingOrWoken(contact.getShape1())
+					|| !isRestingOrWoken(contact.getShape2()))
+			{
+				endContact(contact, delta);
+				contacts.remove(contact);
+			}
+		}
+	}
+
+	/**
+	 * Checks if a shape is resting, or was woken during this frame
+	 */
+	private boolean isRestingOrWoken(CollisionShape shape)
+	{
+		return shape.isResting() || shape.wokenFrame == frame;
+	}
+
+	/**
+	 * Tells the listener a contact stopped touching, if it was touching
+	 */
+	private void endContact(Contact contact, float delta)
+	{
+		if (!contact.isTouching())
+			return;
+
+		contact.touch(false);
+
+		CollisionListener listener = contact.getShape1().getListener();
+		if (listener instanceof ContactListener)
+		{
+			((ContactListener) listener).onCollisionExit(contact, delta);
+		}
+
+		contact.setUserData(null);
+	}
+
+	/**
+	 * Gets the number of pairs in the contact cache, touching or not
+	 * 
+	 * @return number of cached contacts
+	 */
+	public int getContactCount()
+	{
+		return contacts.size();
+	}
+
+	/**
+	 * Gets the solver that pushes touching shapes apart at the end of
+	 * checkForCollisions. Pairs handed to it by the listeners are solved
+	 * after every pair has been tested, and before islands are put to sleep.
+	 * 
+	 * @return this manager's ContactSolver
+	 */
+	public ContactSolver getContactSolver()
+	{
+		return solver;
+	}
+
+	/**
+	 * Sets the Executor used to run intersection tests on other threads. The
+	 * listeners' isCollide runs on the Executor for every pair, so it must
+	 * not change anything and must be safe to call from several threads at
+	 * once, as the built in listeners are. onCollide, and isCollide on
+	 * continuous layers, where the Executor only runs the swept tests, are
+	 * still called on the thread calling checkForCollisions, in the same
+	 * order as without an Executor.
+	 * 
+	 * All pairs are tested before any onCollide is called, so listeners that
+	 * move shapes can change which later pairs touch compared to running
+	 * without an Executor. Pairs a ContactListener's contact knows to be
+	 * still apart are tested anyway, rather than skipped.
+	 * 
+	 * @param executor
+	 *            Executor to run the tests on, such as one from
+	 *            ParallelNarrowPhase.createExecutor, or null to run every test
+	 *            on the calling thread
+	 */
+	public void setNarrowPhaseExecutor(Executor executor)
+	{
+		narrowPhase = executor == null ? null : new ParallelNarrowPhase(
+				executor);
+	}
+
+	/**
+	 * Gets the Executor used to run intersection tests on other threads
+	 * 
+	 * @return the Executor, or null if every test runs on the calling thread
+	 */
+	public Executor getNarrowPhaseExecutor()
+	{
+		return narrowPhase == null ? null : narrowPhase.getExecutor();
+	}
+
+	/**
+	 * Sets whether a layer uses continuous collision detection. Instead of
+	 * only checking where shapes are now, each pair is swept over where the
+	 * shapes move during the frame, and only pairs that touch at some point
+	 * are passed to the listeners. getTimeOfImpact() tells the listeners when
+	 * the shapes touch.
+	 * 
+	 * Since the shapes may not be touching yet, listeners on a continuous
+	 * layer should not reject pairs using isIntersect.
+	 * 
+	 * @param layerNum
+	 *            Layer to change
+	 * @param continuous
+	 *            true to sweep the shapes, false to only check where they are
+	 */
+	public void setContinuous(int layerNum, boolean continuous)
+	{
+		if (continuous)
+		{
+			continuousLayers.put(layerNum, true);
+			return;
+		}
+
+		continuousLayers.delete(layerNum);
+
+		// shrink the bounds back down to the shapes
+		List<CollisionShape> layer = layers.get(layerNum);
+		if (layer != null)
+		{
+			for (int i = 0; i < layer.size(); i++)
+			{
+				layer.get(i).setSweep(0, 0, 0);
+			}
+		}
+	}
+
+	/**
+	 * Gets whether a layer uses continuous collision detection
+	 * 
+	 * @param layerNum
+	 *            Layer to be looked at
+	 * @return true if the layer's shapes are swept
+	 */
+	public boolean isContinuous(int layerNum)
+	{
+		return continuousLayers.get(layerNum);
+	}
+
+	/**
+	 * Gets when the pair of shapes being passed to the listeners touch. Only
+	 * set while a continuous layer is calling its listeners.
+	 * 
+	 * @return time in seconds after the start of the frame the shapes first
+	 *         touch, or CollisionDetect.NO_IMPACT
+	 */
+	public float getTimeOfImpact()
+	{
+		return timeOfImpact;
+	}
+
+	/**
+	 * Sets whether the shapes of two different layers are tested against
+	 * each other. Each pair is tested once, after the pairs within each
+	 * layer, and the shape from the lower layer is the first shape passed to
+	 * the listeners. Static shapes are tested against the other layer's
+	 * moving shapes. The shapes of a layer are always tested against each
+	 * other.
+	 * 
+	 * Pairs are found with either layer's Broadphase, or by testing every
+	 * pair if neither layer has one. The pair is swept if either layer is
+	 * continuous.
+	 * 
+	 * @param layerNum1
+	 *            a layer
+	 * @param layerNum2
+	 *            a different layer
+	 * @param collide
+	 *            true to test the layers against each other
+	 */
+	public void setLayerCollision(int layerNum1, int layerNum2,
+			boolean collide)
+	{
+		if (layerNum1 == layerNum2)
+			return;
+
+		long key = layerPairKey(layerNum1, layerNum2);
+		int index = Arrays.binarySearch(layerPairs, key);
+
+		if (collide && index < 0)
+		{
+			// keep the pairs sorted, so they are always checked in order
+			index = -index - 1;
+			long[] grown = new long[layerPairs.length + 1];
+			System.arraycopy(layerPairs, 0, grown, 0, index);
+			grown[index] = key;
+			System.arraycopy(layerPairs, index, grown, index + 1,
+					layerPairs.length - index);
+			layerPairs = grown;
+		}
+		else if (!collide && index >= 0)
+		{
+			long[] shrunk = new long[layerPairs.length - 1];
+			System.arraycopy(layerPairs, 0, shrunk, 0, index);
+			System.arraycopy(layerPairs, index + 1, shrunk, index,
+					shrunk.length - index);
+			layerPairs = shrunk;
+		}
+	}
+
+	/**
+	 * Gets whether the shapes of two layers are tested against each other
+	 * 
+	 * @param layerNum1
+	 *            a layer
+	 * @param layerNum2
+	 *            another layer
+	 * @return true if the layers are the same or set to collide
+	 */
+	public boolean isLayerCollision(int layerNum1, int layerNum2)
+	{
+		return layerNum1 == layerNum2
+				|| Arrays.binarySearch(layerPairs,
+						layerPairKey(layerNum1, layerNum2)) >= 0;
+	}
+
+	/**
+	 * Packs two layers into one key, lower layer first
+	 */
+	private static long layerPairKey(int layerNum1, int layerNum2)
+	{
+		int lower = Math.min(layerNum1, layerNum2);
+		int higher = Math.max(layerNum1, layerNum2);
+		return ((long) lower << 32) | (higher & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Makes the world wrap around at its edges, like in Asteroids. The world
+	 * is centered on the origin, so along x it runs from -width / 2 to
+	 * width / 2, and a shape leaving one edge is next to the shapes at the
+	 * other. Shapes touching across an edge collide, and every distance
+	 * CollisionDetect measures is the shortest way around the world.
+	 * 
+	 * Entities do not have to be moved back into the world when they leave
+	 * it; the manager uses the copy of each shape inside the world. Rays and
+	 * query boxes should be shorter than half the world.
+	 * 
+	 * @param width
+	 *            size of the world along the x-axis, or 0 to not wrap along x
+	 * @param height
+	 *            size of the world along the y-axis, or 0 to not wrap along y
+	 * @param depth
+	 *            size of the world along the z-axis, or 0 to not wrap along z
+	 */
+	public void setWorldSize(float width, float height, float depth)
+	{
+		worldWidth = Math.max(width, 0);
+		worldHeight = Math.max(height, 0);
+		worldDepth = Math.max(depth, 0);
+
+		// static shapes are kept where they are inside the world
+		for (int i = 0; i < staticLayers.size(); i++)
+		{
+			staticChanged.put(staticLayers.keyAt(i), true);
+		}
+	}
+
+	/**
+	 * Gets the size of the world along the x-axis
+	 * 
+	 * @return width of the world, or 0 if it does not wrap along x
+	 */
+	public float getWorldWidth()
+	{
+		return worldWidth;
+	}
+
+	/**
+	 * Gets the size of the world along the y-axis
+	 * 
+	 * @return height of the world, or 0 if it does not wrap along y
+	 */
+	public float getWorldHeight()
+	{
+		return worldHeight;
+	}
 
-	private final Scene scene;
+	/**
+	 * Gets the size of the world along the z-axis
+	 * 
+	 * @return depth of the world, or 0 if it does not wrap along z
+	 */
+	public float getWorldDepth()
+	{
+		return worldDepth;
+	}
 
 	/**
-	 * Create a CollisionManager using specified Scene.
+	 * Moves an x value into the world, or turns a distance along x into the
+	 * shortest distance around the world
 	 * 
-	 * @param scene
+	 * @param x
+	 *            position or distance along the x-axis
+	 * @return the same value moved by a multiple of the world's width to lie
+	 *         between -width / 2 and width / 2, or x if the world does not
+	 *         wrap along x
 	 */
-	public CollisionManager(Scene scene)
+	public float wrapX(float x)
 	{
-		this.scene = scene;
+		return wrap(x, worldWidth);
 	}
 
 	/**
-	 * Add the child to the specified layer
+	 * Moves a y value into the world. See wrapX.
+	 * 
+	 * @param y
+	 *            position or distance along the y-axis
+	 * @return y moved into the world
+	 */
+	public float wrapY(float y)
+	{
+		return wrap(y, worldHeight);
+	}
+
+	/**
+	 * Moves a z value into the world. See wrapX.
+	 * 
+	 * @param z
+	 *            position or distance along the z-axis
+	 * @return z moved into the world
+	 */
+	public float wrapZ(float z)
+	{
+		return wrap(z, worldDepth);
+	}
+
+	/**
+	 * Checks if the world wraps along any axis
+	 */
+	private boolean isWrapped()
+	{
+		return worldWidth > 0 || worldHeight > 0 || worldDepth > 0;
+	}
+
+	private static float wrap(float value, float size)
+	{
+		float half = size / 2f;
+		if (size <= 0 || (value >= -half && value <= half)
+				|| Float.isInfinite(value))
+			return value;
+
+		return value - size * (float) Math.floor(value / size + 0.5f);
+	}
+
+	private float getWorldSize(int axis)
+	{
+		return axis == 0 ? worldWidth : axis == 1 ? worldHeight : worldDepth;
+	}
+
+	/**
+	 * Sets the Broadphase used to find the pairs of shapes to test in the
+	 * specified layer. Each layer needs its own Broadphase instance. Shapes
+	 * already in the layer are handed to the new broadphase. Static shapes are
+	 * not part of the broadphase.
 	 * 
-	 * @param child
-	 *            Child to be added to the collision manager
 	 * @param layerNum
-	 *            The layer the child should be added to
+	 *            The layer to use the broadphase on
+	 * @param broadphase
+	 *            Broadphase for the layer, or null to test every pair of shapes
+	 *            in the layer
 	 */
-	public void addChild(CollisionShape child, int layerNum)
+	public void setBroadphase(int layerNum, Broadphase broadphase)
 	{
-		if (child == null)
+		if (broadphase == null)
+		{
+			broadphases.remove(layerNum);
 			return;
+		}
 
-		// Get the layer this child will be added to
-		List<CollisionShape> add = addList.get(layerNum);
+		broadphases.put(layerNum, broadphase);
 
-		// if this layer has not been made yet, make one
-		if (add == null)
+		// catch the broadphase up with the layer
+		List<CollisionShape> layer = layers.get(layerNum);
+		if (layer != null)
 		{
-			addList.put(layerNum, new ArrayList<CollisionShape>());
-			add = addList.get(layerNum);
+			for (CollisionShape shape : layer)
+			{
+				broadphase.add(shape);
+			}
 		}
+	}
 
-		// Add child to list
-		add.add(child);
+	/**
+	 * Gets the Broadphase used by the specified layer
+	 * 
+	 * @param layerNum
+	 *            Layer to be looked at
+	 * @return Broadphase of the layer, or null if every pair is tested
+	 */
+	public Broadphase getBroadphase(int layerNum)
+	{
+		return broadphases.get(layerNum);
+	}
 
-		// add this layer to the updatelayer list, so this layer gets updated
-		if (!updateLayers.contains(layerNum))
-			updateLayers.add(layerNum);
+	/**
+	 * Sets whether the bounds and category bits of every moving shape are
+	 * copied into flat arrays at the start of each layer's check. Every loop
+	 * over the layer then reads the arrays, instead of going through each
+	 * shape's entity and offset. The built in Broadphases and the static
+	 * shape trees read their bounds from the arrays, and layers without a
+	 * Broadphase sort the arrays along the x-axis and sweep over them, so
+	 * only the pairs whose bounds overlap are tested, instead of every pair.
+	 * 
+	 * Worth turning on for layers of many small shapes. Costs a few arrays
+	 * per layer, sized to the most shapes the layer has held.
+	 * 
+	 * @param packed
+	 *            true to copy the shapes into arrays each frame
+	 */
+	public void setPackedShapes(boolean packed)
+	{
+		this.packed = packed;
+		if (!packed)
+			packedLayers.clear();
 	}
 
 	/**
-	 * Checks for collisions between shapes in each layer
+	 * Checks if the shapes are copied into flat arrays each frame
 	 * 
-	 * @param delta Delta passed in from the scene
+	 * @return true if packed shapes are turned on
 	 */
-	public void checkForCollisions(float delta)
+	public boolean isPackedShapes()
 	{
-		updateLists();
+		return packed;
+	}
+
+	/**
+	 * Gets the number of pairs of shapes that were tested during the last call
+	 * to checkForCollisions, across all layers. Useful for measuring how well
+	 * a Broadphase is doing.
+	 * 
+	 * @return number of pairs tested
+	 */
+	public long getPairCount()
+	{
+		return pairCount;
+	}
+
+	/**
+	 * Finds the shapes hit by a ray, closest first. Only shapes that were in
+	 * the layers at the last checkForCollisions are found.
+	 * 
+	 * @param origin
+	 *            where the ray starts
+	 * @param direction
+	 *            direction of the ray, does not need to be normalized
+	 * @param maxDistance
+	 *            length of the ray
+	 * @param layerMask
+	 *            bit n set to search layer n, or ALL_LAYERS
+	 * @param results
+	 *            buffer to fill with the shapes hit and the distance along the
+	 *            ray to each hit
+	 * @return number of shapes hit
+	 */
+	public int raycast(Geometry3f origin, Geometry3f direction,
+			float maxDistance, int layerMask, QueryResults results)
+	{
+		results.clear();
+
+		float dx = direction.getX();
+		float dy = direction.getY();
+		float dz = direction.getZ();
+		float length = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+		if (length == 0 || maxDistance < 0)
+			return 0;
+
+		dx /= length;
+		dy /= length;
+		dz /= length;
+
+		float x = origin.getX();
+		float y = origin.getY();
+		float z = origin.getZ();
+		float endX = x + dx * maxDistance;
+		float endY = y + dy * maxDistance;
+		float endZ = z + dz * maxDistance;
 
-		// Go through each layer
 		for (int layerIndex = 0; layerIndex < layers.size(); layerIndex++)
 		{
-			List<CollisionShape> layer = layers.valueAt(layerIndex);
+			int layerNum = layers.keyAt(layerIndex);
+			if (!isInMask(layerNum, layerMask))
+				continue;
 
-			// collide tests
-			for (int i = 0; i < layer.size(); i++)
+			// everything near the ray's bounds, then the exact test
+			findNear(layerNum, Math.min(x, endX), Math.min(y, endY),
+					Math.min(z, endZ), Math.max(x, endX), Math.max(y, endY),
+					Math.max(z, endZ));
+
+			for (int i = 0; i < nearCount; i++)
 			{
-				// get the next thing to collide with (CollisionShape i)
-				CollisionShape csi = layer.get(i);
+				float distance = CollisionDetect.raycast(nearShapes[i], x, y,
+						z, dx, dy, dz, maxDistance);
+				if (distance >= 0)
+					results.add(nearShapes[i], distance, layerNum);
+			}
+		}
 
-				for (int j = i + 1; j < layer.size(); j++)
+		clearNear();
+		return results.getCount();
+	}
+
+	/**
+	 * Finds the shapes that overlap a box, closest to the center of the box
+	 * first. Only shapes that were in the layers at the last
+	 * checkForCollisions are found.
+	 * 
+	 * @param min
+	 *            corner of the box with the smallest values
+	 * @param max
+	 *            corner of the box with the largest values
+	 * @param layerMask
+	 *            bit n set to search layer n, or ALL_LAYERS
+	 * @param results
+	 *            buffer to fill with the shapes found
+	 * @return number of shapes found
+	 */
+	public int queryAABB(Geometry3f min, Geometry3f max, int layerMask,
+			QueryResults results)
+	{
+		results.clear();
+
+		float minX = min.getX();
+		float minY = min.getY();
+		float minZ = min.getZ();
+		float maxX = max.getX();
+		float maxY = max.getY();
+		float maxZ = max.getZ();
+
+		for (int layerIndex = 0; layerIndex < layers.size(); layerIndex++)
+		{
+			int layerNum = layers.keyAt(layerIndex);
+			if (!isInMask(layerNum, layerMask))
+				continue;
+
+			findNear(layerNum, minX, minY, minZ, maxX, maxY, maxZ);
+
+			for (int i = 0; i < nearCount; i++)
+			{
+				CollisionShape shape = nearShapes[i];
+				if (CollisionDetect.isIntersectBox(shape, minX, minY, minZ,
+						maxX, maxY, maxZ))
 				{
-					// get a different thing to collide with (CollisionShape j)
-					CollisionShape csj = layer.get(j);
+					results.add(shape, getDistance(shape, (minX + maxX) / 2f,
+							(minY + maxY) / 2f, (minZ + maxZ) / 2f), layerNum);
+				}
+			}
+		}
 
-					// test for collisions
-					csi.testCollision(csj, delta);
+		clearNear();
+		return results.getCount();
+	}
+
+	/**
+	 * Finds the shapes that overlap a sphere, closest to the center of the
+	 * sphere first. Only shapes that were in the layers at the last
+	 * checkForCollisions are found.
+	 * 
+	 * @param center
+	 *            center of the sphere
+	 * @param radius
+	 *            radius of the sphere
+	 * @param layerMask
+	 *            bit n set to search layer n, or ALL_LAYERS
+	 * @param results
+	 *            buffer to fill with the shapes found
+	 * @return number of shapes found
+	 */
+	public int querySphere(Geometry3f center, float radius, int layerMask,
+			QueryResults results)
+	{
+		results.clear();
+
+		float x = center.getX();
+		float y = center.getY();
+		float z = center.getZ();
+
+		for (int layerIndex = 0; layerIndex < layers.size(); layerIndex++)
+		{
+			int layerNum = layers.keyAt(layerIndex);
+			if (!isInMask(layerNum, layerMask))
+				continue;
+
+			findNear(layerNum, x - radius, y - radius, z - radius, x + radius,
+					y + radius, z + radius);
+
+			for (int i = 0; i < nearCount; i++)
+			{
+				CollisionShape shape = nearShapes[i];
+				if (CollisionDetect.isIntersectSphere(shape, x, y, z, radius))
+				{
+					results.add(shape, getDistance(shape, x, y, z), layerNum);
+				}
+			}
+		}
+
+		clearNear();
+		return results.getCount();
+	}
+
+	/**
+	 * Checks if a layer is included in a layer mask
+	 */
+	private static boolean isInMask(int layerNum, int layerMask)
+	{
+		return layerNum >= 0 && layerNum < 32
+				&& (layerMask & (1 << layerNum)) != 0;
+	}
+
+	/**
+	 * Distance from a point to the center of a shape, the shortest way around
+	 * a wrapped world
+	 */
+	private float getDistance(CollisionShape shape, float x, float y, float z)
+	{
+		float dx = wrapX(shape.getCenterX() - x);
+		float dy = wrapY(shape.getCenterY() - y);
+		float dz = wrapZ(shape.getCenterZ() - z);
+		return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+	}
+
+	/**
+	 * Finds the shapes in a layer whose bounds could overlap a box, using the
+	 * layer's static tree and Broadphase. The shapes are put in nearShapes.
+	 */
+	private void findNear(int layerNum, float minX, float minY, float minZ,
+			float maxX, float maxY, float maxZ)
+	{
+		List<CollisionShape> layer = layers.get(layerNum);
+		List<CollisionShape> staticLayer = staticLayers.get(layerNum);
+		Broadphase broadphase = broadphases.get(layerNum);
+
+		clearNear();
+
+		// in a wrapped world, the copies of the box on the other side of the
+		// world are looked up too
+		setQueryBox(minX, minY, minZ, maxX, maxY, maxZ);
+		int images = isWrapped() ? IMAGES : 1;
+
+		if (!staticLayer.isEmpty())
+		{
+			StaticShapeTree tree = staticTrees.get(layerNum);
+			tree.getBounds(staticBounds);
+
+			for (int image = 0; image < images; image++)
+			{
+				if (!setImage(image, staticBounds))
+					continue;
+
+				int found = tree.query(imageBox[0], imageBox[1], imageBox[2],
+						imageBox[3], imageBox[4], imageBox[5]);
+				for (int i = 0; i < found; i++)
+				{
+					addNear(staticLayer.get(tree.getResult(i)), image > 0);
 				}
 			}
 		}
+
+		if (broadphase == null)
+		{
+			// no broadphase to ask, so check every moving shape
+			for (int i = 0; i < layer.size(); i++)
+			{
+				addNear(layer.get(i), false);
+			}
+			return;
+		}
+
+		float[] bounds = layerBounds.get(layerNum);
+		for (int image = 0; image < images; image++)
+		{
+			if (!setImage(image, bounds))
+				continue;
+
+			int found = broadphase.query(layer, imageBox[0], imageBox[1],
+					imageBox[2], imageBox[3], imageBox[4], imageBox[5]);
+			for (int i = 0; i < found; i++)
+			{
+				addNear(layer.get(broadphase.getResult(i)), image > 0);
+			}
+		}
 	}
 
 	/**
-	 * Gets the count of children in the specified layer
+	 * Adds a shape to nearShapes
+	 * 
+	 * @param repeat
+	 *            true if the shape may already have been found in another
+	 *            copy of the box
+	 */
+	private void addNear(CollisionShape shape, boolean repeat)
+	{
+		if (repeat)
+		{
+			for (int i = 0; i < nearCount; i++)
+			{
+				if (nearShapes[i] == shape)
+					return;
+			}
+		}
+
+		if (nearCount == nearShapes.length)
+		{
+			nearShapes = Arrays.copyOf(nearShapes, nearCount * 2);
+		}
+
+		nearShapes[nearCount++] = shape;
+	}
+
+	private void clearNear()
+	{
+		for (int i = 0; i < nearCount; i++)
+		{
+			nearShapes[i] = null;
+		}
+
+		nearCount = 0;
+	}
+
+	/**
+	 * Gets the count of children in the specified layer, static children
+	 * included
 	 * 
 	 * @param layer
 	 *            Layer to be looked at
@@ -105,21 +1892,33 @@ public class CollisionManager
 	 */
 	public int getChildCount(int layer)
 	{
-		return layers.get(layer).size();
+		return layers.get(layer).size() + staticLayers.get(layer).size();
 	}
 
 	/**
-	 * Gets all the shapes in the specified layer
+	 * Gets all the moving shapes in the specified layer
 	 * 
 	 * @param layer
 	 *            Layer to be looked at
-	 * @return The list of children in the layer
+	 * @return The list of non-static children in the layer
 	 */
 	public List<CollisionShape> getChildren(int layer)
 	{
 		return layers.get(layer);
 	}
 
+	/**
+	 * Gets all the static shapes in the specified layer
+	 * 
+	 * @param layer
+	 *            Layer to be looked at
+	 * @return The list of static children in the layer
+	 */
+	public List<CollisionShape> getStaticChildren(int layer)
+	{
+		return staticLayers.get(layer);
+	}
+
 	/**
 	 * Get the scene that this collision manager is being used on
 	 * 
@@ -131,32 +1930,44 @@ public class CollisionManager
 	}
 
 	/**
-	 * Adds all the shapes from layer to the remove list to be removed
+	 * Removes all the shapes from layer, including any waiting to be added to
+	 * it
 	 * 
 	 * @param layer
 	 *            Layer to be cleared
 	 */
 	public void removeAllChildren(int layer)
 	{
+		// drop the shapes that were going to be added
+		for (int i = 0; i < pending.size(); i++)
+		{
+			CollisionShape shape = pending.get(i);
+			if (shape.pendingAdd && shape.pendingLayer == layer)
+				shape.pendingAdd = false;
+		}
+
 		// if there is no layer to remove objects from, then no need to continue
 		if (layers.get(layer) == null)
 			return;
 
-		// get the layer that holds the item being removed
-		List<CollisionShape> remove = removeList.get(layer);
+		queueRemoveAll(layers.get(layer));
+		queueRemoveAll(staticLayers.get(layer));
+	}
 
-		// if the remove list has net yet been made for that layer, create it
-		if (remove == null)
+	/**
+	 * Removes each shape in a layer that is not already waiting to change
+	 */
+	private void queueRemoveAll(List<CollisionShape> shapes)
+	{
+		for (int i = 0; i < shapes.size(); i++)
 		{
-			removeList.put(layer, new ArrayList<CollisionShape>());
-			remove = removeList.get(layer);
+			CollisionShape shape = shapes.get(i);
+			if (!shape.queued)
+			{
+				shape.pendingAdd = false;
+				queue(shape);
+			}
 		}
-
-		remove.addAll(layers.get(layer));
-
-		// add this layer to the updatelayer list, so this layer gets updated
-		if (!updateLayers.contains(layer))
-			updateLayers.add(layer);
 	}
 
 	/**
@@ -172,22 +1983,28 @@ public class CollisionManager
 		if (child == null)
 			return;
 
-		// get the layer that holds the item being removed
-		List<CollisionShape> remove = removeList.get(layerNum);
+		// only if the child is in the layer, or about to be
+		boolean inLayer = child.queued ? child.pendingAdd
+				&& child.pendingLayer == layerNum : isInLayer(child)
+				&& child.layerNum == layerNum;
 
-		// if the remove list has net yet been made for that layer, create it
-		if (remove == null)
+		if (inLayer)
 		{
-			removeList.put(layerNum, new ArrayList<CollisionShape>());
-			remove = removeList.get(layerNum);
+			child.pendingAdd = false;
+			queue(child);
 		}
+	}
 
-		// add item to remove list to be removed later
-		remove.add(child);
-
-		// add this layer to the updatelayer list, so this layer gets updated
-		if (!updateLayers.contains(layerNum))
-			updateLayers.add(layerNum);
+	/**
+	 * Lists a shape to be changed at the next updateLists
+	 */
+	private void queue(CollisionShape shape)
+	{
+		if (!shape.queued)
+		{
+			shape.queued = true;
+			pending.add(shape);
+		}
 	}
 
 	/**
@@ -195,55 +2012,136 @@ public class CollisionManager
 	 */
 	public void updateLists()
 	{
-		// Go through each layer
-		for (Integer layerIndex : updateLayers)
+		// by index so no iterator is made every frame
+		for (int i = 0; i < pending.size(); i++)
 		{
-			List<CollisionShape> layer = layers.get(layerIndex);
-			List<CollisionShape> addLayer = addList.get(layerIndex);
-			List<CollisionShape> removeLayer = removeList.get(layerIndex);
+			CollisionShape shape = pending.get(i);
+			shape.queued = false;
+
+			boolean inLayer = isInLayer(shape);
 
-			// if this layer has not been made yet, make it
-			if (layer == null)
+			if (inLayer && shape.pendingAdd
+					&& shape.layerNum == shape.pendingLayer
+					&& shape.layerStatic == shape.pendingStatic)
 			{
-				layer = new ArrayList<CollisionShape>();
-				layers.put(layerIndex, layer);
+				// already there, but a static shape may have been moved
+				if (shape.layerStatic)
+					staticChanged.put(shape.layerNum, true);
+				continue;
 			}
 
-			if (removeLayer != null)
-			{
-				// Remove all children that are in the specified layer's remove
-				// list
-				layer.removeAll(removeLayer);
+			if (inLayer)
+				removeFromLayer(shape);
 
-				// Remove each shape's manager if it's this manager.
-				for (CollisionShape shape : removeLayer)
-				{
-					if (shape.getManager() == this)
-					{
-						shape.setManager(null);
-					}
-				}
+			if (shape.pendingAdd)
+				addToLayer(shape, shape.pendingLayer, shape.pendingStatic);
+		}
 
-				// Clear the remove list
-				removeList.clear();
-			}
+		pending.clear();
 
-			if (addLayer != null)
-			{
-				// Add all children that are in the specified layer's add list
-				layer.addAll(addLayer);
+		// only rebuild the static shapes' trees when they change
+		for (int i = 0; i < staticChanged.size(); i++)
+		{
+			int layerNum = staticChanged.keyAt(i);
+			staticTrees.get(layerNum).build(staticLayers.get(layerNum));
+		}
 
-				// Set each shape's manager to this manager.
-				for (CollisionShape shape : addLayer)
-				{
-					shape.setManager(this);
-				}
+		staticChanged.clear();
+	}
 
-				// Clear the add list
-				addList.clear();
-			}
+	/**
+	 * Checks if a shape is where it thinks it is in this manager's layers
+	 */
+	private boolean isInLayer(CollisionShape shape)
+	{
+		if (shape.layerSlot < 0)
+			return false;
+
+		List<CollisionShape> list = shape.layerStatic ? staticLayers
+				.get(shape.layerNum) : layers.get(shape.layerNum);
+
+		return list != null && shape.layerSlot < list.size()
+				&& list.get(shape.layerSlot) == shape;
+	}
+
+	/**
+	 * Adds a shape to the end of a layer, making the layer if needed
+	 */
+	private void addToLayer(CollisionShape shape, int layerNum,
+			boolean isStatic)
+	{
+		List<CollisionShape> layer = layers.get(layerNum);
+
+		// if this layer has not been made yet, make it
+		if (layer == null)
+		{
+			layer = new ArrayList<CollisionShape>();
+			layers.put(layerNum, layer);
+			staticLayers.put(layerNum, new ArrayList<CollisionShape>());
+			staticTrees.put(layerNum, new StaticShapeTree());
+		}
+
+		List<CollisionShape> list = isStatic ? staticLayers.get(layerNum)
+				: layer;
+
+		shape.layerNum = layerNum;
+		shape.layerStatic = isStatic;
+		shape.layerSlot = list.size();
+		list.add(shape);
+		shape.setManager(this);
+
+		if (isStatic)
+		{
+			staticChanged.put(layerNum, true);
+		}
+		else
+		{
+			Broadphase broadphase = broadphases.get(layerNum);
+			if (broadphase != null)
+				broadphase.add(shape);
+		}
+	}
+
+	/**
+	 * Removes a shape from its layer by moving the last shape of the layer
+	 * into its place
+	 */
+	private void removeFromLayer(CollisionShape shape)
+	{
+		int layerNum = shape.layerNum;
+		int slot = shape.layerSlot;
+		List<CollisionShape> list = shape.layerStatic ? staticLayers
+				.get(layerNum) : layers.get(layerNum);
+
+		CollisionShape last = list.remove(list.size() - 1);
+		if (last != shape)
+		{
+			list.set(slot, last);
+			last.layerSlot = slot;
+		}
+
+		shape.layerSlot = -1;
+		shape.setSweep(0, 0, 0);
+
+		// whatever was resting on the shape can move again
+		if (shape.islandNext != null)
+			wakeIsland(shape);
+
+		if (shape.layerStatic)
+		{
+			staticChanged.put(layerNum, true);
+		}
+		else
+		{
+			Broadphase broadphase = broadphases.get(layerNum);
+			if (broadphase != null)
+				broadphase.remove(slot);
 		}
 
-		updateLayers.clear();
+		// Remove the shape's manager if it's this manager.
+		if (shape.getManager() == this)
+		{
+			shape.setManager(null);
+		}
 	}
 }
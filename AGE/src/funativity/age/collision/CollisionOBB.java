@@ -0,0 +1,132 @@
+package funativity.age.collision;
+
+import funativity.age.opengl.Entity;
+import funativity.age.util.Geometry3f;
+
+/**
+ * Oriented Bounding Box used as a collision boundary. Unlike CollisionAAB, the
+ * box turns with its entity's z rotation, so it fits rotating ships and walls.
+ *
+ * An oriented box is a polygon with four corners, and is tested the same way.
+ *
+ */
+public class CollisionOBB extends CollisionPolygon
+{
+	// dimensions of this OBB, before rotating
+	private float width, height;
+
+	/**
+	 * Create an oriented box for specified entity using specified collision
+	 * listener. The size of this box is specified by width/height and uses (0,
+	 * 0) for the offset
+	 *
+	 * @param entity
+	 *            Entity that represents this collision object
+	 * @param listener
+	 *            Listener that responds to the collisions
+	 * @param width
+	 *            Width of this collision object, along its own x-axis
+	 * @param height
+	 *            Height of this collision object, along its own y-axis
+	 */
+	public CollisionOBB(Entity entity, CollisionListener listener, float width,
+			float height)
+	{
+		this(entity, listener, new Geometry3f(), width, height);
+	}
+
+	/**
+	 * Create an oriented box for specified entity using specified collision
+	 * listener. The size of this box is specified by width/height and uses
+	 * provided offset for the offset
+	 *
+	 * @param entity
+	 *            Entity that represents this collision object
+	 * @param listener
+	 *            Listener that responds to the collisions
+	 * @param offset
+	 *            Distance from the origin (of provided entity) this collision
+	 *            shape looks for collisions
+	 * @param width
+	 *            Width of this collision object, along its own x-axis
+	 * @param height
+	 *            Height of this collision object, along its own y-axis
+	 */
+	public CollisionOBB(Entity entity, CollisionListener listener,
+			Geometry3f offset, float width, float height)
+	{
+		super(entity, listener, offset, corners(width, height));
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Get the width of this box
+	 *
+	 * @return width of this box, along its own x-axis
+	 */
+	public float getWidth()
+	{
+		return width;
+	}
+
+	/**
+	 * Set the width of this box
+	 *
+	 * @param width
+	 *            new width of this box
+	 */
+	public void setWidth(float width)
+	{
+		this.width = width;
+		setVertices(corners(width, height));
+	}
+
+	/**
+	 * Get the height of this box
+	 *
+	 * @return height of this box, along its own y-axis
+	 */
+	public float getHeight()
+	{
+		return height;
+	}
+
+	/**
+	 * Set the height of this box
+	 *
+	 * @param height
+	 *            new height of this box
+	 */
+	public void setHeight(float height)
+	{
+		this.height = height;
+		setVertices(corners(width, height));
+	}
+
+	@Override
+	public float getExtentX()
+	{
+		float radians = (float) Math.toRadians(getRotation());
+		return Math.abs((float) Math.cos(radians)) * width / 2f
+				+ Math.abs((float) Math.sin(radians)) * height / 2f;
+	}
+
+	@Override
+	public float getExtentY()
+	{
+		float radians = (float) Math.toRadians(getRotation());
+		return Math.abs((float) Math.sin(radians)) * width / 2f
+				+ Math.abs((float) Math.cos(radians)) * height / 2f;
+	}
+
+	/**
+	 * Corners of a box centered on the origin, counter-clockwise
+	 */
+	private static float[] corners(float width, float height)
+	{
+		float hw = width / 2f;
+		float hh = height / 2f;
+		return new float[] { -hw, -hh, hw, -hh, hw, hh, -hw, hh };
+	}
+}
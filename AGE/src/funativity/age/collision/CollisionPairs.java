@@ -0,0 +1,148 @@
+package funativity.age.collision;
+
+import java.util.Arrays;
+
+/**
+ * A reusable buffer of candidate pairs found by a Broadphase. Each pair is
+ * stored as the indices of two shapes in a CollisionManager layer, with the
+ * earlier index first. Sorting the buffer puts the pairs in the same order the
+ * brute force loop visits them, so collision events fire in the same order no
+ * matter which Broadphase found them.
+ *
+ */
+public class CollisionPairs
+{
+	// starting capacity of the buffer
+	private static final int DEFAULT_CAPACITY = 64;
+
+	// each pair packed as (first << 32) | second
+	private long[] pairs;
+	private int count;
+
+	/**
+	 * Creates an empty pair buffer.
+	 */
+	public CollisionPairs()
+	{
+		pairs = new long[DEFAULT_CAPACITY];
+	}
+
+	/**
+	 * Adds a pair of shape indices to this buffer. The indices may be passed
+	 * in either order, the smaller index is always stored first. A shape is
+	 * never paired with itself.
+	 *
+	 * @param index1
+	 *            index of a shape in the layer
+	 * @param index2
+	 *            index of a different shape in the layer
+	 */
+	public void add(int index1, int index2)
+	{
+		if (index1 == index2)
+			return;
+
+		// make sure the earlier shape is always first
+		if (index1 > index2)
+		{
+			int temp = index1;
+			index1 = index2;
+			index2 = temp;
+		}
+
+		// grow the buffer if needed
+		if (count == pairs.length)
+		{
+			pairs = Arrays.copyOf(pairs, pairs.length * 2);
+		}
+
+		pairs[count++] = ((long) index1 << 32) | index2;
+	}
+
+	/**
+	 * Adds a pair of shapes from two different layers, keeping the order the
+	 * indices are given in
+	 *
+	 * @param first
+	 *            index of a shape in the first layer
+	 * @param second
+	 *            index of a shape in the second layer
+	 */
+	void addCrossLayer(int first, int second)
+	{
+		if (count == pairs.length)
+		{
+			pairs = Arrays.copyOf(pairs, pairs.length * 2);
+		}
+
+		pairs[count++] = ((long) first << 32) | second;
+	}
+
+	/**
+	 * Sorts the pairs in this buffer into the order the brute force loop would
+	 * visit them (by first index, then by second index), and removes any pair
+	 * that was added more than once.
+	 */
+	public void sort()
+	{
+		if (count < 2)
+			return;
+
+		Sorting.sort(pairs, 0, count);
+
+		// remove duplicates, keeping the first of each
+		int unique = 1;
+		for (int i = 1; i < count; i++)
+		{
+			if (pairs[i] != pairs[unique - 1])
+			{
+				pairs[unique++] = pairs[i];
+			}
+		}
+
+		count = unique;
+	}
+
+	/**
+	 * Removes all pairs from this buffer. The memory used by the buffer is
+	 * kept so it can be refilled without allocating.
+	 */
+	public void clear()
+	{
+		count = 0;
+	}
+
+	/**
+	 * Gets the number of pairs in this buffer
+	 *
+	 * @return number of pairs
+	 */
+	public int size()
+	{
+		return count;
+	}
+
+	/**
+	 * Gets the index of the earlier shape in a pair
+	 *
+	 * @param index
+	 *            index of the pair in this buffer
+	 * @return index of the earlier shape in the layer
+	 */
+	public int getFirst(int index)
+	{
+		return (int) (pairs[index] >>> 32);
+	}
+
+	/**
+	 * Gets the index of the latter shape in a pair
+	 *
+	 * @param index
+	 *            index of the pair in this buffer
+	 * @return index of the latter shape in the layer
+	 */
+	public int getSecond(int index)
+	{
+		return (int) pairs[index];
+	}
+}
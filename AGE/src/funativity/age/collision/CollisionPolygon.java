@@ -0,0 +1,228 @@
+package funativity.age.collision;
+
+import funativity.age.opengl.Entity;
+import funativity.age.util.Geometry3f;
+
+/**
+ * A convex polygon used as a collision boundary. Like CollisionAAB, polygons
+ * are flat on the x-y plane and collide at any z.
+ *
+ * The polygon turns with its entity's z rotation, plus an angle of its own,
+ * around its center (the entity's position plus the offset).
+ *
+ * Polygons are tested with the separating axis test. The last axis that kept
+ * this polygon apart from another shape is remembered and tried first the
+ * next time the two are tested, since shapes that were apart usually still
+ * are.
+ *
+ */
+public class CollisionPolygon extends CollisionShape
+{
+	// vertices relative to the center, as x, y pairs in counter-clockwise order
+	private float[] vertices;
+	private int vertexCount;
+
+	// extra rotation in degrees, on top of the entity's
+	private float angle;
+
+	// last separating axis found against hintShape. Only a hint, so threads
+	// testing at the same time can not make a test give the wrong answer.
+	private CollisionShape hintShape;
+	private int hintAxis;
+
+	/**
+	 * Creates a polygonal collision boundary.
+	 *
+	 * @param entity
+	 *            mesh container
+	 * @param listener
+	 *            event handler for collisions
+	 * @param vertices
+	 *            corners of the convex polygon relative to its center, as x, y
+	 *            pairs, in either winding order
+	 */
+	public CollisionPolygon(Entity entity, CollisionListener listener,
+			float[] vertices)
+	{
+		this(entity, listener, new Geometry3f(), vertices);
+	}
+
+	/**
+	 * Creates a polygonal collision boundary.
+	 *
+	 * @param entity
+	 *            mesh container
+	 * @param listener
+	 *            event handler for collisions
+	 * @param offset
+	 *            distance away from the entity's position
+	 * @param vertices
+	 *            corners of the convex polygon relative to its center, as x, y
+	 *            pairs, in either winding order
+	 */
+	public CollisionPolygon(Entity entity, CollisionListener listener,
+			Geometry3f offset, float[] vertices)
+	{
+		super(entity, listener, offset);
+		setVertices(vertices);
+	}
+
+	/**
+	 * Sets the corners of this polygon. The polygon must be convex.
+	 *
+	 * @param vertices
+	 *            corners of the polygon relative to its center, as x, y pairs,
+	 *            in either winding order
+	 */
+	public void setVertices(float[] vertices)
+	{
+		if (vertices == null || vertices.length < 6
+				|| vertices.length % 2 != 0)
+			throw new IllegalArgumentException(
+					"A polygon needs at least 3 x, y pairs");
+
+		int count = vertices.length / 2;
+		if (this.vertices == null || this.vertices.length != vertices.length)
+			this.vertices = new float[vertices.length];
+
+		// twice the signed area, negative if the corners go clockwise
+		float area = 0;
+		for (int i = 0; i < count; i++)
+		{
+			int j = (i + 1) % count;
+			area += vertices[i * 2] * vertices[j * 2 + 1] - vertices[j * 2]
+					* vertices[i * 2 + 1];
+		}
+
+		// keep the corners counter-clockwise, so edge normals point out
+		for (int i = 0; i < count; i++)
+		{
+			int from = area < 0 ? count - 1 - i : i;
+			this.vertices[i * 2] = vertices[from * 2];
+			this.vertices[i * 2 + 1] = vertices[from * 2 + 1];
+		}
+
+		vertexCount = count;
+		hintShape = null;
+	}
+
+	/**
+	 * Gets the number of corners of this polygon
+	 *
+	 * @return number of vertices
+	 */
+	public int getVertexCount()
+	{
+		return vertexCount;
+	}
+
+	/**
+	 * Gets the x value of a corner before rotating, relative to the center
+	 *
+	 * @param i
+	 *            which corner, counter-clockwise
+	 * @return x value of the corner
+	 */
+	public float getVertexX(int i)
+	{
+		return vertices[i * 2];
+	}
+
+	/**
+	 * Gets the y value of a corner before rotating, relative to the center
+	 *
+	 * @param i
+	 *            which corner, counter-clockwise
+	 * @return y value of the corner
+	 */
+	public float getVertexY(int i)
+	{
+		return vertices[i * 2 + 1];
+	}
+
+	/**
+	 * Gets the rotation of this polygon relative to its entity
+	 *
+	 * @return angle in degrees
+	 */
+	public float getAngle()
+	{
+		return angle;
+	}
+
+	/**
+	 * Sets the rotation of this polygon relative to its entity
+	 *
+	 * @param angle
+	 *            angle in degrees, counter-clockwise
+	 */
+	public void setAngle(float angle)
+	{
+		this.angle = angle;
+	}
+
+	/**
+	 * Gets how far this polygon is turned, including its entity's z rotation
+	 *
+	 * @return angle in degrees
+	 */
+	public float getRotation()
+	{
+		return angle + getEntity().getRZ();
+	}
+
+	@Override
+	public float getExtentX()
+	{
+		float radians = (float) Math.toRadians(getRotation());
+		float cos = (float) Math.cos(radians);
+		float sin = (float) Math.sin(radians);
+
+		float extent = 0;
+		for (int i = 0; i < vertexCount; i++)
+		{
+			float x = vertices[i * 2] * cos - vertices[i * 2 + 1] * sin;
+			extent = Math.max(extent, Math.abs(x));
+		}
+		return extent;
+	}
+
+	@Override
+	public float getExtentY()
+	{
+		float radians = (float) Math.toRadians(getRotation());
+		float cos = (float) Math.cos(radians);
+		float sin = (float) Math.sin(radians);
+
+		float extent = 0;
+		for (int i = 0; i < vertexCount; i++)
+		{
+			float y = vertices[i * 2] * sin + vertices[i * 2 + 1] * cos;
+			extent = Math.max(extent, Math.abs(y));
+		}
+		return extent;
+	}
+
+	// NOTE: polygons have no depth and collide at any z, so getExtentZ() is
+	// left unbounded
+
+	/**
+	 * Gets the last axis that separated this polygon from a shape
+	 *
+	 * @return the axis to try first, or -1 if there is none for the shape
+	 */
+	int getHint(CollisionShape other)
+	{
+		int axis = hintAxis;
+		return hintShape == other ? axis : -1;
+	}
+
+	/**
+	 * Remembers the axis that separated this polygon from a shape
+	 */
+	void setHint(CollisionShape other, int axis)
+	{
+		hintAxis = axis;
+		hintShape = other;
+	}
+}
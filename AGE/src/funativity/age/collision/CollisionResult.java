@@ -19,17 +19,22 @@ public class CollisionResult
 	 */
 	public static void swapVelocity(CollisionShape shape1, CollisionShape shape2)
 	{
-		// Swap the vectors for the shape's entities.
-		Geometry3f velocity1 = new Geometry3f(shape1.getEntity().getVelocity());
-		Geometry3f velocity2 = new Geometry3f(shape2.getEntity().getVelocity());
-		shape1.getEntity().setVelocity(velocity2);
-		shape2.getEntity().setVelocity(velocity1);
+		// Swap the components in place, so nothing is allocated per collision.
+		Geometry3f velocity1 = shape1.getEntity().getVelocity();
+		Geometry3f velocity2 = shape2.getEntity().getVelocity();
+		float x = velocity1.getX();
+		float y = velocity1.getY();
+		float z = velocity1.getZ();
+		velocity1.set(velocity2);
+		velocity2.set(x, y, z);
 	}
 
 	/**
 	 * Creates an event handler that uses intersection for checking all
 	 * collisions and responds by swapping the velocities of each collision
-	 * boundary's entity.
+	 * boundary's entity. This ignores mass, restitution and how far the
+	 * shapes overlap, so shapes can sink into each other; see
+	 * getImpulseListener for a response that does not.
 	 * 
 	 * @return collision event handler
 	 */
@@ -54,4 +59,36 @@ public class CollisionResult
 
 		return listener;
 	}
+
+	/**
+	 * Creates an event handler that uses intersection for checking all
+	 * collisions and responds by handing the pair to the ContactSolver of the
+	 * first shape's CollisionManager. The shapes are pushed apart by their
+	 * masses and bounce by their restitution once every pair has been tested.
+	 * 
+	 * @return collision event handler
+	 */
+	public static CollisionListener getImpulseListener()
+	{
+		CollisionListener listener = new CollisionListener()
+		{
+			@Override
+			public boolean isCollide(CollisionShape shape1,
+					CollisionShape shape2, float delta)
+			{
+				return shape1.isIntersect(shape2);
+			}
+
+			@Override
+			public void onCollide(CollisionShape shape1, CollisionShape shape2,
+					float delta)
+			{
+				CollisionManager manager = shape1.getManager();
+				if (manager != null)
+					manager.getContactSolver().addContact(shape1, shape2);
+			}
+		};
+
+		return listener;
+	}
 }
\ No newline at end of file
@@ -11,6 +11,9 @@ import funativity.age.util.Geometry3f;
  */
 public abstract class CollisionShape
 {
+	/** Mask that collides with every category */
+	public static final int ALL_CATEGORIES = -1;
+
 	// Constructor.
 	private Entity entity;
 	private CollisionListener listener;
@@ -20,6 +23,41 @@ public abstract class CollisionShape
 	private CollisionManager manager;
 	private List<CollisionShape> children;
 
+	// how far this shape will move this frame, set by the CollisionManager
+	// for layers using continuous collision detection
+	private float sweepX, sweepY, sweepZ;
+
+	// which categories this shape is in, and which categories it collides with
+	private int categoryBits = 1;
+	private int maskBits = ALL_CATEGORIES;
+
+	// how hard this shape is to push, and how much it bounces, for the
+	// ContactSolver
+	private float mass = 1;
+	private float restitution;
+
+	// index of this shape's class in the CollisionDispatcher's table
+	private final int shapeId = CollisionDispatcher.getShapeId(getClass());
+
+	// where this shape is in its CollisionManager, kept by the manager.
+	// layerSlot is the shape's index in its layer's list, -1 if it is in none
+	int layerNum;
+	int layerSlot = -1;
+	boolean layerStatic;
+
+	// change waiting for the CollisionManager's next updateLists
+	boolean queued;
+	boolean pendingAdd;
+	int pendingLayer;
+	boolean pendingStatic;
+
+	// contact island this frame, and the next shape in the ring of shapes
+	// that fell asleep together (null while awake), kept by the manager
+	CollisionShape islandParent;
+	boolean islandAwake;
+	CollisionShape islandNext;
+	int wokenFrame;
+
 	/**
 	 * Creates a collision boundary.
 	 * 
@@ -160,6 +198,163 @@ public abstract class CollisionShape
 		return this;
 	}
 
+	/**
+	 * Gets the x value of this shape's center, including the offset
+	 *
+	 * @return center on x-axis
+	 */
+	public float getCenterX()
+	{
+		return entity.getX() + offset.getX();
+	}
+
+	/**
+	 * Gets the y value of this shape's center, including the offset
+	 *
+	 * @return center on y-axis
+	 */
+	public float getCenterY()
+	{
+		return entity.getY() + offset.getY();
+	}
+
+	/**
+	 * Gets the z value of this shape's center, including the offset
+	 *
+	 * @return center on z-axis
+	 */
+	public float getCenterZ()
+	{
+		return entity.getZ() + offset.getZ();
+	}
+
+	/**
+	 * Gets how far this shape reaches from its center along the x-axis. This
+	 * is used by a Broadphase to bound the shape. Shapes that do not know their
+	 * size return Float.POSITIVE_INFINITY, which keeps them a candidate against
+	 * every other shape.
+	 *
+	 * @return half of the width of this shape's bounds
+	 */
+	public float getExtentX()
+	{
+		return Float.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Gets how far this shape reaches from its center along the y-axis. See
+	 * getExtentX().
+	 *
+	 * @return half of the height of this shape's bounds
+	 */
+	public float getExtentY()
+	{
+		return Float.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Gets how far this shape reaches from its center along the z-axis. See
+	 * getExtentX().
+	 *
+	 * @return half of the depth of this shape's bounds
+	 */
+	public float getExtentZ()
+	{
+		return Float.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Gets the x value of the center of this shape's bounds, stretched to cover
+	 * where the shape moves this frame. If the shape's CollisionManager wraps
+	 * the world around, the center is moved into the world.
+	 *
+	 * @return center of the swept bounds on x-axis
+	 */
+	public float getBoundsCenterX()
+	{
+		float center = getCenterX() + sweepX / 2f;
+		return manager == null ? center : manager.wrapX(center);
+	}
+
+	/**
+	 * Gets the y value of the center of this shape's bounds, stretched to cover
+	 * where the shape moves this frame
+	 *
+	 * @return center of the swept bounds on y-axis
+	 */
+	public float getBoundsCenterY()
+	{
+		float center = getCenterY() + sweepY / 2f;
+		return manager == null ? center : manager.wrapY(center);
+	}
+
+	/**
+	 * Gets the z value of the center of this shape's bounds, stretched to cover
+	 * where the shape moves this frame
+	 *
+	 * @return center of the swept bounds on z-axis
+	 */
+	public float getBoundsCenterZ()
+	{
+		float center = getCenterZ() + sweepZ / 2f;
+		return manager == null ? center : manager.wrapZ(center);
+	}
+
+	/**
+	 * Gets how far this shape's bounds reach from their center along the
+	 * x-axis, stretched to cover where the shape moves this frame. This is what
+	 * a Broadphase uses to bound the shape.
+	 *
+	 * @return half of the width of the swept bounds
+	 */
+	public float getBoundsExtentX()
+	{
+		return getExtentX() + Math.abs(sweepX) / 2f;
+	}
+
+	/**
+	 * Gets how far this shape's bounds reach from their center along the
+	 * y-axis. See getBoundsExtentX().
+	 *
+	 * @return half of the height of the swept bounds
+	 */
+	public float getBoundsExtentY()
+	{
+		return getExtentY() + Math.abs(sweepY) / 2f;
+	}
+
+	/**
+	 * Gets how far this shape's bounds reach from their center along the
+	 * z-axis. See getBoundsExtentX().
+	 *
+	 * @return half of the depth of the swept bounds
+	 */
+	public float getBoundsExtentZ()
+	{
+		return getExtentZ() + Math.abs(sweepZ) / 2f;
+	}
+
+	/**
+	 * Sets how far this shape will move this frame, which stretches its
+	 * bounds. Set by the CollisionManager on layers that use continuous
+	 * collision detection.
+	 *
+	 * @param x
+	 *            distance moved along the x-axis
+	 * @param y
+	 *            distance moved along the y-axis
+	 * @param z
+	 *            distance moved along the z-axis
+	 * @return this
+	 */
+	public CollisionShape setSweep(float x, float y, float z)
+	{
+		sweepX = x;
+		sweepY = y;
+		sweepZ = z;
+		return this;
+	}
+
 	/**
 	 * Gets the CollisionManager of this CollisionShape
 	 * 
@@ -210,6 +405,8 @@ public abstract class CollisionShape
 
 	/**
 	 * Calculates the distance between two shape centers, including any offsets.
+	 * In a CollisionManager whose world wraps around, this is the distance the
+	 * shortest way around.
 	 * 
 	 * @param shape1
 	 *            first collision boundary
@@ -220,31 +417,207 @@ public abstract class CollisionShape
 	 */
 	public static float getDistance(CollisionShape shape1, CollisionShape shape2)
 	{
-		Geometry3f position1 = shape1.getEntity().getPosition();
-		Geometry3f position2 = shape2.getEntity().getPosition();
-		Geometry3f offset1 = shape1.getOffset();
-		Geometry3f offset2 = shape2.getOffset();
-		Geometry3f adjusted1 = Geometry3f.add(position1, offset1);
-		Geometry3f adjusted2 = Geometry3f.add(position2, offset2);
-		float distance = Geometry3f.distance(adjusted1, adjusted2);
-		return distance;
+		return (float) Math.sqrt(getDistanceSquared(shape1, shape2));
+	}
+
+	/**
+	 * Calculates the square of the distance between two shape centers,
+	 * including any offsets. Cheaper than getDistance when only comparing
+	 * distances.
+	 * 
+	 * @param shape1
+	 *            first collision boundary
+	 * @param shape2
+	 *            second collision boundary
+	 * @return
+	 * 		  Squared distance between the shape centers
+	 */
+	public static float getDistanceSquared(CollisionShape shape1,
+			CollisionShape shape2)
+	{
+		float dx = CollisionDetect.getOffsetX(shape1, shape2);
+		float dy = CollisionDetect.getOffsetY(shape1, shape2);
+		float dz = CollisionDetect.getOffsetZ(shape1, shape2);
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	/**
+	 * Checks if this shape's entity is sleeping
+	 * 
+	 * @return true if the entity is sleeping
+	 */
+	public boolean isSleeping()
+	{
+		return entity != null && entity.isSleeping();
+	}
+
+	/**
+	 * Checks if this shape can not move: its entity is sleeping, or it is a
+	 * static shape in a CollisionManager. Pairs of resting shapes are not
+	 * tested.
+	 */
+	boolean isResting()
+	{
+		return (layerStatic && layerSlot >= 0) || isSleeping();
+	}
+
+	/**
+	 * Gets the categories this shape is in
+	 * 
+	 * @return bit n set if the shape is in category n
+	 */
+	public int getCategoryBits()
+	{
+		return categoryBits;
+	}
+
+	/**
+	 * Sets the categories this shape is in, such as player, enemy or pickup.
+	 * Shapes start in category 0 only.
+	 * 
+	 * @param categoryBits
+	 *            bit n set to put the shape in category n
+	 * @return this
+	 */
+	public CollisionShape setCategoryBits(int categoryBits)
+	{
+		this.categoryBits = categoryBits;
+		return this;
+	}
+
+	/**
+	 * Gets the categories this shape collides with
+	 * 
+	 * @return bit n set if the shape collides with category n
+	 */
+	public int getMaskBits()
+	{
+		return maskBits;
+	}
+
+	/**
+	 * Sets the categories this shape collides with. Shapes start colliding
+	 * with every category.
+	 * 
+	 * @param maskBits
+	 *            bit n set to collide with category n, or ALL_CATEGORIES
+	 * @return this
+	 */
+	public CollisionShape setMaskBits(int maskBits)
+	{
+		this.maskBits = maskBits;
+		return this;
+	}
+
+	/**
+	 * Checks whether the categories of two shapes let them collide. Both
+	 * shapes must be in a category the other collides with. The
+	 * CollisionManager never tests pairs that can not collide.
+	 * 
+	 * @param other
+	 *            second collision boundary
+	 * @return true if the shapes' categories and masks let them collide
+	 */
+	public boolean canCollideWith(CollisionShape other)
+	{
+		return (categoryBits & other.maskBits) != 0
+				&& (other.categoryBits & maskBits) != 0;
+	}
+
+	/**
+	 * Gets the mass the ContactSolver uses for this shape
+	 * 
+	 * @return mass, or 0 if the shape can not be pushed
+	 */
+	public float getMass()
+	{
+		return mass;
+	}
+
+	/**
+	 * Sets the mass the ContactSolver uses for this shape. Shapes start with a
+	 * mass of 1. Static shapes and sleeping shapes are never pushed, whatever
+	 * their mass.
+	 * 
+	 * @param mass
+	 *            mass of the shape, or 0 to never push it
+	 * @return this
+	 */
+	public CollisionShape setMass(float mass)
+	{
+		this.mass = mass;
+		return this;
+	}
+
+	/**
+	 * Gets how much this shape bounces
+	 * 
+	 * @return restitution from 0 to 1
+	 */
+	public float getRestitution()
+	{
+		return restitution;
+	}
+
+	/**
+	 * Sets how much this shape bounces off other shapes. The ContactSolver
+	 * uses the bouncier of the two shapes in a pair. Shapes start with a
+	 * restitution of 0.
+	 * 
+	 * @param restitution
+	 *            0 to stop along the contact normal, 1 to bounce back at the
+	 *            same speed
+	 * @return this
+	 */
+	public CollisionShape setRestitution(float restitution)
+	{
+		this.restitution = restitution;
+		return this;
+	}
+
+	/**
+	 * Gets one over the mass of this shape, or 0 if it can not be pushed
+	 * right now
+	 */
+	float getInverseMass()
+	{
+		if (mass <= 0 || isResting())
+			return 0;
+
+		return 1 / mass;
 	}
 
 	/**
-	 * Determines whether two collision boundaries are overlapping.
+	 * Gets the id CollisionDispatcher uses to pick the tests for this shape
+	 * 
+	 * @return shape id of this shape's class, or
+	 *         CollisionDispatcher.UNKNOWN_SHAPE
+	 */
+	public int getShapeId()
+	{
+		return shapeId;
+	}
+
+	/**
+	 * Determines whether two collision boundaries are overlapping. Uses the
+	 * test registered with CollisionDispatcher for the two shapes.
 	 * 
 	 * @param other
 	 *            second collision boundary
 	 * @return true if the collision boundaries are compatible and intersecting,
 	 *         false otherwise
 	 */
-	public abstract boolean isIntersect(CollisionShape other);
+	public boolean isIntersect(CollisionShape other)
+	{
+		return CollisionDispatcher.isIntersect(this, other);
+	}
 
 	/**
 	 * Determines whether two collision boundaries will overlap in the next
-	 * frame. This is done by dividing the delta by a number of segments to
-	 * determine the amount of positions to check, and incrementally checking
-	 * each of these positions for an intersection.
+	 * frame. Shapes that CollisionDetect.timeOfImpact knows are swept exactly,
+	 * and segments is ignored. Other shapes are checked by dividing the delta
+	 * by a number of segments to determine the amount of positions to check,
+	 * and incrementally checking each of these positions for an intersection.
 	 * 
 	 * @param other
 	 *            second collision boundary
@@ -257,6 +630,13 @@ public abstract class CollisionShape
 	 */
 	public boolean willIntersect(CollisionShape other, float delta, int segments)
 	{
+		// Use the exact test when there is one.
+		float time = CollisionDetect.timeOfImpact(this, other, delta);
+		if (!Float.isNaN(time))
+		{
+			return time >= 0;
+		}
+
 		// Arbitrary argument check for division by 0.
 		if (segments <= 0)
 		{
@@ -329,13 +709,7 @@ public abstract class CollisionShape
 		if (listener != null && listener.isCollide(this, other, delta))
 		{
 			// Check any children before returning.
-			if (children != null)
-			{
-				for (CollisionShape child : children)
-				{
-					child.testCollision(other, delta);
-				}
-			}
+			checkChildren(other, delta);
 
 			// Collision detected.
 			return true;
@@ -345,6 +719,26 @@ public abstract class CollisionShape
 		return false;
 	}
 
+	/**
+	 * Tests the children of this shape against another shape, as
+	 * checkCollision does once the listener detects a collision
+	 * 
+	 * @param other
+	 *            second collision boundary
+	 * @param delta
+	 *            time since last update (in seconds)
+	 */
+	void checkChildren(CollisionShape other, float delta)
+	{
+		if (children != null)
+		{
+			for (int i = 0; i < children.size(); i++)
+			{
+				children.get(i).testCollision(other, delta);
+			}
+		}
+	}
+
 	/**
 	 * Checks if two shapes are colliding and triggers the collision event
 	 * handler.
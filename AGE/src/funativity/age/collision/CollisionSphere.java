@@ -68,18 +68,20 @@ public class CollisionSphere extends CollisionShape
 	}
 
 	@Override
-	public boolean isIntersect(CollisionShape other)
+	public float getExtentX()
 	{
-		if (getClass() == other.getClass())
-		{
-			// Same shape collision.
-			CollisionSphere that = (CollisionSphere) other;
-			return CollisionDetect.isIntersectSpheres(this, that);
-		}
-		else
-		{
-			// Assume the other shape handles it.
-			return other.isIntersect(this);
-		}
+		return radius;
+	}
+
+	@Override
+	public float getExtentY()
+	{
+		return radius;
+	}
+
+	@Override
+	public float getExtentZ()
+	{
+		return radius;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,202 @@
+package funativity.age.collision;
+
+/**
+ * A pair of shapes tracked by the CollisionManager between frames. Contacts
+ * are passed to ContactListeners, and can hold data about the pair for as long
+ * as the shapes keep touching.
+ * 
+ * Contacts are reused once the CollisionManager stops tracking their pair, so
+ * a listener should not keep a Contact after onCollisionExit.
+ * 
+ */
+public class Contact
+{
+	private CollisionShape shape1;
+	private CollisionShape shape2;
+	private Object userData;
+
+	// whether the shapes touched the last time they were tested
+	private boolean touching;
+
+	// number of frames in a row the shapes have touched
+	private int frames;
+
+	// last frame the pair was tested
+	int lastFrame;
+
+	// index in the CollisionManager's list of contacts
+	int index;
+
+	// how far apart the shapes were when last tested, and where their centers
+	// were at the time
+	private float separation;
+	private float x1, y1, z1, x2, y2, z2;
+
+	/**
+	 * Creates a contact between two shapes
+	 * 
+	 * @param shape1
+	 *            first shape, whose listener is used
+	 * @param shape2
+	 *            second shape
+	 */
+	Contact(CollisionShape shape1, CollisionShape shape2)
+	{
+		set(shape1, shape2);
+	}
+
+	/**
+	 * Gets the first shape of the pair
+	 * 
+	 * @return the shape whose listener is used
+	 */
+	public CollisionShape getShape1()
+	{
+		return shape1;
+	}
+
+	/**
+	 * Gets the second shape of the pair
+	 * 
+	 * @return the other shape
+	 */
+	public CollisionShape getShape2()
+	{
+		return shape2;
+	}
+
+	/**
+	 * Gets the data attached to this contact
+	 * 
+	 * @return data set with setUserData, or null
+	 */
+	public Object getUserData()
+	{
+		return userData;
+	}
+
+	/**
+	 * Attaches data to this contact. The data is kept until the shapes stop
+	 * touching.
+	 * 
+	 * @param userData
+	 *            any data about the pair
+	 */
+	public void setUserData(Object userData)
+	{
+		this.userData = userData;
+	}
+
+	/**
+	 * Gets whether the shapes were touching the last time they were tested
+	 * 
+	 * @return true if touching
+	 */
+	public boolean isTouching()
+	{
+		return touching;
+	}
+
+	/**
+	 * Gets how many frames in a row the shapes have been touching
+	 * 
+	 * @return 1 on the frame they start touching, 0 if they are not touching
+	 */
+	public int getFrames()
+	{
+		return frames;
+	}
+
+	/**
+	 * Sets the pair of shapes, so a probe can be reused to look up contacts
+	 */
+	void set(CollisionShape shape1, CollisionShape shape2)
+	{
+		this.shape1 = shape1;
+		this.shape2 = shape2;
+	}
+
+	/**
+	 * Clears everything known about the pair, so the contact can be reused for
+	 * another pair of shapes
+	 */
+	void reset(CollisionShape shape1, CollisionShape shape2)
+	{
+		set(shape1, shape2);
+		userData = null;
+		touching = false;
+		frames = 0;
+		lastFrame = 0;
+		separation = 0;
+	}
+
+	/**
+	 * Records whether the shapes touched this frame
+	 * 
+	 * @return true if they were not touching before
+	 */
+	boolean touch(boolean touching)
+	{
+		boolean started = touching && !this.touching;
+
+		this.touching = touching;
+		frames = touching ? frames + 1 : 0;
+		return started;
+	}
+
+	/**
+	 * Remembers how far apart the shapes are now
+	 */
+	void updateSeparation()
+	{
+		separation = CollisionDetect.getSeparation(shape1, shape2);
+		x1 = shape1.getCenterX();
+		y1 = shape1.getCenterY();
+		z1 = shape1.getCenterZ();
+		x2 = shape2.getCenterX();
+		y2 = shape2.getCenterY();
+		z2 = shape2.getCenterZ();
+	}
+
+	/**
+	 * Checks if the shapes are certainly still apart without testing them.
+	 * They are if they were apart by more than the distance they have moved
+	 * since then.
+	 * 
+	 * @return true if the shapes can not be touching
+	 */
+	boolean isStillApart()
+	{
+		if (separation <= 0)
+			return false;
+
+		float moved = length(shape1.getCenterX() - x1,
+				shape1.getCenterY() - y1, shape1.getCenterZ() - z1)
+				+ length(shape2.getCenterX() - x2, shape2.getCenterY() - y2,
+						shape2.getCenterZ() - z2);
+
+		return moved < separation;
+	}
+
+	private static float length(float x, float y, float z)
+	{
+		return (float) Math.sqrt(x * x + y * y + z * z);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return System.identityHashCode(shape1) * 31
+				+ System.identityHashCode(shape2);
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (!(o instanceof Contact))
+			return false;
+
+		Contact other = (Contact) o;
+		return shape1 == other.shape1 && shape2 == other.shape2;
+	}
+}
@@ -0,0 +1,181 @@
+package funativity.age.collision;
+
+import java.util.Arrays;
+
+/**
+ * The contacts a CollisionManager keeps between frames. Contacts are looked up
+ * by their pair of shapes in an open addressing hash table, and kept in a
+ * list so they can be walked in order. Removed contacts are pooled and reused,
+ * so once the cache has grown to the most contacts the game needs, adding and
+ * removing contacts does not allocate anything.
+ *
+ */
+class ContactCache
+{
+	// starting capacity of the list, the table is twice as big
+	private static final int DEFAULT_CAPACITY = 32;
+
+	// hash table, null where empty. Its length is always a power of two.
+	private Contact[] table = new Contact[DEFAULT_CAPACITY * 2];
+
+	// contacts in the order they were added, each knowing its index
+	private Contact[] list = new Contact[DEFAULT_CAPACITY];
+	private int count;
+
+	// removed contacts, waiting to be reused
+	private Contact[] pool = new Contact[DEFAULT_CAPACITY];
+	private int poolCount;
+
+	/**
+	 * Gets the number of contacts in the cache
+	 */
+	int size()
+	{
+		return count;
+	}
+
+	/**
+	 * Gets a contact by its index in the list
+	 */
+	Contact get(int i)
+	{
+		return list[i];
+	}
+
+	/**
+	 * Finds the contact for a pair of shapes
+	 *
+	 * @return the contact, or null if the pair is not cached
+	 */
+	Contact get(CollisionShape shape1, CollisionShape shape2)
+	{
+		int mask = table.length - 1;
+		for (int slot = hash(shape1, shape2) & mask;; slot = (slot + 1) & mask)
+		{
+			Contact contact = table[slot];
+			if (contact == null)
+				return null;
+
+			if (contact.getShape1() == shape1 && contact.getShape2() == shape2)
+				return contact;
+		}
+	}
+
+	/**
+	 * Adds a contact for a pair of shapes that is not cached yet
+	 *
+	 * @return the new contact, not touching
+	 */
+	Contact add(CollisionShape shape1, CollisionShape shape2)
+	{
+		if ((count + 1) * 2 > table.length)
+		{
+			grow();
+		}
+
+		Contact contact;
+		if (poolCount > 0)
+		{
+			contact = pool[--poolCount];
+			pool[poolCount] = null;
+			contact.reset(shape1, shape2);
+		}
+		else
+		{
+			contact = new Contact(shape1, shape2);
+		}
+
+		contact.index = count;
+		list[count++] = contact;
+		insert(contact);
+		return contact;
+	}
+
+	/**
+	 * Removes a contact, moving the last contact in the list into its place.
+	 * The contact is reused by a later add.
+	 */
+	void remove(Contact contact)
+	{
+		Contact last = list[--count];
+		list[count] = null;
+		if (last != contact)
+		{
+			list[contact.index] = last;
+			last.index = contact.index;
+		}
+
+		delete(contact);
+
+		if (poolCount == pool.length)
+		{
+			pool = Arrays.copyOf(pool, poolCount * 2);
+		}
+
+		contact.reset(null, null);
+		pool[poolCount++] = contact;
+	}
+
+	private void insert(Contact contact)
+	{
+		int mask = table.length - 1;
+		int slot = hash(contact.getShape1(), contact.getShape2()) & mask;
+		while (table[slot] != null)
+		{
+			slot = (slot + 1) & mask;
+		}
+
+		table[slot] = contact;
+	}
+
+	/**
+	 * Takes a contact out of the table, shifting later contacts back so no
+	 * lookup runs into the hole it leaves
+	 */
+	private void delete(Contact contact)
+	{
+		int mask = table.length - 1;
+		int hole = hash(contact.getShape1(), contact.getShape2()) & mask;
+		while (table[hole] != contact)
+		{
+			hole = (hole + 1) & mask;
+		}
+
+		for (int slot = (hole + 1) & mask; table[slot] != null; slot = (slot + 1)
+				& mask)
+		{
+			Contact next = table[slot];
+			int home = hash(next.getShape1(), next.getShape2()) & mask;
+
+			// move it back if the hole is between its home slot and where it is
+			if (((slot - home) & mask) >= ((slot - hole) & mask))
+			{
+				table[hole] = next;
+				hole = slot;
+			}
+		}
+
+		table[hole] = null;
+	}
+
+	private void grow()
+	{
+		table = new Contact[table.length * 2];
+		list = Arrays.copyOf(list, table.length / 2);
+
+		for (int i = 0; i < count; i++)
+		{
+			insert(list[i]);
+		}
+	}
+
+	private static int hash(CollisionShape shape1, CollisionShape shape2)
+	{
+		int hash = System.identityHashCode(shape1) * 31
+				+ System.identityHashCode(shape2);
+
+		// spread the bits, since the low bits of identity hashes are poor
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+}
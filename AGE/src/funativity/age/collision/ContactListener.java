@@ -0,0 +1,47 @@
+package funativity.age.collision;
+
+/**
+ * A collision event handler that is also told when two shapes start touching,
+ * keep touching, and stop touching. The CollisionManager keeps a Contact for
+ * each touching pair between frames, which can hold data about the pair.
+ * 
+ * A pair is touching while isCollide returns true for it. Pairs the
+ * CollisionManager already knows are too far apart to touch are skipped
+ * without calling isCollide, so isCollide should only return true for shapes
+ * that intersect.
+ * 
+ */
+public interface ContactListener extends CollisionListener
+{
+	/**
+	 * Called the first frame two shapes are touching, after onCollide.
+	 * 
+	 * @param contact
+	 *            the pair of shapes
+	 * @param delta
+	 *            time since last update (in seconds)
+	 */
+	public void onCollisionEnter(Contact contact, float delta);
+
+	/**
+	 * Called every frame after the first that two shapes are still touching,
+	 * after onCollide.
+	 * 
+	 * @param contact
+	 *            the pair of shapes
+	 * @param delta
+	 *            time since last update (in seconds)
+	 */
+	public void onCollisionStay(Contact contact, float delta);
+
+	/**
+	 * Called the first frame two shapes that were touching no longer are,
+	 * including when either shape was removed from the CollisionManager.
+	 * 
+	 * @param contact
+	 *            the pair of shapes
+	 * @param delta
+	 *            time since last update (in seconds)
+	 */
+	public void onCollisionExit(Contact contact, float delta);
+}
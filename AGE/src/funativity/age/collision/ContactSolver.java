@@ -0,0 +1,305 @@
+package funativity.age.collision;
+
+import java.util.Arrays;
+
+import funativity.age.opengl.Entity;
+
+/**
+ * Pushes touching shapes apart with impulses, taking each shape's mass and
+ * restitution into account. Listeners hand it the pairs that should respond,
+ * usually through CollisionResult.getImpulseListener, and the
+ * CollisionManager solves them at the end of checkForCollisions.
+ *
+ * The velocities of each pair are corrected one pair at a time, and the pass
+ * is repeated a few times so that stacks and piles settle. Afterwards the
+ * shapes are moved apart by most of how far they overlap, so they do not sink
+ * into each other and keep colliding frame after frame.
+ *
+ * Only the pairs added this frame are solved, so the cost depends on how many
+ * shapes are touching, not how many there are. Static and sleeping shapes are
+ * never pushed. Once its buffers have grown to fit the most pairs touching at
+ * once, the solver does not allocate anything.
+ *
+ */
+public class ContactSolver
+{
+	/** Number of passes over the pairs, unless set otherwise */
+	public static final int DEFAULT_ITERATIONS = 8;
+
+	/** Part of the overlap removed each frame, unless set otherwise */
+	public static final float DEFAULT_CORRECTION = 0.8f;
+
+	/** Overlap left alone so resting shapes keep touching, by default */
+	public static final float DEFAULT_SLOP = 0.01f;
+
+	private int iterations = DEFAULT_ITERATIONS;
+	private float correction = DEFAULT_CORRECTION;
+	private float slop = DEFAULT_SLOP;
+
+	// pairs added this frame, and what is known about each of them
+	private CollisionShape[] shapes1 = new CollisionShape[16];
+	private CollisionShape[] shapes2 = new CollisionShape[16];
+	private float[] normalX = new float[16];
+	private float[] normalY = new float[16];
+	private float[] normalZ = new float[16];
+	private float[] depth = new float[16];
+	private float[] inverseMass1 = new float[16];
+	private float[] inverseMass2 = new float[16];
+	private float[] bounce = new float[16];
+	private float[] impulse = new float[16];
+	private int count;
+
+	// number of pairs solved by the last solve
+	private int solvedCount;
+
+	// reused to get each pair's normal from CollisionDetect
+	private final float[] normal = new float[3];
+
+	/**
+	 * Adds a pair of touching shapes to be pushed apart at the end of the
+	 * frame. Pairs that can not be pushed, because neither shape can move or
+	 * there is no direction to push them in, are ignored.
+	 *
+	 * @param shape1
+	 *            first collision boundary
+	 * @param shape2
+	 *            second collision boundary
+	 */
+	public void addContact(CollisionShape shape1, CollisionShape shape2)
+	{
+		if (shape1.getEntity() == shape2.getEntity())
+			return;
+
+		float inverse1 = shape1.getInverseMass();
+		float inverse2 = shape2.getInverseMass();
+		if (inverse1 + inverse2 == 0)
+			return;
+
+		float overlap = CollisionDetect.getPenetration(shape1, shape2, normal);
+		if (normal[0] == 0 && normal[1] == 0 && normal[2] == 0)
+			return;
+
+		if (count == shapes1.length)
+			grow();
+
+		shapes1[count] = shape1;
+		shapes2[count] = shape2;
+		normalX[count] = normal[0];
+		normalY[count] = normal[1];
+		normalZ[count] = normal[2];
+		depth[count] = overlap;
+		inverseMass1[count] = inverse1;
+		inverseMass2[count] = inverse2;
+		impulse[count] = 0;
+
+		// bounce back along the normal at a part of the closing speed
+		float closing = getNormalVelocity(count);
+		float restitution = Math.max(shape1.getRestitution(),
+				shape2.getRestitution());
+		bounce[count] = closing < 0 ? -restitution * closing : 0;
+
+		count++;
+	}
+
+	/**
+	 * Pushes apart every pair added since the last call, then forgets them.
+	 * Called by the CollisionManager at the end of checkForCollisions.
+	 *
+	 * @param delta
+	 *            time since last update (in seconds)
+	 */
+	public void solve(float delta)
+	{
+		for (int iteration = 0; iteration < iterations; iteration++)
+		{
+			for (int i = 0; i < count; i++)
+			{
+				solveVelocity(i);
+			}
+		}
+
+		for (int i = 0; i < count; i++)
+		{
+			correctPosition(i);
+		}
+
+		solvedCount = count;
+		Arrays.fill(shapes1, 0, count, null);
+		Arrays.fill(shapes2, 0, count, null);
+		count = 0;
+	}
+
+	/**
+	 * Changes the velocities of a pair so they stop closing along the
+	 * normal, or bounce apart. The total impulse applied to the pair over
+	 * every pass is kept from pulling the shapes together.
+	 */
+	private void solveVelocity(int i)
+	{
+		float velocity = getNormalVelocity(i);
+		float inverseMass = inverseMass1[i] + inverseMass2[i];
+
+		float change = (bounce[i] - velocity) / inverseMass;
+		float total = Math.max(impulse[i] + change, 0);
+		change = total - impulse[i];
+		impulse[i] = total;
+
+		if (change == 0)
+			return;
+
+		applyVelocity(shapes1[i].getEntity(), -change * inverseMass1[i], i);
+		applyVelocity(shapes2[i].getEntity(), change * inverseMass2[i], i);
+	}
+
+	/**
+	 * Moves a pair apart by part of how far they overlap, split by their
+	 * masses
+	 */
+	private void correctPosition(int i)
+	{
+		float overlap = depth[i] - slop;
+		if (overlap <= 0)
+			return;
+
+		float inverseMass = inverseMass1[i] + inverseMass2[i];
+		float push = overlap * correction / inverseMass;
+
+		applyPosition(shapes1[i].getEntity(), -push * inverseMass1[i], i);
+		applyPosition(shapes2[i].getEntity(), push * inverseMass2[i], i);
+	}
+
+	/**
+	 * Speed the second shape of a pair moves away from the first along the
+	 * normal, negative if they are closing
+	 */
+	private float getNormalVelocity(int i)
+	{
+		Entity entity1 = shapes1[i].getEntity();
+		Entity entity2 = shapes2[i].getEntity();
+
+		return (entity2.getDX() - entity1.getDX()) * normalX[i]
+				+ (entity2.getDY() - entity1.getDY()) * normalY[i]
+				+ (entity2.getDZ() - entity1.getDZ()) * normalZ[i];
+	}
+
+	private void applyVelocity(Entity entity, float amount, int i)
+	{
+		if (amount == 0)
+			return;
+
+		entity.setDX(entity.getDX() + normalX[i] * amount);
+		entity.setDY(entity.getDY() + normalY[i] * amount);
+		entity.setDZ(entity.getDZ() + normalZ[i] * amount);
+	}
+
+	private void applyPosition(Entity entity, float amount, int i)
+	{
+		if (amount == 0)
+			return;
+
+		entity.setX(entity.getX() + normalX[i] * amount);
+		entity.setY(entity.getY() + normalY[i] * amount);
+		entity.setZ(entity.getZ() + normalZ[i] * amount);
+	}
+
+	private void grow()
+	{
+		int capacity = shapes1.length * 2;
+		shapes1 = Arrays.copyOf(shapes1, capacity);
+		shapes2 = Arrays.copyOf(shapes2, capacity);
+		normalX = Arrays.copyOf(normalX, capacity);
+		normalY = Arrays.copyOf(normalY, capacity);
+		normalZ = Arrays.copyOf(normalZ, capacity);
+		depth = Arrays.copyOf(depth, capacity);
+		inverseMass1 = Arrays.copyOf(inverseMass1, capacity);
+		inverseMass2 = Arrays.copyOf(inverseMass2, capacity);
+		bounce = Arrays.copyOf(bounce, capacity);
+		impulse = Arrays.copyOf(impulse, capacity);
+	}
+
+	/**
+	 * Gets the number of pairs waiting to be solved
+	 *
+	 * @return pairs added since the last solve
+	 */
+	public int getContactCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Gets the number of pairs pushed apart by the last solve
+	 *
+	 * @return pairs solved
+	 */
+	public int getSolvedCount()
+	{
+		return solvedCount;
+	}
+
+	/**
+	 * Gets the number of passes made over the pairs
+	 *
+	 * @return iterations per solve
+	 */
+	public int getIterations()
+	{
+		return iterations;
+	}
+
+	/**
+	 * Sets the number of passes made over the pairs. More passes let stacks
+	 * of shapes settle better, at the cost of more time per pair.
+	 *
+	 * @param iterations
+	 *            passes per solve, at least 1
+	 */
+	public void setIterations(int iterations)
+	{
+		this.iterations = Math.max(1, iterations);
+	}
+
+	/**
+	 * Gets the part of the overlap removed each frame
+	 *
+	 * @return correction from 0 to 1
+	 */
+	public float getCorrection()
+	{
+		return correction;
+	}
+
+	/**
+	 * Sets the part of the overlap removed each frame. Removing all of it at
+	 * once makes resting shapes jitter.
+	 *
+	 * @param correction
+	 *            0 to never move shapes apart, 1 to remove all of the overlap
+	 */
+	public void setCorrection(float correction)
+	{
+		this.correction = correction;
+	}
+
+	/**
+	 * Gets how far shapes may overlap before they are moved apart
+	 *
+	 * @return overlap left alone
+	 */
+	public float getSlop()
+	{
+		return slop;
+	}
+
+	/**
+	 * Sets how far shapes may overlap before they are moved apart, so shapes
+	 * resting on each other keep touching from frame to frame
+	 *
+	 * @param slop
+	 *            overlap left alone
+	 */
+	public void setSlop(float slop)
+	{
+		this.slop = slop;
+	}
+}
@@ -0,0 +1,721 @@
+package funativity.age.collision;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A Broadphase that keeps the shapes of a layer in a dynamic bounding volume
+ * tree. Each leaf holds a "fat" box a little bigger than its shape. A shape is
+ * only moved in the tree when it leaves its fat box, so layers where most
+ * shapes stand still (walls, tiles, grid cells) cost almost nothing to keep up
+ * to date.
+ *
+ * Pairs are found by querying the tree with the bounds of each shape. Shapes
+ * whose entity is sleeping are not refit or used to query, so pairs of two
+ * sleeping shapes are never found. Based on the dynamic tree from Box2D (Erin
+ * Catto).
+ *
+ */
+public class DynamicTreeBroadphase implements PackedBroadphase
+{
+	// marks no node
+	private static final int NULL_NODE = -1;
+
+	// fat boxes grow by this much of the shape's size on each side
+	private static final float DEFAULT_FAT_RATIO = 0.25f;
+
+	private final float fatRatio;
+
+	// node pool. Bounds are the fat box for leaves, and the union of both
+	// children for branches
+	private float[] minX, minY, minZ, maxX, maxY, maxZ;
+	private int[] parent;
+	private int[] child1;
+	private int[] child2;
+	private int[] height;
+	private int[] shapeIndex;
+	private int capacity;
+	private int root = NULL_NODE;
+	private int freeList = NULL_NODE;
+
+	// leaf node holding each shape in the layer, by layer index
+	private int[] leaves = new int[16];
+	private int count;
+
+	// tight bounds of each shape this frame, by layer index
+	private float[] tightMinX = new float[16];
+	private float[] tightMinY = new float[16];
+	private float[] tightMinZ = new float[16];
+	private float[] tightMaxX = new float[16];
+	private float[] tightMaxY = new float[16];
+	private float[] tightMaxZ = new float[16];
+
+	// whether each shape's entity was sleeping this frame, by layer index
+	private boolean[] sleeping = new boolean[16];
+
+	// reused for walking the tree
+	private int[] stack = new int[64];
+
+	// shapes found by the last query
+	private int[] results = new int[16];
+	private int resultCount;
+
+	/**
+	 * Creates a tree where fat boxes grow by a quarter of the shape's size on
+	 * each side
+	 */
+	public DynamicTreeBroadphase()
+	{
+		this(DEFAULT_FAT_RATIO);
+	}
+
+	/**
+	 * Creates a tree using the specified fattening.
+	 *
+	 * @param fatRatio
+	 *            how much bigger than its shape a fat box is on each side, as a
+	 *            fraction of the shape's size. Larger values mean shapes are
+	 *            moved in the tree less often, but more pairs are tested.
+	 */
+	public DynamicTreeBroadphase(float fatRatio)
+	{
+		this.fatRatio = fatRatio < 0 ? 0 : fatRatio;
+		allocateNodes(16);
+	}
+
+	/**
+	 * Gets the height of the tree. A balanced tree has a height around log2 of
+	 * the number of shapes.
+	 *
+	 * @return height of the root node, 0 for an empty tree
+	 */
+	public int getHeight()
+	{
+		return root == NULL_NODE ? 0 : height[root];
+	}
+
+	@Override
+	public void add(CollisionShape shape)
+	{
+		if (count == leaves.length)
+		{
+			int size = leaves.length * 2;
+			leaves = Arrays.copyOf(leaves, size);
+			tightMinX = Arrays.copyOf(tightMinX, size);
+			tightMinY = Arrays.copyOf(tightMinY, size);
+			tightMinZ = Arrays.copyOf(tightMinZ, size);
+			tightMaxX = Arrays.copyOf(tightMaxX, size);
+			tightMaxY = Arrays.copyOf(tightMaxY, size);
+			tightMaxZ = Arrays.copyOf(tightMaxZ, size);
+			sleeping = Arrays.copyOf(sleeping, size);
+		}
+
+		int leaf = allocateNode();
+		shapeIndex[leaf] = count;
+		readTightBounds(shape, count);
+		sleeping[count] = false;
+		setFatBounds(leaf, count);
+		insertLeaf(leaf);
+
+		leaves[count++] = leaf;
+	}
+
+	@Override
+	public void remove(int index)
+	{
+		if (index < 0 || index >= count)
+			return;
+
+		int leaf = leaves[index];
+		removeLeaf(leaf);
+		freeNode(leaf);
+
+		// the last shape in the layer moved into the removed one's index
+		count--;
+		if (index != count)
+		{
+			int moved = leaves[count];
+			leaves[index] = moved;
+			shapeIndex[moved] = index;
+
+			tightMinX[index] = tightMinX[count];
+			tightMinY[index] = tightMinY[count];
+			tightMinZ[index] = tightMinZ[count];
+			tightMaxX[index] = tightMaxX[count];
+			tightMaxY[index] = tightMaxY[count];
+			tightMaxZ[index] = tightMaxZ[count];
+			sleeping[index] = sleeping[count];
+		}
+	}
+
+	@Override
+	public void findPairs(List<CollisionShape> shapes, CollisionPairs pairs)
+	{
+		// only shapes that left their fat box move in the tree
+		for (int i = 0; i < count; i++)
+		{
+			// sleeping shapes have not moved
+			CollisionShape shape = shapes.get(i);
+			sleeping[i] = shape.isSleeping();
+			if (sleeping[i])
+				continue;
+
+			readTightBounds(shape, i);
+			refitLeaf(i);
+		}
+
+		queryPairs(pairs);
+	}
+
+	@Override
+	public void findPairs(PackedShapes shapes, CollisionPairs pairs)
+	{
+		for (int i = 0; i < count; i++)
+		{
+			sleeping[i] = shapes.sleeping[i];
+			if (sleeping[i])
+				continue;
+
+			setTightBounds(i, shapes.centerX[i], shapes.centerY[i],
+					shapes.centerZ[i], shapes.extentX[i], shapes.extentY[i],
+					shapes.extentZ[i]);
+			refitLeaf(i);
+		}
+
+		queryPairs(pairs);
+	}
+
+	/**
+	 * Moves a shape's leaf in the tree if it left its fat box
+	 */
+	private void refitLeaf(int index)
+	{
+		int leaf = leaves[index];
+		if (!containsTight(leaf, index))
+		{
+			removeLeaf(leaf);
+			setFatBounds(leaf, index);
+			insertLeaf(leaf);
+		}
+	}
+
+	/**
+	 * Queries the tree with the tight bounds of each awake shape
+	 */
+	private void queryPairs(CollisionPairs pairs)
+	{
+		// query the tree with each awake shape, only keeping pairs where the
+		// other shape is later in the layer or sleeping, so each pair is found
+		// once
+		for (int i = 0; i < count; i++)
+		{
+			if (sleeping[i])
+				continue;
+
+			int top = 0;
+			if (root != NULL_NODE)
+				stack[top++] = root;
+
+			while (top > 0)
+			{
+				int node = stack[--top];
+
+				if (!overlapsNode(node, i))
+					continue;
+
+				if (child1[node] == NULL_NODE)
+				{
+					int other = shapeIndex[node];
+					if ((other > i || sleeping[other])
+							&& overlapsTight(other, i))
+					{
+						pairs.add(i, other);
+					}
+				}
+				else
+				{
+					if (top + 2 > stack.length)
+						stack = Arrays.copyOf(stack, stack.length * 2);
+
+					stack[top++] = child1[node];
+					stack[top++] = child2[node];
+				}
+			}
+		}
+	}
+
+	@Override
+	public int query(List<CollisionShape> shapes, float minX, float minY,
+			float minZ, float maxX, float maxY, float maxZ)
+	{
+		resultCount = 0;
+
+		int top = 0;
+		if (root != NULL_NODE)
+			stack[top++] = root;
+
+		// fat boxes still cover shapes that moved a little since findPairs
+		while (top > 0)
+		{
+			int node = stack[--top];
+
+			if (this.minX[node] > maxX || minX > this.maxX[node]
+					|| this.minY[node] > maxY || minY > this.maxY[node]
+					|| this.minZ[node] > maxZ || minZ > this.maxZ[node])
+				continue;
+
+			if (child1[node] == NULL_NODE)
+			{
+				addResult(shapeIndex[node]);
+			}
+			else
+			{
+				if (top + 2 > stack.length)
+					stack = Arrays.copyOf(stack, stack.length * 2);
+
+				stack[top++] = child1[node];
+				stack[top++] = child2[node];
+			}
+		}
+
+		return resultCount;
+	}
+
+	@Override
+	public int getResult(int i)
+	{
+		return results[i];
+	}
+
+	/**
+	 * Store the current bounds of a shape
+	 */
+	private void readTightBounds(CollisionShape shape, int index)
+	{
+		setTightBounds(index, shape.getBoundsCenterX(),
+				shape.getBoundsCenterY(), shape.getBoundsCenterZ(),
+				shape.getBoundsExtentX(), shape.getBoundsExtentY(),
+				shape.getBoundsExtentZ());
+	}
+
+	private void setTightBounds(int index, float x, float y, float z,
+			float ex, float ey, float ez)
+	{
+		tightMinX[index] = x - ex;
+		tightMinY[index] = y - ey;
+		tightMinZ[index] = z - ez;
+		tightMaxX[index] = x + ex;
+		tightMaxY[index] = y + ey;
+		tightMaxZ[index] = z + ez;
+	}
+
+	/**
+	 * Set a leaf's fat box from the tight bounds of its shape
+	 */
+	private void setFatBounds(int leaf, int index)
+	{
+		// grow by the largest known size of the shape
+		float size = Math.max(finiteLength(tightMinX[index], tightMaxX[index]),
+				Math.max(finiteLength(tightMinY[index], tightMaxY[index]),
+						finiteLength(tightMinZ[index], tightMaxZ[index])));
+		float margin = size * fatRatio;
+
+		minX[leaf] = tightMinX[index] - margin;
+		minY[leaf] = tightMinY[index] - margin;
+		minZ[leaf] = tightMinZ[index] - margin;
+		maxX[leaf] = tightMaxX[index] + margin;
+		maxY[leaf] = tightMaxY[index] + margin;
+		maxZ[leaf] = tightMaxZ[index] + margin;
+	}
+
+	/**
+	 * Check if a node's box fully contains the tight bounds of a shape
+	 */
+	private boolean containsTight(int node, int index)
+	{
+		return minX[node] <= tightMinX[index] && tightMaxX[index] <= maxX[node]
+				&& minY[node] <= tightMinY[index]
+				&& tightMaxY[index] <= maxY[node]
+				&& minZ[node] <= tightMinZ[index]
+				&& tightMaxZ[index] <= maxZ[node];
+	}
+
+	/**
+	 * Check if a node's box overlaps the tight bounds of a shape
+	 */
+	private boolean overlapsNode(int node, int index)
+	{
+		return minX[node] <= tightMaxX[index] && tightMinX[index] <= maxX[node]
+				&& minY[node] <= tightMaxY[index]
+				&& tightMinY[index] <= maxY[node]
+				&& minZ[node] <= tightMaxZ[index]
+				&& tightMinZ[index] <= maxZ[node];
+	}
+
+	/**
+	 * Check if the tight bounds of two shapes overlap
+	 */
+	private boolean overlapsTight(int index1, int index2)
+	{
+		return tightMinX[index1] <= tightMaxX[index2]
+				&& tightMinX[index2] <= tightMaxX[index1]
+				&& tightMinY[index1] <= tightMaxY[index2]
+				&& tightMinY[index2] <= tightMaxY[index1]
+				&& tightMinZ[index1] <= tightMaxZ[index2]
+				&& tightMinZ[index2] <= tightMaxZ[index1];
+	}
+
+	/**
+	 * Size of a box used to decide where leaves go. Unbounded axes (like the
+	 * depth of a CollisionAAB) are left out, so they don't swamp the cost.
+	 */
+	private float perimeter(float x0, float y0, float z0, float x1, float y1,
+			float z1)
+	{
+		return finiteLength(x0, x1) + finiteLength(y0, y1)
+				+ finiteLength(z0, z1);
+	}
+
+	private float perimeter(int node)
+	{
+		return perimeter(minX[node], minY[node], minZ[node], maxX[node],
+				maxY[node], maxZ[node]);
+	}
+
+	private float unionPerimeter(int node1, int node2)
+	{
+		return perimeter(Math.min(minX[node1], minX[node2]),
+				Math.min(minY[node1], minY[node2]),
+				Math.min(minZ[node1], minZ[node2]),
+				Math.max(maxX[node1], maxX[node2]),
+				Math.max(maxY[node1], maxY[node2]),
+				Math.max(maxZ[node1], maxZ[node2]));
+	}
+
+	private static float finiteLength(float min, float max)
+	{
+		float length = max - min;
+		return Float.isInfinite(length) || Float.isNaN(length) ? 0 : length;
+	}
+
+	/**
+	 * Set a branch's box to the union of its children
+	 */
+	private void fitToChildren(int node)
+	{
+		int a = child1[node];
+		int b = child2[node];
+
+		minX[node] = Math.min(minX[a], minX[b]);
+		minY[node] = Math.min(minY[a], minY[b]);
+		minZ[node] = Math.min(minZ[a], minZ[b]);
+		maxX[node] = Math.max(maxX[a], maxX[b]);
+		maxY[node] = Math.max(maxY[a], maxY[b]);
+		maxZ[node] = Math.max(maxZ[a], maxZ[b]);
+		height[node] = 1 + Math.max(height[a], height[b]);
+	}
+
+	/**
+	 * Add a leaf to the tree next to the sibling that grows the tree the least
+	 */
+	private void insertLeaf(int leaf)
+	{
+		if (root == NULL_NODE)
+		{
+			root = leaf;
+			parent[root] = NULL_NODE;
+			return;
+		}
+
+		// find the best sibling
+		int index = root;
+		while (child1[index] != NULL_NODE)
+		{
+			int a = child1[index];
+			int b = child2[index];
+
+			float area = perimeter(index);
+			float combinedArea = unionPerimeter(index, leaf);
+
+			// cost of making a new parent for this node and the new leaf
+			float cost = 2 * combinedArea;
+
+			// minimum cost of pushing the leaf further down the tree
+			float inheritanceCost = 2 * (combinedArea - area);
+
+			float cost1 = descendCost(a, leaf) + inheritanceCost;
+			float cost2 = descendCost(b, leaf) + inheritanceCost;
+
+			if (cost < cost1 && cost < cost2)
+				break;
+
+			index = cost1 < cost2 ? a : b;
+		}
+
+		int sibling = index;
+
+		// make a new parent for the sibling and the leaf
+		int oldParent = parent[sibling];
+		int newParent = allocateNode();
+		parent[newParent] = oldParent;
+		child1[newParent] = sibling;
+		child2[newParent] = leaf;
+		parent[sibling] = newParent;
+		parent[leaf] = newParent;
+		fitToChildren(newParent);
+
+		if (oldParent == NULL_NODE)
+		{
+			root = newParent;
+		}
+		else if (child1[oldParent] == sibling)
+		{
+			child1[oldParent] = newParent;
+		}
+		else
+		{
+			child2[oldParent] = newParent;
+		}
+
+		refit(parent[leaf]);
+	}
+
+	/**
+	 * Cost of putting a leaf somewhere under a child node
+	 */
+	private float descendCost(int child, int leaf)
+	{
+		float combined = unionPerimeter(child, leaf);
+
+		if (child1[child] == NULL_NODE)
+			return combined;
+
+		return combined - perimeter(child);
+	}
+
+	/**
+	 * Take a leaf out of the tree. The leaf node is not freed.
+	 */
+	private void removeLeaf(int leaf)
+	{
+		if (leaf == root)
+		{
+			root = NULL_NODE;
+			return;
+		}
+
+		int oldParent = parent[leaf];
+		int grandParent = parent[oldParent];
+		int sibling = child1[oldParent] == leaf ? child2[oldParent]
+				: child1[oldParent];
+
+		if (grandParent == NULL_NODE)
+		{
+			root = sibling;
+			parent[sibling] = NULL_NODE;
+			freeNode(oldParent);
+			return;
+		}
+
+		// replace the parent with the sibling
+		if (child1[grandParent] == oldParent)
+		{
+			child1[grandParent] = sibling;
+		}
+		else
+		{
+			child2[grandParent] = sibling;
+		}
+		parent[sibling] = grandParent;
+		freeNode(oldParent);
+
+		refit(grandParent);
+	}
+
+	/**
+	 * Walk up from a node, balancing and fixing boxes and heights
+	 */
+	private void refit(int index)
+	{
+		while (index != NULL_NODE)
+		{
+			index = balance(index);
+			fitToChildren(index);
+			index = parent[index];
+		}
+	}
+
+	/**
+	 * Rotate a branch if one side is more than one level taller than the
+	 * other.
+	 *
+	 * @return the node now in the branch's place
+	 */
+	private int balance(int a)
+	{
+		if (child1[a] == NULL_NODE || height[a] < 2)
+			return a;
+
+		int b = child1[a];
+		int c = child2[a];
+		int diff = height[c] - height[b];
+
+		if (diff > 1)
+			return rotate(a, c, b);
+
+		if (diff < -1)
+			return rotate(a, b, c);
+
+		return a;
+	}
+
+	/**
+	 * Move the taller child of a up to replace a.
+	 *
+	 * @param a
+	 *            branch being balanced
+	 * @param tall
+	 *            the taller child of a
+	 * @param other
+	 *            the other child of a
+	 * @return the taller child, now in a's place
+	 */
+	private int rotate(int a, int tall, int other)
+	{
+		int f = child1[tall];
+		int g = child2[tall];
+
+		// tall takes a's place
+		child1[tall] = a;
+		parent[tall] = parent[a];
+		parent[a] = tall;
+
+		if (parent[tall] == NULL_NODE)
+		{
+			root = tall;
+		}
+		else if (child1[parent[tall]] == a)
+		{
+			child1[parent[tall]] = tall;
+		}
+		else
+		{
+			child2[parent[tall]] = tall;
+		}
+
+		// the taller grandchild stays under tall, the other moves under a
+		int keep = height[f] > height[g] ? f : g;
+		int move = keep == f ? g : f;
+
+		child2[tall] = keep;
+		if (child1[a] == tall)
+		{
+			child1[a] = move;
+		}
+		else
+		{
+			child2[a] = move;
+		}
+		parent[move] = a;
+
+		fitToChildren(a);
+		fitToChildren(tall);
+
+		return tall;
+	}
+
+	/**
+	 * Get a node from the pool
+	 */
+	private int allocateNode()
+	{
+		if (freeList == NULL_NODE)
+		{
+			int old = capacity;
+			allocateNodes(capacity * 2);
+
+			// link the new nodes into the free list
+			for (int i = old; i < capacity - 1; i++)
+			{
+				parent[i] = i + 1;
+			}
+			parent[capacity - 1] = NULL_NODE;
+			freeList = old;
+		}
+
+		int node = freeList;
+		freeList = parent[node];
+
+		parent[node] = NULL_NODE;
+		child1[node] = NULL_NODE;
+		child2[node] = NULL_NODE;
+		height[node] = 0;
+		shapeIndex[node] = NULL_NODE;
+		return node;
+	}
+
+	/**
+	 * Give a node back to the pool
+	 */
+	private void freeNode(int node)
+	{
+		parent[node] = freeList;
+		height[node] = -1;
+		freeList = node;
+	}
+
+	/**
+	 * Grow the node pool to the specified size
+	 */
+	private void allocateNodes(int size)
+	{
+		if (capacity == 0)
+		{
+			minX = new float[size];
+			minY = new float[size];
+			minZ = new float[size];
+			maxX = new float[size];
+			maxY = new float[size];
+			maxZ = new float[size];
+			parent = new int[size];
+			child1 = new int[size];
+			child2 = new int[size];
+			height = new int[size];
+			shapeIndex = new int[size];
+
+			// every node starts in the free list
+			for (int i = 0; i < size - 1; i++)
+			{
+				parent[i] = i + 1;
+			}
+			parent[size - 1] = NULL_NODE;
+			freeList = 0;
+		}
+		else
+		{
+			minX = Arrays.copyOf(minX, size);
+			minY = Arrays.copyOf(minY, size);
+			minZ = Arrays.copyOf(minZ, size);
+			maxX = Arrays.copyOf(maxX, size);
+			maxY = Arrays.copyOf(maxY, size);
+			maxZ = Arrays.copyOf(maxZ, size);
+			parent = Arrays.copyOf(parent, size);
+			child1 = Arrays.copyOf(child1, size);
+			child2 = Arrays.copyOf(child2, size);
+			height = Arrays.copyOf(height, size);
+			shapeIndex = Arrays.copyOf(shapeIndex, size);
+		}
+
+		capacity = size;
+	}
+
+	private void addResult(int index)
+	{
+		if (resultCount == results.length)
+		{
+			results = Arrays.copyOf(results, results.length * 2);
+		}
+
+		results[resultCount++] = index;
+	}
+}
@@ -0,0 +1,20 @@
+package funativity.age.collision;
+
+/**
+ * A Broadphase that can read the bounds of a layer's shapes from the
+ * PackedShapes of a CollisionManager, instead of asking each shape.
+ *
+ */
+interface PackedBroadphase extends Broadphase
+{
+	/**
+	 * Finds the pairs of shapes in a layer that could be touching, like
+	 * Broadphase.findPairs.
+	 *
+	 * @param shapes
+	 *            bounds of all shapes in the layer, as of this frame
+	 * @param pairs
+	 *            buffer to add the indices of each candidate pair to
+	 */
+	public void findPairs(PackedShapes shapes, CollisionPairs pairs);
+}
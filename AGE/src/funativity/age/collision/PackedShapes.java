@@ -0,0 +1,321 @@
+package funativity.age.collision;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The bounds and collision bits of a layer's shapes, copied into flat arrays
+ * once a frame. Reading a shape's bounds goes through its entity and offset,
+ * and the shapes of a layer are spread all over the heap; once copied, every
+ * loop over the layer walks a few arrays from start to end instead.
+ *
+ * Used by a CollisionManager with packed shapes turned on. Layers without a
+ * Broadphase pair up their shapes here, and the built in Broadphases read
+ * the bounds from here instead of from the shapes.
+ *
+ */
+final class PackedShapes
+{
+	// bounds of each shape by layer index, as center and half size
+	float[] centerX = new float[16];
+	float[] centerY = new float[16];
+	float[] centerZ = new float[16];
+	float[] extentX = new float[16];
+	float[] extentY = new float[16];
+	float[] extentZ = new float[16];
+
+	int[] categoryBits = new int[16];
+	int[] maskBits = new int[16];
+
+	// resting shapes are not paired with each other, sleeping shapes have not
+	// moved since they fell asleep
+	boolean[] resting = new boolean[16];
+	boolean[] sleeping = new boolean[16];
+
+	int count;
+
+	// the shapes sorted by the low end of their bounds along the x-axis,
+	// while pairing
+	private long[] order = new long[16];
+	private int[] sorted = new int[16];
+	private float[] sortedMinX = new float[16];
+
+	// size of the world along each axis while pairing, infinite where it
+	// does not wrap around
+	private float sizeX, sizeY, sizeZ;
+
+	/**
+	 * Copies the bounds and bits of every shape in a layer
+	 *
+	 * @param shapes
+	 *            all shapes in the layer
+	 */
+	void update(List<CollisionShape> shapes)
+	{
+		count = shapes.size();
+		if (count > centerX.length)
+			grow(count);
+
+		for (int i = 0; i < count; i++)
+		{
+			CollisionShape shape = shapes.get(i);
+			centerX[i] = shape.getBoundsCenterX();
+			centerY[i] = shape.getBoundsCenterY();
+			centerZ[i] = shape.getBoundsCenterZ();
+			extentX[i] = shape.getBoundsExtentX();
+			extentY[i] = shape.getBoundsExtentY();
+			extentZ[i] = shape.getBoundsExtentZ();
+			categoryBits[i] = shape.getCategoryBits();
+			maskBits[i] = shape.getMaskBits();
+			resting[i] = shape.isResting();
+			sleeping[i] = shape.isSleeping();
+		}
+	}
+
+	/**
+	 * Adds every pair of shapes whose bounds overlap and whose categories
+	 * collide, unless both are resting. The shapes are sorted by the low end
+	 * of their bounds along the x-axis, and each is only tested against the
+	 * shapes after it that start before it ends. Pairs are sorted before
+	 * returning, into the order the brute force loop would find them.
+	 *
+	 * @param pairs
+	 *            buffer to add the pairs to
+	 * @param width
+	 *            size of the world along the x-axis, 0 if it does not wrap
+	 * @param height
+	 *            size of the world along the y-axis, 0 if it does not wrap
+	 * @param depth
+	 *            size of the world along the z-axis, 0 if it does not wrap
+	 */
+	void findPairs(CollisionPairs pairs, float width, float height,
+			float depth)
+	{
+		setWorldSize(width, height, depth);
+		sortByMinX();
+
+		for (int p = 0; p < count; p++)
+		{
+			sweep(p, this, p + 1, p + count, pairs, false, false);
+		}
+		pairs.sort();
+	}
+
+	/**
+	 * Adds every pair between the shapes of this layer and another layer
+	 * that findPairs would, with this layer's shape first. Pairs are sorted
+	 * before returning.
+	 *
+	 * @param other
+	 *            shapes of the other layer
+	 * @param pairs
+	 *            buffer to add the pairs to
+	 */
+	void findCrossPairs(PackedShapes other, CollisionPairs pairs,
+			float width, float height, float depth)
+	{
+		setWorldSize(width, height, depth);
+		other.setWorldSize(width, height, depth);
+		sortByMinX();
+		other.sortByMinX();
+
+		// each pair is found from the shape that starts first, so sweep both
+		// ways. Shapes starting at the same x are found twice, and removed by
+		// the sort
+		sweepInto(other, pairs, false);
+		other.sweepInto(this, pairs, true);
+		pairs.sort();
+	}
+
+	/**
+	 * Sweeps each shape of this layer over the shapes of the other layer
+	 * that start at or after it
+	 */
+	private void sweepInto(PackedShapes other, CollisionPairs pairs,
+			boolean reversed)
+	{
+		int first = 0;
+		for (int p = 0; p < count; p++)
+		{
+			while (first < other.count
+					&& other.sortedMinX[first] < sortedMinX[p])
+				first++;
+			sweep(p, other, first, first + other.count, pairs, true,
+					reversed);
+		}
+	}
+
+	/**
+	 * Pairs the shape at sorted position p of this layer with the shapes of
+	 * a layer from sorted position start until stop, or until they start
+	 * after the shape ends. In a world that wraps along the x-axis, positions
+	 * past the other layer's count go around to its start again, one world
+	 * width further along.
+	 */
+	private void sweep(int p, PackedShapes other, int start, int stop,
+			CollisionPairs pairs, boolean cross, boolean reversed)
+	{
+		final int i = sorted[p];
+		final float x = centerX[i], y = centerY[i], z = centerZ[i];
+		final float ex = extentX[i], ey = extentY[i], ez = extentZ[i];
+		final int category = categoryBits[i], mask = maskBits[i];
+		final boolean rest = resting[i];
+		final float end = sortedMinX[p] + 2 * ex;
+
+		final float[] otherMinX = other.sortedMinX;
+		final int[] otherSorted = other.sorted;
+		final float[] otherX = other.centerX, otherY = other.centerY;
+		final float[] otherZ = other.centerZ;
+		final float[] otherEX = other.extentX, otherEY = other.extentY;
+		final float[] otherEZ = other.extentZ;
+		final int[] otherCategory = other.categoryBits;
+		final int[] otherMask = other.maskBits;
+		final boolean[] otherRest = other.resting;
+		final int otherCount = other.count;
+
+		for (int k = start; k < stop; k++)
+		{
+			// without wrapping the size is infinite, so the sweep ends at the
+			// last shape
+			int q = k < otherCount ? k : k - otherCount;
+			float minX = k < otherCount ? otherMinX[q] : otherMinX[q] + sizeX;
+			if (minX > end)
+				break;
+
+			int j = otherSorted[q];
+
+			// the other way around a wrapped world may be closer. Where it
+			// does not wrap, the size is infinite and the min keeps dx
+			float dx = Math.abs(otherX[j] - x);
+			float dy = Math.abs(otherY[j] - y);
+			float dz = Math.abs(otherZ[j] - z);
+			dx = Math.min(dx, sizeX - dx);
+			dy = Math.min(dy, sizeY - dy);
+			dz = Math.min(dz, sizeZ - dz);
+
+			// & instead of &&, so the whole test is one branch
+			boolean close = dx <= ex + otherEX[j] & dy <= ey + otherEY[j]
+					& dz <= ez + otherEZ[j];
+			boolean collides = (category & otherMask[j]) != 0
+					& (otherCategory[j] & mask) != 0 & !(rest & otherRest[j]);
+
+			if (close & collides)
+			{
+				if (!cross)
+					pairs.add(i, j);
+				else if (reversed)
+					pairs.addCrossLayer(j, i);
+				else
+					pairs.addCrossLayer(i, j);
+			}
+		}
+	}
+
+	/**
+	 * Sorts the shapes by the low end of their bounds along the x-axis, into
+	 * sorted and sortedMinX. In a world that wraps along the x-axis, the low
+	 * ends are first moved into [0, width).
+	 */
+	private void sortByMinX()
+	{
+		for (int i = 0; i < count; i++)
+		{
+			float minX = centerX[i] - extentX[i];
+			if (sizeX != Float.POSITIVE_INFINITY)
+				minX -= sizeX * (float) Math.floor(minX / sizeX);
+
+			// the low end in the high half and the index in the low half, so
+			// sorting the longs sorts the shapes
+			order[i] = (long) flip(Float.floatToIntBits(minX)) << 32 | i;
+		}
+
+		Sorting.sort(order, 0, count);
+
+		for (int p = 0; p < count; p++)
+		{
+			sorted[p] = (int) order[p];
+			sortedMinX[p] = Float.intBitsToFloat(flip((int) (order[p] >> 32)));
+		}
+	}
+
+	/**
+	 * Flips the bits of a negative float so floats sort in the same order as
+	 * their bits do as ints. Flipping twice gives the bits back.
+	 */
+	private static int flip(int bits)
+	{
+		return bits ^ (bits >> 31 & 0x7fffffff);
+	}
+
+	private void setWorldSize(float width, float height, float depth)
+	{
+		sizeX = width > 0 ? width : Float.POSITIVE_INFINITY;
+		sizeY = height > 0 ? height : Float.POSITIVE_INFINITY;
+		sizeZ = depth > 0 ? depth : Float.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Gets the box around a shape's bounds
+	 *
+	 * @param i
+	 *            index of the shape in the layer
+	 * @param box
+	 *            set to the box, laid out as in StaticShapeTree.getBounds
+	 */
+	void getBox(int i, float[] box)
+	{
+		box[0] = centerX[i] - extentX[i];
+		box[1] = centerY[i] - extentY[i];
+		box[2] = centerZ[i] - extentZ[i];
+		box[3] = centerX[i] + extentX[i];
+		box[4] = centerY[i] + extentY[i];
+		box[5] = centerZ[i] + extentZ[i];
+	}
+
+	/**
+	 * Gets the box around every shape's bounds
+	 *
+	 * @param bounds
+	 *            set to the box, laid out as in StaticShapeTree.getBounds
+	 */
+	void getBounds(float[] bounds)
+	{
+		float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+		float minZ = Float.POSITIVE_INFINITY, maxX = Float.NEGATIVE_INFINITY;
+		float maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+		for (int i = 0; i < count; i++)
+		{
+			minX = Math.min(minX, centerX[i] - extentX[i]);
+			minY = Math.min(minY, centerY[i] - extentY[i]);
+			minZ = Math.min(minZ, centerZ[i] - extentZ[i]);
+			maxX = Math.max(maxX, centerX[i] + extentX[i]);
+			maxY = Math.max(maxY, centerY[i] + extentY[i]);
+			maxZ = Math.max(maxZ, centerZ[i] + extentZ[i]);
+		}
+
+		bounds[0] = minX;
+		bounds[1] = minY;
+		bounds[2] = minZ;
+		bounds[3] = maxX;
+		bounds[4] = maxY;
+		bounds[5] = maxZ;
+	}
+
+	private void grow(int needed)
+	{
+		int capacity = Math.max(needed, centerX.length * 2);
+		centerX = Arrays.copyOf(centerX, capacity);
+		centerY = Arrays.copyOf(centerY, capacity);
+		centerZ = Arrays.copyOf(centerZ, capacity);
+		extentX = Arrays.copyOf(extentX, capacity);
+		extentY = Arrays.copyOf(extentY, capacity);
+		extentZ = Arrays.copyOf(extentZ, capacity);
+		categoryBits = Arrays.copyOf(categoryBits, capacity);
+		maskBits = Arrays.copyOf(maskBits, capacity);
+		resting = Arrays.copyOf(resting, capacity);
+		sleeping = Arrays.copyOf(sleeping, capacity);
+		order = new long[capacity];
+		sorted = new int[capacity];
+		sortedMinX = new float[capacity];
+	}
+}
@@ -0,0 +1,492 @@
+package funativity.age.collision;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Splits the collision tests of a CollisionManager layer across several
+ * threads. Only the first shape's CollisionListener.isCollide (or the swept
+ * tests, for continuous layers) runs on the other threads; the pairs it
+ * accepts are buffered and handed back in the same order the layer would have
+ * tested them in, so onCollide can be called on the calling thread without
+ * testing the pair again.
+ *
+ * isCollide must not change any state for this to be safe. The built in
+ * listeners only call isIntersect, and the built in shapes only read their
+ * entities, which do not move while the tests run. Polygons also remember
+ * which axis separated them last, but that only changes which axis is tried
+ * first, not the result.
+ *
+ */
+public class ParallelNarrowPhase
+{
+	// fewer tests than this are not worth handing to other threads
+	private static final int MIN_PARALLEL_TESTS = 256;
+
+	private final Executor executor;
+	private final Chunk[] chunks;
+
+	// pairs to test, for testCandidates
+	private CollisionShape[] candidates1 = new CollisionShape[64];
+	private CollisionShape[] candidates2 = new CollisionShape[64];
+	private int candidateCount;
+
+	// layer being tested by testAll
+	private List<CollisionShape> shapes;
+	private boolean testingAll;
+
+	private float delta;
+	private boolean continuous;
+
+	// pairs that collide, in order
+	private CollisionShape[] hits1 = new CollisionShape[64];
+	private CollisionShape[] hits2 = new CollisionShape[64];
+	private float[] hitTimes = new float[64];
+	private int hitCount;
+
+	// chunks still running, guarded by chunks
+	private int pending;
+	private RuntimeException failure;
+
+	/**
+	 * Creates a narrow phase that uses one task per processor
+	 *
+	 * @param executor
+	 *            runs the tasks. The calling thread always runs one task
+	 *            itself.
+	 */
+	public ParallelNarrowPhase(Executor executor)
+	{
+		this(executor, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a narrow phase
+	 *
+	 * @param executor
+	 *            runs the tasks. The calling thread always runs one task
+	 *            itself.
+	 * @param tasks
+	 *            number of pieces to split the tests into
+	 */
+	public ParallelNarrowPhase(Executor executor, int tasks)
+	{
+		if (executor == null)
+			throw new IllegalArgumentException("executor can not be null");
+
+		this.executor = executor;
+		chunks = new Chunk[Math.max(tasks, 1)];
+		for (int i = 0; i < chunks.length; i++)
+		{
+			chunks[i] = new Chunk();
+		}
+	}
+
+	/**
+	 * Creates an executor with daemon threads, suitable for a
+	 * ParallelNarrowPhase
+	 *
+	 * @param threads
+	 *            number of threads
+	 * @return a new fixed size thread pool
+	 */
+	public static ExecutorService createExecutor(int threads)
+	{
+		return Executors.newFixedThreadPool(threads, new ThreadFactory()
+		{
+			private int count;
+
+			@Override
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "AGE collision "
+						+ (++count));
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Gets the executor the tests are run on
+	 *
+	 * @return executor passed to the constructor
+	 */
+	public Executor getExecutor()
+	{
+		return executor;
+	}
+
+	/**
+	 * Removes all candidate pairs
+	 */
+	public void clear()
+	{
+		for (int i = 0; i < candidateCount; i++)
+		{
+			candidates1[i] = null;
+			candidates2[i] = null;
+		}
+
+		candidateCount = 0;
+	}
+
+	/**
+	 * Adds a pair for the next testCandidates call
+	 *
+	 * @param shape1
+	 *            first shape, whose listener will be used
+	 * @param shape2
+	 *            second shape
+	 */
+	public void addCandidate(CollisionShape shape1, CollisionShape shape2)
+	{
+		if (candidateCount == candidates1.length)
+		{
+			candidates1 = Arrays.copyOf(candidates1, candidateCount * 2);
+			candidates2 = Arrays.copyOf(candidates2, candidateCount * 2);
+		}
+
+		candidates1[candidateCount] = shape1;
+		candidates2[candidateCount] = shape2;
+		candidateCount++;
+	}
+
+	/**
+	 * Tests every candidate pair. The pairs that collide are kept in the
+	 * order they were added.
+	 *
+	 * @param delta
+	 *            Delta passed in from the scene
+	 * @param continuous
+	 *            true to use the swept tests
+	 */
+	public void testCandidates(float delta, boolean continuous)
+	{
+		testingAll = false;
+		run(candidateCount, candidateCount, delta, continuous);
+	}
+
+	/**
+	 * Tests every pair of shapes in a layer. The pairs that collide are kept
+	 * in the same order as the nested loop CollisionManager uses.
+	 *
+	 * @param shapes
+	 *            shapes in the layer
+	 * @param delta
+	 *            Delta passed in from the scene
+	 * @param continuous
+	 *            true to use the swept tests
+	 */
+	public void testAll(List<CollisionShape> shapes, float delta,
+			boolean continuous)
+	{
+		int count = shapes.size();
+
+		this.shapes = shapes;
+		testingAll = true;
+		run(count, (long) count * (count - 1) / 2, delta, continuous);
+		this.shapes = null;
+	}
+
+	/**
+	 * Gets the number of pairs that collided in the last test
+	 *
+	 * @return number of colliding pairs
+	 */
+	public int getHitCount()
+	{
+		return hitCount;
+	}
+
+	/**
+	 * Gets the first shape of a colliding pair
+	 *
+	 * @param i
+	 *            index of the pair
+	 * @return first shape
+	 */
+	public CollisionShape getHitFirst(int i)
+	{
+		return hits1[i];
+	}
+
+	/**
+	 * Gets the second shape of a colliding pair
+	 *
+	 * @param i
+	 *            index of the pair
+	 * @return second shape
+	 */
+	public CollisionShape getHitSecond(int i)
+	{
+		return hits2[i];
+	}
+
+	/**
+	 * Gets when the shapes of a colliding pair touch
+	 *
+	 * @param i
+	 *            index of the pair
+	 * @return time of impact, 0 unless the pair was swept
+	 */
+	public float getHitTime(int i)
+	{
+		return hitTimes[i];
+	}
+
+	/**
+	 * Splits items [0, items) into chunks of about the same number of tests
+	 * and runs them
+	 *
+	 * @param items
+	 *            candidates, or rows of the layer when testing all pairs
+	 * @param tests
+	 *            total number of tests
+	 */
+	private void run(int items, long tests, float delta, boolean continuous)
+	{
+		this.delta = delta;
+		this.continuous = continuous;
+
+		for (int i = 0; i < hitCount; i++)
+		{
+			hits1[i] = null;
+			hits2[i] = null;
+		}
+		hitCount = 0;
+
+		int used = tests < MIN_PARALLEL_TESTS ? 1 : chunks.length;
+
+		// give each chunk a run of items with about the same number of tests
+		int start = 0;
+		long done = 0;
+		for (int c = 0; c < used; c++)
+		{
+			int end = start;
+			if (c == used - 1)
+			{
+				end = items;
+			}
+			else
+			{
+				long target = tests * (c + 1) / used;
+				while (end < items && done < target)
+				{
+					done += testingAll ? items - 1 - end : 1;
+					end++;
+				}
+			}
+
+			chunks[c].start = start;
+			chunks[c].end = end;
+			chunks[c].hitCount = 0;
+			start = end;
+		}
+
+		synchronized (chunks)
+		{
+			pending = used - 1;
+			failure = null;
+		}
+
+		for (int c = 1; c < used; c++)
+		{
+			try
+			{
+				executor.execute(chunks[c]);
+			}
+			catch (RejectedExecutionException e)
+			{
+				// the executor is shut down or full, test it here instead
+				chunks[c].run();
+			}
+		}
+
+		// the calling thread does its share too, but still waits for the other
+		// chunks if it fails
+		try
+		{
+			chunks[0].test();
+		}
+		catch (RuntimeException e)
+		{
+			synchronized (chunks)
+			{
+				failure = e;
+			}
+		}
+
+		boolean interrupted = false;
+		synchronized (chunks)
+		{
+			while (pending > 0)
+			{
+				try
+				{
+					chunks.wait();
+				}
+				catch (InterruptedException e)
+				{
+					interrupted = true;
+				}
+			}
+		}
+
+		if (interrupted)
+			Thread.currentThread().interrupt();
+
+		if (failure != null)
+			throw failure;
+
+		// gather the hits in chunk order, which is the order they were tested
+		for (int c = 0; c < used; c++)
+		{
+			Chunk chunk = chunks[c];
+			for (int h = 0; h < chunk.hitCount; h++)
+			{
+				long hit = chunk.hits[h];
+				int first = (int) (hit >>> 32);
+				int second = (int) hit;
+
+				if (testingAll)
+					addHit(shapes.get(first), shapes.get(second),
+							chunk.times[h]);
+				else
+					addHit(candidates1[first], candidates2[first],
+							chunk.times[h]);
+			}
+		}
+	}
+
+	private void addHit(CollisionShape shape1, CollisionShape shape2,
+			float time)
+	{
+		if (hitCount == hits1.length)
+		{
+			hits1 = Arrays.copyOf(hits1, hitCount * 2);
+			hits2 = Arrays.copyOf(hits2, hitCount * 2);
+			hitTimes = Arrays.copyOf(hitTimes, hitCount * 2);
+		}
+
+		hits1[hitCount] = shape1;
+		hits2[hitCount] = shape2;
+		hitTimes[hitCount] = time;
+		hitCount++;
+	}
+
+	/**
+	 * Tests a pair with the first shape's isCollide, or sweeps it on a
+	 * continuous layer, where the calling thread calls isCollide once the
+	 * pair is known to touch
+	 *
+	 * @return time of impact, or NO_IMPACT if the shapes do not collide
+	 */
+	private float test(CollisionShape shape1, CollisionShape shape2)
+	{
+		if (!shape1.canCollideWith(shape2)
+				|| (shape1.isResting() && shape2.isResting()))
+			return CollisionDetect.NO_IMPACT;
+
+		if (continuous)
+		{
+			float time = CollisionDetect.timeOfImpact(shape1, shape2, delta);
+			if (!Float.isNaN(time))
+				return time;
+
+			// shapes without a swept test are only checked where they are now
+			return shape1.isIntersect(shape2) ? 0 : CollisionDetect.NO_IMPACT;
+		}
+
+		CollisionListener listener = shape1.getListener();
+		if (listener == null || !listener.isCollide(shape1, shape2, delta))
+			return CollisionDetect.NO_IMPACT;
+
+		return 0;
+	}
+
+	/**
+	 * A run of candidates or rows, tested by one thread
+	 */
+	private class Chunk implements Runnable
+	{
+		int start;
+		int end;
+
+		// colliding pairs, packed as (first << 32) | second for testAll, or as
+		// candidate index << 32 for testCandidates
+		long[] hits = new long[16];
+		float[] times = new float[16];
+		int hitCount;
+
+		@Override
+		public void run()
+		{
+			try
+			{
+				test();
+			}
+			catch (RuntimeException e)
+			{
+				synchronized (chunks)
+				{
+					failure = e;
+				}
+			}
+			finally
+			{
+				synchronized (chunks)
+				{
+					pending--;
+					chunks.notifyAll();
+				}
+			}
+		}
+
+		void test()
+		{
+			if (!testingAll)
+			{
+				for (int i = start; i < end; i++)
+				{
+					float time = ParallelNarrowPhase.this.test(candidates1[i],
+							candidates2[i]);
+					if (time >= 0)
+						add((long) i << 32, time);
+				}
+				return;
+			}
+
+			final int count = shapes.size();
+			for (int i = start; i < end; i++)
+			{
+				CollisionShape shape1 = shapes.get(i);
+				for (int j = i + 1; j < count; j++)
+				{
+					float time = ParallelNarrowPhase.this.test(shape1,
+							shapes.get(j));
+					if (time >= 0)
+						add(((long) i << 32) | j, time);
+				}
+			}
+		}
+
+		void add(long hit, float time)
+		{
+			if (hitCount == hits.length)
+			{
+				hits = Arrays.copyOf(hits, hitCount * 2);
+				times = Arrays.copyOf(times, hitCount * 2);
+			}
+
+			hits[hitCount] = hit;
+			times[hitCount] = time;
+			hitCount++;
+		}
+	}
+}
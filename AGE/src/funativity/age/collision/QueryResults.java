@@ -0,0 +1,142 @@
+package funativity.age.collision;
+
+/**
+ * A reusable buffer for the results of a CollisionManager query, such as a
+ * raycast. Results are kept sorted by distance, closest first. The buffer never
+ * grows; once it is full, only results closer than the farthest one are kept.
+ * 
+ */
+public class QueryResults
+{
+	private final CollisionShape[] shapes;
+	private final float[] distances;
+	private final int[] layers;
+	private int count;
+
+	/**
+	 * Creates an empty buffer
+	 * 
+	 * @param capacity
+	 *            most results kept by a query
+	 */
+	public QueryResults(int capacity)
+	{
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity must be positive");
+
+		shapes = new CollisionShape[capacity];
+		distances = new float[capacity];
+		layers = new int[capacity];
+	}
+
+	/**
+	 * Gets the most results this buffer can hold
+	 * 
+	 * @return capacity passed to the constructor
+	 */
+	public int getCapacity()
+	{
+		return shapes.length;
+	}
+
+	/**
+	 * Gets the number of results
+	 * 
+	 * @return number of shapes found by the last query
+	 */
+	public int getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Gets a shape found by the query
+	 * 
+	 * @param i
+	 *            index of the result, 0 is the closest
+	 * @return shape that was hit
+	 */
+	public CollisionShape getShape(int i)
+	{
+		return shapes[i];
+	}
+
+	/**
+	 * Gets how far away a result is. For raycasts this is the distance along
+	 * the ray to where the shape was hit, for other queries the distance from
+	 * the center of the query to the center of the shape.
+	 * 
+	 * @param i
+	 *            index of the result, 0 is the closest
+	 * @return distance to the shape
+	 */
+	public float getDistance(int i)
+	{
+		return distances[i];
+	}
+
+	/**
+	 * Gets the layer a result was found in
+	 * 
+	 * @param i
+	 *            index of the result, 0 is the closest
+	 * @return layer of the shape
+	 */
+	public int getLayer(int i)
+	{
+		return layers[i];
+	}
+
+	/**
+	 * Removes all results
+	 */
+	public void clear()
+	{
+		for (int i = 0; i < count; i++)
+		{
+			shapes[i] = null;
+		}
+
+		count = 0;
+	}
+
+	/**
+	 * Adds a result, keeping the results sorted by distance
+	 * 
+	 * @param shape
+	 *            shape that was found
+	 * @param distance
+	 *            how far away the shape is
+	 * @param layer
+	 *            layer the shape was found in
+	 */
+	void add(CollisionShape shape, float distance, int layer)
+	{
+		int i = count;
+		if (count == shapes.length)
+		{
+			// full, so drop the farthest result to make room
+			if (distance >= distances[count - 1])
+				return;
+
+			i--;
+		}
+		else
+		{
+			count++;
+		}
+
+		// shift farther results back
+		while (i > 0 && distances[i - 1] > distance)
+		{
+			shapes[i] = shapes[i - 1];
+			distances[i] = distances[i - 1];
+			layers[i] = layers[i - 1];
+			i--;
+		}
+
+		shapes[i] = shape;
+		distances[i] = distance;
+		layers[i] = layer;
+	}
+}
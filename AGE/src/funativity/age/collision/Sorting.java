@@ -0,0 +1,256 @@
+package funativity.age.collision;
+
+/**
+ * In place sorts for the collision buffers. Arrays.sort may allocate a work
+ * array when the data is already partly sorted, which the buffers often are
+ * from one frame to the next, so these are used instead to keep collision
+ * checks from allocating.
+ *
+ * Both sorts are introsorts: a quicksort that falls back to a heapsort if it
+ * keeps picking bad pivots, with an insertion sort for short ranges.
+ *
+ */
+final class Sorting
+{
+	// ranges shorter than this are insertion sorted
+	private static final int INSERTION_SORT_SIZE = 16;
+
+	private Sorting()
+	{
+	}
+
+	/**
+	 * Sorts a[from, to) into ascending order
+	 */
+	static void sort(long[] a, int from, int to)
+	{
+		sort(a, from, to - 1, depthLimit(to - from));
+	}
+
+	/**
+	 * Sorts a[from, to) into ascending order
+	 */
+	static void sort(int[] a, int from, int to)
+	{
+		sort(a, from, to - 1, depthLimit(to - from));
+	}
+
+	/**
+	 * Number of partitions allowed before giving up on the quicksort
+	 */
+	private static int depthLimit(int length)
+	{
+		int depth = 0;
+		for (int n = length; n > 1; n >>>= 1)
+		{
+			depth += 2;
+		}
+		return depth;
+	}
+
+	private static void sort(long[] a, int left, int right, int depth)
+	{
+		while (right - left >= INSERTION_SORT_SIZE)
+		{
+			if (depth-- == 0)
+			{
+				heapSort(a, left, right);
+				return;
+			}
+
+			// median of three, so sorted runs do not make bad pivots
+			int middle = (left + right) >>> 1;
+			if (a[middle] < a[left])
+				swap(a, left, middle);
+			if (a[right] < a[left])
+				swap(a, left, right);
+			if (a[right] < a[middle])
+				swap(a, middle, right);
+			long pivot = a[middle];
+
+			int i = left;
+			int j = right;
+			while (i <= j)
+			{
+				while (a[i] < pivot)
+					i++;
+				while (a[j] > pivot)
+					j--;
+
+				if (i <= j)
+				{
+					swap(a, i, j);
+					i++;
+					j--;
+				}
+			}
+
+			// recurse into the smaller side, so the stack stays shallow
+			if (j - left < right - i)
+			{
+				sort(a, left, j, depth);
+				left = i;
+			}
+			else
+			{
+				sort(a, i, right, depth);
+				right = j;
+			}
+		}
+
+		for (int i = left + 1; i <= right; i++)
+		{
+			long value = a[i];
+			int j = i - 1;
+			while (j >= left && a[j] > value)
+			{
+				a[j + 1] = a[j];
+				j--;
+			}
+			a[j + 1] = value;
+		}
+	}
+
+	private static void heapSort(long[] a, int left, int right)
+	{
+		int count = right - left + 1;
+		for (int i = count / 2 - 1; i >= 0; i--)
+		{
+			siftDown(a, left, i, count);
+		}
+
+		for (int end = count - 1; end > 0; end--)
+		{
+			swap(a, left, left + end);
+			siftDown(a, left, 0, end);
+		}
+	}
+
+	private static void siftDown(long[] a, int offset, int node, int count)
+	{
+		while (true)
+		{
+			int child = node * 2 + 1;
+			if (child >= count)
+				return;
+
+			if (child + 1 < count && a[offset + child + 1] > a[offset + child])
+				child++;
+
+			if (a[offset + node] >= a[offset + child])
+				return;
+
+			swap(a, offset + node, offset + child);
+			node = child;
+		}
+	}
+
+	private static void swap(long[] a, int i, int j)
+	{
+		long swap = a[i];
+		a[i] = a[j];
+		a[j] = swap;
+	}
+
+	private static void sort(int[] a, int left, int right, int depth)
+	{
+		while (right - left >= INSERTION_SORT_SIZE)
+		{
+			if (depth-- == 0)
+			{
+				heapSort(a, left, right);
+				return;
+			}
+
+			int middle = (left + right) >>> 1;
+			if (a[middle] < a[left])
+				swap(a, left, middle);
+			if (a[right] < a[left])
+				swap(a, left, right);
+			if (a[right] < a[middle])
+				swap(a, middle, right);
+			int pivot = a[middle];
+
+			int i = left;
+			int j = right;
+			while (i <= j)
+			{
+				while (a[i] < pivot)
+					i++;
+				while (a[j] > pivot)
+					j--;
+
+				if (i <= j)
+				{
+					swap(a, i, j);
+					i++;
+					j--;
+				}
+			}
+
+			if (j - left < right - i)
+			{
+				sort(a, left, j, depth);
+				left = i;
+			}
+			else
+			{
+				sort(a, i, right, depth);
+				right = j;
+			}
+		}
+
+		for (int i = left + 1; i <= right; i++)
+		{
+			int value = a[i];
+			int j = i - 1;
+			while (j >= left && a[j] > value)
+			{
+				a[j + 1] = a[j];
+				j--;
+			}
+			a[j + 1] = value;
+		}
+	}
+
+	private static void heapSort(int[] a, int left, int right)
+	{
+		int count = right - left + 1;
+		for (int i = count / 2 - 1; i >= 0; i--)
+		{
+			siftDown(a, left, i, count);
+		}
+
+		for (int end = count - 1; end > 0; end--)
+		{
+			swap(a, left, left + end);
+			siftDown(a, left, 0, end);
+		}
+	}
+
+	private static void siftDown(int[] a, int offset, int node, int count)
+	{
+		while (true)
+		{
+			int child = node * 2 + 1;
+			if (child >= count)
+				return;
+
+			if (child + 1 < count && a[offset + child + 1] > a[offset + child])
+				child++;
+
+			if (a[offset + node] >= a[offset + child])
+				return;
+
+			swap(a, offset + node, offset + child);
+			node = child;
+		}
+	}
+
+	private static void swap(int[] a, int i, int j)
+	{
+		int swap = a[i];
+		a[i] = a[j];
+		a[j] = swap;
+	}
+}
@@ -0,0 +1,420 @@
+package funativity.age.collision;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A Broadphase that places every shape into the cells of a uniform grid and
+ * only pairs up shapes that share a cell. Cells are hashed by their (x, y)
+ * coordinates, so the grid is unbounded and only uses memory for cells that
+ * hold shapes. Cells run the full length of the z-axis, because CollisionAAB
+ * boxes have no depth.
+ *
+ * Works best when most shapes are about the same size. The cell size should be
+ * around the size of the larger shapes; if no cell size is given one is picked
+ * every frame from the average shape size.
+ *
+ */
+public class SpatialHashBroadphase implements PackedBroadphase
+{
+	// used when picking a cell size from the size of the shapes
+	private static final float AUTO_CELL_SCALE = 2f;
+
+	// shapes that would cover more cells than this are treated as unbounded
+	private static final int MAX_CELLS_PER_SHAPE = 64;
+
+	// hash primes from "Optimized Spatial Hashing for Collision Detection of
+	// Deformable Objects" (Teschner et al.)
+	private static final int HASH_X = 73856093;
+	private static final int HASH_Y = 19349663;
+
+	private final float cellSize;
+
+	// each cell a shape covers, packed as (cell hash << 32) | shape index
+	private long[] entries = new long[64];
+	private int entryCount;
+
+	// indices of shapes without usable bounds
+	private int[] unbounded = new int[16];
+	private int unboundedCount;
+
+	// cell size used by the last findPairs, 0 before the first
+	private float builtCellSize;
+
+	// shapes found by the last query
+	private int[] results = new int[16];
+	private int resultCount;
+
+	/**
+	 * Creates a spatial hash that picks its cell size each frame from the
+	 * average size of the shapes in the layer.
+	 */
+	public SpatialHashBroadphase()
+	{
+		this(0);
+	}
+
+	/**
+	 * Creates a spatial hash using a fixed cell size.
+	 *
+	 * @param cellSize
+	 *            width and height of each grid cell. Values of 0 or less pick
+	 *            the size automatically.
+	 */
+	public SpatialHashBroadphase(float cellSize)
+	{
+		this.cellSize = cellSize;
+	}
+
+	/**
+	 * Gets the cell size this spatial hash was created with
+	 *
+	 * @return width and height of each grid cell, or 0 or less if it is picked
+	 *         automatically
+	 */
+	public float getCellSize()
+	{
+		return cellSize;
+	}
+
+	@Override
+	public void add(CollisionShape shape)
+	{
+		// the grid is rebuilt every frame
+	}
+
+	@Override
+	public void remove(int index)
+	{
+		// the grid is rebuilt every frame
+	}
+
+	@Override
+	public void findPairs(List<CollisionShape> shapes, CollisionPairs pairs)
+	{
+		final int count = shapes.size();
+		builtCellSize = pickCellSize(shapes);
+		final float inverseCell = 1f / builtCellSize;
+
+		entryCount = 0;
+		unboundedCount = 0;
+
+		for (int i = 0; i < count; i++)
+		{
+			CollisionShape shape = shapes.get(i);
+			addShape(i, shape.getBoundsCenterX(), shape.getBoundsCenterY(),
+					shape.getBoundsExtentX(), shape.getBoundsExtentY(),
+					inverseCell);
+		}
+
+		pairCells(count, pairs);
+	}
+
+	@Override
+	public void findPairs(PackedShapes shapes, CollisionPairs pairs)
+	{
+		final int count = shapes.count;
+		builtCellSize = pickCellSize(shapes);
+		final float inverseCell = 1f / builtCellSize;
+
+		entryCount = 0;
+		unboundedCount = 0;
+
+		for (int i = 0; i < count; i++)
+		{
+			addShape(i, shapes.centerX[i], shapes.centerY[i],
+					shapes.extentX[i], shapes.extentY[i], inverseCell);
+		}
+
+		pairCells(count, pairs);
+	}
+
+	/**
+	 * Puts a shape in every cell its bounds cover
+	 *
+	 * @param index
+	 *            index of the shape in the layer
+	 */
+	private void addShape(int index, float centerX, float centerY,
+			float extentX, float extentY, float inverseCell)
+	{
+		if (!isFinite(extentX) || !isFinite(extentY))
+		{
+			addUnbounded(index);
+			return;
+		}
+
+		int minX = floor((centerX - extentX) * inverseCell);
+		int maxX = floor((centerX + extentX) * inverseCell);
+		int minY = floor((centerY - extentY) * inverseCell);
+		int maxY = floor((centerY + extentY) * inverseCell);
+
+		// really big shapes are cheaper to test against everything
+		if ((long) (maxX - minX + 1) * (maxY - minY + 1) > MAX_CELLS_PER_SHAPE)
+		{
+			addUnbounded(index);
+			return;
+		}
+
+		for (int x = minX; x <= maxX; x++)
+		{
+			for (int y = minY; y <= maxY; y++)
+			{
+				addEntry(hash(x, y), index);
+			}
+		}
+	}
+
+	/**
+	 * Pairs up the shapes that share a cell, and the shapes without bounds
+	 * with everything
+	 *
+	 * @param count
+	 *            number of shapes in the layer
+	 */
+	private void pairCells(int count, CollisionPairs pairs)
+	{
+		// group the entries by cell
+		Sorting.sort(entries, 0, entryCount);
+
+		// pair up the shapes in each cell
+		int start = 0;
+		while (start < entryCount)
+		{
+			int cell = (int) (entries[start] >> 32);
+			int end = start + 1;
+			while (end < entryCount && (int) (entries[end] >> 32) == cell)
+			{
+				end++;
+			}
+
+			for (int a = start; a < end; a++)
+			{
+				for (int b = a + 1; b < end; b++)
+				{
+					pairs.add((int) entries[a], (int) entries[b]);
+				}
+			}
+
+			start = end;
+		}
+
+		// shapes without bounds could touch anything
+		for (int u = 0; u < unboundedCount; u++)
+		{
+			for (int i = 0; i < count; i++)
+			{
+				pairs.add(unbounded[u], i);
+			}
+		}
+	}
+
+	@Override
+	public int query(List<CollisionShape> shapes, float minX, float minY,
+			float minZ, float maxX, float maxY, float maxZ)
+	{
+		resultCount = 0;
+
+		int minCellX = 0, maxCellX = 0, minCellY = 0, maxCellY = 0;
+		boolean everything = builtCellSize <= 0;
+		if (!everything)
+		{
+			float inverseCell = 1f / builtCellSize;
+			minCellX = floor(minX * inverseCell);
+			maxCellX = floor(maxX * inverseCell);
+			minCellY = floor(minY * inverseCell);
+			maxCellY = floor(maxY * inverseCell);
+
+			// big boxes are cheaper to check against every shape
+			everything = !isFinite(minX) || !isFinite(maxX)
+					|| !isFinite(minY) || !isFinite(maxY)
+					|| (long) (maxCellX - minCellX + 1)
+							* (maxCellY - minCellY + 1) > MAX_CELLS_PER_SHAPE;
+		}
+
+		if (everything)
+		{
+			for (int i = 0; i < shapes.size(); i++)
+			{
+				addResult(i);
+			}
+			return resultCount;
+		}
+
+		for (int x = minCellX; x <= maxCellX; x++)
+		{
+			for (int y = minCellY; y <= maxCellY; y++)
+			{
+				int cell = hash(x, y);
+
+				// entries are sorted by cell, so find the first in this cell
+				int low = 0;
+				int high = entryCount;
+				long first = (long) cell << 32;
+				while (low < high)
+				{
+					int middle = (low + high) >>> 1;
+					if (entries[middle] < first)
+						low = middle + 1;
+					else
+						high = middle;
+				}
+
+				for (int e = low; e < entryCount
+						&& (int) (entries[e] >> 32) == cell; e++)
+				{
+					addResult((int) entries[e]);
+				}
+			}
+		}
+
+		for (int u = 0; u < unboundedCount; u++)
+		{
+			addResult(unbounded[u]);
+		}
+
+		// a shape in several cells is only reported once
+		Sorting.sort(results, 0, resultCount);
+		int unique = 0;
+		for (int i = 0; i < resultCount; i++)
+		{
+			if (unique == 0 || results[unique - 1] != results[i])
+				results[unique++] = results[i];
+		}
+		resultCount = unique;
+
+		return resultCount;
+	}
+
+	@Override
+	public int getResult(int i)
+	{
+		return results[i];
+	}
+
+	/**
+	 * Get the cell size to use this frame
+	 *
+	 * @param shapes
+	 *            all shapes in the layer
+	 * @return width and height of each grid cell
+	 */
+	private float pickCellSize(List<CollisionShape> shapes)
+	{
+		if (cellSize > 0)
+			return cellSize;
+
+		// use a multiple of the average shape size
+		float total = 0;
+		int bounded = 0;
+		for (int i = 0; i < shapes.size(); i++)
+		{
+			CollisionShape shape = shapes.get(i);
+			float size = Math.max(shape.getExtentX(), shape.getExtentY());
+			if (isFinite(size))
+			{
+				total += size;
+				bounded++;
+			}
+		}
+
+		float size = bounded == 0 ? 0 : total / bounded * AUTO_CELL_SCALE;
+		return size > 0 ? size : 1;
+	}
+
+	/**
+	 * Get the cell size to use this frame, from the packed bounds of the
+	 * shapes. In continuous layers the bounds include the sweep, which makes
+	 * the cells a little bigger than pickCellSize(List) would.
+	 *
+	 * @param shapes
+	 *            all shapes in the layer
+	 * @return width and height of each grid cell
+	 */
+	private float pickCellSize(PackedShapes shapes)
+	{
+		if (cellSize > 0)
+			return cellSize;
+
+		float total = 0;
+		int bounded = 0;
+		for (int i = 0; i < shapes.count; i++)
+		{
+			float size = Math.max(shapes.extentX[i], shapes.extentY[i]);
+			if (isFinite(size))
+			{
+				total += size;
+				bounded++;
+			}
+		}
+
+		float size = bounded == 0 ? 0 : total / bounded * AUTO_CELL_SCALE;
+		return size > 0 ? size : 1;
+	}
+
+	/**
+	 * Remember that a shape is in a cell
+	 *
+	 * @param cell
+	 *            hash of the cell
+	 * @param index
+	 *            index of the shape in the layer
+	 */
+	private void addEntry(int cell, int index)
+	{
+		if (entryCount == entries.length)
+		{
+			entries = Arrays.copyOf(entries, entries.length * 2);
+		}
+
+		entries[entryCount++] = ((long) cell << 32) | index;
+	}
+
+	/**
+	 * Remember that a query found a shape
+	 */
+	private void addResult(int index)
+	{
+		if (resultCount == results.length)
+		{
+			results = Arrays.copyOf(results, results.length * 2);
+		}
+
+		results[resultCount++] = index;
+	}
+
+	/**
+	 * Remember that a shape has no usable bounds
+	 *
+	 * @param index
+	 *            index of the shape in the layer
+	 */
+	private void addUnbounded(int index)
+	{
+		if (unboundedCount == unbounded.length)
+		{
+			unbounded = Arrays.copyOf(unbounded, unbounded.length * 2);
+		}
+
+		unbounded[unboundedCount++] = index;
+	}
+
+	/**
+	 * Hash a cell's coordinates. Different cells may share a hash, which only
+	 * adds extra candidate pairs.
+	 */
+	private static int hash(int x, int y)
+	{
+		return (x * HASH_X) ^ (y * HASH_Y);
+	}
+
+	private static int floor(float value)
+	{
+		return (int) Math.floor(value);
+	}
+
+	private static boolean isFinite(float value)
+	{
+		return !Float.isInfinite(value) && !Float.isNaN(value);
+	}
+}
@@ -0,0 +1,370 @@
+package funativity.age.collision;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A bounding volume tree over shapes that do not move, such as walls and
+ * tiles. The tree is built once from the bounds of the shapes and after that
+ * is only read, so building can take its time to split the shapes evenly.
+ *
+ * Nodes are stored in flat arrays in depth-first order. Each node knows where
+ * its subtree ends, so a query walks the tree front to back without needing a
+ * stack.
+ *
+ */
+public class StaticShapeTree
+{
+	// most shapes kept in a single leaf
+	private static final int LEAF_SIZE = 4;
+
+	// bounds of each shape, by index in the list the tree was built from
+	private float[] shapeMinX = new float[0];
+	private float[] shapeMinY = new float[0];
+	private float[] shapeMinZ = new float[0];
+	private float[] shapeMaxX = new float[0];
+	private float[] shapeMaxY = new float[0];
+	private float[] shapeMaxZ = new float[0];
+
+	// shape indices, grouped so each leaf covers a run of them
+	private int[] items = new int[0];
+
+	// used to pick where to split while building
+	private float[] keys = new float[0];
+
+	// nodes, in depth-first order
+	private float[] nodeMinX = new float[0];
+	private float[] nodeMinY = new float[0];
+	private float[] nodeMinZ = new float[0];
+	private float[] nodeMaxX = new float[0];
+	private float[] nodeMaxY = new float[0];
+	private float[] nodeMaxZ = new float[0];
+	private int[] nodeStart = new int[0];
+	private int[] nodeEnd = new int[0];
+	private int[] nodeSkip = new int[0];
+	private int nodeCount;
+
+	// shapes found by the last query
+	private int[] results = new int[16];
+	private int resultCount;
+
+	/**
+	 * Rebuilds the tree from the current bounds of the shapes. Must be called
+	 * again whenever a shape is added, removed or moved.
+	 *
+	 * @param shapes
+	 *            shapes to build the tree from. Query results are indices into
+	 *            this list.
+	 */
+	public void build(List<CollisionShape> shapes)
+	{
+		final int count = shapes.size();
+
+		if (items.length < count)
+		{
+			shapeMinX = new float[count];
+			shapeMinY = new float[count];
+			shapeMinZ = new float[count];
+			shapeMaxX = new float[count];
+			shapeMaxY = new float[count];
+			shapeMaxZ = new float[count];
+			items = new int[count];
+			keys = new float[count];
+
+			// a binary tree with at most one leaf per shape
+			int nodes = count * 2;
+			nodeMinX = new float[nodes];
+			nodeMinY = new float[nodes];
+			nodeMinZ = new float[nodes];
+			nodeMaxX = new float[nodes];
+			nodeMaxY = new float[nodes];
+			nodeMaxZ = new float[nodes];
+			nodeStart = new int[nodes];
+			nodeEnd = new int[nodes];
+			nodeSkip = new int[nodes];
+		}
+
+		for (int i = 0; i < count; i++)
+		{
+			CollisionShape shape = shapes.get(i);
+			float x = shape.getBoundsCenterX();
+			float y = shape.getBoundsCenterY();
+			float z = shape.getBoundsCenterZ();
+			float ex = shape.getBoundsExtentX();
+			float ey = shape.getBoundsExtentY();
+			float ez = shape.getBoundsExtentZ();
+
+			shapeMinX[i] = x - ex;
+			shapeMinY[i] = y - ey;
+			shapeMinZ[i] = z - ez;
+			shapeMaxX[i] = x + ex;
+			shapeMaxY[i] = y + ey;
+			shapeMaxZ[i] = z + ez;
+			items[i] = i;
+		}
+
+		nodeCount = 0;
+		if (count > 0)
+		{
+			buildNode(0, count);
+		}
+	}
+
+	/**
+	 * Gets the number of nodes in the tree
+	 *
+	 * @return number of nodes, 0 if the tree is empty
+	 */
+	public int getNodeCount()
+	{
+		return nodeCount;
+	}
+
+	/**
+	 * Gets the bounds of every shape in the tree
+	 *
+	 * @param bounds
+	 *            set to the smallest x, y and z, then the largest x, y and z
+	 * @return false if the tree is empty
+	 */
+	boolean getBounds(float[] bounds)
+	{
+		if (nodeCount == 0)
+			return false;
+
+		bounds[0] = nodeMinX[0];
+		bounds[1] = nodeMinY[0];
+		bounds[2] = nodeMinZ[0];
+		bounds[3] = nodeMaxX[0];
+		bounds[4] = nodeMaxY[0];
+		bounds[5] = nodeMaxZ[0];
+		return true;
+	}
+
+	/**
+	 * Finds every shape whose bounds overlap the given box. Results are
+	 * read with getResult, in the order of the list the tree was built from,
+	 * and stay valid until the next query.
+	 *
+	 * @return number of shapes found
+	 */
+	public int query(float minX, float minY, float minZ, float maxX,
+			float maxY, float maxZ)
+	{
+		resultCount = 0;
+
+		int node = 0;
+		while (node < nodeCount)
+		{
+			if (minX > nodeMaxX[node] || nodeMinX[node] > maxX
+					|| minY > nodeMaxY[node] || nodeMinY[node] > maxY
+					|| minZ > nodeMaxZ[node] || nodeMinZ[node] > maxZ)
+			{
+				// nothing under this node can overlap
+				node = nodeSkip[node];
+				continue;
+			}
+
+			if (nodeStart[node] >= 0)
+			{
+				for (int i = nodeStart[node]; i < nodeEnd[node]; i++)
+				{
+					int item = items[i];
+					if (minX <= shapeMaxX[item] && shapeMinX[item] <= maxX
+							&& minY <= shapeMaxY[item]
+							&& shapeMinY[item] <= maxY
+							&& minZ <= shapeMaxZ[item]
+							&& shapeMinZ[item] <= maxZ)
+					{
+						addResult(item);
+					}
+				}
+			}
+
+			// the next node is either this node's first child or, for a leaf,
+			// the node after it
+			node++;
+		}
+
+		Sorting.sort(results, 0, resultCount);
+		return resultCount;
+	}
+
+	/**
+	 * Finds every shape whose bounds overlap the bounds of the given shape. See
+	 * query(float, float, float, float, float, float).
+	 *
+	 * @param shape
+	 *            shape to look around
+	 * @return number of shapes found
+	 */
+	public int query(CollisionShape shape)
+	{
+		float x = shape.getBoundsCenterX();
+		float y = shape.getBoundsCenterY();
+		float z = shape.getBoundsCenterZ();
+		float ex = shape.getBoundsExtentX();
+		float ey = shape.getBoundsExtentY();
+		float ez = shape.getBoundsExtentZ();
+
+		return query(x - ex, y - ey, z - ez, x + ex, y + ey, z + ez);
+	}
+
+	/**
+	 * Gets a shape found by the last query
+	 *
+	 * @param i
+	 *            which result, from 0 up to the count the query returned
+	 * @return index of the shape in the list the tree was built from
+	 */
+	public int getResult(int i)
+	{
+		return results[i];
+	}
+
+	/**
+	 * Builds the subtree over items[start, end), splitting the shapes in half
+	 * along the axis their centers are most spread out on.
+	 *
+	 * @return index of the subtree's root node
+	 */
+	private int buildNode(int start, int end)
+	{
+		final int node = nodeCount++;
+
+		float minX = Float.POSITIVE_INFINITY;
+		float minY = Float.POSITIVE_INFINITY;
+		float minZ = Float.POSITIVE_INFINITY;
+		float maxX = Float.NEGATIVE_INFINITY;
+		float maxY = Float.NEGATIVE_INFINITY;
+		float maxZ = Float.NEGATIVE_INFINITY;
+
+		// range of the shape centers, used to pick the split axis
+		float lowX = Float.POSITIVE_INFINITY;
+		float lowY = Float.POSITIVE_INFINITY;
+		float lowZ = Float.POSITIVE_INFINITY;
+		float highX = Float.NEGATIVE_INFINITY;
+		float highY = Float.NEGATIVE_INFINITY;
+		float highZ = Float.NEGATIVE_INFINITY;
+
+		for (int i = start; i < end; i++)
+		{
+			int item = items[i];
+			minX = Math.min(minX, shapeMinX[item]);
+			minY = Math.min(minY, shapeMinY[item]);
+			minZ = Math.min(minZ, shapeMinZ[item]);
+			maxX = Math.max(maxX, shapeMaxX[item]);
+			maxY = Math.max(maxY, shapeMaxY[item]);
+			maxZ = Math.max(maxZ, shapeMaxZ[item]);
+
+			float x = center(shapeMinX[item], shapeMaxX[item]);
+			float y = center(shapeMinY[item], shapeMaxY[item]);
+			float z = center(shapeMinZ[item], shapeMaxZ[item]);
+			lowX = Math.min(lowX, x);
+			lowY = Math.min(lowY, y);
+			lowZ = Math.min(lowZ, z);
+			highX = Math.max(highX, x);
+			highY = Math.max(highY, y);
+			highZ = Math.max(highZ, z);
+		}
+
+		nodeMinX[node] = minX;
+		nodeMinY[node] = minY;
+		nodeMinZ[node] = minZ;
+		nodeMaxX[node] = maxX;
+		nodeMaxY[node] = maxY;
+		nodeMaxZ[node] = maxZ;
+
+		float spreadX = highX - lowX;
+		float spreadY = highY - lowY;
+		float spreadZ = highZ - lowZ;
+
+		if (end - start <= LEAF_SIZE
+				|| (spreadX <= 0 && spreadY <= 0 && spreadZ <= 0))
+		{
+			nodeStart[node] = start;
+			nodeEnd[node] = end;
+			nodeSkip[node] = node + 1;
+			return node;
+		}
+
+		// split on the median center of the widest axis
+		for (int i = start; i < end; i++)
+		{
+			int item = items[i];
+			if (spreadX >= spreadY && spreadX >= spreadZ)
+				keys[item] = center(shapeMinX[item], shapeMaxX[item]);
+			else if (spreadY >= spreadZ)
+				keys[item] = center(shapeMinY[item], shapeMaxY[item]);
+			else
+				keys[item] = center(shapeMinZ[item], shapeMaxZ[item]);
+		}
+
+		int middle = (start + end) >>> 1;
+		select(start, end - 1, middle);
+
+		nodeStart[node] = -1;
+		buildNode(start, middle);
+		buildNode(middle, end);
+		nodeSkip[node] = nodeCount;
+		return node;
+	}
+
+	/**
+	 * Reorders items[left, right] so the item at k has the k-th smallest key,
+	 * with smaller keys before it and larger keys after it.
+	 */
+	private void select(int left, int right, int k)
+	{
+		while (left < right)
+		{
+			float pivot = keys[items[(left + right) >>> 1]];
+			int i = left;
+			int j = right;
+
+			while (i <= j)
+			{
+				while (keys[items[i]] < pivot)
+					i++;
+				while (keys[items[j]] > pivot)
+					j--;
+
+				if (i <= j)
+				{
+					int swap = items[i];
+					items[i] = items[j];
+					items[j] = swap;
+					i++;
+					j--;
+				}
+			}
+
+			if (k <= j)
+				right = j;
+			else if (k >= i)
+				left = i;
+			else
+				return;
+		}
+	}
+
+	/**
+	 * Center of a range. Shapes without bounds on an axis are centered on 0
+	 * along it.
+	 */
+	private static float center(float min, float max)
+	{
+		float center = (min + max) / 2f;
+		return Float.isNaN(center) ? 0 : center;
+	}
+
+	private void addResult(int item)
+	{
+		if (resultCount == results.length)
+		{
+			results = Arrays.copyOf(results, results.length * 2);
+		}
+
+		results[resultCount++] = item;
+	}
+}
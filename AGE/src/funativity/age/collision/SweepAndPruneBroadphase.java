@@ -0,0 +1,371 @@
+package funativity.age.collision;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A Broadphase that keeps the shapes of a layer sorted by where their bounds
+ * start along one axis, then sweeps along that axis pairing up shapes whose
+ * bounds overlap on all three axes.
+ *
+ * The order is kept between frames and fixed with an insertion sort, which is
+ * very fast when shapes move smoothly and the order barely changes. Works best
+ * when shapes are spread out along the sorting axis.
+ *
+ * Removed shapes are only marked, and are dropped from the order all at once
+ * at the next findPairs, so removing a shape does not shift the whole order.
+ *
+ */
+public class SweepAndPruneBroadphase implements PackedBroadphase
+{
+	/** Sort along the x-axis */
+	public static final int AXIS_X = 0;
+
+	/** Sort along the y-axis */
+	public static final int AXIS_Y = 1;
+
+	/** Sort along the z-axis */
+	public static final int AXIS_Z = 2;
+
+	// marks a removed shape in the order
+	private static final int REMOVED = -1;
+
+	private final int axis;
+
+	// layer index of each shape, in sorted order. REMOVED marks shapes that
+	// were removed since the last findPairs
+	private int[] order = new int[16];
+	private int count;
+
+	// where each shape is in the order, by layer index
+	private int[] position = new int[16];
+	private int shapeCount;
+	private int removedCount;
+
+	// bounds of each shape, in the same order as the order array. The
+	// sorting axis is kept in min/max, the other two axes in minA/maxA and
+	// minB/maxB
+	private float[] min = new float[16];
+	private float[] max = new float[16];
+	private float[] minA = new float[16];
+	private float[] maxA = new float[16];
+	private float[] minB = new float[16];
+	private float[] maxB = new float[16];
+
+	// shapes found by the last query
+	private int[] results = new int[16];
+	private int resultCount;
+
+	/**
+	 * Creates a sort and sweep broadphase that sorts along the x-axis
+	 */
+	public SweepAndPruneBroadphase()
+	{
+		this(AXIS_X);
+	}
+
+	/**
+	 * Creates a sort and sweep broadphase that sorts along the specified axis.
+	 * Pick the axis the shapes are most spread out on.
+	 *
+	 * @param axis
+	 *            AXIS_X, AXIS_Y or AXIS_Z
+	 */
+	public SweepAndPruneBroadphase(int axis)
+	{
+		if (axis < AXIS_X || axis > AXIS_Z)
+			throw new IllegalArgumentException("Unknown axis: " + axis);
+
+		this.axis = axis;
+	}
+
+	/**
+	 * Gets the axis the shapes are sorted along
+	 *
+	 * @return AXIS_X, AXIS_Y or AXIS_Z
+	 */
+	public int getAxis()
+	{
+		return axis;
+	}
+
+	@Override
+	public void add(CollisionShape shape)
+	{
+		if (count == order.length)
+		{
+			int capacity = order.length * 2;
+			order = Arrays.copyOf(order, capacity);
+			position = Arrays.copyOf(position, capacity);
+			min = Arrays.copyOf(min, capacity);
+			max = Arrays.copyOf(max, capacity);
+			minA = Arrays.copyOf(minA, capacity);
+			maxA = Arrays.copyOf(maxA, capacity);
+			minB = Arrays.copyOf(minB, capacity);
+			maxB = Arrays.copyOf(maxB, capacity);
+		}
+
+		// new shapes start at the end, the next sort moves them into place
+		order[count] = shapeCount;
+		position[shapeCount] = count;
+		min[count] = Float.POSITIVE_INFINITY;
+		count++;
+		shapeCount++;
+	}
+
+	@Override
+	public void remove(int index)
+	{
+		if (index < 0 || index >= shapeCount)
+			return;
+
+		order[position[index]] = REMOVED;
+		removedCount++;
+
+		// the last shape in the layer moved into the removed one's index
+		shapeCount--;
+		if (index != shapeCount)
+		{
+			int moved = position[shapeCount];
+			order[moved] = index;
+			position[index] = moved;
+		}
+	}
+
+	@Override
+	public void findPairs(List<CollisionShape> shapes, CollisionPairs pairs)
+	{
+		if (removedCount > 0)
+			dropRemoved();
+
+		updateBounds(shapes);
+		sweep(pairs);
+	}
+
+	@Override
+	public void findPairs(PackedShapes shapes, CollisionPairs pairs)
+	{
+		if (removedCount > 0)
+			dropRemoved();
+
+		updateBounds(shapes);
+		sweep(pairs);
+	}
+
+	/**
+	 * Sorts the shapes by their new bounds, then pairs up the overlapping ones
+	 */
+	private void sweep(CollisionPairs pairs)
+	{
+		sort();
+
+		// sweep along the axis. Everything that starts before shape i ends
+		// overlaps it on this axis, so only the other two axes need checking
+		for (int i = 0; i < count; i++)
+		{
+			final float end = max[i];
+
+			for (int j = i + 1; j < count && min[j] <= end; j++)
+			{
+				if (minA[j] <= maxA[i] && minA[i] <= maxA[j]
+						&& minB[j] <= maxB[i] && minB[i] <= maxB[j])
+				{
+					pairs.add(order[i], order[j]);
+				}
+			}
+		}
+	}
+
+	@Override
+	public int query(List<CollisionShape> shapes, float minX, float minY,
+			float minZ, float maxX, float maxY, float maxZ)
+	{
+		switch (axis)
+		{
+			case AXIS_X:
+				return query(minX, maxX, minY, maxY, minZ, maxZ);
+			case AXIS_Y:
+				return query(minY, maxY, minX, maxX, minZ, maxZ);
+			default:
+				return query(minZ, maxZ, minX, maxX, minY, maxY);
+		}
+	}
+
+	/**
+	 * Walks the sorted shapes until they start after the end of the box
+	 */
+	private int query(float start, float end, float startA, float endA,
+			float startB, float endB)
+	{
+		resultCount = 0;
+
+		for (int i = 0; i < count && min[i] <= end; i++)
+		{
+			if (order[i] != REMOVED && start <= max[i] && startA <= maxA[i] && minA[i] <= endA
+					&& startB <= maxB[i] && minB[i] <= endB)
+			{
+				addResult(order[i]);
+			}
+		}
+
+		return resultCount;
+	}
+
+	@Override
+	public int getResult(int i)
+	{
+		return results[i];
+	}
+
+	/**
+	 * Closes the gaps left by removed shapes, keeping the sorted order
+	 */
+	private void dropRemoved()
+	{
+		int kept = 0;
+		for (int i = 0; i < count; i++)
+		{
+			if (order[i] == REMOVED)
+				continue;
+
+			order[kept] = order[i];
+			min[kept] = min[i];
+			max[kept] = max[i];
+			minA[kept] = minA[i];
+			maxA[kept] = maxA[i];
+			minB[kept] = minB[i];
+			maxB[kept] = maxB[i];
+			position[order[kept]] = kept;
+			kept++;
+		}
+
+		count = kept;
+		removedCount = 0;
+	}
+
+	/**
+	 * Reads the current bounds of every shape
+	 */
+	private void updateBounds(List<CollisionShape> shapes)
+	{
+		for (int i = 0; i < count; i++)
+		{
+			CollisionShape shape = shapes.get(order[i]);
+
+			final float x = shape.getBoundsCenterX();
+			final float y = shape.getBoundsCenterY();
+			final float z = shape.getBoundsCenterZ();
+			final float ex = shape.getBoundsExtentX();
+			final float ey = shape.getBoundsExtentY();
+			final float ez = shape.getBoundsExtentZ();
+
+			switch (axis)
+			{
+				case AXIS_X:
+					setBounds(i, x, ex, y, ey, z, ez);
+					break;
+				case AXIS_Y:
+					setBounds(i, y, ey, x, ex, z, ez);
+					break;
+				default:
+					setBounds(i, z, ez, x, ex, y, ey);
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Reads the bounds of every shape from the layer's packed shapes
+	 */
+	private void updateBounds(PackedShapes shapes)
+	{
+		for (int i = 0; i < count; i++)
+		{
+			final int index = order[i];
+			final float x = shapes.centerX[index];
+			final float y = shapes.centerY[index];
+			final float z = shapes.centerZ[index];
+			final float ex = shapes.extentX[index];
+			final float ey = shapes.extentY[index];
+			final float ez = shapes.extentZ[index];
+
+			switch (axis)
+			{
+				case AXIS_X:
+					setBounds(i, x, ex, y, ey, z, ez);
+					break;
+				case AXIS_Y:
+					setBounds(i, y, ey, x, ex, z, ez);
+					break;
+				default:
+					setBounds(i, z, ez, x, ex, y, ey);
+					break;
+			}
+		}
+	}
+
+	private void setBounds(int i, float center, float extent, float centerA,
+			float extentA, float centerB, float extentB)
+	{
+		min[i] = center - extent;
+		max[i] = center + extent;
+		minA[i] = centerA - extentA;
+		maxA[i] = centerA + extentA;
+		minB[i] = centerB - extentB;
+		maxB[i] = centerB + extentB;
+	}
+
+	/**
+	 * Insertion sort by the start of each shape's bounds. Since the order from
+	 * the last frame is kept, only shapes that passed each other move.
+	 */
+	private void sort()
+	{
+		for (int i = 1; i < count; i++)
+		{
+			final float key = min[i];
+			if (min[i - 1] <= key)
+				continue;
+
+			final int keyOrder = order[i];
+			final float keyMax = max[i];
+			final float keyMinA = minA[i];
+			final float keyMaxA = maxA[i];
+			final float keyMinB = minB[i];
+			final float keyMaxB = maxB[i];
+
+			int j = i - 1;
+			while (j >= 0 && min[j] > key)
+			{
+				order[j + 1] = order[j];
+				position[order[j]] = j + 1;
+				min[j + 1] = min[j];
+				max[j + 1] = max[j];
+				minA[j + 1] = minA[j];
+				maxA[j + 1] = maxA[j];
+				minB[j + 1] = minB[j];
+				maxB[j + 1] = maxB[j];
+				j--;
+			}
+
+			order[j + 1] = keyOrder;
+			position[keyOrder] = j + 1;
+			min[j + 1] = key;
+			max[j + 1] = keyMax;
+			minA[j + 1] = keyMinA;
+			maxA[j + 1] = keyMaxA;
+			minB[j + 1] = keyMinB;
+			maxB[j + 1] = keyMaxB;
+		}
+	}
+
+	private void addResult(int index)
+	{
+		if (resultCount == results.length)
+		{
+			results = Arrays.copyOf(results, results.length * 2);
+		}
+
+		results[resultCount++] = index;
+	}
+}
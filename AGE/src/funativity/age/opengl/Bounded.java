@@ -0,0 +1,17 @@
+package funativity.age.opengl;
+
+/**
+ * A Drawable that knows how much space it takes up, so a Scene can skip
+ * drawing it when it is off the screen.
+ *
+ */
+public interface Bounded
+{
+	/**
+	 * Get the space this object takes up when drawn, in its own space (before
+	 * the model matrix)
+	 *
+	 * @return bounds of this object, or null if not known
+	 */
+	public Bounds getBounds();
+}
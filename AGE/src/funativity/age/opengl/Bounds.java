@@ -0,0 +1,254 @@
+package funativity.age.opengl;
+
+/**
+ * The space a mesh takes up, as a box lined up with its axes and as a sphere
+ * around the middle of that box. Used to skip drawing meshes that are off the
+ * screen. Bounds are made once, when the mesh is made, and never change.
+ *
+ */
+public final class Bounds
+{
+	private final float minX, minY, minZ;
+	private final float maxX, maxY, maxZ;
+	private final float radius;
+
+	/**
+	 * Creates bounds from a box and the radius of a sphere around its middle
+	 *
+	 * @param minX
+	 *            lowest x of the box
+	 * @param minY
+	 *            lowest y of the box
+	 * @param minZ
+	 *            lowest z of the box
+	 * @param maxX
+	 *            highest x of the box
+	 * @param maxY
+	 *            highest y of the box
+	 * @param maxZ
+	 *            highest z of the box
+	 * @param radius
+	 *            radius of a sphere around the middle of the box holding
+	 *            everything in it
+	 */
+	public Bounds(float minX, float minY, float minZ, float maxX, float maxY,
+			float maxZ, float radius)
+	{
+		this.minX = minX;
+		this.minY = minY;
+		this.minZ = minZ;
+		this.maxX = maxX;
+		this.maxY = maxY;
+		this.maxZ = maxZ;
+		this.radius = radius;
+	}
+
+	/**
+	 * Creates the bounds of vertex data, like that passed to Mesh.initMesh.
+	 * Each vertex starts with its x, y and z position.
+	 *
+	 * @param vertices
+	 *            vertex data
+	 * @param elementsPerVertex
+	 *            number of floats from one vertex to the next
+	 * @return bounds of every vertex, or empty bounds at the origin if there
+	 *         are no vertices
+	 */
+	public static Bounds fromVertices(float[] vertices, int elementsPerVertex)
+	{
+		if (elementsPerVertex < 3)
+			throw new IllegalArgumentException(
+					"A vertex needs at least a position");
+
+		int end = vertices.length - 2;
+		if (end <= 0)
+			return new Bounds(0, 0, 0, 0, 0, 0, 0);
+
+		float minX = Float.POSITIVE_INFINITY;
+		float minY = Float.POSITIVE_INFINITY;
+		float minZ = Float.POSITIVE_INFINITY;
+		float maxX = Float.NEGATIVE_INFINITY;
+		float maxY = Float.NEGATIVE_INFINITY;
+		float maxZ = Float.NEGATIVE_INFINITY;
+		for (int i = 0; i < end; i += elementsPerVertex)
+		{
+			minX = Math.min(minX, vertices[i]);
+			minY = Math.min(minY, vertices[i + 1]);
+			minZ = Math.min(minZ, vertices[i + 2]);
+			maxX = Math.max(maxX, vertices[i]);
+			maxY = Math.max(maxY, vertices[i + 1]);
+			maxZ = Math.max(maxZ, vertices[i + 2]);
+		}
+
+		// the sphere only needs to reach the farthest vertex, which is
+		// usually well inside the corners of the box
+		float x = (minX + maxX) / 2;
+		float y = (minY + maxY) / 2;
+		float z = (minZ + maxZ) / 2;
+		float farthest = 0;
+		for (int i = 0; i < end; i += elementsPerVertex)
+		{
+			float dx = vertices[i] - x;
+			float dy = vertices[i + 1] - y;
+			float dz = vertices[i + 2] - z;
+			farthest = Math.max(farthest, dx * dx + dy * dy + dz * dz);
+		}
+
+		return new Bounds(minX, minY, minZ, maxX, maxY, maxZ,
+				(float) Math.sqrt(farthest));
+	}
+
+	/**
+	 * Creates bounds holding both these bounds and another, such as for the
+	 * frames of an animation
+	 *
+	 * @param other
+	 *            bounds to add, or null for none
+	 * @return bounds of both
+	 */
+	public Bounds union(Bounds other)
+	{
+		if (other == null)
+			return this;
+
+		Bounds box = new Bounds(Math.min(minX, other.minX), Math.min(minY,
+				other.minY), Math.min(minZ, other.minZ), Math.max(maxX,
+				other.maxX), Math.max(maxY, other.maxY), Math.max(maxZ,
+				other.maxZ), 0);
+
+		// a sphere around the new middle holding both spheres, unless that is
+		// bigger than the box's corners
+		float radius = Math.max(box.distanceTo(this) + this.radius,
+				box.distanceTo(other) + other.radius);
+		radius = Math.min(radius, box.getCornerDistance());
+
+		return new Bounds(box.minX, box.minY, box.minZ, box.maxX, box.maxY,
+				box.maxZ, radius);
+	}
+
+	/**
+	 * Gets the distance between the middles of these bounds and others
+	 */
+	private float distanceTo(Bounds other)
+	{
+		float dx = getCenterX() - other.getCenterX();
+		float dy = getCenterY() - other.getCenterY();
+		float dz = getCenterZ() - other.getCenterZ();
+		return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+	}
+
+	/**
+	 * Gets the distance from the middle of the box to its corners
+	 */
+	private float getCornerDistance()
+	{
+		float x = getExtentX();
+		float y = getExtentY();
+		float z = getExtentZ();
+		return (float) Math.sqrt(x * x + y * y + z * z);
+	}
+
+	/**
+	 * @return lowest x of the box
+	 */
+	public float getMinX()
+	{
+		return minX;
+	}
+
+	/**
+	 * @return lowest y of the box
+	 */
+	public float getMinY()
+	{
+		return minY;
+	}
+
+	/**
+	 * @return lowest z of the box
+	 */
+	public float getMinZ()
+	{
+		return minZ;
+	}
+
+	/**
+	 * @return highest x of the box
+	 */
+	public float getMaxX()
+	{
+		return maxX;
+	}
+
+	/**
+	 * @return highest y of the box
+	 */
+	public float getMaxY()
+	{
+		return maxY;
+	}
+
+	/**
+	 * @return highest z of the box
+	 */
+	public float getMaxZ()
+	{
+		return maxZ;
+	}
+
+	/**
+	 * @return x of the middle of the box, and of the sphere
+	 */
+	public float getCenterX()
+	{
+		return (minX + maxX) / 2;
+	}
+
+	/**
+	 * @return y of the middle of the box, and of the sphere
+	 */
+	public float getCenterY()
+	{
+		return (minY + maxY) / 2;
+	}
+
+	/**
+	 * @return z of the middle of the box, and of the sphere
+	 */
+	public float getCenterZ()
+	{
+		return (minZ + maxZ) / 2;
+	}
+
+	/**
+	 * @return half the size of the box on the x-axis
+	 */
+	public float getExtentX()
+	{
+		return (maxX - minX) / 2;
+	}
+
+	/**
+	 * @return half the size of the box on the y-axis
+	 */
+	public float getExtentY()
+	{
+		return (maxY - minY) / 2;
+	}
+
+	/**
+	 * @return half the size of the box on the z-axis
+	 */
+	public float getExtentZ()
+	{
+		return (maxZ - minZ) / 2;
+	}
+
+	/**
+	 * @return radius of the sphere
+	 */
+	public float getRadius()
+	{
+		return radius;
+	}
+}
@@ -0,0 +1,117 @@
+package funativity.age.opengl;
+
+import funativity.age.textures.Texture;
+
+/**
+ * What a StatefulDrawable looks like at one moment: the frame of its
+ * animation, how far it is towards the next frame, its color and its
+ * texture. A SceneSnapshot saves one for each drawable after every update,
+ * so the GL thread can draw the drawable as it was then, while the
+ * simulation thread goes on changing it.
+ *
+ */
+public final class DrawState
+{
+	private int frame;
+	private float blend;
+	private final AGEColor color = new AGEColor();
+	private Texture texture;
+
+	/**
+	 * Gets the frame of the animation
+	 *
+	 * @return index of the frame
+	 */
+	public int getFrame()
+	{
+		return frame;
+	}
+
+	/**
+	 * Sets the frame of the animation
+	 *
+	 * @param frame
+	 *            index of the frame
+	 */
+	public void setFrame(int frame)
+	{
+		this.frame = frame;
+	}
+
+	/**
+	 * Gets how far the animation is from its frame to the next one
+	 *
+	 * @return from 0 (the frame) to 1 (the next frame)
+	 */
+	public float getBlend()
+	{
+		return blend;
+	}
+
+	/**
+	 * Sets how far the animation is from its frame to the next one
+	 *
+	 * @param blend
+	 *            from 0 (the frame) to 1 (the next frame)
+	 */
+	public void setBlend(float blend)
+	{
+		this.blend = blend;
+	}
+
+	/**
+	 * Gets the color. The state keeps its own copy, which must not be
+	 * changed.
+	 *
+	 * @return color
+	 */
+	public AGEColor getColor()
+	{
+		return color;
+	}
+
+	/**
+	 * Sets the color, copying its values, so changing color afterwards does
+	 * not change the state
+	 *
+	 * @param color
+	 *            color to copy, or null for white
+	 */
+	public void setColor(AGEColor color)
+	{
+		if (color == null)
+		{
+			this.color.setR(1);
+			this.color.setG(1);
+			this.color.setB(1);
+			this.color.setA(1);
+			return;
+		}
+
+		this.color.setR(color.getR());
+		this.color.setG(color.getG());
+		this.color.setB(color.getB());
+		this.color.setA(color.getA());
+	}
+
+	/**
+	 * Gets the texture
+	 *
+	 * @return texture, or null for none
+	 */
+	public Texture getTexture()
+	{
+		return texture;
+	}
+
+	/**
+	 * Sets the texture
+	 *
+	 * @param texture
+	 *            texture, or null for none
+	 */
+	public void setTexture(Texture texture)
+	{
+		this.texture = texture;
+	}
+}
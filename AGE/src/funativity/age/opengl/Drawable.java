@@ -17,6 +17,14 @@ public interface Drawable
 	 * All logic that needs to be ran every frame is put in this method. Use
 	 * delta to update everything based on time instead of frame rate.
 	 * 
+	 * A Scene with a JobSystem updates the drawables of its entities on
+	 * several threads at once, so this must not make OpenGL calls or change
+	 * anything shared with other drawables. A Scene with a simulation thread
+	 * updates them on that thread, while the GL thread draws them: a
+	 * StatefulDrawable is drawn from a copy of its state saved after each
+	 * update, but any other drawable must not change anything draw reads
+	 * while the simulation thread runs.
+	 * 
 	 * @param delta
 	 *            Time since last update in seconds
 	 */
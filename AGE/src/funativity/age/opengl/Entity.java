@@ -1,25 +1,107 @@
 package funativity.age.opengl;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import android.opengl.Matrix;
+import funativity.age.state.EntityRegistry;
+import funativity.age.state.EntityStore;
 import funativity.age.state.Scene;
 import funativity.age.util.Geometry3f;
 
 /**
  * An OpenGL mesh container for performing physics-based transforms.
  * 
+ * Entities that are allowed to sleep are put to sleep by the CollisionManager
+ * once they, and every entity touching them, have stayed still for a while.
+ * The Scene does not update or move sleeping entities until they are woken,
+ * but still updates their drawables, so their animations keep playing.
+ * 
+ * The position, velocity, acceleration and rotation are not kept in the
+ * entity but in a slot of an EntityStore, which lets a Scene keep the values
+ * of all its entities in a few packed arrays and move them in one loop.
+ * 
+ * An entity can be given a parent, whose position and rotation it is then
+ * drawn relative to. The matrix an entity is drawn with is kept between
+ * frames, and only made again when the entity or one of its parents has
+ * moved or turned.
+ * 
  */
 public class Entity
 {
+	/** Speed below which an entity counts as still, by default */
+	public static final float DEFAULT_SLEEP_SPEED = 0.05f;
+
+	/** Acceleration below which an entity counts as still, by default */
+	public static final float DEFAULT_SLEEP_ACCELERATION = 0.05f;
+
+	/** Updates an entity must stay still for before it can sleep, by default */
+	public static final int DEFAULT_SLEEP_FRAMES = 60;
+
 	private Drawable drawable;
 
-	// Physics.
+	// Physics. The values are kept in a slot of a store: one of the entity's
+	// own while it is in no Scene, or the store of the Scene it is in. The
+	// entity's own store is let go of while it is in a Scene's, and made
+	// again when it leaves.
+	private EntityStore home = new EntityStore(1);
+	private EntityStore store = home;
+	private int slot = home.add(this);
+
+	// The store's arrays and where this entity's values start in them, kept
+	// here so reading a value is one load, like reading a field. The store
+	// calls setStore again when it grows and replaces the arrays.
+	private float[] positions = home.getArray(EntityStore.POSITION);
+	private float[] velocities = home.getArray(EntityStore.VELOCITY);
+	private float[] accelerations = home.getArray(EntityStore.ACCELERATION);
+	private float[] rotations = home.getArray(EntityStore.ROTATION);
+	private int index = slot * 3;
+
+	// Views of the values in the store, made when first asked for.
 	private Geometry3f position;
 	private Geometry3f velocity;
 	private Geometry3f acceleration;
+	private Geometry3f rotation;
 
-	// Not instantiated in a constructor.
-	private Geometry3f rotation = new Geometry3f();
 	private Scene scene;
 
+	// Transform. The position and rotation are relative to the parent's. The
+	// local matrix is made from the position and rotation when first drawn,
+	// and made again only when they change; the world matrix is the parent's
+	// world matrix times the local matrix, made again only when either
+	// changes. Each change of the world matrix counts up worldVersion, so
+	// children can tell their copy of it is out of date.
+	private Entity parent;
+	private List<Entity> children;
+	private float[] localMatrix;
+	private float[] worldMatrix;
+	private float builtX, builtY, builtZ;
+	private float builtRX, builtRY, builtRZ;
+	private int worldVersion;
+	private Entity builtParent;
+	private int builtParentVersion;
+
+	// How far render moves the entity from its world matrix, in world space,
+	// to draw it part way between the last update and the next. Set by the
+	// Scene before each frame.
+	private float renderDX, renderDY, renderDZ;
+
+	// Handle of the entity in the Scene it was last added to.
+	private long handle = EntityRegistry.NO_HANDLE;
+
+	// Time the drawable still has to be updated by, when the Scene updates
+	// the drawables on its JobSystem.
+	private float drawableDelta;
+
+	// Sleeping.
+	private boolean canSleep;
+	private boolean sleeping;
+	private float sleepSpeed = DEFAULT_SLEEP_SPEED;
+	private float sleepAcceleration = DEFAULT_SLEEP_ACCELERATION;
+	private int sleepFrames = DEFAULT_SLEEP_FRAMES;
+	private int stillFrames;
+
 	/**
 	 * Default constructor at the origin with no velocity (change in position)
 	 * and no acceleration (change in velocity). Uses no mesh so nothing will
@@ -100,9 +182,8 @@ public class Entity
 	 */
 	public Entity(Drawable drawable, Entity old)
 	{
-		this(drawable, new Geometry3f(old.position), new Geometry3f(
-				old.velocity), new Geometry3f(old.acceleration));
-		setRotation(new Geometry3f(old.rotation));
+		setDrawable(drawable);
+		store.copy(old.store, old.slot, slot);
 	}
 
 	/**
@@ -151,17 +232,22 @@ public class Entity
 	}
 
 	/**
-	 * Gets the 3f position of this Entity
+	 * Gets the 3f position of this Entity. The value returned is a view of the
+	 * entity's position, so changing it changes the entity.
 	 * 
 	 * @return position on all three axes (x, y, z)
 	 */
 	public Geometry3f getPosition()
 	{
+		if (position == null)
+			position = new StoreVector(EntityStore.POSITION);
+
 		return position;
 	}
 
 	/**
-	 * Sets the 3f position of this Entity
+	 * Sets the 3f position of this Entity. The values are copied, so changing
+	 * position afterwards does not change the entity.
 	 * 
 	 * @param position
 	 *            position on all three axes (x, y, z)
@@ -169,22 +255,30 @@ public class Entity
 	 */
 	public Entity setPosition(Geometry3f position)
 	{
-		this.position = position;
+		if (sleeping)
+			wake();
+
+		setVector(EntityStore.POSITION, position);
 		return this;
 	}
 
 	/**
-	 * Gets the 3f velocity of this Entity
+	 * Gets the 3f velocity of this Entity. The value returned is a view of the
+	 * entity's velocity, so changing it changes the entity.
 	 * 
 	 * @return velocity (change in position) on all three axes (x, y, z)
 	 */
 	public Geometry3f getVelocity()
 	{
+		if (velocity == null)
+			velocity = new StoreVector(EntityStore.VELOCITY);
+
 		return velocity;
 	}
 
 	/**
-	 * Sets the 3f Velocity of this Entity
+	 * Sets the 3f Velocity of this Entity. The values are copied, so changing
+	 * velocity afterwards does not change the entity.
 	 * 
 	 * @param velocity
 	 *            (change in position) on all three axes (x, y, z)
@@ -192,22 +286,30 @@ public class Entity
 	 */
 	public Entity setVelocity(Geometry3f velocity)
 	{
-		this.velocity = velocity;
+		if (sleeping)
+			wake();
+
+		setVector(EntityStore.VELOCITY, velocity);
 		return this;
 	}
 
 	/**
-	 * Gets the 3f Acceleration of this Entity
+	 * Gets the 3f Acceleration of this Entity. The value returned is a view of
+	 * the entity's acceleration, so changing it changes the entity.
 	 * 
 	 * @return acceleration (change in velocity) on all three axes (x, y, z)
 	 */
 	public Geometry3f getAcceleration()
 	{
+		if (acceleration == null)
+			acceleration = new StoreVector(EntityStore.ACCELERATION);
+
 		return acceleration;
 	}
 
 	/**
-	 * Sets the 3f Acceleration of this Entity
+	 * Sets the 3f Acceleration of this Entity. The values are copied, so
+	 * changing acceleration afterwards does not change the entity.
 	 * 
 	 * @param acceleration
 	 *            (change in velocity) on all three axes (x, y, z)
@@ -215,22 +317,30 @@ public class Entity
 	 */
 	public Entity setAcceleration(Geometry3f acceleration)
 	{
-		this.acceleration = acceleration;
+		if (sleeping)
+			wake();
+
+		setVector(EntityStore.ACCELERATION, acceleration);
 		return this;
 	}
 
 	/**
-	 * Gets the 3f rotation of this Entity
+	 * Gets the 3f rotation of this Entity. The value returned is a view of the
+	 * entity's rotation, so changing it changes the entity.
 	 * 
 	 * @return rotation (in degrees) on all three axes (x, y, z)
 	 */
 	public Geometry3f getRotation()
 	{
+		if (rotation == null)
+			rotation = new StoreVector(EntityStore.ROTATION);
+
 		return rotation;
 	}
 
 	/**
-	 * Sets the 3f rotation of this Entity
+	 * Sets the 3f rotation of this Entity. The values are copied, so changing
+	 * rotation afterwards does not change the entity.
 	 * 
 	 * @param rotation
 	 *            (in degrees) on all three axes (x, y, z)
@@ -238,7 +348,7 @@ public class Entity
 	 */
 	public Entity setRotation(Geometry3f rotation)
 	{
-		this.rotation = rotation;
+		setVector(EntityStore.ROTATION, rotation);
 		return this;
 	}
 
@@ -249,7 +359,7 @@ public class Entity
 	 */
 	public float getX()
 	{
-		return position.getX();
+		return positions[index];
 	}
 
 	/**
@@ -261,8 +371,7 @@ public class Entity
 	 */
 	public Entity setX(float x)
 	{
-		position.setX(x);
-		return this;
+		return setField(positions, index, x);
 	}
 
 	/**
@@ -272,7 +381,7 @@ public class Entity
 	 */
 	public float getY()
 	{
-		return position.getY();
+		return positions[index + 1];
 	}
 
 	/**
@@ -284,8 +393,7 @@ public class Entity
 	 */
 	public Entity setY(float y)
 	{
-		position.setY(y);
-		return this;
+		return setField(positions, index + 1, y);
 	}
 
 	/**
@@ -295,7 +403,7 @@ public class Entity
 	 */
 	public float getZ()
 	{
-		return position.getZ();
+		return positions[index + 2];
 	}
 
 	/**
@@ -307,8 +415,7 @@ public class Entity
 	 */
 	public Entity setZ(float z)
 	{
-		position.setZ(z);
-		return this;
+		return setField(positions, index + 2, z);
 	}
 
 	/**
@@ -318,7 +425,7 @@ public class Entity
 	 */
 	public float getDX()
 	{
-		return velocity.getX();
+		return velocities[index];
 	}
 
 	/**
@@ -330,8 +437,7 @@ public class Entity
 	 */
 	public Entity setDX(float dx)
 	{
-		velocity.setX(dx);
-		return this;
+		return setField(velocities, index, dx);
 	}
 
 	/**
@@ -341,7 +447,7 @@ public class Entity
 	 */
 	public float getDY()
 	{
-		return velocity.getY();
+		return velocities[index + 1];
 	}
 
 	/**
@@ -353,8 +459,7 @@ public class Entity
 	 */
 	public Entity setDY(float dy)
 	{
-		velocity.setY(dy);
-		return this;
+		return setField(velocities, index + 1, dy);
 	}
 
 	/**
@@ -364,7 +469,7 @@ public class Entity
 	 */
 	public float getDZ()
 	{
-		return velocity.getZ();
+		return velocities[index + 2];
 	}
 
 	/**
@@ -376,8 +481,7 @@ public class Entity
 	 */
 	public Entity setDZ(float dz)
 	{
-		velocity.setZ(dz);
-		return this;
+		return setField(velocities, index + 2, dz);
 	}
 
 	/**
@@ -387,7 +491,7 @@ public class Entity
 	 */
 	public float getAX()
 	{
-		return acceleration.getX();
+		return accelerations[index];
 	}
 
 	/**
@@ -399,8 +503,7 @@ public class Entity
 	 */
 	public Entity setAX(float ax)
 	{
-		acceleration.setX(ax);
-		return this;
+		return setField(accelerations, index, ax);
 	}
 
 	/**
@@ -410,7 +513,7 @@ public class Entity
 	 */
 	public float getAY()
 	{
-		return acceleration.getY();
+		return accelerations[index + 1];
 	}
 
 	/**
@@ -422,8 +525,7 @@ public class Entity
 	 */
 	public Entity setAY(float ay)
 	{
-		acceleration.setY(ay);
-		return this;
+		return setField(accelerations, index + 1, ay);
 	}
 
 	/**
@@ -433,7 +535,7 @@ public class Entity
 	 */
 	public float getAZ()
 	{
-		return acceleration.getZ();
+		return accelerations[index + 2];
 	}
 
 	/**
@@ -445,8 +547,7 @@ public class Entity
 	 */
 	public Entity setAZ(float az)
 	{
-		acceleration.setZ(az);
-		return this;
+		return setField(accelerations, index + 2, az);
 	}
 
 	/**
@@ -456,7 +557,7 @@ public class Entity
 	 */
 	public float getRX()
 	{
-		return rotation.getX();
+		return rotations[index];
 	}
 
 	/**
@@ -468,7 +569,7 @@ public class Entity
 	 */
 	public Entity setRX(float rx)
 	{
-		rotation.setX(rx);
+		rotations[index] = rx;
 		return this;
 	}
 
@@ -479,7 +580,7 @@ public class Entity
 	 */
 	public float getRY()
 	{
-		return rotation.getY();
+		return rotations[index + 1];
 	}
 
 	/**
@@ -491,7 +592,7 @@ public class Entity
 	 */
 	public Entity setRY(float ry)
 	{
-		rotation.setY(ry);
+		rotations[index + 1] = ry;
 		return this;
 	}
 
@@ -502,7 +603,7 @@ public class Entity
 	 */
 	public float getRZ()
 	{
-		return rotation.getZ();
+		return rotations[index + 2];
 	}
 
 	/**
@@ -514,7 +615,7 @@ public class Entity
 	 */
 	public Entity setRZ(float rz)
 	{
-		rotation.setZ(rz);
+		rotations[index + 2] = rz;
 		return this;
 	}
 
@@ -542,8 +643,410 @@ public class Entity
 	}
 
 	/**
-	 * Renders the drawable (if it exists) using the entity's location and
-	 * rotation.
+	 * Gets the entity this entity is drawn relative to
+	 * 
+	 * @return parent entity, or null if there is none
+	 */
+	public Entity getParent()
+	{
+		return parent;
+	}
+
+	/**
+	 * Sets the entity this entity is drawn relative to. The entity's position
+	 * and rotation become offsets from its parent's, so it moves and turns
+	 * with the parent, like a turret on a ship. Only drawing goes through the
+	 * parent: updates and collisions still use the entity's own position.
+	 * 
+	 * @param parent
+	 *            parent entity, or null to draw the entity on its own
+	 * @return this
+	 */
+	public Entity setParent(Entity parent)
+	{
+		for (Entity e = parent; e != null; e = e.parent)
+		{
+			if (e == this)
+				throw new IllegalArgumentException(
+						"An entity can not be its own parent");
+		}
+
+		if (this.parent != null)
+			this.parent.children.remove(this);
+
+		if (parent != null)
+		{
+			if (parent.children == null)
+				parent.children = new ArrayList<Entity>();
+			parent.children.add(this);
+		}
+
+		this.parent = parent;
+		return this;
+	}
+
+	/**
+	 * Gets the entities that have this entity as their parent
+	 * 
+	 * @return children of the entity, in the order they were given it. The
+	 *         list can not be changed.
+	 */
+	public List<Entity> getChildren()
+	{
+		if (children == null)
+			return Collections.emptyList();
+
+		return Collections.unmodifiableList(children);
+	}
+
+	/**
+	 * Gets the matrix this entity is drawn with: its translation and rotation,
+	 * after those of its parents. The matrix is kept between calls, and only
+	 * made again when the entity or one of its parents has moved or turned
+	 * since, so the entity's world position (elements 12 to 14) is cheap to
+	 * read. The returned array must not be changed.
+	 * 
+	 * @return column-major 4x4 matrix from the entity's space to the world's
+	 */
+	public float[] getWorldMatrix()
+	{
+		boolean changed = updateLocalMatrix();
+
+		// without a parent the local matrix is the world matrix
+		if (parent == null)
+		{
+			if (changed || builtParent != null)
+			{
+				builtParent = null;
+				worldVersion++;
+			}
+
+			return localMatrix;
+		}
+
+		float[] parentMatrix = parent.getWorldMatrix();
+		if (changed || builtParent != parent
+				|| builtParentVersion != parent.worldVersion)
+		{
+			if (worldMatrix == null)
+				worldMatrix = new float[16];
+
+			Matrix.multiplyMM(worldMatrix, 0, parentMatrix, 0, localMatrix, 0);
+			builtParent = parent;
+			builtParentVersion = parent.worldVersion;
+			worldVersion++;
+		}
+
+		return worldMatrix;
+	}
+
+	/**
+	 * Gets the matrix render draws this entity with, before the offset set by
+	 * setRenderOffset. This is the world matrix, but subclasses that turn or
+	 * place their drawable some other way, such as with a quaternion, should
+	 * override this rather than render. The Scene culls with this matrix, and
+	 * snapshots draw with it, so the entity is drawn the same way with a
+	 * simulation thread. The returned array must not be changed.
+	 * 
+	 * @return column-major 4x4 matrix from the drawable's space to the world's
+	 */
+	public float[] getDrawMatrix()
+	{
+		return getWorldMatrix();
+	}
+
+	/**
+	 * Sets how far render moves this entity, in world space, from where its
+	 * world matrix puts it. The Scene sets this for each of its entities
+	 * before each frame, to draw them part way between where they were at the
+	 * last update and where they are now, and sets it back to 0 when the
+	 * entity leaves the Scene.
+	 * 
+	 * @param dx
+	 *            offset on the x-axis
+	 * @param dy
+	 *            offset on the y-axis
+	 * @param dz
+	 *            offset on the z-axis
+	 * @return this
+	 */
+	public Entity setRenderOffset(float dx, float dy, float dz)
+	{
+		renderDX = dx;
+		renderDY = dy;
+		renderDZ = dz;
+		return this;
+	}
+
+	/**
+	 * Gets the x value of the position this entity is drawn at in the world,
+	 * from its draw matrix, with the offset set by setRenderOffset. It is
+	 * already set when the Scene's render is called, so it can be used to put
+	 * the camera on an entity and follow it smoothly between updates.
+	 * 
+	 * @return position on x-axis, in world space
+	 */
+	public float getRenderX()
+	{
+		return getDrawMatrix()[12] + renderDX;
+	}
+
+	/**
+	 * Gets the y value of the position this entity is drawn at in the world,
+	 * like getRenderX
+	 * 
+	 * @return position on y-axis, in world space
+	 */
+	public float getRenderY()
+	{
+		return getDrawMatrix()[13] + renderDY;
+	}
+
+	/**
+	 * Gets the z value of the position this entity is drawn at in the world,
+	 * like getRenderX
+	 * 
+	 * @return position on z-axis, in world space
+	 */
+	public float getRenderZ()
+	{
+		return getDrawMatrix()[14] + renderDZ;
+	}
+
+	/**
+	 * Gets the space this entity's drawable takes up, around the entity. The
+	 * Scene skips drawing the entity when these bounds, moved by the draw
+	 * matrix, are off the screen. Subclasses that override render to draw
+	 * somewhere else should override this, returning null to never be
+	 * skipped.
+	 * 
+	 * @return bounds of the drawable, or null if it has none
+	 */
+	public Bounds getBounds()
+	{
+		if (drawable instanceof Bounded)
+			return ((Bounded) drawable).getBounds();
+
+		return null;
+	}
+
+	/**
+	 * Gets the handle of this entity in the Scene it was last added to. The
+	 * Scene can find the entity by its handle until the entity is removed.
+	 * 
+	 * @return handle of the entity, or EntityRegistry.NO_HANDLE if it was
+	 *         never added to a Scene
+	 */
+	public long getHandle()
+	{
+		return handle;
+	}
+
+	/**
+	 * Sets the handle of this entity. This is done by the Scene the entity is
+	 * added to.
+	 * 
+	 * @param handle
+	 *            handle given by the Scene's EntityRegistry
+	 * @return this
+	 */
+	public Entity setHandle(long handle)
+	{
+		this.handle = handle;
+		return this;
+	}
+
+	/**
+	 * Gets the store this entity's position, velocity, acceleration and
+	 * rotation are kept in
+	 * 
+	 * @return the entity's own store, or the store of the Scene it is in
+	 */
+	public EntityStore getStore()
+	{
+		return store;
+	}
+
+	/**
+	 * Gets the slot of this entity in its store
+	 * 
+	 * @return slot of the entity
+	 */
+	public int getSlot()
+	{
+		return slot;
+	}
+
+	/**
+	 * Moves this entity's position, velocity, acceleration and rotation into
+	 * another store. A Scene moves the entities added to it into its own
+	 * store, so it can move them all in one loop. A store also calls this
+	 * with itself for each of its entities when it grows.
+	 * 
+	 * A move queued by update and not done yet goes along with the entity,
+	 * and is done right away when it moves back into its own store.
+	 * 
+	 * @param target
+	 *            store to move into, or null to move back into a store of
+	 *            the entity's own
+	 * @return this
+	 */
+	public Entity setStore(EntityStore target)
+	{
+		if (target == null)
+		{
+			if (home == null)
+				home = new EntityStore(1);
+			target = home;
+		}
+
+		if (target != store)
+		{
+			int newSlot = target.add(this);
+			target.copy(store, slot, newSlot);
+
+			// the old store fills the hole with its last entity
+			Entity moved = store.remove(slot);
+			if (moved != null)
+			{
+				moved.slot = slot;
+				moved.index = slot * 3;
+			}
+
+			store = target;
+			slot = newSlot;
+			index = slot * 3;
+
+			// the entity's own store is only needed while it is in no other.
+			// Nothing else moves an entity in its own store, so do the move
+			// queued in the one it left
+			if (store != home)
+				home = null;
+			else
+				home.integrate();
+		}
+
+		positions = store.getArray(EntityStore.POSITION);
+		velocities = store.getArray(EntityStore.VELOCITY);
+		accelerations = store.getArray(EntityStore.ACCELERATION);
+		rotations = store.getArray(EntityStore.ROTATION);
+		return this;
+	}
+
+	/**
+	 * Gets whether this entity may be put to sleep
+	 * 
+	 * @return true if the entity sleeps when it stays still
+	 */
+	public boolean canSleep()
+	{
+		return canSleep;
+	}
+
+	/**
+	 * Sets whether this entity may be put to sleep. Off by default, since a
+	 * sleeping entity's update is not called, so entities that move
+	 * themselves in update (players, enemies) should stay awake.
+	 * 
+	 * @param canSleep
+	 *            true to let the entity sleep when it stays still
+	 * @return this
+	 */
+	public Entity setCanSleep(boolean canSleep)
+	{
+		this.canSleep = canSleep;
+		if (!canSleep)
+			wake();
+		return this;
+	}
+
+	/**
+	 * Sets how still this entity must be, and for how long, before it can
+	 * sleep
+	 * 
+	 * @param speed
+	 *            speed below which the entity counts as still
+	 * @param acceleration
+	 *            acceleration below which the entity counts as still
+	 * @param frames
+	 *            number of updates the entity must stay still for
+	 * @return this
+	 */
+	public Entity setSleepThresholds(float speed, float acceleration,
+			int frames)
+	{
+		sleepSpeed = speed;
+		sleepAcceleration = acceleration;
+		sleepFrames = frames;
+		return this;
+	}
+
+	/**
+	 * Checks if this entity is moving slower than its sleep thresholds
+	 * 
+	 * @return true if the velocity and acceleration are below the thresholds
+	 */
+	public boolean isStill()
+	{
+		float dx = getDX(), dy = getDY(), dz = getDZ();
+		float ax = getAX(), ay = getAY(), az = getAZ();
+		return dx * dx + dy * dy + dz * dz <= sleepSpeed * sleepSpeed
+				&& ax * ax + ay * ay + az * az <= sleepAcceleration
+						* sleepAcceleration;
+	}
+
+	/**
+	 * Checks if this entity has been still long enough to sleep
+	 * 
+	 * @return true if the entity can sleep and has been still for enough
+	 *         updates
+	 */
+	public boolean isReadyToSleep()
+	{
+		return canSleep && stillFrames >= sleepFrames;
+	}
+
+	/**
+	 * Gets whether this entity is sleeping. Sleeping entities are not
+	 * updated, only their drawables are, and their collision shapes are not
+	 * tested against other sleeping or static shapes.
+	 * 
+	 * @return true if the entity is sleeping
+	 */
+	public boolean isSleeping()
+	{
+		return sleeping;
+	}
+
+	/**
+	 * Puts this entity to sleep. Normally done by the CollisionManager, once
+	 * the entity and everything touching it have been still long enough.
+	 */
+	public void sleep()
+	{
+		sleeping = true;
+	}
+
+	/**
+	 * Wakes this entity up. Changing the entity's position, velocity or
+	 * acceleration also wakes it. The CollisionManager wakes the rest of the
+	 * entity's island at its next check.
+	 */
+	public void wake()
+	{
+		sleeping = false;
+		stillFrames = 0;
+	}
+
+	/**
+	 * Renders the drawable (if it exists) using the entity's draw matrix,
+	 * made from its location and rotation and those of its parents, moved by
+	 * the offset set with setRenderOffset.
+	 * 
+	 * A Scene with a simulation thread draws its entities from snapshots
+	 * instead, with the draw matrix and bounds saved after each update, and
+	 * does not call this. Its startSimulationThread refuses entities that
+	 * override it.
 	 */
 	public void render()
 	{
@@ -552,10 +1055,10 @@ public class Entity
 
 		MM.pushMatrix();
 
-		MM.translate(getX(), getY(), getZ());
-		MM.rotate(getRX(), 1, 0, 0);
-		MM.rotate(getRY(), 0, 1, 0);
-		MM.rotate(getRZ(), 0, 0, 1);
+		if (renderDX != 0 || renderDY != 0 || renderDZ != 0)
+			MM.translate(renderDX, renderDY, renderDZ);
+
+		MM.multiply(getDrawMatrix());
 
 		drawable.draw();
 
@@ -565,7 +1068,15 @@ public class Entity
 	/**
 	 * Updates the position using velocity and delta, and then updates the
 	 * velocity using acceleration and delta. Also requests the drawable (if it
-	 * exists) to update using delta.
+	 * exists) to update using delta, and counts how long the entity has been
+	 * still so it can sleep.
+	 * 
+	 * An entity in a Scene's store is not moved here: the move is queued, and
+	 * the Scene moves all of its entities at once after every entity has
+	 * updated. Code after super.update in a subclass still sees the entity
+	 * where it was before this update, see requestAfterMove. In a Scene with
+	 * a JobSystem the drawable update is queued the same way, see
+	 * updateDrawable.
 	 * 
 	 * @param scene
 	 *            entity's container
@@ -573,6 +1084,108 @@ public class Entity
 	 *            time (in seconds) since last update
 	 */
 	public void update(Scene scene, float delta)
+	{
+		// Move the entity, or have its store move it with the others.
+		if (store == home)
+			integrate(delta);
+		else
+			store.step(slot, delta);
+
+		requestDrawableUpdate(scene, delta);
+
+		// Count how long the entity has been still, for sleeping.
+		if (canSleep && isStill())
+		{
+			if (stillFrames < sleepFrames)
+				stillFrames++;
+		}
+		else
+			stillFrames = 0;
+	}
+
+	/**
+	 * Has afterMove called once the move queued by this update is done, to be
+	 * called from update after super.update. An
+	 * entity in a Scene's store is moved at the end of the Scene's update, so
+	 * code that needs the moved position, like wrapping around the edges of
+	 * a level or limiting the speed, goes in afterMove instead of after
+	 * super.update. An entity that moves itself has afterMove called right
+	 * away.
+	 * 
+	 * @param scene
+	 *            entity's container, as given to update
+	 */
+	protected void requestAfterMove(Scene scene)
+	{
+		if (store == home || scene == null)
+			afterMove(scene);
+		else
+			scene.queueAfterMove(this);
+	}
+
+	/**
+	 * Called once this entity has been moved, if asked for with
+	 * requestAfterMove during its update. Does nothing unless overridden.
+	 * 
+	 * @param scene
+	 *            entity's container
+	 */
+	public void afterMove(Scene scene)
+	{
+	}
+
+	/**
+	 * Called by a Scene instead of update while this entity is sleeping.
+	 * Only requests the drawable update, so an animation keeps playing while
+	 * the entity stays put.
+	 * 
+	 * @param scene
+	 *            entity's container
+	 * @param delta
+	 *            time (in seconds) since last update
+	 */
+	public void updateAsleep(Scene scene, float delta)
+	{
+		requestDrawableUpdate(scene, delta);
+	}
+
+	/**
+	 * Requests the mesh update, or leaves it to the scene's jobs
+	 */
+	private void requestDrawableUpdate(Scene scene, float delta)
+	{
+		if (scene != null && scene.getJobSystem() != null)
+		{
+			drawableDelta += delta;
+		}
+		else if (drawable != null)
+		{
+			drawable.update(delta);
+		}
+	}
+
+	/**
+	 * Runs the drawable update queued by update, if there is one. A Scene
+	 * with a JobSystem calls this for its entities on the job system's
+	 * threads, after every entity has updated.
+	 */
+	public void updateDrawable()
+	{
+		if (drawableDelta == 0)
+			return;
+
+		float delta = drawableDelta;
+		drawableDelta = 0;
+
+		if (drawable != null)
+			drawable.update(delta);
+	}
+
+	/**
+	 * Updates the velocity using acceleration and delta, and then the
+	 * position using velocity and delta
+	 */
+	private void integrate(float delta)
 	{
 		// Update the entity's velocity.
 		setDX(getDX() + getAX() * delta);
@@ -583,11 +1196,157 @@ public class Entity
 		setX(getX() + getDX() * delta);
 		setY(getY() + getDY() * delta);
 		setZ(getZ() + getDZ() * delta);
+	}
 
-		// Request the mesh update.
-		if (drawable != null)
+	/**
+	 * Makes the local matrix again if the position or rotation has changed
+	 * since it was made. The same as translating, then rotating around x, y
+	 * and z in turn, but with the rotations multiplied out by hand, and left
+	 * alone when only the position changed.
+	 * 
+	 * @return true if the matrix changed
+	 */
+	private boolean updateLocalMatrix()
+	{
+		float x = positions[index];
+		float y = positions[index + 1];
+		float z = positions[index + 2];
+		float rx = rotations[index];
+		float ry = rotations[index + 1];
+		float rz = rotations[index + 2];
+
+		float[] m = localMatrix;
+		boolean turned = m == null || rx != builtRX || ry != builtRY
+				|| rz != builtRZ;
+		if (!turned && x == builtX && y == builtY && z == builtZ)
+			return false;
+
+		if (m == null)
 		{
-			drawable.update(delta);
+			m = localMatrix = new float[16];
+			m[15] = 1;
+		}
+
+		if (turned)
+		{
+			double a = Math.toRadians(rx);
+			double b = Math.toRadians(ry);
+			double c = Math.toRadians(rz);
+			float sa = (float) Math.sin(a), ca = (float) Math.cos(a);
+			float sb = (float) Math.sin(b), cb = (float) Math.cos(b);
+			float sc = (float) Math.sin(c), cc = (float) Math.cos(c);
+
+			// Rx * Ry * Rz, column by column
+			m[0] = cb * cc;
+			m[1] = sa * sb * cc + ca * sc;
+			m[2] = -ca * sb * cc + sa * sc;
+			m[4] = -cb * sc;
+			m[5] = -sa * sb * sc + ca * cc;
+			m[6] = ca * sb * sc + sa * cc;
+			m[8] = sb;
+			m[9] = -sa * cb;
+			m[10] = ca * cb;
+
+			builtRX = rx;
+			builtRY = ry;
+			builtRZ = rz;
+		}
+
+		m[12] = x;
+		m[13] = y;
+		m[14] = z;
+		builtX = x;
+		builtY = y;
+		builtZ = z;
+		return true;
+	}
+
+	/**
+	 * Sets a value of this entity in its store, waking the entity if the
+	 * value changes
+	 */
+	private Entity setField(float[] values, int at, float value)
+	{
+		if (sleeping && value != values[at])
+			wake();
+
+		values[at] = value;
+		return this;
+	}
+
+	/**
+	 * Copies a value into a vector of this entity in its store
+	 */
+	private void setVector(int vector, Geometry3f value)
+	{
+		store.set(vector, slot, EntityStore.X, value.getX());
+		store.set(vector, slot, EntityStore.Y, value.getY());
+		store.set(vector, slot, EntityStore.Z, value.getZ());
+	}
+
+	/**
+	 * A Geometry3f whose values are a vector of the entity in its store, so
+	 * changing it changes the entity. Changing the position, velocity or
+	 * acceleration wakes the entity, like its setters do.
+	 */
+	private class StoreVector extends Geometry3f
+	{
+		private final int vector;
+
+		StoreVector(int vector)
+		{
+			this.vector = vector;
+		}
+
+		@Override
+		public float getX()
+		{
+			return store.get(vector, slot, EntityStore.X);
+		}
+
+		@Override
+		public float getY()
+		{
+			return store.get(vector, slot, EntityStore.Y);
+		}
+
+		@Override
+		public float getZ()
+		{
+			return store.get(vector, slot, EntityStore.Z);
+		}
+
+		@Override
+		public Geometry3f setX(float x)
+		{
+			set(EntityStore.X, x);
+			return this;
+		}
+
+		@Override
+		public Geometry3f setY(float y)
+		{
+			set(EntityStore.Y, y);
+			return this;
+		}
+
+		@Override
+		public Geometry3f setZ(float z)
+		{
+			set(EntityStore.Z, z);
+			return this;
+		}
+
+		private void set(int axis, float value)
+		{
+			float[] values = store.getArray(vector);
+			int at = slot * 3 + axis;
+
+			// turning does not wake the entity, like setRX
+			if (vector == EntityStore.ROTATION)
+				values[at] = value;
+			else
+				setField(values, at, value);
 		}
 	}
 }
\ No newline at end of file
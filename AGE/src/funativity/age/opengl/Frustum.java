@@ -0,0 +1,152 @@
+package funativity.age.opengl;
+
+/**
+ * The part of the world the camera can see, as six planes facing inwards.
+ * Used to skip drawing anything whose Bounds are wholly outside of it.
+ *
+ */
+public final class Frustum
+{
+	// left, right, bottom, top, near and far: a, b, c and d of each, with
+	// (a, b, c) of length 1 and pointing inside
+	private final float[] planes = new float[24];
+
+	/**
+	 * Sets the planes from the matrix that takes points to clip space, such
+	 * as the projection times the view matrix
+	 *
+	 * @param matrix
+	 *            16 element column-major matrix
+	 */
+	public void set(float[] matrix)
+	{
+		for (int i = 0; i < 3; i++)
+		{
+			// row 3 plus and minus row i of the matrix
+			for (int j = 0; j < 4; j++)
+			{
+				float w = matrix[j * 4 + 3];
+				float v = matrix[j * 4 + i];
+				planes[i * 8 + j] = w + v;
+				planes[i * 8 + 4 + j] = w - v;
+			}
+		}
+
+		for (int p = 0; p < planes.length; p += 4)
+		{
+			float a = planes[p];
+			float b = planes[p + 1];
+			float c = planes[p + 2];
+			float length = (float) Math.sqrt(a * a + b * b + c * c);
+			if (length == 0)
+				continue;
+
+			planes[p] /= length;
+			planes[p + 1] /= length;
+			planes[p + 2] /= length;
+			planes[p + 3] /= length;
+		}
+	}
+
+	/**
+	 * Tells if bounds might be seen once moved by a matrix
+	 *
+	 * @param bounds
+	 *            bounds, in their own space
+	 * @param matrix
+	 *            matrix from the bounds' space to the space of the planes
+	 * @return false if the bounds are wholly outside the frustum
+	 */
+	public boolean intersects(Bounds bounds, float[] matrix)
+	{
+		return intersects(bounds, matrix, 0, 0, 0);
+	}
+
+	/**
+	 * Tells if bounds might be seen once moved by a matrix and then by an
+	 * offset
+	 *
+	 * @param bounds
+	 *            bounds, in their own space
+	 * @param matrix
+	 *            matrix from the bounds' space to the space of the planes
+	 * @param dx
+	 *            offset on the x-axis, after the matrix
+	 * @param dy
+	 *            offset on the y-axis, after the matrix
+	 * @param dz
+	 *            offset on the z-axis, after the matrix
+	 * @return false if the bounds are wholly outside the frustum
+	 */
+	public boolean intersects(Bounds bounds, float[] matrix, float dx,
+			float dy, float dz)
+	{
+		float[] m = matrix;
+		float bx = bounds.getCenterX();
+		float by = bounds.getCenterY();
+		float bz = bounds.getCenterZ();
+
+		// middle of the box and the sphere
+		float x = m[0] * bx + m[4] * by + m[8] * bz + m[12] + dx;
+		float y = m[1] * bx + m[5] * by + m[9] * bz + m[13] + dy;
+		float z = m[2] * bx + m[6] * by + m[10] * bz + m[14] + dz;
+
+		// a box lined up with the planes' axes holding the turned box
+		float ex = bounds.getExtentX();
+		float ey = bounds.getExtentY();
+		float ez = bounds.getExtentZ();
+		float boxX = Math.abs(m[0]) * ex + Math.abs(m[4]) * ey
+				+ Math.abs(m[8]) * ez;
+		float boxY = Math.abs(m[1]) * ex + Math.abs(m[5]) * ey
+				+ Math.abs(m[9]) * ez;
+		float boxZ = Math.abs(m[2]) * ex + Math.abs(m[6]) * ey
+				+ Math.abs(m[10]) * ez;
+
+		// the sphere grows by the most the matrix scales any axis
+		float scale = Math.max(m[0] * m[0] + m[1] * m[1] + m[2] * m[2],
+				Math.max(m[4] * m[4] + m[5] * m[5] + m[6] * m[6], m[8] * m[8]
+						+ m[9] * m[9] + m[10] * m[10]));
+		float sphere = bounds.getRadius() * (float) Math.sqrt(scale);
+
+		for (int p = 0; p < planes.length; p += 4)
+		{
+			float a = planes[p];
+			float b = planes[p + 1];
+			float c = planes[p + 2];
+			float distance = a * x + b * y + c * z + planes[p + 3];
+
+			// outside if either the box or the sphere is wholly behind
+			float box = Math.abs(a) * boxX + Math.abs(b) * boxY
+					+ Math.abs(c) * boxZ;
+			if (distance < -Math.min(box, sphere))
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Tells if a sphere might be seen
+	 *
+	 * @param x
+	 *            middle of the sphere on the x-axis
+	 * @param y
+	 *            middle of the sphere on the y-axis
+	 * @param z
+	 *            middle of the sphere on the z-axis
+	 * @param radius
+	 *            radius of the sphere
+	 * @return false if the sphere is wholly outside the frustum
+	 */
+	public boolean intersectsSphere(float x, float y, float z, float radius)
+	{
+		for (int p = 0; p < planes.length; p += 4)
+		{
+			if (planes[p] * x + planes[p + 1] * y + planes[p + 2] * z
+					+ planes[p + 3] < -radius)
+				return false;
+		}
+
+		return true;
+	}
+}
@@ -49,6 +49,11 @@ public class MM
 	 */
 	private static Stack<float[]> matrixStack = new Stack<float[]>();
 
+	/**
+	 * Product of a multiply, before it is copied into the model matrix
+	 */
+	private static final float[] product = new float[16];
+
 	/**
 	 * Get the Model Matrix
 	 * 
@@ -264,6 +269,22 @@ public class MM
 		Matrix.rotateM(Matrices.MODEL.getMatrix(), 0, angle, x, y, z);
 	}
 
+	/**
+	 * Multiply the Model matrix by the matrix provided, such as an entity's
+	 * cached world matrix. The same as the translations and rotations that
+	 * made the matrix, without working them out again.
+	 * 
+	 * @param matrix
+	 *            16 element column-major matrix, applied after the current
+	 *            Model matrix
+	 */
+	public static void multiply(float[] matrix)
+	{
+		float[] model = Matrices.MODEL.getMatrix();
+		Matrix.multiplyMM(product, 0, model, 0, matrix, 0);
+		System.arraycopy(product, 0, model, 0, 16);
+	}
+
 	/**
 	 * Scale the Model matrix by amounts provided
 	 * 
@@ -15,8 +15,14 @@ import funativity.age.util.Logger;
 /**
  * An OpenGL render.
  * 
+ * The bounds of a mesh are worked out from its vertices when it is
+ * initialized, so a Scene can skip drawing it when it is off the screen.
+ * 
+ * While a RenderQueue is collecting draws, drawing a mesh only adds it to the
+ * queue, which draws it later sorted by technique, texture and buffer.
+ * 
  */
-public class Mesh implements Drawable
+public class Mesh implements StatefulDrawable, Bounded
 {
 	// number of bytes in a float
 	public static final int SIZE_FLOAT = Float.SIZE / Byte.SIZE;
@@ -43,6 +49,12 @@ public class Mesh implements Drawable
 	private int dataSize;
 	private DrawMode mode;
 
+	// space taken up by the vertices
+	private Bounds bounds;
+
+	// whether draw adds this mesh to a collecting RenderQueue
+	private boolean queued = true;
+
 	/**
 	 * default constructor. Sets starting technique to the simpleTechnique
 	 */
@@ -80,11 +92,37 @@ public class Mesh implements Drawable
 	 *             if vertices or mode is null
 	 */
 	public void initMesh(float[] vertices, short[] indices, DrawMode mode)
+	{
+		initMesh(vertices, indices, mode, technique.getElementsPerVertex());
+	}
+
+	/**
+	 * One-time preparation for the mesh, for vertex data laid out for another
+	 * technique than the one the mesh has now. elementsPerVertex is only used
+	 * to find the positions of the vertices, for the mesh's bounds.
+	 * 
+	 * @param vertices
+	 *            mesh's vertex data, starting with the position of each
+	 *            vertex - example (x, y, z, u, v)
+	 * @param indices
+	 *            mesh's vertex draw order
+	 * @param mode
+	 *            Mode of how this mesh will draw - example options
+	 *            GL_TRIANGLES, or GL_POINTS
+	 * @param elementsPerVertex
+	 *            number of floats from one vertex to the next
+	 * 
+	 * @throws NullPointerException
+	 *             if vertices or mode is null
+	 */
+	public void initMesh(float[] vertices, short[] indices, DrawMode mode,
+			int elementsPerVertex)
 	{
 		if (vertices == null)
 			throw new NullPointerException("vertices cannot be null");
 
 		setMode(mode);
+		bounds = Bounds.fromVertices(vertices, elementsPerVertex);
 
 		// setup vertex buffer
 		{
@@ -170,7 +208,9 @@ public class Mesh implements Drawable
 
 	/**
 	 * Draw this mesh. This method calls setup methods on the technique that is
-	 * assigned to this mesh, and then draws.
+	 * assigned to this mesh, and then draws. While a RenderQueue is collecting
+	 * draws, the mesh is only added to the queue, with the current model
+	 * matrix and the mesh's color, technique and texture.
 	 * 
 	 * @throws NullPointerException
 	 *             if mode is null. It should never be able to be null at this
@@ -179,17 +219,79 @@ public class Mesh implements Drawable
 	@Override
 	public void draw()
 	{
+		draw(color, getDrawTexture());
+	}
+
+	/**
+	 * Draw this mesh with the color and texture of a saved state
+	 * 
+	 * @param state
+	 *            state saved by saveDrawState
+	 */
+	@Override
+	public void draw(DrawState state)
+	{
+		Texture texture = state.getTexture();
+		draw(state.getColor(), texture == null ? NO_TEXTURE : texture);
+	}
+
+	/**
+	 * Copies the color and texture of this mesh into a state
+	 * 
+	 * @param state
+	 *            state to copy into
+	 */
+	@Override
+	public void saveDrawState(DrawState state)
+	{
+		state.setColor(color);
+		state.setTexture(texture);
+	}
+
+	/**
+	 * Draw this mesh with a color and texture
+	 */
+	private void draw(AGEColor color, Texture texture)
+	{
+		RenderQueue queue = RenderQueue.getCollecting();
+		if (queue != null && queued)
+		{
+			queue.add(this, color, texture);
+			return;
+		}
+
 		// setup shader
 		technique.useTechnique();
 		technique.setColor(color);
 
 		// bind texture
-		(texture == null ? NO_TEXTURE : texture).bind();
+		texture.bind();
 
 		// bind vertex buffer, and ask technique to setup pointers
 		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
 		technique.setAttributePointers();
 
+		if (indexDrawing)
+			GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, vio);
+
+		drawBuffers();
+
+		if (indexDrawing)
+			GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+		// cleanup
+		texture.unbind();
+		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+
+		Logger.checkOGLError();
+	}
+
+	/**
+	 * Draws the mesh's vertices, once the technique, texture and buffers are
+	 * all set up
+	 */
+	void drawBuffers()
+	{
 		// PLEASE NOTE:
 		// Both DrawElements and DrawArrays count parameter take in the number
 		// of indices. Because DrawElements is using the actual index array,
@@ -202,24 +304,70 @@ public class Mesh implements Drawable
 		// draw using indices or normal array
 		if (indexDrawing)
 		{
-			GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, vio);
-
 			GLES20.glDrawElements(mode.getMode(), dataSize,
 					GLES20.GL_UNSIGNED_SHORT, 0);
-
-			GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
 		}
 		else
 		{
 			int count = dataSize / technique.getElementsPerVertex();
 			GLES20.glDrawArrays(mode.getMode(), 0, count);
 		}
+	}
 
-		// cleanup
-		(texture == null ? NO_TEXTURE : texture).unbind();
-		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+	/**
+	 * Gets the texture bound to draw this mesh
+	 * 
+	 * @return the mesh's texture, or NO_TEXTURE if it has none
+	 */
+	private Texture getDrawTexture()
+	{
+		return texture == null ? NO_TEXTURE : texture;
+	}
 
-		Logger.checkOGLError();
+	/**
+	 * Gets the OpenGL vertex buffer of this mesh
+	 * 
+	 * @return handle of the vertex buffer
+	 */
+	int getVertexBuffer()
+	{
+		return vbo;
+	}
+
+	/**
+	 * Gets the OpenGL index buffer of this mesh
+	 * 
+	 * @return handle of the index buffer, or 0 if the mesh is not drawn with
+	 *         indices
+	 */
+	int getIndexBuffer()
+	{
+		return indexDrawing ? vio : 0;
+	}
+
+	/**
+	 * Set whether drawing this mesh while a RenderQueue is collecting only
+	 * adds it to the queue. Meshes whose draw depends on shader variables set
+	 * just before, such as the frames of an AnimatedModel, should be drawn
+	 * straight away instead.
+	 * 
+	 * @param queued
+	 *            false to always draw straight away
+	 */
+	public void setQueued(boolean queued)
+	{
+		this.queued = queued;
+	}
+
+	/**
+	 * Get whether drawing this mesh while a RenderQueue is collecting only
+	 * adds it to the queue
+	 * 
+	 * @return true if the mesh can be queued
+	 */
+	public boolean isQueued()
+	{
+		return queued;
 	}
 
 	/**
@@ -258,6 +406,30 @@ public class Mesh implements Drawable
 		this.color = color;
 	}
 
+	/**
+	 * Get the space this mesh's vertices take up. Worked out when the mesh is
+	 * initialized; data changed later with bufferSubData is not counted.
+	 * 
+	 * @return bounds of the mesh, or null if it was never initialized
+	 */
+	@Override
+	public Bounds getBounds()
+	{
+		return bounds;
+	}
+
+	/**
+	 * Set the space this mesh takes up, such as after moving its vertices
+	 * with bufferSubData
+	 * 
+	 * @param bounds
+	 *            new bounds, or null to never skip drawing this mesh
+	 */
+	public void setBounds(Bounds bounds)
+	{
+		this.bounds = bounds;
+	}
+
 	/**
 	 * Get the texture this mesh uses
 	 * 
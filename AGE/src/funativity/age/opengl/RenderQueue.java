@@ -0,0 +1,362 @@
+package funativity.age.opengl;
+
+import java.util.Arrays;
+
+import android.opengl.GLES20;
+import funativity.age.opengl.shaders.Technique;
+import funativity.age.textures.Texture;
+import funativity.age.util.Logger;
+
+/**
+ * Collects the draws of a frame and then makes them sorted, so OpenGL state is
+ * only changed when it has to be. Between begin and end, drawing a Mesh only
+ * adds it to the queue with the current model matrix. end sorts the draws by a
+ * 64 bit key made of the technique, the texture, the vertex buffer and the
+ * distance from the camera, and then makes them, only switching the shader
+ * program, texture or buffers when the next draw uses a different one.
+ *
+ * Draws with the same key are made in the order they were added. Everything
+ * else is made in key order, not the order it was drawn in, so a scene that
+ * relies on that order to blend things over each other should not use a
+ * queue. Anything drawn straight away while the queue is collecting, such as
+ * meshes that are not queued or other OpenGL calls, is drawn before all of
+ * the queued draws.
+ *
+ * Only used from the GL thread, like MM.
+ *
+ */
+public final class RenderQueue
+{
+	// bits of the sort key, from the top: technique, texture, vertex buffer,
+	// then distance from the camera. The sign bit is left 0.
+	private static final int TECHNIQUE_BITS = 9;
+	private static final int TEXTURE_BITS = 14;
+	private static final int BUFFER_BITS = 16;
+	private static final int DEPTH_BITS = 24;
+
+	private static final int BUFFER_SHIFT = DEPTH_BITS;
+	private static final int TEXTURE_SHIFT = BUFFER_SHIFT + BUFFER_BITS;
+	private static final int TECHNIQUE_SHIFT = TEXTURE_SHIFT + TEXTURE_BITS;
+
+	// the queue meshes are added to instead of drawn, if any
+	private static RenderQueue collecting;
+
+	// the draws: mesh, what it is drawn with, and its model matrix
+	private Mesh[] meshes = new Mesh[64];
+	private Technique[] techniques = new Technique[64];
+	private Texture[] textures = new Texture[64];
+	private AGEColor[] colors = new AGEColor[64];
+	private float[] matrices = new float[64 * 16];
+	private long[] keys = new long[64];
+	private int count;
+
+	// the draws in the order to make them, and room to sort them in
+	private int[] order = new int[64];
+	private int[] scratch = new int[64];
+
+	// model matrix while each draw is made
+	private final float[] drawMatrix = new float[16];
+
+	// what the last end did
+	private int drawCount;
+	private int programChanges;
+	private int textureChanges;
+	private int bufferChanges;
+
+	/**
+	 * Gets the queue collecting draws
+	 *
+	 * @return the queue between its begin and end, or null if none is
+	 */
+	public static RenderQueue getCollecting()
+	{
+		return collecting;
+	}
+
+	/**
+	 * Starts collecting draws. Until end is called, drawing a queued Mesh
+	 * adds it to this queue.
+	 *
+	 * @throws IllegalStateException
+	 *             if a queue is already collecting
+	 */
+	public void begin()
+	{
+		if (collecting != null)
+			throw new IllegalStateException(
+					"A RenderQueue is already collecting");
+
+		collecting = this;
+		count = 0;
+	}
+
+	/**
+	 * Stops collecting draws, and makes every draw collected since begin,
+	 * sorted by their keys. OpenGL is left as a Mesh leaves it after drawing.
+	 *
+	 * @throws IllegalStateException
+	 *             if this queue is not collecting
+	 */
+	public void end()
+	{
+		if (collecting != this)
+			throw new IllegalStateException(
+					"This RenderQueue is not collecting");
+
+		collecting = null;
+		sort();
+
+		drawCount = count;
+		programChanges = 0;
+		textureChanges = 0;
+		bufferChanges = 0;
+
+		// techniques read the model matrix from MM while setting uniforms
+		float[] model = MM.getMMatrix();
+		MM.Matrices.MODEL.setMatrix(drawMatrix);
+
+		Technique technique = null;
+		Texture texture = null;
+		int vertexBuffer = -1;
+		int indexBuffer = 0;
+		try
+		{
+			for (int n = 0; n < count; n++)
+			{
+				int i = order[n];
+				Mesh mesh = meshes[i];
+				System.arraycopy(matrices, i * 16, drawMatrix, 0, 16);
+
+				// attribute pointers belong to the technique, so a new
+				// technique sets them up again even for the same buffer
+				if (techniques[i] != technique)
+				{
+					technique = techniques[i];
+					technique.getShaderProgram().useProgram();
+					vertexBuffer = -1;
+					programChanges++;
+				}
+
+				technique.updateUniforms();
+				technique.setColor(colors[i]);
+
+				if (textures[i] != texture)
+				{
+					texture = textures[i];
+					texture.bind();
+					textureChanges++;
+				}
+
+				if (mesh.getVertexBuffer() != vertexBuffer)
+				{
+					vertexBuffer = mesh.getVertexBuffer();
+					GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBuffer);
+					technique.setAttributePointers();
+					bufferChanges++;
+				}
+
+				if (mesh.getIndexBuffer() != 0
+						&& mesh.getIndexBuffer() != indexBuffer)
+				{
+					indexBuffer = mesh.getIndexBuffer();
+					GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER,
+							indexBuffer);
+				}
+
+				mesh.drawBuffers();
+			}
+		}
+		finally
+		{
+			if (texture != null)
+				texture.unbind();
+			GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+			if (indexBuffer != 0)
+				GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+			MM.Matrices.MODEL.setMatrix(model);
+
+			// let go of what was drawn
+			Arrays.fill(meshes, 0, count, null);
+			Arrays.fill(techniques, 0, count, null);
+			Arrays.fill(textures, 0, count, null);
+			Arrays.fill(colors, 0, count, null);
+			count = 0;
+		}
+
+		Logger.checkOGLError();
+	}
+
+	/**
+	 * Adds a draw of a mesh with the current model matrix. Done by Mesh.draw
+	 * while this queue is collecting.
+	 *
+	 * @param mesh
+	 *            mesh to draw
+	 * @param color
+	 *            color to draw it with
+	 * @param texture
+	 *            texture to draw it with
+	 */
+	void add(Mesh mesh, AGEColor color, Texture texture)
+	{
+		if (count == meshes.length)
+			grow();
+
+		Technique technique = mesh.getTechnique();
+		float[] model = MM.getMMatrix();
+
+		meshes[count] = mesh;
+		techniques[count] = technique;
+		textures[count] = texture;
+		colors[count] = color;
+		System.arraycopy(model, 0, matrices, count * 16, 16);
+		keys[count] = getKey(technique.getId(), texture.getTextureID(),
+				mesh.getVertexBuffer(), getDepth(model));
+		count++;
+	}
+
+	/**
+	 * Makes the sort key of a draw. Each id only keeps as many low bits as
+	 * its part of the key has, so two ids may share a place in the order, but
+	 * state is still only changed by the objects themselves.
+	 *
+	 * @param technique
+	 *            id of the technique
+	 * @param texture
+	 *            OpenGL id of the texture
+	 * @param buffer
+	 *            OpenGL id of the vertex buffer
+	 * @param depth
+	 *            distance from the camera, 0 or more
+	 * @return key, sorting by technique, then texture, then buffer, then
+	 *         nearest first
+	 */
+	public static long getKey(int technique, int texture, int buffer,
+			float depth)
+	{
+		// the bits of a float that is 0 or more sort like the float, so the
+		// top ones are a coarse distance that needs no range
+		int bits = Float.floatToIntBits(depth > 0 ? depth : 0);
+		long key = bits >>> (31 - DEPTH_BITS);
+
+		key |= (long) (buffer & ((1 << BUFFER_BITS) - 1)) << BUFFER_SHIFT;
+		key |= (long) (texture & ((1 << TEXTURE_BITS) - 1)) << TEXTURE_SHIFT;
+		key |= (long) (technique & ((1 << TECHNIQUE_BITS) - 1))
+				<< TECHNIQUE_SHIFT;
+		return key;
+	}
+
+	/**
+	 * Gets the distance in front of the camera of the origin of a model matrix
+	 */
+	private static float getDepth(float[] model)
+	{
+		float[] view = MM.getVMatrix();
+		float z = view[2] * model[12] + view[6] * model[13] + view[10]
+				* model[14] + view[14];
+		return -z;
+	}
+
+	/**
+	 * Sorts the draws by key into order, keeping draws with the same key in
+	 * the order they were added
+	 */
+	private void sort()
+	{
+		boolean sorted = true;
+		for (int i = 0; i < count; i++)
+		{
+			order[i] = i;
+			if (i > 0 && keys[i] < keys[i - 1])
+				sorted = false;
+		}
+
+		if (sorted)
+			return;
+
+		// merge sort, merging runs of width 1, 2, 4... back and forth between
+		// order and scratch
+		int[] from = order;
+		int[] to = scratch;
+		for (int width = 1; width < count; width *= 2)
+		{
+			for (int start = 0; start < count; start += width * 2)
+			{
+				int middle = Math.min(start + width, count);
+				int end = Math.min(start + width * 2, count);
+				int a = start;
+				int b = middle;
+				for (int k = start; k < end; k++)
+				{
+					boolean left = a < middle
+							&& (b >= end || keys[from[a]] <= keys[from[b]]);
+					if (left)
+						to[k] = from[a++];
+					else
+						to[k] = from[b++];
+				}
+			}
+
+			int[] swap = from;
+			from = to;
+			to = swap;
+		}
+
+		if (from != order)
+			System.arraycopy(from, 0, order, 0, count);
+	}
+
+	private void grow()
+	{
+		int capacity = meshes.length * 2;
+		meshes = Arrays.copyOf(meshes, capacity);
+		techniques = Arrays.copyOf(techniques, capacity);
+		textures = Arrays.copyOf(textures, capacity);
+		colors = Arrays.copyOf(colors, capacity);
+		matrices = Arrays.copyOf(matrices, capacity * 16);
+		keys = Arrays.copyOf(keys, capacity);
+		order = new int[capacity];
+		scratch = new int[capacity];
+	}
+
+	/**
+	 * Gets the number of draws the last end made
+	 *
+	 * @return draws made
+	 */
+	public int getDrawCount()
+	{
+		return drawCount;
+	}
+
+	/**
+	 * Gets the number of times the last end switched shader program
+	 *
+	 * @return program switches
+	 */
+	public int getProgramChanges()
+	{
+		return programChanges;
+	}
+
+	/**
+	 * Gets the number of times the last end bound a texture
+	 *
+	 * @return texture binds
+	 */
+	public int getTextureChanges()
+	{
+		return textureChanges;
+	}
+
+	/**
+	 * Gets the number of times the last end bound a vertex buffer
+	 *
+	 * @return vertex buffer binds
+	 */
+	public int getBufferChanges()
+	{
+		return bufferChanges;
+	}
+}
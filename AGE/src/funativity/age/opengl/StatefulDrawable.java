@@ -0,0 +1,29 @@
+package funativity.age.opengl;
+
+/**
+ * A Drawable that can save what it looks like and later be drawn that way,
+ * so it can be drawn on the GL thread while the simulation thread updates
+ * it. Everything draw reads that update or game code may change, such as
+ * the frame of an animation or the color, must be saved.
+ *
+ */
+public interface StatefulDrawable extends Drawable
+{
+	/**
+	 * Copies what this object looks like now into a state. Called on the
+	 * thread updating the object.
+	 *
+	 * @param state
+	 *            state to copy into
+	 */
+	public void saveDrawState(DrawState state);
+
+	/**
+	 * Draw this object as it was when a state was saved, without reading
+	 * anything saveDrawState saves from the object itself
+	 *
+	 * @param state
+	 *            state saved by saveDrawState
+	 */
+	public void draw(DrawState state);
+}
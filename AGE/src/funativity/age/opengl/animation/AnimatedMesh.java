@@ -1,16 +1,20 @@
 package funativity.age.opengl.animation;
 
-import funativity.age.opengl.Drawable;
+import funativity.age.opengl.DrawState;
+import funativity.age.opengl.StatefulDrawable;
 
 /**
  * This class holds animation data. It is intended to be used with animations
  * with multiple frames. The logic to change the current frame is handled in
  * here.
  * 
+ * The frame, how far the animation is towards the next one, and the color
+ * are saved by saveDrawState, so subclasses can draw from a DrawState.
+ * 
  * @author riedla
  * 
  */
-public abstract class AnimatedMesh implements Drawable
+public abstract class AnimatedMesh implements StatefulDrawable
 {
 	// if there is no frame rate
 	private static final float NO_FRAME_RATE = 0;
@@ -133,6 +137,22 @@ public abstract class AnimatedMesh implements Drawable
 		update(0);
 	}
 
+	/**
+	 * Copies the frame, how far it is towards the next frame, and the color
+	 * into a state
+	 * 
+	 * @param state
+	 *            state to copy into
+	 */
+	@Override
+	public void saveDrawState(DrawState state)
+	{
+		state.setFrame(frameIndex);
+		state.setBlend(frameDelay > NO_FRAME_RATE ? currentFrameDelay
+				/ frameDelay : 0);
+		state.setColor(getColor());
+	}
+
 	/**
 	 * Update this animation. This is where the changing of frames is handled.
 	 * This should be called every frame inside the main update loop.
@@ -3,6 +3,9 @@ package funativity.age.opengl.animation;
 import java.util.ArrayList;
 
 import funativity.age.opengl.AGEColor;
+import funativity.age.opengl.Bounded;
+import funativity.age.opengl.Bounds;
+import funativity.age.opengl.DrawState;
 import funativity.age.opengl.Mesh;
 import funativity.age.opengl.shaders.SimpleAnimatedTechnique;
 
@@ -12,11 +15,14 @@ import funativity.age.opengl.shaders.SimpleAnimatedTechnique;
  * animation. Creates a mesh for each frame, and renders the current frame.
  * 
  */
-public class AnimatedModel extends AnimatedMesh
+public class AnimatedModel extends AnimatedMesh implements Bounded
 {
 	// the frames that make up this animation
 	private ArrayList<Mesh> frames = new ArrayList<Mesh>();
 
+	// space taken up by every frame
+	private Bounds bounds;
+
 	// technique that all frames are using to render
 	private SimpleAnimatedTechnique technique;
 
@@ -46,13 +52,30 @@ public class AnimatedModel extends AnimatedMesh
 
 	@Override
 	public void draw()
+	{
+		draw(getFrameIndex(), getBlend(), color);
+	}
+
+	/**
+	 * Draws the frame, blend and color of a saved state
+	 */
+	@Override
+	public void draw(DrawState state)
+	{
+		draw(state.getFrame(), state.getBlend(), state.getColor());
+	}
+
+	/**
+	 * Draws a frame, blended with the next one by blend
+	 */
+	private void draw(int frameIndex, float blend, AGEColor color)
 	{
 		// dont try to draw if there is nothing to draw
 		if (getFrameCount() < 1)
 			return;
 
 		// draw using the current frame
-		Mesh frame = frames.get(getFrameIndex());
+		Mesh frame = frames.get(frameIndex);
 
 		// make sure the frame is using the same technique and color
 		frame.setTechnique(technique);
@@ -60,7 +83,7 @@ public class AnimatedModel extends AnimatedMesh
 
 		// set blend
 		technique.getShaderProgram().useProgram();
-		technique.setFrameBlend(getBlend());
+		technique.setFrameBlend(blend);
 
 		// draw the current frame
 		frame.draw();
@@ -74,8 +97,25 @@ public class AnimatedModel extends AnimatedMesh
 	 */
 	public void addFrame(Mesh frame)
 	{
+		// the frame blend is set just before each draw, so frames can not
+		// wait in a RenderQueue
+		frame.setQueued(false);
 		frames.add(frame);
 		setFrameCount(frames.size());
+
+		Bounds frameBounds = frame.getBounds();
+		bounds = frameBounds == null ? bounds : frameBounds.union(bounds);
+	}
+
+	/**
+	 * Get the space this animation takes up in any of its frames
+	 * 
+	 * @return bounds of every frame, or null if none has bounds
+	 */
+	@Override
+	public Bounds getBounds()
+	{
+		return bounds;
 	}
 
 	@Override
@@ -2,6 +2,7 @@ package funativity.age.opengl.animation;
 
 import java.util.ArrayList;
 
+import funativity.age.opengl.DrawState;
 import funativity.age.textures.Texture;
 
 /**
@@ -52,4 +53,19 @@ public class AnimatedSprite extends Sprite
 			this.setTexture(textures.get(getFrameIndex()));
 	}
 
+	/**
+	 * Copies the frame and color into a state, with the texture of the frame
+	 * 
+	 * @param state
+	 *            state to copy into
+	 */
+	@Override
+	public void saveDrawState(DrawState state)
+	{
+		super.saveDrawState(state);
+
+		if (getFrameCount() > 0)
+			state.setTexture(textures.get(state.getFrame()));
+	}
+
 }
@@ -1,6 +1,9 @@
 package funativity.age.opengl.animation;
 
 import funativity.age.opengl.AGEColor;
+import funativity.age.opengl.Bounded;
+import funativity.age.opengl.Bounds;
+import funativity.age.opengl.DrawState;
 import funativity.age.opengl.primitive.Rectangle;
 import funativity.age.textures.Texture;
 
@@ -12,7 +15,7 @@ import funativity.age.textures.Texture;
  * @author riedla
  * 
  */
-public abstract class Sprite extends AnimatedMesh
+public abstract class Sprite extends AnimatedMesh implements Bounded
 {
 	// Actual rectangle that this sprite will render its image onto.
 	private Rectangle sprite;
@@ -55,6 +58,31 @@ public abstract class Sprite extends AnimatedMesh
 		sprite.draw();
 	}
 
+	@Override
+	public void draw(DrawState state)
+	{
+		sprite.draw(state);
+	}
+
+	/**
+	 * Copies the frame, color and texture into a state
+	 * 
+	 * @param state
+	 *            state to copy into
+	 */
+	@Override
+	public void saveDrawState(DrawState state)
+	{
+		super.saveDrawState(state);
+		state.setTexture(sprite.getTexture());
+	}
+
+	@Override
+	public Bounds getBounds()
+	{
+		return sprite.getBounds();
+	}
+
 	/**
 	 * Update the texture coordinates of the underlying rectangle of this sprite
 	 * 
@@ -1,5 +1,6 @@
 package funativity.age.opengl.animation;
 
+import funativity.age.opengl.DrawState;
 import funativity.age.textures.Texture;
 
 /**
@@ -21,7 +22,7 @@ public class SpriteMap extends Sprite
 	// number of frames in each row of the texture
 	private final int framesPerRow;
 
-	// last used index. Used to prevent updates when none are needed
+	// last drawn index. Used to prevent updates when none are needed
 	private int lastIndex = -1;
 
 	/**
@@ -112,23 +113,46 @@ public class SpriteMap extends Sprite
 		setFrameCount(frameCount);
 
 		super.setTexture(texture);
-		update(0);
 	}
 
+	/**
+	 * Draws the current frame. The texture coordinates are changed here
+	 * rather than in update, since update may run off the OpenGL thread.
+	 */
 	@Override
-	public void update(float delta)
+	public void draw()
 	{
-		super.update(delta);
+		showFrame(getFrameIndex());
+		super.draw();
+	}
 
+	/**
+	 * Draws the frame of a saved state
+	 */
+	@Override
+	public void draw(DrawState state)
+	{
+		showFrame(state.getFrame());
+		super.draw(state);
+	}
+
+	/**
+	 * Moves the texture coordinates to a frame
+	 * 
+	 * @param frameIndex
+	 *            frame to show
+	 */
+	private void showFrame(int frameIndex)
+	{
 		// only update the data if we are showing a different frame
-		if (getFrameIndex() != lastIndex)
+		if (frameIndex != lastIndex)
 		{
-			lastIndex = getFrameIndex();
+			lastIndex = frameIndex;
 
 			// find where on the texture we will be drawing
-			float left = frameWidth * (getFrameIndex() % framesPerRow);
+			float left = frameWidth * (frameIndex % framesPerRow);
 			float right = left + frameWidth;
-			float top = frameHeight * (int) (getFrameIndex() / framesPerRow);
+			float top = frameHeight * (int) (frameIndex / framesPerRow);
 			float bottom = top + frameHeight;
 
 			// adjust the texture coords for the sprite
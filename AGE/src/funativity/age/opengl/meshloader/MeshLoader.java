@@ -171,7 +171,9 @@ public class MeshLoader
 		}
 
 		// drawOrder is null to force ordered drawing on mesh creation
-		mesh.initMesh(dataArray, null, DrawMode.GL_TRIANGLES);
+		mesh.initMesh(dataArray, null, DrawMode.GL_TRIANGLES,
+				VERTICES_PER_TRIANGLE + TEXTURE_COORDS_PER_VERTEX
+						+ NORMAL_DATA_PER_VERTEX);
 		return mesh;
 	}
 
@@ -273,7 +275,8 @@ public class MeshLoader
 			// Constructed. Use this data to create a mesh, that will be
 			// used as a frame of the animation
 			Mesh newFrame = new Mesh();
-			newFrame.initMesh(vertices, null, DrawMode.GL_TRIANGLES);
+			newFrame.initMesh(vertices, null, DrawMode.GL_TRIANGLES,
+					animatedStride);
 			model.addFrame(newFrame);
 		}
 
@@ -27,6 +27,10 @@ public abstract class Technique
 	// handle to shader program that is used by this technique
 	private ShaderProgram program;
 
+	// small number telling this technique apart from the others, for sorting
+	// draws by technique
+	private final int id;
+
 	/**
 	 * Default constructor. This constructor gets the shader files that make up
 	 * this technique, and link them together into a shaderprogram. The newly
@@ -35,6 +39,7 @@ public abstract class Technique
 	protected Technique()
 	{
 		loadProgram();
+		id = registeredTechniques.size();
 		registeredTechniques.add(this);
 
 		program.useProgram();
@@ -75,6 +80,18 @@ public abstract class Technique
 		Logger.checkOGLError();
 	}
 
+	/**
+	 * Pass this technique's variables to the shader again, such as after the
+	 * model matrix changed, without binding the shader program again. The
+	 * program must already be in use.
+	 */
+	public final void updateUniforms()
+	{
+		setShaderUniforms();
+
+		Logger.checkOGLError();
+	}
+
 	/**
 	 * Pass variables to the shader. This is called after the shaderProgram is
 	 * bound, but before the vertex data is bound.
@@ -87,6 +104,17 @@ public abstract class Technique
 	 */
 	public abstract void setAttributePointers();
 
+	/**
+	 * Get the number of this technique. Techniques are numbered from 0 in the
+	 * order they are made.
+	 * 
+	 * @return id of this technique
+	 */
+	public int getId()
+	{
+		return id;
+	}
+
 	/**
 	 * Get the ShaderProgram that this technique uses
 	 * 
@@ -53,14 +53,15 @@ public class AGEGLSurfaceView extends GLSurfaceView
 	 * Adds an entity to the scene from the Android UI thread. Note: this should
 	 * only be called from the UI thread and is not guaranteed to run
 	 * immediately. Android states that it will run before the next
-	 * GLSurfaceView.Renderer onDrawFrame() call.
+	 * GLSurfaceView.Renderer onDrawFrame() call, or when the scene has a
+	 * simulation thread, before its next update.
 	 * 
 	 * @param e
 	 *            Entity to be added to the scene
 	 */
 	public void queueAddEntity(final Entity e)
 	{
-		queueEvent(new Thread()
+		queueSceneEvent(new Thread()
 		{
 			public void run()
 			{
@@ -80,7 +81,7 @@ public class AGEGLSurfaceView extends GLSurfaceView
 	 */
 	public void queueRemoveEntity(final Entity e)
 	{
-		queueEvent(new Thread()
+		queueSceneEvent(new Thread()
 		{
 			public void run()
 			{
@@ -97,7 +98,7 @@ public class AGEGLSurfaceView extends GLSurfaceView
 	 */
 	public void queueRemoveAllEntities()
 	{
-		queueEvent(new Thread()
+		queueSceneEvent(new Thread()
 		{
 			public void run()
 			{
@@ -105,4 +106,19 @@ public class AGEGLSurfaceView extends GLSurfaceView
 			}
 		});
 	}
-}
+
+	/**
+	 * Runs an event on the thread updating the scene: the simulation thread
+	 * if the scene has one, the GL thread otherwise.
+	 * 
+	 * @param event
+	 *            event to run before the scene's next update
+	 */
+	private void queueSceneEvent(Runnable event)
+	{
+		if (renderer.getSimulationThread() != null)
+			renderer.queueEvent(event);
+		else
+			queueEvent(event);
+	}
+}
\ No newline at end of file
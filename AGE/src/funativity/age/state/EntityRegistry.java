@@ -0,0 +1,310 @@
+package funativity.age.state;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+import funativity.age.opengl.Entity;
+
+/**
+ * The entities of a Scene, kept in a slot map. Each entity is given a handle
+ * when it is added: the index of a slot and the generation of that slot. A
+ * slot's generation goes up every time an entity leaves it, so a handle kept
+ * after its entity was removed no longer finds anything, even once the slot
+ * is used by another entity. Adding, removing and finding an entity by its
+ * handle take the same time however many entities there are.
+ *
+ * Adds and removes are queued and only take effect at the next update, like
+ * the Scene's. The entities in the scene are also kept packed in one array in
+ * the order they were added, which is what the Scene updates and renders
+ * from. Removing entities keeps that order, so entities drawn over others
+ * stay on top; every removal of a frame is dropped in one pass over the
+ * array.
+ *
+ */
+public final class EntityRegistry
+{
+	/** A handle no entity ever has */
+	public static final long NO_HANDLE = 0;
+
+	// slot is not in the packed array yet, its entity waits for update
+	private static final int ADDING = -1;
+
+	// for each slot: its generation, its entity (null if free), where its
+	// entity is in the packed array (or ADDING), and whether it is waiting to
+	// be removed
+	private int[] generations;
+	private Entity[] owners;
+	private int[] positions;
+	private boolean[] removing;
+	private int slotCount;
+
+	// slots free to be used again
+	private int[] free;
+	private int freeCount;
+
+	// entities in the scene, in the order they were added, and their slots
+	private Entity[] entities;
+	private int[] entitySlots;
+	private int count;
+
+	// slots waiting to be added, in the order they were added
+	private int[] added;
+	private int addedCount;
+	private int removingCount;
+
+	private final List<Entity> list = new AbstractList<Entity>()
+	{
+		@Override
+		public Entity get(int index)
+		{
+			if (index >= count)
+				throw new IndexOutOfBoundsException("index " + index
+						+ ", size " + count);
+
+			return entities[index];
+		}
+
+		@Override
+		public int size()
+		{
+			return count;
+		}
+	};
+
+	/**
+	 * Creates an empty registry
+	 */
+	public EntityRegistry()
+	{
+		generations = new int[16];
+		owners = new Entity[16];
+		positions = new int[16];
+		removing = new boolean[16];
+		free = new int[16];
+		entities = new Entity[16];
+		entitySlots = new int[16];
+		added = new int[16];
+	}
+
+	/**
+	 * Queues adding an entity. It is not in the scene until the next update,
+	 * but can be found by its handle straight away.
+	 *
+	 * @param entity
+	 *            entity to add
+	 * @return handle of the entity
+	 */
+	public long add(Entity entity)
+	{
+		int slot;
+		if (freeCount > 0)
+		{
+			slot = free[--freeCount];
+		}
+		else
+		{
+			if (slotCount == owners.length)
+				growSlots();
+
+			slot = slotCount++;
+			generations[slot] = 1;
+		}
+
+		owners[slot] = entity;
+		positions[slot] = ADDING;
+		removing[slot] = false;
+
+		if (addedCount == added.length)
+			added = Arrays.copyOf(added, addedCount * 2);
+		added[addedCount++] = slot;
+
+		return toHandle(slot);
+	}
+
+	/**
+	 * Queues removing an entity, which leaves the scene at the next update.
+	 * Entities that are only waiting to be added can not be removed yet.
+	 *
+	 * @param handle
+	 *            handle of the entity
+	 * @return true if the entity is in the scene and was not already waiting
+	 *         to be removed
+	 */
+	public boolean remove(long handle)
+	{
+		int slot = getSlot(handle);
+		if (slot < 0 || positions[slot] == ADDING || removing[slot])
+			return false;
+
+		removing[slot] = true;
+		removingCount++;
+		return true;
+	}
+
+	/**
+	 * Finds an entity by its handle
+	 *
+	 * @param handle
+	 *            handle given when the entity was added
+	 * @return the entity, or null if it has been removed since
+	 */
+	public Entity find(long handle)
+	{
+		int slot = getSlot(handle);
+		return slot < 0 ? null : owners[slot];
+	}
+
+	/**
+	 * Tells if the entity of a handle is waiting to be removed
+	 *
+	 * @param handle
+	 *            handle of the entity
+	 * @return true if the entity leaves the scene at the next update
+	 */
+	public boolean isRemoving(long handle)
+	{
+		int slot = getSlot(handle);
+		return slot >= 0 && removing[slot];
+	}
+
+	/**
+	 * Applies the queued removes and then the queued adds. Removed entities'
+	 * handles stop working, and added entities go at the end of the packed
+	 * array in the order they were added.
+	 */
+	public void update()
+	{
+		if (removingCount > 0)
+		{
+			// drop the removed entities, sliding the others down
+			int kept = 0;
+			for (int i = 0; i < count; i++)
+			{
+				int slot = entitySlots[i];
+				if (removing[slot])
+				{
+					freeSlot(slot);
+					continue;
+				}
+
+				entities[kept] = entities[i];
+				entitySlots[kept] = slot;
+				positions[slot] = kept;
+				kept++;
+			}
+
+			Arrays.fill(entities, kept, count, null);
+			count = kept;
+			removingCount = 0;
+		}
+
+		for (int i = 0; i < addedCount; i++)
+		{
+			int slot = added[i];
+			if (count == entities.length)
+			{
+				entities = Arrays.copyOf(entities, count * 2);
+				entitySlots = Arrays.copyOf(entitySlots, count * 2);
+			}
+
+			entities[count] = owners[slot];
+			entitySlots[count] = slot;
+			positions[slot] = count;
+			count++;
+		}
+
+		addedCount = 0;
+	}
+
+	/**
+	 * Gets the number of entities in the scene
+	 *
+	 * @return number of entities, not counting those waiting to be added
+	 */
+	public int size()
+	{
+		return count;
+	}
+
+	/**
+	 * Gets an entity in the scene
+	 *
+	 * @param index
+	 *            index of the entity in the packed array, from 0 to size()
+	 * @return entity at the index
+	 */
+	public Entity getEntity(int index)
+	{
+		return entities[index];
+	}
+
+	/**
+	 * Gets the handle of an entity in the scene
+	 *
+	 * @param index
+	 *            index of the entity in the packed array, from 0 to size()
+	 * @return handle of the entity at the index
+	 */
+	public long getHandle(int index)
+	{
+		return toHandle(entitySlots[index]);
+	}
+
+	/**
+	 * Gets the entities in the scene as a list. The list can not be changed,
+	 * and changes as entities are added and removed.
+	 *
+	 * @return entities in the scene, in the order they were added
+	 */
+	public List<Entity> asList()
+	{
+		return list;
+	}
+
+	/**
+	 * Gets the slot of a handle
+	 *
+	 * @return the slot, or -1 if the handle is not in use
+	 */
+	private int getSlot(long handle)
+	{
+		int slot = (int) handle;
+		if (slot < 0 || slot >= slotCount || owners[slot] == null
+				|| generations[slot] != (int) (handle >>> 32))
+			return -1;
+
+		return slot;
+	}
+
+	/**
+	 * Gets the handle of a slot's current entity
+	 */
+	private long toHandle(int slot)
+	{
+		return ((long) generations[slot] << 32) | slot;
+	}
+
+	private void freeSlot(int slot)
+	{
+		owners[slot] = null;
+		removing[slot] = false;
+
+		// 0 is left out so no handle is ever NO_HANDLE
+		if (++generations[slot] == 0)
+			generations[slot] = 1;
+
+		if (freeCount == free.length)
+			free = Arrays.copyOf(free, freeCount * 2);
+		free[freeCount++] = slot;
+	}
+
+	private void growSlots()
+	{
+		int capacity = owners.length * 2;
+		generations = Arrays.copyOf(generations, capacity);
+		owners = Arrays.copyOf(owners, capacity);
+		positions = Arrays.copyOf(positions, capacity);
+		removing = Arrays.copyOf(removing, capacity);
+	}
+}
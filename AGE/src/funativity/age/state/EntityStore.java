@@ -0,0 +1,305 @@
+package funativity.age.state;
+
+import java.util.Arrays;
+
+import funativity.age.opengl.Entity;
+
+/**
+ * The position, velocity, acceleration and rotation of many entities, kept in
+ * one packed float array per vector instead of in each Entity. An Entity is a
+ * handle to a slot of a store: its getters and setters read and write the
+ * arrays. Every entity starts in a store of its own, and a Scene moves the
+ * entities added to it into the Scene's store. An entity lets go of its own
+ * store while it is in a Scene's, so it is then only a handle to its slot.
+ *
+ * Entity.update does not move an entity kept in a shared store, it queues the
+ * move with step. integrate then moves every queued entity at once, in one
+ * loop over the arrays that the JIT can unroll and vectorize, instead of a
+ * dozen getter and setter calls per entity spread all over the heap.
+ *
+ * The x, y and z values of a vector are kept next to each other, at three
+ * times the slot. Collision tests read all three axes of an entity at once,
+ * and a separate array per axis had them touch twice as many cache lines.
+ * Each Entity keeps the arrays of its store, so reading one of its values
+ * costs about as much as reading a field.
+ *
+ */
+public final class EntityStore
+{
+	/** Vector of the positions */
+	public static final int POSITION = 0;
+
+	/** Vector of the velocities (change in position) */
+	public static final int VELOCITY = 1;
+
+	/** Vector of the accelerations (change in velocity) */
+	public static final int ACCELERATION = 2;
+
+	/** Vector of the rotations (in degrees) */
+	public static final int ROTATION = 3;
+
+	/** Number of vectors kept for each entity */
+	public static final int VECTORS = 4;
+
+	/** Axis of the x values of a vector */
+	public static final int X = 0;
+
+	/** Axis of the y values of a vector */
+	public static final int Y = 1;
+
+	/** Axis of the z values of a vector */
+	public static final int Z = 2;
+
+	// values of each vector, the axes of slot i at 3 * i
+	private final float[][] vectors = new float[VECTORS][];
+
+	// time to move each entity by at the next integrate, once per axis so
+	// integrate is one loop over every value
+	private float[] steps;
+
+	private Entity[] entities;
+	private int count;
+
+	/**
+	 * Creates an empty store
+	 */
+	public EntityStore()
+	{
+		this(16);
+	}
+
+	/**
+	 * Creates an empty store
+	 *
+	 * @param capacity
+	 *            number of entities to make room for, it grows when needed
+	 */
+	public EntityStore(int capacity)
+	{
+		capacity = Math.max(1, capacity);
+		for (int v = 0; v < VECTORS; v++)
+		{
+			vectors[v] = new float[capacity * 3];
+		}
+		steps = new float[capacity * 3];
+		entities = new Entity[capacity];
+	}
+
+	/**
+	 * Gets the number of entities in this store
+	 *
+	 * @return number of slots used
+	 */
+	public int size()
+	{
+		return count;
+	}
+
+	/**
+	 * Gets the entity kept in a slot
+	 *
+	 * @param slot
+	 *            slot of the entity
+	 * @return entity in the slot
+	 */
+	public Entity getEntity(int slot)
+	{
+		return entities[slot];
+	}
+
+	/**
+	 * Adds a slot for an entity, with every value 0. Use Entity.setStore to
+	 * move an entity into a store along with its values.
+	 *
+	 * @param entity
+	 *            entity to keep in the slot
+	 * @return slot of the entity
+	 */
+	public int add(Entity entity)
+	{
+		if (count == entities.length)
+			grow();
+
+		int slot = count++;
+		int start = slot * 3;
+		for (int v = 0; v < VECTORS; v++)
+		{
+			Arrays.fill(vectors[v], start, start + 3, 0);
+		}
+		Arrays.fill(steps, start, start + 3, 0);
+		entities[slot] = entity;
+		return slot;
+	}
+
+	/**
+	 * Removes a slot. The last entity is moved into it, so the slots in use
+	 * stay packed at the start of the arrays.
+	 *
+	 * @param slot
+	 *            slot to remove
+	 * @return the entity moved into the slot, which has to be told its new
+	 *         slot, or null if the slot was the last one
+	 */
+	public Entity remove(int slot)
+	{
+		int last = --count;
+		Entity moved = null;
+
+		if (slot != last)
+		{
+			for (int v = 0; v < VECTORS; v++)
+			{
+				System.arraycopy(vectors[v], last * 3, vectors[v], slot * 3, 3);
+			}
+			System.arraycopy(steps, last * 3, steps, slot * 3, 3);
+			moved = entities[slot] = entities[last];
+		}
+
+		entities[last] = null;
+		return moved;
+	}
+
+	/**
+	 * Copies every value of a slot of another store into a slot of this one,
+	 * along with the move queued for it with step
+	 *
+	 * @param from
+	 *            store to copy from
+	 * @param fromSlot
+	 *            slot to copy from
+	 * @param slot
+	 *            slot to copy into
+	 */
+	public void copy(EntityStore from, int fromSlot, int slot)
+	{
+		for (int v = 0; v < VECTORS; v++)
+		{
+			System.arraycopy(from.vectors[v], fromSlot * 3, vectors[v],
+					slot * 3, 3);
+		}
+		System.arraycopy(from.steps, fromSlot * 3, steps, slot * 3, 3);
+	}
+
+	/**
+	 * Gets a value of an entity
+	 *
+	 * @param vector
+	 *            vector to get, such as POSITION
+	 * @param slot
+	 *            slot of the entity
+	 * @param axis
+	 *            X, Y or Z
+	 * @return value of the vector on the axis
+	 */
+	public float get(int vector, int slot, int axis)
+	{
+		return vectors[vector][slot * 3 + axis];
+	}
+
+	/**
+	 * Sets a value of an entity
+	 *
+	 * @param vector
+	 *            vector to set, such as POSITION
+	 * @param slot
+	 *            slot of the entity
+	 * @param axis
+	 *            X, Y or Z
+	 * @param value
+	 *            new value of the vector on the axis
+	 */
+	public void set(int vector, int slot, int axis, float value)
+	{
+		vectors[vector][slot * 3 + axis] = value;
+	}
+
+	/**
+	 * Gets the array of a vector, for an Entity to read its values from
+	 * directly. The array is replaced when the store grows, and the store
+	 * then calls Entity.setStore on each of its entities to have them get
+	 * the new one.
+	 *
+	 * @param vector
+	 *            vector to get, such as POSITION
+	 * @return values of the vector, with the axes of slot i at 3 * i
+	 */
+	public float[] getArray(int vector)
+	{
+		return vectors[vector];
+	}
+
+	/**
+	 * Queues moving an entity, done at the next integrate
+	 *
+	 * @param slot
+	 *            slot of the entity
+	 * @param delta
+	 *            time (in seconds) to move the entity by
+	 */
+	public void step(int slot, float delta)
+	{
+		int start = slot * 3;
+		steps[start] += delta;
+		steps[start + 1] += delta;
+		steps[start + 2] += delta;
+	}
+
+	/**
+	 * Moves every entity by the time queued with step, the same way
+	 * Entity.update moves an entity on its own: the velocity using the
+	 * acceleration, and then the position using the velocity. Entities
+	 * without a queued step do not move.
+	 */
+	public void integrate()
+	{
+		integrate(0, count);
+	}
+
+	/**
+	 * Moves the entities of some of the slots by the time queued with step,
+	 * like integrate. Only those slots are read and written, so separate
+	 * ranges can be moved on separate threads at once.
+	 *
+	 * @param startSlot
+	 *            first slot to move
+	 * @param endSlot
+	 *            one past the last slot to move
+	 */
+	public void integrate(int startSlot, int endSlot)
+	{
+		final float[] position = vectors[POSITION];
+		final float[] velocity = vectors[VELOCITY];
+		final float[] acceleration = vectors[ACCELERATION];
+		final float[] steps = this.steps;
+		final int start = startSlot * 3;
+		final int end = endSlot * 3;
+
+		// every axis of every entity alike, with no calls or branches, so the
+		// JIT is free to vectorize the loop
+		for (int i = start; i < end; i++)
+		{
+			final float delta = steps[i];
+			velocity[i] += acceleration[i] * delta;
+			position[i] += velocity[i] * delta;
+		}
+
+		Arrays.fill(steps, start, end, 0);
+	}
+
+	private void grow()
+	{
+		int capacity = entities.length * 2;
+		for (int v = 0; v < VECTORS; v++)
+		{
+			vectors[v] = Arrays.copyOf(vectors[v], capacity * 3);
+		}
+		steps = Arrays.copyOf(steps, capacity * 3);
+		entities = Arrays.copyOf(entities, capacity);
+
+		// the entities still read the old arrays
+		for (int i = 0; i < count; i++)
+		{
+			entities[i].setStore(this);
+		}
+	}
+}
@@ -100,6 +100,11 @@ public abstract class GameState extends Activity implements OnTouchListener,
 	@Override
 	public void onPause()
 	{
+		if (glView != null && glView.renderer != null)
+		{
+			glView.renderer.scenePause();
+		}
+
 		for (AGEMediaPlayer player : AudioManager.getAudioManager()
 				.getAllMediaPlayers())
 		{
@@ -0,0 +1,342 @@
+package funativity.age.state;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small pool of worker threads for splitting per entity work across the
+ * cores of a device. A job is a loop over a range of items, such as the slots
+ * of an EntityStore. run splits the range into chunks, runs them on every
+ * thread and returns once all of them are done, so jobs ran one after another
+ * are phases: each one sees everything the ones before it wrote.
+ *
+ * Each thread starts on its own run of chunks, in order, and once it is out
+ * of work takes chunks from the far end of another thread's run. Chunks that
+ * turn out slower than the others, like entities with costly drawables, are
+ * picked up by whichever thread is free instead of holding up the frame.
+ *
+ * The calling thread runs chunks too, so a JobSystem with one thread runs
+ * every job on the calling thread.
+ *
+ */
+public class JobSystem
+{
+	/**
+	 * Work over a range of items
+	 */
+	public interface Job
+	{
+		/**
+		 * Runs the job over some of the items. This is called from several
+		 * threads at once, with ranges that do not overlap.
+		 *
+		 * @param start
+		 *            first item
+		 * @param end
+		 *            one past the last item
+		 */
+		public void run(int start, int end);
+	}
+
+	private final Worker[] workers;
+
+	// chunks left for each thread, the calling thread's first, packed as
+	// (first chunk << 32) | one past the last chunk. The owner takes from the
+	// front and other threads take from the back.
+	private final AtomicLong[] queues;
+
+	private final Object lock = new Object();
+
+	// job being ran, guarded by lock
+	private Job job;
+	private int items;
+	private int chunkSize;
+
+	// number of the job being ran, which the workers wait to change
+	private int round;
+
+	// workers still running the job, guarded by lock
+	private int pending;
+	private RuntimeException failure;
+	private boolean running;
+	private boolean shutdown;
+
+	/**
+	 * Creates a job system with one thread per processor
+	 */
+	public JobSystem()
+	{
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a job system
+	 *
+	 * @param threads
+	 *            number of threads to run jobs on, counting the thread
+	 *            calling run
+	 */
+	public JobSystem(int threads)
+	{
+		threads = Math.max(threads, 1);
+
+		queues = new AtomicLong[threads];
+		for (int i = 0; i < threads; i++)
+		{
+			queues[i] = new AtomicLong();
+		}
+
+		workers = new Worker[threads - 1];
+		for (int i = 0; i < workers.length; i++)
+		{
+			workers[i] = new Worker(i + 1);
+			workers[i].start();
+		}
+	}
+
+	/**
+	 * Gets the number of threads jobs are ran on
+	 *
+	 * @return number of threads, counting the thread calling run
+	 */
+	public int getThreads()
+	{
+		return queues.length;
+	}
+
+	/**
+	 * Runs a job over items [0, count) and waits for it to finish. Must not
+	 * be called from inside a job, or from two threads at once.
+	 *
+	 * @param job
+	 *            job to run
+	 * @param count
+	 *            number of items
+	 * @param chunkSize
+	 *            number of items each call of the job gets at most. Smaller
+	 *            chunks spread the work more evenly, larger ones cost less
+	 *            to hand out.
+	 * @exception RuntimeException
+	 *                the first exception thrown by the job, once every chunk
+	 *                has finished or failed
+	 */
+	public void run(Job job, int count, int chunkSize)
+	{
+		if (count <= 0)
+			return;
+
+		chunkSize = Math.max(chunkSize, 1);
+		int chunks = (count + chunkSize - 1) / chunkSize;
+
+		// not worth waking anyone for
+		if (workers.length == 0 || chunks == 1)
+		{
+			job.run(0, count);
+			return;
+		}
+
+		synchronized (lock)
+		{
+			if (running)
+				throw new IllegalStateException("a job is already running");
+			if (shutdown)
+				throw new IllegalStateException("the job system is shut down");
+
+			// give each thread a run of chunks of its own
+			int threads = queues.length;
+			for (int t = 0; t < threads; t++)
+			{
+				long first = (long) chunks * t / threads;
+				long last = (long) chunks * (t + 1) / threads;
+				queues[t].set((first << 32) | last);
+			}
+
+			this.job = job;
+			this.items = count;
+			this.chunkSize = chunkSize;
+			running = true;
+			failure = null;
+			pending = workers.length;
+			round++;
+			lock.notifyAll();
+		}
+
+		work(0, job, count, chunkSize);
+
+		// wait for the workers, even if this thread was interrupted
+		boolean interrupted = false;
+		RuntimeException failure;
+		synchronized (lock)
+		{
+			while (pending > 0)
+			{
+				try
+				{
+					lock.wait();
+				}
+				catch (InterruptedException e)
+				{
+					interrupted = true;
+				}
+			}
+
+			failure = this.failure;
+			this.failure = null;
+			this.job = null;
+			running = false;
+		}
+
+		if (interrupted)
+			Thread.currentThread().interrupt();
+
+		if (failure != null)
+			throw failure;
+	}
+
+	/**
+	 * Stops the worker threads once they finish the job they are running.
+	 * The job system can not be used afterwards.
+	 */
+	public void shutdown()
+	{
+		synchronized (lock)
+		{
+			shutdown = true;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Runs chunks until there are none left: first this thread's own, then
+	 * the ones other threads have not got to yet
+	 *
+	 * @param thread
+	 *            index of the running thread's queue
+	 */
+	private void work(int thread, Job job, int count, int chunkSize)
+	{
+		try
+		{
+			int chunk;
+			while ((chunk = take(thread, true)) >= 0)
+			{
+				runChunk(job, chunk, count, chunkSize);
+			}
+
+			for (int i = 1; i < queues.length; i++)
+			{
+				int victim = (thread + i) % queues.length;
+				while ((chunk = take(victim, false)) >= 0)
+				{
+					runChunk(job, chunk, count, chunkSize);
+				}
+			}
+		}
+		catch (RuntimeException e)
+		{
+			// the other threads finish the chunks this one did not get to
+			synchronized (lock)
+			{
+				if (failure == null)
+					failure = e;
+			}
+		}
+	}
+
+	private static void runChunk(Job job, int chunk, int count, int chunkSize)
+	{
+		int start = chunk * chunkSize;
+		job.run(start, Math.min(start + chunkSize, count));
+	}
+
+	/**
+	 * Takes a chunk from a thread's queue
+	 *
+	 * @param thread
+	 *            index of the queue
+	 * @param front
+	 *            true to take the first chunk, false to take the last one
+	 * @return the chunk, or -1 if the queue is empty
+	 */
+	private int take(int thread, boolean front)
+	{
+		AtomicLong queue = queues[thread];
+		for (;;)
+		{
+			long chunks = queue.get();
+			int first = (int) (chunks >>> 32);
+			int last = (int) chunks;
+			if (first >= last)
+				return -1;
+
+			if (front)
+			{
+				if (queue.compareAndSet(chunks, ((long) (first + 1) << 32)
+						| last))
+					return first;
+			}
+			else
+			{
+				if (queue.compareAndSet(chunks, ((long) first << 32)
+						| (last - 1)))
+					return last - 1;
+			}
+		}
+	}
+
+	/**
+	 * A thread that runs every job alongside the calling thread
+	 */
+	private class Worker extends Thread
+	{
+		private final int thread;
+
+		Worker(int thread)
+		{
+			super("AGE job " + thread);
+			this.thread = thread;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run()
+		{
+			int seen = 0;
+			for (;;)
+			{
+				Job job;
+				int count, chunkSize;
+				synchronized (lock)
+				{
+					while (round == seen && !shutdown)
+					{
+						try
+						{
+							lock.wait();
+						}
+						catch (InterruptedException e)
+						{
+							// only shutdown stops a worker
+						}
+					}
+
+					// a job started before the shutdown is still ran
+					if (round == seen)
+						return;
+
+					seen = round;
+					job = JobSystem.this.job;
+					count = items;
+					chunkSize = JobSystem.this.chunkSize;
+				}
+
+				work(thread, job, count, chunkSize);
+
+				synchronized (lock)
+				{
+					if (--pending == 0)
+						lock.notifyAll();
+				}
+			}
+		}
+	}
+}
@@ -3,6 +3,7 @@ package funativity.age.state;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
@@ -11,11 +12,15 @@ import android.content.Context;
 import android.content.res.AssetManager;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
-import android.os.SystemClock;
+import android.opengl.Matrix;
 
 import funativity.age.collision.CollisionManager;
 import funativity.age.error.TextureTooLargeException;
+import funativity.age.opengl.Bounds;
 import funativity.age.opengl.Entity;
+import funativity.age.opengl.Frustum;
+import funativity.age.opengl.MM;
+import funativity.age.opengl.RenderQueue;
 import funativity.age.opengl.shaders.Technique;
 import funativity.age.textures.TextureLoader;
 
@@ -29,9 +34,9 @@ import funativity.age.textures.TextureLoader;
 public abstract class Scene implements GLSurfaceView.Renderer
 {
 	/**
-	 * List to hold all of the Entities
+	 * All of the Entities, with their handles
 	 */
-	private ArrayList<Entity> entities = new ArrayList<Entity>();
+	private EntityRegistry entities = new EntityRegistry();
 
 	/**
 	 * List to hold all of the entities that will be added to the main list on
@@ -45,19 +50,117 @@ public abstract class Scene implements GLSurfaceView.Renderer
 	 */
 	private ArrayList<Entity> removelist = new ArrayList<Entity>();
 
-	private float smoothedDeltaRealTime_ms = 30f;
-	private float movAverageDeltaTime_ms = smoothedDeltaRealTime_ms;
-	private long lastRealTimeMeasurement_ms;
+	/**
+	 * Position, velocity, acceleration and rotation of every entity in this
+	 * scene
+	 */
+	private EntityStore store = new EntityStore();
+
+	/**
+	 * Threads the entities are moved and their drawables updated on, null to
+	 * do it all on the thread calling update
+	 */
+	private JobSystem jobs;
+
+	// entities or slots each call of a job gets
+	private static final int JOB_CHUNK_SIZE = 256;
+
+	// moves the entities of a range of slots of the store
+	private final JobSystem.Job integrateJob = new JobSystem.Job()
+	{
+		@Override
+		public void run(int start, int end)
+		{
+			store.integrate(start, end);
+		}
+	};
+
+	// runs the queued drawable updates of a range of entities
+	private final JobSystem.Job drawableJob = new JobSystem.Job()
+	{
+		@Override
+		public void run(int start, int end)
+		{
+			for (int i = start; i < end; i++)
+			{
+				entities.getEntity(i).updateDrawable();
+			}
+		}
+	};
+
+	// entities that asked to have afterMove called once this update's moves
+	// are done
+	private final List<Entity> afterMove = new ArrayList<Entity>();
+
+	/**
+	 * Thread updating this scene, null if the GL thread updates it in
+	 * onDrawFrame. Cleared by the thread once its last update is done.
+	 * Volatile since the UI thread reads it too.
+	 */
+	private volatile SimulationThread simulation;
+
+	/**
+	 * Snapshots the simulation thread publishes for the GL thread to draw
+	 */
+	private final SnapshotBuffer snapshots = new SnapshotBuffer();
+
+	/**
+	 * Events to run at the start of the next update, from other threads
+	 */
+	private final ConcurrentLinkedQueue<Runnable> events = new ConcurrentLinkedQueue<Runnable>();
+
+	/** Updates a second, by default */
+	public static final int DEFAULT_TICK_RATE = 60;
+
+	/** Most updates ran to catch up before a frame, by default */
+	public static final int DEFAULT_MAX_TICKS_PER_FRAME = 5;
+
+	// length of each update, and the most ran before a frame
+	private long tickNanos = 1000000000L / DEFAULT_TICK_RATE;
+	private int maxTicksPerFrame = DEFAULT_MAX_TICKS_PER_FRAME;
+
+	// time not yet simulated, and when the last frame started
+	private long accumulatorNanos;
+	private long lastFrameNanos;
+	private boolean timing;
+
+	/**
+	 * Where the entities were before and after the last update, to draw them
+	 * part way between
+	 */
+	private final SceneSnapshot lastTick = new SceneSnapshot();
+
+	/**
+	 * How far the time of the frame being drawn is between the last update
+	 * and the next one
+	 */
+	private float renderAlpha = 1;
+
+	/**
+	 * How far each entity is moved back while it is drawn, three values for
+	 * each entity, set by render(alpha)
+	 */
+	private float[] renderOffsets = new float[48];
+	private int renderOffsetCount;
 
-	// Current number of elements to keep track of in the moving average
-	private static final float MOVING_AVERAGE_PERIOD_DEFAULT = 0;
-	private float curMovAveragePeriod = MOVING_AVERAGE_PERIOD_DEFAULT;
+	/**
+	 * The view, for skipping entities that are off the screen, and matrices
+	 * only used by render to work it out
+	 */
+	private final Frustum frustum = new Frustum();
+	private final float[] viewModel = new float[16];
+	private final float[] clip = new float[16];
+	private boolean culling = true;
 
-	// final number of numbers to count for moving average
-	private static final float MOVING_AVERAGE_PERIOD = 40;
+	/**
+	 * Queue the meshes of a frame are sorted in, null (the default) to draw
+	 * them as they are rendered
+	 */
+	private RenderQueue renderQueue;
 
-	// facter to help smooth out the averages
-	private static final float SMOOTHING_FACTOR = 0.1f;
+	// entities drawn and skipped by the last render
+	private int drawnCount;
+	private int culledCount;
 
 	private Context context;
 	private CollisionManager cm;
@@ -76,13 +179,28 @@ public abstract class Scene implements GLSurfaceView.Renderer
 	 * <B>Please note:</B> It wont actually be added until the start of the next
 	 * frame to avoid synchronization issues
 	 * 
+	 * While a simulation thread runs, entities that override render can not
+	 * be added, as they could not be drawn from snapshots.
+	 * 
 	 * @param entity
 	 *            entity to be added to this scene
+	 * @throws IllegalArgumentException
+	 *             if the entity overrides render while a simulation thread
+	 *             runs
 	 */
 	public void addEntity(Entity entity)
 	{
-		if (!addlist.contains(entity))
-			addlist.add(entity);
+		if (simulation != null && overridesRender(entity))
+			throw new IllegalArgumentException(entity.getClass().getName()
+					+ " overrides render, so can not be drawn from snapshots");
+
+		// already added, and not on its way out
+		long handle = entity.getHandle();
+		if (entities.find(handle) == entity && !entities.isRemoving(handle))
+			return;
+
+		entity.setHandle(entities.add(entity));
+		addlist.add(entity);
 	}
 
 	/**
@@ -96,7 +214,8 @@ public abstract class Scene implements GLSurfaceView.Renderer
 	 */
 	public void removeEntity(Entity entity)
 	{
-		if (!removelist.contains(entity) && entities.contains(entity))
+		if (entities.find(entity.getHandle()) == entity
+				&& entities.remove(entity.getHandle()))
 			removelist.add(entity);
 	}
 
@@ -106,7 +225,23 @@ public abstract class Scene implements GLSurfaceView.Renderer
 	 */
 	public void removeAllEntities()
 	{
-		removelist.addAll(entities);
+		for (int i = 0; i < entities.size(); i++)
+		{
+			if (entities.remove(entities.getHandle(i)))
+				removelist.add(entities.getEntity(i));
+		}
+	}
+
+	/**
+	 * Finds an Entity of this scene by its handle (see Entity.getHandle)
+	 * 
+	 * @param handle
+	 *            handle of the entity
+	 * @return the Entity, or null if it has been removed from this scene
+	 */
+	public Entity findEntity(long handle)
+	{
+		return entities.find(handle);
 	}
 
 	/**
@@ -118,19 +253,18 @@ public abstract class Scene implements GLSurfaceView.Renderer
 	 */
 	public Entity getEntity(int index)
 	{
-		return entities.get(index);
+		return entities.asList().get(index);
 	}
 
 	/**
-	 * Get the list of Entities that make up this scene. It is assumed that this
-	 * list wont be affected by the caller of this method (unless you know what
-	 * you are doing)
+	 * Get the list of Entities that make up this scene. The list can not be
+	 * changed, use addEntity and removeEntity instead.
 	 * 
 	 * @return list of Entities
 	 */
 	public List<Entity> getEntities()
 	{
-		return entities;
+		return entities.asList();
 	}
 
 	/**
@@ -145,34 +279,327 @@ public abstract class Scene implements GLSurfaceView.Renderer
 
 	/**
 	 * Update all entities in this list. This method also updates the entity
-	 * list before any updates are called on the entities
+	 * list before any updates are called on the entities. Sleeping entities
+	 * are not updated, only their drawables are. Each entity's update queues
+	 * its move, and the entities are moved together once every entity has
+	 * updated.
+	 * 
+	 * The update runs in phases, each finished before the next starts:
+	 * <ol>
+	 * <li>Collisions are checked, and the listeners called.</li>
+	 * <li>Each entity's update is called, one at a time.</li>
+	 * <li>The entities are moved. With a JobSystem, each thread moves its own
+	 * slots of the EntityStore.</li>
+	 * <li>With a JobSystem, the drawables queued by the entities' updates are
+	 * updated, each thread updating the drawables of its own entities.</li>
+	 * <li>Entities that asked with queueAfterMove have afterMove called, one
+	 * at a time.</li>
+	 * </ol>
+	 * Only the moves and the drawable updates run on several threads, and
+	 * they only touch the store and the drawables, so listeners and entity
+	 * updates can still change anything in the scene.
 	 * 
 	 * @param delta
 	 *            Time in seconds since the last update
 	 */
 	public void update(float delta)
 	{
+		runEvents();
 		updateLists();
 
 		cm.checkForCollisions(delta);
 
-		for (Entity entity : entities)
+		for (int i = 0; i < entities.size(); i++)
+		{
+			Entity entity = entities.getEntity(i);
+
+			// sleeping entities do not move, but their animations still play
+			if (entity.isSleeping())
+				entity.updateAsleep(this, delta);
+			else
+				entity.update(this, delta);
+		}
+
+		if (jobs == null)
+		{
+			store.integrate();
+		}
+		else
 		{
-			entity.update(this, delta);
+			jobs.run(integrateJob, store.size(), JOB_CHUNK_SIZE);
+			jobs.run(drawableJob, entities.size(), JOB_CHUNK_SIZE);
 		}
+
+		for (int i = 0; i < afterMove.size(); i++)
+		{
+			afterMove.get(i).afterMove(this);
+		}
+		afterMove.clear();
 	}
 
 	/**
-	 * Renders all of the entities that are part of this scene.
+	 * Has an entity's afterMove called at the end of this update, once every
+	 * entity has been moved. Called by Entity.requestAfterMove from an
+	 * entity's update.
+	 * 
+	 * @param entity
+	 *            entity in this scene to call afterMove on
+	 */
+	public void queueAfterMove(Entity entity)
+	{
+		afterMove.add(entity);
+	}
+
+	/**
+	 * Renders the scene for a frame that falls part way between two updates.
+	 * Called by onDrawFrame; override render() to change what is drawn.
+	 * 
+	 * @param alpha
+	 *            how far the frame is between the last update (0) and the
+	 *            next one (1)
+	 */
+	public void render(float alpha)
+	{
+		renderAlpha = alpha;
+		if (simulation == null)
+			setRenderOffsets();
+
+		render();
+	}
+
+	/**
+	 * Gives each entity the offset it is drawn at for getRenderAlpha, before
+	 * render is called, so a render override can already read where an
+	 * entity is drawn, such as to follow it with the camera
+	 */
+	private void setRenderOffsets()
+	{
+		int size = entities.size();
+		if (size * 3 > renderOffsets.length)
+			renderOffsets = new float[Math.max(size * 3,
+					renderOffsets.length * 2)];
+
+		float[] offset = renderOffsets;
+		for (int i = 0; i < size; i++)
+		{
+			Entity entity = entities.getEntity(i);
+			int at = i * 3;
+
+			// entities the last update did not see are drawn where they are
+			if (i < lastTick.size() && lastTick.getEntity(i) == entity)
+				lastTick.getOffset(i, renderAlpha, offset, at);
+			else
+				offset[at] = offset[at + 1] = offset[at + 2] = 0;
+
+			entity.setRenderOffset(offset[at], offset[at + 1], offset[at + 2]);
+		}
+
+		renderOffsetCount = size;
+	}
+
+	/**
+	 * Renders all of the entities that are part of this scene. Each entity is
+	 * moved part way back to where it was before the last update, by
+	 * getRenderAlpha, so motion looks smooth however updates and frames line
+	 * up. The move is given to each entity by render(alpha), with
+	 * Entity.setRenderOffset, and the entity moves itself by it as it renders.
+	 * With a simulation thread, the entities are drawn from the newest
+	 * snapshot it published instead.
+	 * 
+	 * Entities whose bounds are wholly outside of the view are not drawn,
+	 * unless culling is turned off with setCulling. The frustum is taken from
+	 * MM's projection and view matrices, and the model matrix when render is
+	 * called.
+	 * 
+	 * If the scene was given a RenderQueue with setRenderQueue, the meshes
+	 * drawn are collected in it, and drawn sorted by technique, texture and
+	 * buffer once every entity is rendered.
 	 */
 	public void render()
 	{
-		for (Entity entity : entities)
+		drawnCount = 0;
+		culledCount = 0;
+
+		// a queue that is already collecting, such as one started by a
+		// subclass, is left to whoever started it
+		RenderQueue queue = renderQueue;
+		if (queue != null && RenderQueue.getCollecting() != null)
+			queue = null;
+
+		if (queue != null)
+			queue.begin();
+
+		try
+		{
+			if (simulation != null)
+				renderSnapshot();
+			else
+				renderEntities();
+		}
+		finally
+		{
+			if (queue != null)
+				queue.end();
+		}
+	}
+
+	/**
+	 * Renders the newest snapshot of the simulation thread
+	 */
+	private void renderSnapshot()
+	{
+		// snapshots test each entity with the whole model matrix
+		if (culling)
+			setFrustum(MM.getVMatrix());
+
+		SceneSnapshot snapshot = snapshots.getLatest();
+		culledCount = snapshot.render(snapshot.getAlpha(System.nanoTime()),
+				culling ? frustum : null);
+		drawnCount = snapshot.size() - culledCount;
+	}
+
+	/**
+	 * Renders the entities, moved back by getRenderAlpha
+	 */
+	private void renderEntities()
+	{
+		// entities are tested with their draw matrix, so the frustum is in
+		// the space of the model matrix
+		if (culling)
 		{
+			Matrix.multiplyMM(viewModel, 0, MM.getVMatrix(), 0,
+					MM.getMMatrix(), 0);
+			setFrustum(viewModel);
+		}
+
+		for (int i = 0; i < entities.size(); i++)
+		{
+			Entity entity = entities.getEntity(i);
+
+			// offsets are only set for the entities render(alpha) saw
+			float dx = 0, dy = 0, dz = 0;
+			if (i < renderOffsetCount)
+			{
+				dx = renderOffsets[i * 3];
+				dy = renderOffsets[i * 3 + 1];
+				dz = renderOffsets[i * 3 + 2];
+			}
+
+			if (culling)
+			{
+				Bounds bounds = entity.getBounds();
+				if (bounds != null
+						&& !frustum.intersects(bounds,
+								entity.getDrawMatrix(), dx, dy, dz))
+				{
+					culledCount++;
+					continue;
+				}
+			}
+
+			drawnCount++;
 			entity.render();
 		}
 	}
 
+	/**
+	 * Sets the frustum from the projection matrix times another
+	 */
+	private void setFrustum(float[] matrix)
+	{
+		Matrix.multiplyMM(clip, 0, MM.getPMatrix(), 0, matrix, 0);
+		frustum.set(clip);
+	}
+
+	/**
+	 * Turns skipping entities that are off the screen on or off. On by
+	 * default.
+	 * 
+	 * An entity is skipped when its getBounds, moved by its getDrawMatrix,
+	 * are wholly outside of the view. An entity that places its drawable
+	 * some other way should override getDrawMatrix to match. One whose
+	 * render override draws somewhere the draw matrix does not say must
+	 * override getBounds to return null, or it may be skipped while on the
+	 * screen. Entities with null bounds are always drawn.
+	 * 
+	 * @param culling
+	 *            true to skip drawing entities outside of the view
+	 */
+	public void setCulling(boolean culling)
+	{
+		this.culling = culling;
+	}
+
+	/**
+	 * Gets whether entities that are off the screen are skipped
+	 * 
+	 * @return true if culling is on
+	 */
+	public boolean isCulling()
+	{
+		return culling;
+	}
+
+	/**
+	 * Sets the queue render collects and sorts the meshes of a frame in. Off
+	 * (null) by default, since sorting changes the order meshes are drawn
+	 * in. Only give a queue to scenes that do not blend things over each
+	 * other in the order they are drawn, like scenes of opaque, depth tested
+	 * meshes; most 2D scenes do.
+	 * 
+	 * @param renderQueue
+	 *            queue to use, or null to draw each mesh as it is rendered
+	 */
+	public void setRenderQueue(RenderQueue renderQueue)
+	{
+		this.renderQueue = renderQueue;
+	}
+
+	/**
+	 * Gets the queue render collects and sorts the meshes of a frame in, such
+	 * as to read how many state changes the last frame made
+	 * 
+	 * @return the scene's queue, or null if meshes are drawn as they are
+	 *         rendered
+	 */
+	public RenderQueue getRenderQueue()
+	{
+		return renderQueue;
+	}
+
+	/**
+	 * Gets the number of entities drawn by the last render. Entities without
+	 * a drawable, or without bounds, always count as drawn.
+	 * 
+	 * @return entities drawn
+	 */
+	public int getDrawnCount()
+	{
+		return drawnCount;
+	}
+
+	/**
+	 * Gets the number of entities the last render skipped, because they were
+	 * off the screen
+	 * 
+	 * @return entities culled
+	 */
+	public int getCulledCount()
+	{
+		return culledCount;
+	}
+
+	/**
+	 * Gets how far the frame being drawn is between the last update and the
+	 * next one, for render overrides that draw moving things themselves
+	 * 
+	 * @return 0 at the last update, up to 1 at the next one
+	 */
+	public float getRenderAlpha()
+	{
+		return renderAlpha;
+	}
+
 	/**
 	 * Update the Entity list. This should only be called outside of the update
 	 * loop. This method gets called automatically by this method and in normal
@@ -180,8 +607,7 @@ public abstract class Scene implements GLSurfaceView.Renderer
 	 */
 	public void updateLists()
 	{
-		entities.removeAll(removelist);
-		entities.addAll(addlist);
+		entities.update();
 
 		// Remove this shape's manager if it's this manager.
 		for (Entity entity : removelist)
@@ -190,54 +616,295 @@ public abstract class Scene implements GLSurfaceView.Renderer
 			{
 				entity.setScene(null);
 			}
+
+			if (entity.getStore() == store)
+			{
+				entity.setStore(null);
+			}
+
+			entity.setRenderOffset(0, 0, 0);
 		}
 
 		// Set each entity's scene to this scene.
 		for (Entity entity : addlist)
 		{
 			entity.setScene(this);
+			entity.setStore(store);
 		}
 
 		removelist.clear();
 		addlist.clear();
 	}
 
+	/**
+	 * Updates this scene once on the simulation thread, and publishes where
+	 * its entities ended up for the GL thread to draw
+	 * 
+	 * @param delta
+	 *            Time in seconds of the update
+	 * @param tickNanos
+	 *            Time in nanoseconds of the update
+	 */
+	void simulate(float delta, long tickNanos)
+	{
+		update(delta, snapshots.getBack(), tickNanos);
+		snapshots.publish();
+	}
+
+	/**
+	 * Updates this scene, recording where its entities were before and
+	 * after the update
+	 */
+	private void update(float delta, SceneSnapshot snapshot, long tickNanos)
+	{
+		// bring the lists up to date first, so the update does not change
+		// them while the snapshot is taken
+		runEvents();
+		updateLists();
+
+		snapshot.capturePrevious(this);
+		update(delta);
+		snapshot.captureCurrent(this, tickNanos);
+	}
+
+	/**
+	 * Runs an event on the thread updating this scene, at the start of its
+	 * next update. Use this to change the scene from other threads, such as
+	 * the UI thread, when the scene has a simulation thread.
+	 * 
+	 * @param event
+	 *            event to run
+	 */
+	public void queueEvent(Runnable event)
+	{
+		events.add(event);
+	}
+
+	private void runEvents()
+	{
+		Runnable event;
+		while ((event = events.poll()) != null)
+		{
+			event.run();
+		}
+	}
+
+	/**
+	 * Starts updating this scene on its own thread, a fixed number of times a
+	 * second, instead of on the GL thread before each frame. The GL thread
+	 * then only draws, from snapshots of the entities the simulation thread
+	 * publishes after each update, so neither thread waits for the other.
+	 * 
+	 * From then on the scene and its entities should only be changed from
+	 * the simulation thread: in entity updates, collision listeners and
+	 * events given to queueEvent. Drawables are drawn from the state they
+	 * saved in the snapshot if they are StatefulDrawables, like meshes,
+	 * sprites and animated models; other drawables must not change anything
+	 * their draw reads once the thread is started.
+	 * 
+	 * Snapshots draw each entity with its getDrawMatrix and cull it with its
+	 * getBounds, so entities that override render can not be drawn from them,
+	 * and are refused. Such entities can override getDrawMatrix instead.
+	 * 
+	 * @param ticksPerSecond
+	 *            number of updates a second
+	 * @throws IllegalStateException
+	 *             if a simulation thread is already running, or an entity of
+	 *             the scene overrides render
+	 */
+	public void startSimulationThread(int ticksPerSecond)
+	{
+		if (simulation != null)
+			throw new IllegalStateException("already has a simulation thread");
+
+		for (int i = 0; i < getNumEntities(); i++)
+		{
+			checkDrawnFromSnapshots(getEntity(i));
+		}
+		for (Entity entity : addlist)
+		{
+			checkDrawnFromSnapshots(entity);
+		}
+
+		simulation = new SimulationThread(this, ticksPerSecond);
+		simulation.start();
+	}
+
+	private static void checkDrawnFromSnapshots(Entity entity)
+	{
+		if (overridesRender(entity))
+			throw new IllegalStateException(entity.getClass().getName()
+					+ " overrides render, so can not be drawn from snapshots");
+	}
+
+	/**
+	 * Checks whether the class of an entity has its own render
+	 */
+	private static boolean overridesRender(Entity entity)
+	{
+		try
+		{
+			return entity.getClass().getMethod("render").getDeclaringClass()
+					!= Entity.class;
+		}
+		catch (NoSuchMethodException e)
+		{
+			// render is public on Entity, so always found
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Stops the simulation thread after the update it is running, and waits
+	 * for that update to finish. The GL thread goes back to updating the
+	 * scene before each frame.
+	 * 
+	 * Called from the simulation thread itself, such as from an event, the
+	 * thread stops once the update returns, and only then hands the updates
+	 * back to the GL thread.
+	 */
+	public void stopSimulationThread()
+	{
+		SimulationThread thread = simulation;
+		if (thread == null)
+			return;
+
+		thread.requestStop();
+
+		// wait out the running update, so the GL thread does not start
+		// updating the scene while it is still going
+		if (thread != Thread.currentThread())
+		{
+			boolean interrupted = false;
+			while (thread.isAlive())
+			{
+				try
+				{
+					thread.join();
+				}
+				catch (InterruptedException e)
+				{
+					interrupted = true;
+				}
+			}
+
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Called by a simulation thread once its last update has finished, to
+	 * give the updates back to the GL thread
+	 */
+	void simulationStopped(SimulationThread thread)
+	{
+		if (simulation == thread)
+			simulation = null;
+	}
+
+	/**
+	 * Gets the thread updating this scene
+	 * 
+	 * @return the simulation thread, or null if the GL thread updates the
+	 *         scene
+	 */
+	public SimulationThread getSimulationThread()
+	{
+		return simulation;
+	}
+
 	@Override
 	public void onDrawFrame(GL10 gl)
 	{
-		// Moving average calc
-		// Code found at:
-		// http://stackoverflow.com/questions/10648325/android-smooth-game-loop
-		long currTimePick_ms = SystemClock.uptimeMillis();
-		float realTimeElapsed_ms;
-		if (lastRealTimeMeasurement_ms > 0)
+		// the simulation thread does the updates, only draw
+		if (simulation != null)
 		{
-			realTimeElapsed_ms = (currTimePick_ms - lastRealTimeMeasurement_ms);
+			GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT
+					| GLES20.GL_DEPTH_BUFFER_BIT);
+			render();
+			return;
 		}
-		else
+
+		// Fixed time step: run however many updates of tickNanos fit in the
+		// time since the last frame, so the game runs the same at any frame
+		// rate. The time left over is carried to the next frame.
+		long now = System.nanoTime();
+		accumulatorNanos += timing ? now - lastFrameNanos : tickNanos;
+		lastFrameNanos = now;
+		timing = true;
+
+		int ticks = (int) Math.min(accumulatorNanos / tickNanos,
+				maxTicksPerFrame);
+		float delta = tickNanos / 1000000000f;
+		for (int i = 0; i < ticks; i++)
 		{
-			realTimeElapsed_ms = smoothedDeltaRealTime_ms;
+			// the last update is recorded to draw between
+			if (i == ticks - 1)
+				update(delta, lastTick, tickNanos);
+			else
+				update(delta);
 		}
+		accumulatorNanos -= ticks * tickNanos;
 
-		// update the number of elements to count for in the moving average
-		if (curMovAveragePeriod < MOVING_AVERAGE_PERIOD)
-			curMovAveragePeriod++;
+		// after a stall, drop the time that could not be caught up on
+		// instead of running ever more updates in the frames after it
+		if (accumulatorNanos >= tickNanos)
+			accumulatorNanos %= tickNanos;
 
-		movAverageDeltaTime_ms = (realTimeElapsed_ms + movAverageDeltaTime_ms
-				* (curMovAveragePeriod - 1))
-				/ curMovAveragePeriod;
+		// draw part way to the next update
+		GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+		render(accumulatorNanos / (float) tickNanos);
+	}
 
-		// Calc a better approximation for smooth stepTime
-		smoothedDeltaRealTime_ms = smoothedDeltaRealTime_ms
-				+ (movAverageDeltaTime_ms - smoothedDeltaRealTime_ms)
-				* SMOOTHING_FACTOR;
+	/**
+	 * Sets how many times a second onDrawFrame updates the scene. Each update
+	 * is given the same delta, 1 / ticksPerSecond, however fast frames are
+	 * drawn.
+	 * 
+	 * @param ticksPerSecond
+	 *            number of updates a second
+	 */
+	public void setTickRate(int ticksPerSecond)
+	{
+		if (ticksPerSecond <= 0)
+			throw new IllegalArgumentException("ticksPerSecond must be above 0");
 
-		lastRealTimeMeasurement_ms = currTimePick_ms;
+		tickNanos = 1000000000L / ticksPerSecond;
+	}
 
-		// update the game, then draw
-		update(smoothedDeltaRealTime_ms / 1000f);
-		GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
-		render();
+	/**
+	 * Gets how many times a second onDrawFrame updates the scene
+	 * 
+	 * @return number of updates a second
+	 */
+	public int getTickRate()
+	{
+		return (int) Math.round(1000000000.0 / tickNanos);
+	}
+
+	/**
+	 * Sets the most updates onDrawFrame runs before one frame. When frames
+	 * take longer than this many updates, such as after a stall, the rest of
+	 * the time is skipped and the game slows down instead of spending ever
+	 * longer catching up.
+	 * 
+	 * @param maxTicks
+	 *            most updates before a frame, at least 1
+	 */
+	public void setMaxTicksPerFrame(int maxTicks)
+	{
+		maxTicksPerFrame = Math.max(1, maxTicks);
+	}
+
+	/**
+	 * Gets the most updates onDrawFrame runs before one frame
+	 * 
+	 * @return most updates before a frame
+	 */
+	public int getMaxTicksPerFrame()
+	{
+		return maxTicksPerFrame;
 	}
 
 	@Override
@@ -282,8 +949,23 @@ public abstract class Scene implements GLSurfaceView.Renderer
 	 */
 	public void sceneReset()
 	{
-		lastRealTimeMeasurement_ms = 0;
-		curMovAveragePeriod = MOVING_AVERAGE_PERIOD_DEFAULT;
+		timing = false;
+		accumulatorNanos = 0;
+
+		SimulationThread thread = simulation;
+		if (thread != null)
+			thread.setPaused(false);
+	}
+
+	/**
+	 * This is called in onPause() of the Scene's parent Activity. This pauses
+	 * the simulation thread, if there is one, until sceneReset.
+	 */
+	public void scenePause()
+	{
+		SimulationThread thread = simulation;
+		if (thread != null)
+			thread.setPaused(true);
 	}
 
 	/**
@@ -306,6 +988,40 @@ public abstract class Scene implements GLSurfaceView.Renderer
 		return context.getAssets();
 	}
 
+	/**
+	 * Gets the EntityStore the entities of this Scene are kept in
+	 * @return Entity Store
+	 */
+	public EntityStore getEntityStore()
+	{
+		return store;
+	}
+
+	/**
+	 * Sets the JobSystem this Scene moves its entities and updates their
+	 * drawables on (see update). The drawables' updates must then be safe to
+	 * run off the OpenGL thread, and an entity's drawable should not be used
+	 * by another entity of this Scene. The Scene does not shut the JobSystem
+	 * down.
+	 * 
+	 * @param jobs
+	 *            JobSystem to use, or null to do everything on the thread
+	 *            calling update
+	 */
+	public void setJobSystem(JobSystem jobs)
+	{
+		this.jobs = jobs;
+	}
+
+	/**
+	 * Gets the JobSystem this Scene moves its entities on
+	 * @return Job System, or null if it does not use one
+	 */
+	public JobSystem getJobSystem()
+	{
+		return jobs;
+	}
+
 	/**
 	 * Gets the CollisionManager being used by this Scene
 	 * @return Collision Manager
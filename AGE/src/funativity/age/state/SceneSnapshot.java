@@ -0,0 +1,348 @@
+package funativity.age.state;
+
+import java.util.Arrays;
+
+import funativity.age.opengl.Bounds;
+import funativity.age.opengl.DrawState;
+import funativity.age.opengl.Drawable;
+import funativity.age.opengl.Entity;
+import funativity.age.opengl.Frustum;
+import funativity.age.opengl.MM;
+import funativity.age.opengl.StatefulDrawable;
+
+/**
+ * Where every entity of a Scene was, and what it was drawn with, at the end
+ * of one update. With a simulation thread, the GL thread draws from snapshots
+ * instead of from the entities, which the simulation thread keeps changing
+ * while a frame is drawn. Without one, the Scene keeps a snapshot of its last
+ * update to draw the entities between.
+ *
+ * A snapshot keeps each entity's draw matrix from before the update as well
+ * as after it, so the GL thread can draw the entities part way between the
+ * two and move them smoothly however the ticks of the simulation and the
+ * frames of the screen line up. Entities are drawn up to one tick behind the
+ * simulation. Each entity's bounds are kept from after the update, to cull
+ * it with. Both come from the entity's own getDrawMatrix and getBounds, so
+ * subclasses that override those are drawn as they would be without a
+ * simulation thread; subclasses that override render are not, and
+ * Scene.startSimulationThread refuses them.
+ *
+ * The look of each drawable that is a StatefulDrawable, such as the frame of
+ * an animation and its color, is saved after the update too, and the
+ * drawable is drawn from that. Any other drawable is drawn as it is, so it
+ * must not change anything its draw reads while a simulation thread runs.
+ *
+ */
+public final class SceneSnapshot
+{
+	// values kept for each entity: its draw matrix
+	private static final int VALUES = 16;
+
+	private Entity[] entities = new Entity[16];
+	private Drawable[] drawables = new Drawable[16];
+	private DrawState[] states = new DrawState[16];
+	private Bounds[] bounds = new Bounds[16];
+	private float[] previous = new float[16 * VALUES];
+	private float[] current = new float[16 * VALUES];
+	private int count;
+
+	// only used by the GL thread
+	private final float[] blend = new float[16];
+
+	// when the update ended, and how long an update is
+	private long time;
+	private long tickNanos;
+
+	/**
+	 * Records the entities of a scene and where they are before an update.
+	 * The scene's lists must be up to date, so the update does not change
+	 * which entities it has.
+	 *
+	 * @param scene
+	 *            scene about to be updated
+	 */
+	void capturePrevious(Scene scene)
+	{
+		int size = scene.getNumEntities();
+		if (size > entities.length)
+		{
+			int capacity = Math.max(size, entities.length * 2);
+			entities = Arrays.copyOf(entities, capacity);
+			drawables = Arrays.copyOf(drawables, capacity);
+			states = Arrays.copyOf(states, capacity);
+			bounds = Arrays.copyOf(bounds, capacity);
+			previous = new float[capacity * VALUES];
+			current = new float[capacity * VALUES];
+		}
+
+		// let go of the entities that have left the scene
+		for (int i = size; i < count; i++)
+		{
+			entities[i] = null;
+			drawables[i] = null;
+			bounds[i] = null;
+		}
+
+		for (int i = 0; i < size; i++)
+		{
+			Entity entity = scene.getEntity(i);
+			entities[i] = entity;
+			store(previous, i, entity);
+		}
+
+		count = size;
+	}
+
+	/**
+	 * Records where the entities are after an update, and what they are drawn
+	 * with
+	 *
+	 * @param scene
+	 *            scene that was updated
+	 * @param tickNanos
+	 *            length of an update, in nanoseconds
+	 */
+	void captureCurrent(Scene scene, long tickNanos)
+	{
+		int size = Math.min(count, scene.getNumEntities());
+		for (int i = 0; i < count; i++)
+		{
+			Entity entity = entities[i];
+
+			// an entity that somehow moved in the scene's list during the
+			// update is drawn where it is now
+			boolean moved = i >= size || scene.getEntity(i) != entity;
+			if (moved)
+				store(previous, i, entity);
+
+			store(current, i, entity);
+			drawables[i] = entity.getDrawable();
+			storeState(i, drawables[i]);
+			bounds[i] = entity.getBounds();
+		}
+
+		this.tickNanos = tickNanos;
+		this.time = System.nanoTime();
+	}
+
+	private static void store(float[] values, int i, Entity entity)
+	{
+		System.arraycopy(entity.getDrawMatrix(), 0, values, i * VALUES, 16);
+	}
+
+	/**
+	 * Saves how a drawable looks, if it can be saved
+	 */
+	private void storeState(int i, Drawable drawable)
+	{
+		if (!(drawable instanceof StatefulDrawable))
+			return;
+
+		if (states[i] == null)
+			states[i] = new DrawState();
+
+		((StatefulDrawable) drawable).saveDrawState(states[i]);
+	}
+
+	/**
+	 * Gets the number of entities in this snapshot
+	 *
+	 * @return number of entities
+	 */
+	public int size()
+	{
+		return count;
+	}
+
+	/**
+	 * Gets an entity of this snapshot. Its values may have changed since the
+	 * snapshot was taken.
+	 *
+	 * @param i
+	 *            index of the entity, from 0 to size()
+	 * @return the entity
+	 */
+	public Entity getEntity(int i)
+	{
+		return entities[i];
+	}
+
+	/**
+	 * Gets the x position of an entity in the world part way through the
+	 * update
+	 *
+	 * @param i
+	 *            index of the entity, from 0 to size()
+	 * @param alpha
+	 *            from 0 (before the update) to 1 (after it)
+	 * @return position on x-axis
+	 */
+	public float getX(int i, float alpha)
+	{
+		return lerp(i * VALUES + 12, alpha);
+	}
+
+	/**
+	 * Gets the y position of an entity in the world part way through the
+	 * update
+	 *
+	 * @param i
+	 *            index of the entity, from 0 to size()
+	 * @param alpha
+	 *            from 0 (before the update) to 1 (after it)
+	 * @return position on y-axis
+	 */
+	public float getY(int i, float alpha)
+	{
+		return lerp(i * VALUES + 13, alpha);
+	}
+
+	/**
+	 * Gets the z position of an entity in the world part way through the
+	 * update
+	 *
+	 * @param i
+	 *            index of the entity, from 0 to size()
+	 * @param alpha
+	 *            from 0 (before the update) to 1 (after it)
+	 * @return position on z-axis
+	 */
+	public float getZ(int i, float alpha)
+	{
+		return lerp(i * VALUES + 14, alpha);
+	}
+
+	/**
+	 * Gets how far an entity has to be moved from where it was after the
+	 * update, in world space, to be drawn part way through it. Only the
+	 * movement of the entity and its parent is counted, not their turning.
+	 * 
+	 * @param i
+	 *            index of the entity, from 0 to size()
+	 * @param alpha
+	 *            from 0 (before the update) to 1 (after it)
+	 * @param offset
+	 *            array the x, y and z of the offset are put in
+	 * @param start
+	 *            index in offset the x goes at
+	 */
+	void getOffset(int i, float alpha, float[] offset, int start)
+	{
+		int at = i * VALUES + 12;
+		float back = 1 - alpha;
+		offset[start] = (previous[at] - current[at]) * back;
+		offset[start + 1] = (previous[at + 1] - current[at + 1]) * back;
+		offset[start + 2] = (previous[at + 2] - current[at + 2]) * back;
+	}
+
+	/**
+	 * Gets how far the simulation is through the tick after this snapshot
+	 *
+	 * @param now
+	 *            current System.nanoTime()
+	 * @return 0 when the snapshot was just taken, up to 1 once a whole tick
+	 *         has passed
+	 */
+	public float getAlpha(long now)
+	{
+		if (tickNanos <= 0)
+			return 1;
+
+		float alpha = (now - time) / (float) tickNanos;
+		return Math.max(0, Math.min(1, alpha));
+	}
+
+	/**
+	 * Draws every entity part way between where it was before and after the
+	 * update, with the draw matrices blended value by value. Each axis of the
+	 * blend is scaled back to its length before and after, so an entity that
+	 * turns keeps its size; the direction is close enough for how little an
+	 * entity turns in one update.
+	 *
+	 * @param alpha
+	 *            how far between the two to draw, from 0 (before the update)
+	 *            to 1 (after it)
+	 */
+	public void render(float alpha)
+	{
+		render(alpha, null);
+	}
+
+	/**
+	 * Draws every entity like render(alpha), skipping the entities whose
+	 * bounds are wholly outside of a frustum
+	 *
+	 * @param alpha
+	 *            how far between the two to draw, from 0 (before the update)
+	 *            to 1 (after it)
+	 * @param frustum
+	 *            view to test the entities' bounds against with the whole
+	 *            model matrix, or null to draw every one
+	 * @return number of entities skipped
+	 */
+	public int render(float alpha, Frustum frustum)
+	{
+		int culled = 0;
+		for (int i = 0; i < count; i++)
+		{
+			Drawable drawable = drawables[i];
+			if (drawable == null)
+				continue;
+
+			MM.pushMatrix();
+			blend(i, alpha);
+			MM.multiply(blend);
+
+			Bounds bounds = frustum != null ? this.bounds[i] : null;
+			if (bounds != null && !frustum.intersects(bounds, MM.getMMatrix()))
+				culled++;
+			else if (drawable instanceof StatefulDrawable)
+				((StatefulDrawable) drawable).draw(states[i]);
+			else
+				drawable.draw();
+
+			MM.popMatrix();
+		}
+
+		return culled;
+	}
+
+	private float lerp(int at, float alpha)
+	{
+		return previous[at] + (current[at] - previous[at]) * alpha;
+	}
+
+	/**
+	 * Blends the draw matrices of an entity into blend
+	 */
+	private void blend(int i, float alpha)
+	{
+		int at = i * VALUES;
+		for (int j = 0; j < 16; j++)
+		{
+			blend[j] = previous[at + j] + (current[at + j] - previous[at + j])
+					* alpha;
+		}
+
+		// blending shortens the axes of an entity that turns
+		for (int axis = 0; axis < 12; axis += 4)
+		{
+			float from = length(previous, at + axis);
+			float to = length(current, at + axis);
+			float length = length(blend, axis);
+			if (length > 0)
+			{
+				float scale = (from + (to - from) * alpha) / length;
+				blend[axis] *= scale;
+				blend[axis + 1] *= scale;
+				blend[axis + 2] *= scale;
+			}
+		}
+	}
+
+	private static float length(float[] values, int at)
+	{
+		float x = values[at], y = values[at + 1], z = values[at + 2];
+		return (float) Math.sqrt(x * x + y * y + z * z);
+	}
+}
@@ -0,0 +1,152 @@
+package funativity.age.state;
+
+/**
+ * Updates a Scene on its own thread, a fixed number of times a second, so a
+ * slow update no longer holds up drawing. After each update the Scene
+ * publishes a SceneSnapshot, which the GL thread draws from.
+ *
+ * Started and stopped with Scene.startSimulationThread and
+ * Scene.stopSimulationThread.
+ *
+ */
+public class SimulationThread extends Thread
+{
+	// ticks the thread may fall behind before it gives up on catching up
+	private static final int MAX_LATE_TICKS = 5;
+
+	private final Scene scene;
+	private final long tickNanos;
+
+	private volatile boolean stopped;
+
+	// guarded by this
+	private boolean paused;
+
+	/**
+	 * Creates a simulation thread. It does nothing until started.
+	 *
+	 * @param scene
+	 *            scene to update
+	 * @param ticksPerSecond
+	 *            number of updates a second
+	 */
+	public SimulationThread(Scene scene, int ticksPerSecond)
+	{
+		super("AGE simulation");
+		if (ticksPerSecond <= 0)
+			throw new IllegalArgumentException("ticksPerSecond must be above 0");
+
+		this.scene = scene;
+		this.tickNanos = 1000000000L / ticksPerSecond;
+		setDaemon(true);
+	}
+
+	/**
+	 * Gets how long each update is
+	 *
+	 * @return length of an update, in nanoseconds
+	 */
+	public long getTickNanos()
+	{
+		return tickNanos;
+	}
+
+	/**
+	 * Pauses or resumes updating the scene, such as while the Activity is in
+	 * the background
+	 *
+	 * @param paused
+	 *            true to pause, false to resume
+	 */
+	public synchronized void setPaused(boolean paused)
+	{
+		this.paused = paused;
+		notifyAll();
+	}
+
+	/**
+	 * Stops the thread after the update it is running
+	 */
+	public void requestStop()
+	{
+		stopped = true;
+		interrupt();
+	}
+
+	@Override
+	public void run()
+	{
+		try
+		{
+			simulate();
+		}
+		finally
+		{
+			scene.simulationStopped(this);
+		}
+	}
+
+	/**
+	 * Updates the scene once a tick until stopped
+	 */
+	private void simulate()
+	{
+		float delta = tickNanos / 1000000000f;
+		long next = System.nanoTime();
+
+		while (!stopped)
+		{
+			if (waitWhilePaused())
+				next = System.nanoTime();
+
+			if (stopped)
+				break;
+
+			scene.simulate(delta, tickNanos);
+
+			// wait for the next tick. When too far behind, carry on from now
+			// instead of running every missed tick back to back
+			next += tickNanos;
+			long wait = next - System.nanoTime();
+			if (wait > 0)
+			{
+				try
+				{
+					Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+				}
+				catch (InterruptedException e)
+				{
+					// stopping, checked by the loop
+				}
+			}
+			else if (-wait > MAX_LATE_TICKS * tickNanos)
+			{
+				next = System.nanoTime();
+			}
+		}
+	}
+
+	/**
+	 * Waits until the thread is resumed or stopped
+	 *
+	 * @return true if the thread was paused
+	 */
+	private synchronized boolean waitWhilePaused()
+	{
+		boolean waited = false;
+		while (paused && !stopped)
+		{
+			waited = true;
+			try
+			{
+				wait();
+			}
+			catch (InterruptedException e)
+			{
+				// stopping, checked by the loop
+			}
+		}
+
+		return waited;
+	}
+}
@@ -0,0 +1,63 @@
+package funativity.age.state;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Three SceneSnapshots passed between a simulation thread and the GL thread
+ * without either ever waiting for the other. The simulation thread fills one
+ * snapshot, the GL thread draws from another, and the third is the newest
+ * finished snapshot. Publishing and taking the newest snapshot each swap one
+ * snapshot for the third.
+ *
+ */
+final class SnapshotBuffer
+{
+	// set on the middle index when it is newer than the one being drawn
+	private static final int FRESH = 4;
+	private static final int INDEX = 3;
+
+	private final SceneSnapshot[] snapshots = { new SceneSnapshot(),
+			new SceneSnapshot(), new SceneSnapshot() };
+
+	// snapshot that is not being filled or drawn, and whether it is FRESH
+	private final AtomicInteger middle = new AtomicInteger(1);
+
+	// only used by the simulation thread
+	private int back = 0;
+
+	// only used by the GL thread
+	private int front = 2;
+
+	/**
+	 * Gets the snapshot for the simulation thread to fill
+	 *
+	 * @return snapshot no other thread is using
+	 */
+	SceneSnapshot getBack()
+	{
+		return snapshots[back];
+	}
+
+	/**
+	 * Makes the filled snapshot the newest one, and gives the simulation
+	 * thread another to fill
+	 */
+	void publish()
+	{
+		back = middle.getAndSet(back | FRESH) & INDEX;
+	}
+
+	/**
+	 * Gets the newest snapshot, for the GL thread to draw. It stays the GL
+	 * thread's until the next call.
+	 *
+	 * @return newest published snapshot, empty if none was published yet
+	 */
+	SceneSnapshot getLatest()
+	{
+		if ((middle.get() & FRESH) != 0)
+			front = middle.getAndSet(front) & INDEX;
+
+		return snapshots[front];
+	}
+}
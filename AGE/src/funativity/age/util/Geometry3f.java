@@ -3,6 +3,10 @@ package funativity.age.util;
 /**
  * Represents a geometric value in 3D space (x, y, z).
  * 
+ * Every method reads and writes the values through getX/setX and the like,
+ * so a subclass can keep them somewhere else, such as an Entity keeping its
+ * position in an EntityStore.
+ * 
  */
 public class Geometry3f
 {
@@ -65,7 +69,7 @@ public class Geometry3f
 	 */
 	public Geometry3f set(Geometry3f old)
 	{
-		set(old.x, old.y, old.z);
+		set(old.getX(), old.getY(), old.getZ());
 		return this;
 	}
 
@@ -183,9 +187,9 @@ public class Geometry3f
 	 */
 	public Geometry3f scale(float scale)
 	{
-		setX(x * scale);
-		setY(y * scale);
-		setZ(z * scale);
+		setX(getX() * scale);
+		setY(getY() * scale);
+		setZ(getZ() * scale);
 		return this;
 	}
 
@@ -202,9 +206,9 @@ public class Geometry3f
 	 */
 	public Geometry3f translate(float dx, float dy, float dz)
 	{
-		setX(x + dx);
-		setY(y + dy);
-		setZ(z + dz);
+		setX(getX() + dx);
+		setY(getY() + dy);
+		setZ(getZ() + dz);
 		return this;
 	}
 
@@ -215,9 +219,9 @@ public class Geometry3f
 	 */
 	public Geometry3f invert()
 	{
-		setX(-x);
-		setY(-y);
-		setZ(-z);
+		setX(-getX());
+		setY(-getY());
+		setZ(-getZ());
 		return this;
 	}
 
@@ -232,7 +236,7 @@ public class Geometry3f
 		float length = length();
 		if (length != 0)
 		{
-			set(x / length, y / length, z / length);
+			set(getX() / length, getY() / length, getZ() / length);
 		}
 		return this;
 	}
@@ -280,6 +284,7 @@ public class Geometry3f
 	 */
 	public float length()
 	{
+		float x = getX(), y = getY(), z = getZ();
 		return (float) Math.sqrt(x * x + y * y + z * z);
 	}
 
@@ -295,9 +300,9 @@ public class Geometry3f
 	 */
 	public static float distance(Geometry3f left, Geometry3f right)
 	{
-		float dx = left.x - right.x;
-		float dy = left.y - right.y;
-		float dz = left.z - right.z;
+		float dx = left.getX() - right.getX();
+		float dy = left.getY() - right.getY();
+		float dz = left.getZ() - right.getZ();
 		return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
 	}
 
@@ -312,7 +317,8 @@ public class Geometry3f
 	 */
 	public static float dot(Geometry3f left, Geometry3f right)
 	{
-		return left.x * right.x + left.y * right.y + left.z * right.z;
+		return left.getX() * right.getX() + left.getY() * right.getY()
+				+ left.getZ() * right.getZ();
 	}
 
 	/**
@@ -326,9 +332,9 @@ public class Geometry3f
 	 */
 	public static Geometry3f add(Geometry3f left, Geometry3f right)
 	{
-		float x = left.x + right.x;
-		float y = left.y + right.y;
-		float z = left.z + right.z;
+		float x = left.getX() + right.getX();
+		float y = left.getY() + right.getY();
+		float z = left.getZ() + right.getZ();
 		return new Geometry3f(x, y, z);
 	}
 
@@ -343,9 +349,9 @@ public class Geometry3f
 	 */
 	public static Geometry3f sub(Geometry3f left, Geometry3f right)
 	{
-		float x = left.x - right.x;
-		float y = left.y - right.y;
-		float z = left.z - right.z;
+		float x = left.getX() - right.getX();
+		float y = left.getY() - right.getY();
+		float z = left.getZ() - right.getZ();
 		return new Geometry3f(x, y, z);
 	}
 
@@ -361,9 +367,9 @@ public class Geometry3f
 	 */
 	public static Geometry3f cross(Geometry3f left, Geometry3f right)
 	{
-		float x = left.y * right.z - left.z * right.y;
-		float y = right.x * left.z - right.z * left.x;
-		float z = left.x * right.y - left.y * right.x;
+		float x = left.getY() * right.getZ() - left.getZ() * right.getY();
+		float y = right.getX() * left.getZ() - right.getZ() * left.getX();
+		float z = left.getX() * right.getY() - left.getY() * right.getX();
 		return new Geometry3f(x, y, z);
 	}
 
@@ -375,6 +381,6 @@ public class Geometry3f
 	 */
 	public String toString()
 	{
-		return "[" + x + ", " + y + ", " + z + "]";
+		return "[" + getX() + ", " + getY() + ", " + getZ() + "]";
 	}
 }
\ No newline at end of file
@@ -0,0 +1,20 @@
+#!/bin/sh
+# Compiles the engine code used by the benchmarks and the benchmarks, then
+# runs the benchmarks on a desktop JVM. Arguments are passed on to Benchmarks,
+# for example: ./run.sh -quick -csv
+#
+# android.jar is only used to compile. At runtime the classes in shims stand
+# in for the few Android classes the collision code calls, since the ones in
+# android.jar throw when used.
+set -e
+cd "$(dirname "$0")"
+
+ANDROID_JAR=${ANDROID_JAR:-$ANDROID_HOME/platforms/android-17/android.jar}
+OUT=build/classes
+
+rm -rf "$OUT"
+mkdir -p "$OUT"
+javac -nowarn -encoding UTF-8 -d "$OUT" -cp "$ANDROID_JAR" \
+	-sourcepath ../AGE/src $(find src shims -name '*.java')
+
+java -cp "$OUT:$ANDROID_JAR" funativity.age.benchmark.Benchmarks "$@"
@@ -0,0 +1,121 @@
+package android.util;
+
+import java.util.Arrays;
+
+/**
+ * Stand-in for Android's SparseArray, so the engine's collision code can run
+ * on a desktop JVM. The android.jar from the SDK only has stubs that throw
+ * when called. Covers the methods the engine uses, with the same behavior:
+ * keys are kept sorted, and missing keys read as null.
+ *
+ */
+public class SparseArray<E>
+{
+	private int[] keys;
+	private Object[] values;
+	private int size;
+
+	public SparseArray()
+	{
+		this(10);
+	}
+
+	public SparseArray(int initialCapacity)
+	{
+		keys = new int[Math.max(1, initialCapacity)];
+		values = new Object[keys.length];
+	}
+
+	public E get(int key)
+	{
+		return get(key, null);
+	}
+
+	@SuppressWarnings("unchecked")
+	public E get(int key, E valueIfKeyNotFound)
+	{
+		int i = Arrays.binarySearch(keys, 0, size, key);
+		return i < 0 ? valueIfKeyNotFound : (E) values[i];
+	}
+
+	public void put(int key, E value)
+	{
+		int i = Arrays.binarySearch(keys, 0, size, key);
+		if (i >= 0)
+		{
+			values[i] = value;
+			return;
+		}
+
+		i = ~i;
+		if (size == keys.length)
+		{
+			keys = Arrays.copyOf(keys, size * 2);
+			values = Arrays.copyOf(values, size * 2);
+		}
+
+		System.arraycopy(keys, i, keys, i + 1, size - i);
+		System.arraycopy(values, i, values, i + 1, size - i);
+		keys[i] = key;
+		values[i] = value;
+		size++;
+	}
+
+	public void append(int key, E value)
+	{
+		put(key, value);
+	}
+
+	public void delete(int key)
+	{
+		int i = Arrays.binarySearch(keys, 0, size, key);
+		if (i >= 0)
+			removeAt(i);
+	}
+
+	public void remove(int key)
+	{
+		delete(key);
+	}
+
+	public void removeAt(int index)
+	{
+		System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+		System.arraycopy(values, index + 1, values, index, size - index - 1);
+		size--;
+		values[size] = null;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public int keyAt(int index)
+	{
+		return keys[index];
+	}
+
+	@SuppressWarnings("unchecked")
+	public E valueAt(int index)
+	{
+		return (E) values[index];
+	}
+
+	public void setValueAt(int index, E value)
+	{
+		values[index] = value;
+	}
+
+	public int indexOfKey(int key)
+	{
+		int i = Arrays.binarySearch(keys, 0, size, key);
+		return i < 0 ? -1 : i;
+	}
+
+	public void clear()
+	{
+		Arrays.fill(values, 0, size, null);
+		size = 0;
+	}
+}
@@ -0,0 +1,102 @@
+package android.util;
+
+import java.util.Arrays;
+
+/**
+ * Stand-in for Android's SparseBooleanArray, so the engine's collision code
+ * can run on a desktop JVM. See SparseArray.
+ *
+ */
+public class SparseBooleanArray
+{
+	private int[] keys;
+	private boolean[] values;
+	private int size;
+
+	public SparseBooleanArray()
+	{
+		this(10);
+	}
+
+	public SparseBooleanArray(int initialCapacity)
+	{
+		keys = new int[Math.max(1, initialCapacity)];
+		values = new boolean[keys.length];
+	}
+
+	public boolean get(int key)
+	{
+		return get(key, false);
+	}
+
+	public boolean get(int key, boolean valueIfKeyNotFound)
+	{
+		int i = Arrays.binarySearch(keys, 0, size, key);
+		return i < 0 ? valueIfKeyNotFound : values[i];
+	}
+
+	public void put(int key, boolean value)
+	{
+		int i = Arrays.binarySearch(keys, 0, size, key);
+		if (i >= 0)
+		{
+			values[i] = value;
+			return;
+		}
+
+		i = ~i;
+		if (size == keys.length)
+		{
+			keys = Arrays.copyOf(keys, size * 2);
+			values = Arrays.copyOf(values, size * 2);
+		}
+
+		System.arraycopy(keys, i, keys, i + 1, size - i);
+		System.arraycopy(values, i, values, i + 1, size - i);
+		keys[i] = key;
+		values[i] = value;
+		size++;
+	}
+
+	public void append(int key, boolean value)
+	{
+		put(key, value);
+	}
+
+	public void delete(int key)
+	{
+		int i = Arrays.binarySearch(keys, 0, size, key);
+		if (i < 0)
+			return;
+
+		System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+		System.arraycopy(values, i + 1, values, i, size - i - 1);
+		size--;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public int keyAt(int index)
+	{
+		return keys[index];
+	}
+
+	public boolean valueAt(int index)
+	{
+		return values[index];
+	}
+
+	public int indexOfKey(int key)
+	{
+		int i = Arrays.binarySearch(keys, 0, size, key);
+		return i < 0 ? -1 : i;
+	}
+
+	public void clear()
+	{
+		size = 0;
+	}
+}
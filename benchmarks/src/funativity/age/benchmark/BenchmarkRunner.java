@@ -0,0 +1,220 @@
+package funativity.age.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Times an operation the way JMH does in average time mode: the operation is
+ * ran for a while to let the JIT compile it, then timed over several
+ * iterations of a fixed length. Allocations are counted with the JVM's per
+ * thread allocation counter, so results show bytes allocated per operation.
+ *
+ */
+public class BenchmarkRunner
+{
+	/**
+	 * Something to time
+	 */
+	public interface Operation
+	{
+		/**
+		 * Runs the operation once
+		 *
+		 * @return a count to report, such as pairs tested. Also keeps the JIT
+		 *         from throwing the work away.
+		 */
+		public long run();
+	}
+
+	/**
+	 * Results of timing one operation
+	 */
+	public static class Result
+	{
+		public String name;
+		public String params;
+		public double nanosPerOp;
+		public double errorNanos;
+		public double bytesPerOp;
+		public double countPerOp;
+
+		/**
+		 * Formats the result as a row of the results table
+		 */
+		@Override
+		public String toString()
+		{
+			return String.format("%-40s %-38s %14.1f +- %10.1f %12.1f %12.1f",
+					name, params, nanosPerOp, errorNanos, bytesPerOp,
+					countPerOp);
+		}
+
+		/**
+		 * Formats the result as a line of comma separated values
+		 */
+		public String toCsv()
+		{
+			return String.format("%s,%s,%.1f,%.1f,%.1f,%.1f", name, params,
+					nanosPerOp, errorNanos, bytesPerOp, countPerOp);
+		}
+	}
+
+	/** Header of the results table, lined up with Result.toString() */
+	public static final String HEADER = String.format(
+			"%-40s %-38s %14s    %10s %12s %12s", "Benchmark", "Params",
+			"ns/op", "error", "B/op", "count/op");
+
+	/** Header of the comma separated results */
+	public static final String CSV_HEADER = "benchmark,params,ns_per_op,error_ns,bytes_per_op,count_per_op";
+
+	// counts the bytes each thread allocates, null if the JVM can not
+	private static final com.sun.management.ThreadMXBean ALLOCATIONS = getAllocationCounter();
+
+	private final long warmupNanos;
+	private final long iterationNanos;
+	private final int iterations;
+
+	// sum of every count returned, so no run can be skipped
+	private long sink;
+
+	/**
+	 * Creates a runner
+	 *
+	 * @param warmupMillis
+	 *            how long to run each operation before timing it
+	 * @param iterationMillis
+	 *            how long each timed iteration lasts
+	 * @param iterations
+	 *            number of timed iterations
+	 */
+	public BenchmarkRunner(long warmupMillis, long iterationMillis,
+			int iterations)
+	{
+		this.warmupNanos = warmupMillis * 1000000L;
+		this.iterationNanos = iterationMillis * 1000000L;
+		this.iterations = Math.max(1, iterations);
+	}
+
+	/**
+	 * Times an operation
+	 *
+	 * @param name
+	 *            name of the benchmark
+	 * @param params
+	 *            parameters of this run, to tell runs of the same benchmark
+	 *            apart
+	 * @param operation
+	 *            operation to time
+	 * @param opsPerRun
+	 *            number of operations each run does, like JMH's
+	 *            OperationsPerInvocation
+	 * @return the average time, allocations and count per operation
+	 */
+	public Result measure(String name, String params, Operation operation,
+			int opsPerRun)
+	{
+		long end = System.nanoTime() + warmupNanos;
+		do
+		{
+			sink += operation.run();
+		}
+		while (System.nanoTime() < end);
+
+		double[] nanos = new double[iterations];
+		long totalRuns = 0;
+		long totalBytes = 0;
+		long totalCount = 0;
+
+		for (int i = 0; i < iterations; i++)
+		{
+			long runs = 0;
+			long bytes = getAllocatedBytes();
+			long start = System.nanoTime();
+			long now;
+			do
+			{
+				totalCount += operation.run();
+				runs++;
+				now = System.nanoTime();
+			}
+			while (now - start < iterationNanos);
+
+			totalBytes += getAllocatedBytes() - bytes;
+			totalRuns += runs;
+			nanos[i] = (now - start) / (double) (runs * opsPerRun);
+		}
+
+		sink += totalCount;
+
+		Result result = new Result();
+		result.name = name;
+		result.params = params;
+		result.nanosPerOp = mean(nanos);
+		result.errorNanos = standardDeviation(nanos, result.nanosPerOp);
+		result.bytesPerOp = ALLOCATIONS != null ? totalBytes
+				/ (double) (totalRuns * opsPerRun) : Double.NaN;
+		result.countPerOp = totalCount / (double) (totalRuns * opsPerRun);
+		return result;
+	}
+
+	/**
+	 * Gets the sum of the counts returned by every run, which is otherwise
+	 * meaningless
+	 */
+	public long getSink()
+	{
+		return sink;
+	}
+
+	private static double mean(double[] values)
+	{
+		double sum = 0;
+		for (double value : values)
+		{
+			sum += value;
+		}
+
+		return sum / values.length;
+	}
+
+	private static double standardDeviation(double[] values, double mean)
+	{
+		if (values.length < 2)
+			return 0;
+
+		double sum = 0;
+		for (double value : values)
+		{
+			sum += (value - mean) * (value - mean);
+		}
+
+		return Math.sqrt(sum / (values.length - 1));
+	}
+
+	/**
+	 * Gets the JVM's counter of the bytes each thread allocates. HotSpot and
+	 * OpenJDK have one.
+	 */
+	private static com.sun.management.ThreadMXBean getAllocationCounter()
+	{
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean))
+			return null;
+
+		com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+		if (!counter.isThreadAllocatedMemorySupported())
+			return null;
+
+		counter.setThreadAllocatedMemoryEnabled(true);
+		return counter;
+	}
+
+	private static long getAllocatedBytes()
+	{
+		if (ALLOCATIONS == null)
+			return 0;
+
+		return ALLOCATIONS.getThreadAllocatedBytes(Thread.currentThread()
+				.getId());
+	}
+}
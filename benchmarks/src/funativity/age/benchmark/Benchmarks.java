@@ -0,0 +1,43 @@
+package funativity.age.benchmark;
+
+/**
+ * Runs the benchmarks of the engine on a desktop JVM, so its performance can
+ * be tracked without a phone. See CollisionBenchmarks, EntityBenchmarks and
+ * SceneBenchmarks for what is measured.
+ *
+ * Arguments, in any order:
+ * <ul>
+ * <li>-quick: short iterations and at most 10,000 shapes or entities, for
+ * CI</li>
+ * <li>-csv: print comma separated values instead of a table</li>
+ * <li>anything else: only run benchmarks whose name or parameters contain
+ * it</li>
+ * </ul>
+ *
+ */
+public class Benchmarks
+{
+	public static void main(String[] args)
+	{
+		boolean quick = false;
+		boolean csv = false;
+		String filter = null;
+
+		for (String arg : args)
+		{
+			if (arg.equals("-quick"))
+				quick = true;
+			else if (arg.equals("-csv"))
+				csv = true;
+			else
+				filter = arg;
+		}
+
+		System.out.println(csv ? BenchmarkRunner.CSV_HEADER
+				: BenchmarkRunner.HEADER);
+
+		new CollisionBenchmarks(quick, csv, filter, System.out).runAll();
+		new EntityBenchmarks(quick, csv, filter, System.out).runAll();
+		new SceneBenchmarks(quick, csv, filter, System.out).runAll();
+	}
+}
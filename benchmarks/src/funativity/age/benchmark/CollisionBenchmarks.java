@@ -0,0 +1,318 @@
+package funativity.age.benchmark;
+
+import java.io.PrintStream;
+import java.util.Random;
+
+import funativity.age.benchmark.BenchmarkRunner.Operation;
+import funativity.age.benchmark.BenchmarkRunner.Result;
+import funativity.age.benchmark.CollisionScene.Layout;
+import funativity.age.collision.Broadphase;
+import funativity.age.collision.CollisionAAB;
+import funativity.age.collision.CollisionDetect;
+import funativity.age.collision.CollisionOBB;
+import funativity.age.collision.CollisionShape;
+import funativity.age.collision.CollisionSphere;
+import funativity.age.collision.DynamicTreeBroadphase;
+import funativity.age.collision.SpatialHashBroadphase;
+import funativity.age.collision.SweepAndPruneBroadphase;
+import funativity.age.opengl.Entity;
+
+/**
+ * Benchmarks of the collision subsystem, ran by Benchmarks.
+ *
+ * Three groups of benchmarks are ran:
+ * <ul>
+ * <li>checkForCollisions: one frame of a CollisionScene, for every layout,
+ * shape count and broadphase. The count is the pairs tested per frame.</li>
+ * <li>CollisionDetect: each intersection test, over a batch of random pairs.
+ * The count is the fraction of pairs touching.</li>
+ * <li>willIntersect: with the exact swept test for spheres, and the
+ * stepped test for oriented boxes. The count is the fraction of pairs
+ * that will touch.</li>
+ * </ul>
+ *
+ */
+public class CollisionBenchmarks
+{
+	private static final int[] SHAPE_COUNTS = { 100, 1000, 10000, 100000 };
+	private static final int[] QUICK_SHAPE_COUNTS = { 100, 1000, 10000 };
+
+	private static final String[] BROADPHASES = { "none", "packed", "hash",
+			"sweep", "tree" };
+
+	// testing every pair takes too long past this count
+	private static final int MAX_BRUTE_FORCE = 1000;
+
+	// pairs in each batch of the intersection benchmarks
+	private static final int BATCH = 1024;
+
+	// steps of willIntersect for shapes without a swept test
+	private static final int SEGMENTS = 8;
+
+	private final BenchmarkRunner runner;
+	private final int[] shapeCounts;
+	private final boolean csv;
+	private final String filter;
+	private final PrintStream out;
+
+	/**
+	 * Creates the benchmarks
+	 *
+	 * @param quick
+	 *            true for short runs over fewer shapes
+	 * @param csv
+	 *            true to print comma separated values
+	 * @param filter
+	 *            only run benchmarks whose name or parameters contain this,
+	 *            or null to run all of them
+	 * @param out
+	 *            where to print the results
+	 */
+	public CollisionBenchmarks(boolean quick, boolean csv, String filter,
+			PrintStream out)
+	{
+		this.runner = quick ? new BenchmarkRunner(300, 200, 3)
+				: new BenchmarkRunner(1000, 500, 5);
+		this.shapeCounts = quick ? QUICK_SHAPE_COUNTS : SHAPE_COUNTS;
+		this.csv = csv;
+		this.filter = filter;
+		this.out = out;
+	}
+
+	/**
+	 * Runs every benchmark that matches the filter, printing each result as
+	 * it finishes
+	 */
+	public void runAll()
+	{
+		runCheckForCollisions();
+		runIntersectTests();
+		runWillIntersect();
+	}
+
+	private void runCheckForCollisions()
+	{
+		for (Layout layout : Layout.values())
+		{
+			for (int shapes : shapeCounts)
+			{
+				for (String broadphase : BROADPHASES)
+				{
+					if (broadphase.equals("none") && shapes > MAX_BRUTE_FORCE)
+						continue;
+
+					String params = "layout=" + layout.name().toLowerCase()
+							+ " shapes=" + shapes + " bp=" + broadphase;
+					if (!matches("checkForCollisions", params))
+						continue;
+
+					final CollisionScene scene = new CollisionScene(shapes,
+							layout, createBroadphase(broadphase),
+							broadphase.equals("packed"));
+
+					report(runner.measure("checkForCollisions", params,
+							new Operation()
+							{
+								@Override
+								public long run()
+								{
+									return scene.step();
+								}
+							}, 1));
+				}
+			}
+		}
+	}
+
+	private void runIntersectTests()
+	{
+		Random rand = new Random(1);
+		final CollisionSphere[] spheres1 = new CollisionSphere[BATCH];
+		final CollisionSphere[] spheres2 = new CollisionSphere[BATCH];
+		final CollisionAAB[] boxes1 = new CollisionAAB[BATCH];
+		final CollisionAAB[] boxes2 = new CollisionAAB[BATCH];
+		final CollisionOBB[] obbs1 = new CollisionOBB[BATCH];
+		final CollisionOBB[] obbs2 = new CollisionOBB[BATCH];
+
+		for (int i = 0; i < BATCH; i++)
+		{
+			spheres1[i] = new CollisionSphere(createEntity(rand), null, 1);
+			spheres2[i] = new CollisionSphere(createEntity(rand), null, 1);
+			boxes1[i] = new CollisionAAB(createEntity(rand), null, 2, 2);
+			boxes2[i] = new CollisionAAB(createEntity(rand), null, 2, 2);
+			obbs1[i] = new CollisionOBB(createEntity(rand), null, 2, 2);
+			obbs2[i] = new CollisionOBB(createEntity(rand), null, 2, 2);
+		}
+
+		measureBatch("CollisionDetect.isIntersectSpheres", new Operation()
+		{
+			@Override
+			public long run()
+			{
+				long hits = 0;
+				for (int i = 0; i < BATCH; i++)
+				{
+					if (CollisionDetect.isIntersectSpheres(spheres1[i],
+							spheres2[i]))
+						hits++;
+				}
+				return hits;
+			}
+		});
+
+		measureBatch("CollisionDetect.isIntersectAAB", new Operation()
+		{
+			@Override
+			public long run()
+			{
+				long hits = 0;
+				for (int i = 0; i < BATCH; i++)
+				{
+					if (CollisionDetect.isIntersectAAB(boxes1[i], boxes2[i]))
+						hits++;
+				}
+				return hits;
+			}
+		});
+
+		measureBatch("CollisionDetect.isIntersectAABToSphere",
+				new Operation()
+				{
+					@Override
+					public long run()
+					{
+						long hits = 0;
+						for (int i = 0; i < BATCH; i++)
+						{
+							if (CollisionDetect.isIntersectAABToSphere(
+									boxes1[i], spheres2[i]))
+								hits++;
+						}
+						return hits;
+					}
+				});
+
+		measureBatch("CollisionDetect.isIntersectPolygons", new Operation()
+		{
+			@Override
+			public long run()
+			{
+				long hits = 0;
+				for (int i = 0; i < BATCH; i++)
+				{
+					if (CollisionDetect.isIntersectPolygons(obbs1[i], obbs2[i]))
+						hits++;
+				}
+				return hits;
+			}
+		});
+
+		measureBatch("CollisionDetect.timeOfImpactSpheres", new Operation()
+		{
+			@Override
+			public long run()
+			{
+				long hits = 0;
+				for (int i = 0; i < BATCH; i++)
+				{
+					if (CollisionDetect.timeOfImpactSpheres(spheres1[i],
+							spheres2[i], CollisionScene.DELTA) >= 0)
+						hits++;
+				}
+				return hits;
+			}
+		});
+	}
+
+	private void runWillIntersect()
+	{
+		Random rand = new Random(2);
+		final CollisionShape[] spheres1 = new CollisionShape[BATCH];
+		final CollisionShape[] spheres2 = new CollisionShape[BATCH];
+		final CollisionShape[] obbs1 = new CollisionShape[BATCH];
+		final CollisionShape[] obbs2 = new CollisionShape[BATCH];
+
+		for (int i = 0; i < BATCH; i++)
+		{
+			spheres1[i] = new CollisionSphere(createEntity(rand), null, 1);
+			spheres2[i] = new CollisionSphere(createEntity(rand), null, 1);
+			obbs1[i] = new CollisionOBB(createEntity(rand), null, 2, 2);
+			obbs2[i] = new CollisionOBB(createEntity(rand), null, 2, 2);
+		}
+
+		measureBatch("CollisionShape.willIntersect", "shape=sphere",
+				willIntersect(spheres1, spheres2));
+		measureBatch("CollisionShape.willIntersect", "shape=obb segments="
+				+ SEGMENTS, willIntersect(obbs1, obbs2));
+	}
+
+	private static Operation willIntersect(final CollisionShape[] shapes1,
+			final CollisionShape[] shapes2)
+	{
+		return new Operation()
+		{
+			@Override
+			public long run()
+			{
+				long hits = 0;
+				for (int i = 0; i < BATCH; i++)
+				{
+					if (shapes1[i].willIntersect(shapes2[i],
+							CollisionScene.DELTA * 10, SEGMENTS))
+						hits++;
+				}
+				return hits;
+			}
+		};
+	}
+
+	private void measureBatch(String name, Operation operation)
+	{
+		measureBatch(name, "pairs=" + BATCH, operation);
+	}
+
+	private void measureBatch(String name, String params, Operation operation)
+	{
+		if (matches(name, params))
+			report(runner.measure(name, params, operation, BATCH));
+	}
+
+	/**
+	 * Creates an entity somewhere in a small square, so about half of the
+	 * pairs of shapes touch, moving fast enough to reach each other
+	 */
+	private static Entity createEntity(Random rand)
+	{
+		Entity e = new Entity();
+		e.setX(rand.nextFloat() * 4);
+		e.setY(rand.nextFloat() * 4);
+		e.setRZ(rand.nextFloat() * 360);
+		e.setDX((rand.nextFloat() - 0.5f) * 20);
+		e.setDY((rand.nextFloat() - 0.5f) * 20);
+		return e;
+	}
+
+	private static Broadphase createBroadphase(String name)
+	{
+		if (name.equals("hash"))
+			return new SpatialHashBroadphase();
+		if (name.equals("sweep"))
+			return new SweepAndPruneBroadphase();
+		if (name.equals("tree"))
+			return new DynamicTreeBroadphase();
+
+		return null;
+	}
+
+	private boolean matches(String name, String params)
+	{
+		return filter == null || name.contains(filter)
+				|| params.contains(filter);
+	}
+
+	private void report(Result result)
+	{
+		out.println(csv ? result.toCsv() : result.toString());
+		out.flush();
+	}
+}
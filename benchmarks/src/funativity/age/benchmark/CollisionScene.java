@@ -0,0 +1,217 @@
+package funativity.age.benchmark;
+
+import java.util.Random;
+
+import funativity.age.collision.Broadphase;
+import funativity.age.collision.CollisionAAB;
+import funativity.age.collision.CollisionListener;
+import funativity.age.collision.CollisionManager;
+import funativity.age.collision.CollisionShape;
+import funativity.age.collision.CollisionSphere;
+import funativity.age.opengl.Entity;
+import funativity.age.state.EntityStore;
+
+/**
+ * A CollisionManager with a single layer of spheres and boxes, and the
+ * entities they move with. Each step moves the entities one frame, bouncing
+ * them off the edges of the world, then checks for collisions. Like in a
+ * Scene, the entities are kept in one EntityStore and moved together.
+ *
+ */
+public class CollisionScene
+{
+	/**
+	 * How the shapes are spread over the world
+	 */
+	public enum Layout
+	{
+		/** Spread evenly, each shape moving in a random direction */
+		UNIFORM,
+
+		/** Packed into a few crowded clusters, each shape moving */
+		CLUSTERED,
+
+		/** Piled in columns that touch from top to bottom, nothing moving */
+		STACKED
+	}
+
+	private static final long SEED = 1234;
+
+	private static final float MIN_SIZE = 0.5f;
+	private static final float MAX_SIZE = 2f;
+	private static final float MAX_SPEED = 7f;
+
+	// world area per shape, keeps the density the same for every shape count
+	private static final float AREA_PER_SHAPE = 16f;
+
+	// shapes per cluster, and per column of a stack
+	private static final int CLUSTER_SHAPES = 1000;
+	private static final int STACK_HEIGHT = 20;
+
+	/** Time each step moves the shapes, in seconds */
+	public static final float DELTA = 1 / 60f;
+
+	private final CollisionManager manager = new CollisionManager(null);
+	private final EntityStore store = new EntityStore();
+	private final Entity[] entities;
+	private final float half;
+
+	// number of collisions reported to the listener
+	private long collisions;
+
+	/**
+	 * Builds a scene
+	 *
+	 * @param shapeCount
+	 *            number of shapes, half spheres and half boxes
+	 * @param layout
+	 *            how the shapes are spread over the world
+	 * @param broadphase
+	 *            broadphase of the layer, or null to test every pair
+	 * @param packed
+	 *            true to turn on the manager's packed shapes
+	 */
+	public CollisionScene(int shapeCount, Layout layout,
+			Broadphase broadphase, boolean packed)
+	{
+		manager.setBroadphase(0, broadphase);
+		manager.setPackedShapes(packed);
+
+		float size = (float) Math.sqrt(shapeCount * AREA_PER_SHAPE);
+		half = size / 2f;
+		entities = new Entity[shapeCount];
+
+		CollisionListener listener = new CollisionListener()
+		{
+			@Override
+			public boolean isCollide(CollisionShape shape1,
+					CollisionShape shape2, float delta)
+			{
+				return shape1.isIntersect(shape2);
+			}
+
+			@Override
+			public void onCollide(CollisionShape shape1,
+					CollisionShape shape2, float delta)
+			{
+				collisions++;
+			}
+		};
+
+		Random rand = new Random(SEED);
+		int clusters = Math.max(1, shapeCount / CLUSTER_SHAPES);
+		float[] clusterX = new float[clusters];
+		float[] clusterY = new float[clusters];
+		for (int c = 0; c < clusters; c++)
+		{
+			clusterX[c] = (rand.nextFloat() - 0.5f) * size;
+			clusterY[c] = (rand.nextFloat() - 0.5f) * size;
+		}
+
+		// a cluster holds its shapes in a tenth of the area they would
+		// have spread evenly
+		float spread = (float) Math.sqrt(CLUSTER_SHAPES * AREA_PER_SHAPE
+				/ 10f) / 2f;
+
+		for (int i = 0; i < shapeCount; i++)
+		{
+			Entity e = new Entity();
+			e.setStore(store);
+			float shapeSize = rand.nextFloat() * (MAX_SIZE - MIN_SIZE)
+					+ MIN_SIZE;
+
+			switch (layout)
+			{
+				case UNIFORM:
+					e.setX((rand.nextFloat() - 0.5f) * size);
+					e.setY((rand.nextFloat() - 0.5f) * size);
+					break;
+				case CLUSTERED:
+					int c = i % clusters;
+					e.setX(clamp(clusterX[c] + (float) rand.nextGaussian()
+							* spread));
+					e.setY(clamp(clusterY[c] + (float) rand.nextGaussian()
+							* spread));
+					break;
+				default:
+					// columns two sizes apart, each shape sinking a little
+					// into the one under it
+					int column = i / STACK_HEIGHT;
+					int columns = (shapeCount + STACK_HEIGHT - 1)
+							/ STACK_HEIGHT;
+					shapeSize = 1;
+					e.setX((column - columns / 2f) * 2 * shapeSize);
+					e.setY((i % STACK_HEIGHT) * 0.95f * shapeSize);
+					break;
+			}
+
+			if (layout != Layout.STACKED)
+			{
+				e.setDX((rand.nextFloat() - 0.5f) * MAX_SPEED);
+				e.setDY((rand.nextFloat() - 0.5f) * MAX_SPEED);
+			}
+
+			if (i % 2 == 0)
+				manager.addChild(new CollisionSphere(e, listener,
+						shapeSize / 2f), 0);
+			else
+				manager.addChild(new CollisionAAB(e, listener, shapeSize,
+						shapeSize), 0);
+
+			entities[i] = e;
+		}
+
+		manager.updateLists();
+	}
+
+	private float clamp(float value)
+	{
+		return Math.max(-half, Math.min(half, value));
+	}
+
+	/**
+	 * Moves every entity one frame, then checks for collisions
+	 *
+	 * @return number of pairs the manager tested
+	 */
+	public long step()
+	{
+		for (int i = 0; i < entities.length; i++)
+		{
+			entities[i].update(null, DELTA);
+		}
+
+		store.integrate();
+
+		for (int i = 0; i < entities.length; i++)
+		{
+			Entity e = entities[i];
+			if ((e.getX() > half && e.getDX() > 0)
+					|| (e.getX() < -half && e.getDX() < 0))
+				e.setDX(-e.getDX());
+
+			if ((e.getY() > half && e.getDY() > 0)
+					|| (e.getY() < -half && e.getDY() < 0))
+				e.setDY(-e.getDY());
+		}
+
+		manager.checkForCollisions(DELTA);
+		return manager.getPairCount();
+	}
+
+	/**
+	 * Gets the manager of the scene
+	 */
+	public CollisionManager getManager()
+	{
+		return manager;
+	}
+
+	/**
+	 * Gets the number of collisions reported since the scene was built
+	 */
+	public long getCollisions()
+	{
+		return collisions;
+	}
+}
@@ -0,0 +1,176 @@
+package funativity.age.benchmark;
+
+import java.io.PrintStream;
+import java.util.Random;
+
+import funativity.age.benchmark.BenchmarkRunner.Operation;
+import funativity.age.benchmark.BenchmarkRunner.Result;
+import funativity.age.opengl.Entity;
+import funativity.age.state.EntityStore;
+
+/**
+ * Benchmarks of moving entities, on their own and from a shared EntityStore.
+ *
+ * Two groups of benchmarks are ran, for every entity count:
+ * <ul>
+ * <li>Entity.update: every entity updated once. With store=own each entity
+ * moves itself, with store=shared the entities are kept in one store and
+ * moved by its integrate after the updates, as a Scene does.</li>
+ * <li>EntityStore.integrate: only the loop moving every entity of a
+ * store.</li>
+ * </ul>
+ * Times are per entity.
+ *
+ */
+public class EntityBenchmarks
+{
+	private static final int[] ENTITY_COUNTS = { 100, 1000, 10000, 100000 };
+	private static final int[] QUICK_ENTITY_COUNTS = { 100, 1000, 10000 };
+
+	private static final long SEED = 4321;
+
+	private final BenchmarkRunner runner;
+	private final int[] entityCounts;
+	private final boolean csv;
+	private final String filter;
+	private final PrintStream out;
+
+	/**
+	 * Creates the benchmarks
+	 *
+	 * @param quick
+	 *            true for short runs over fewer entities
+	 * @param csv
+	 *            true to print comma separated values
+	 * @param filter
+	 *            only run benchmarks whose name or parameters contain this,
+	 *            or null to run all of them
+	 * @param out
+	 *            where to print the results
+	 */
+	public EntityBenchmarks(boolean quick, boolean csv, String filter,
+			PrintStream out)
+	{
+		this.runner = quick ? new BenchmarkRunner(300, 200, 3)
+				: new BenchmarkRunner(1000, 500, 5);
+		this.entityCounts = quick ? QUICK_ENTITY_COUNTS : ENTITY_COUNTS;
+		this.csv = csv;
+		this.filter = filter;
+		this.out = out;
+	}
+
+	/**
+	 * Runs every benchmark that matches the filter, printing each result as
+	 * it finishes
+	 */
+	public void runAll()
+	{
+		for (int count : entityCounts)
+		{
+			runUpdate(count, false);
+			runUpdate(count, true);
+			runIntegrate(count);
+		}
+	}
+
+	private void runUpdate(int count, boolean shared)
+	{
+		String params = "entities=" + count + " store="
+				+ (shared ? "shared" : "own");
+		if (!matches("Entity.update", params))
+			return;
+
+		final Entity[] entities = createEntities(count);
+		final EntityStore store = shared ? createStore(entities) : null;
+
+		report(runner.measure("Entity.update", params, new Operation()
+		{
+			@Override
+			public long run()
+			{
+				for (int i = 0; i < entities.length; i++)
+				{
+					entities[i].update(null, CollisionScene.DELTA);
+				}
+
+				if (store != null)
+					store.integrate();
+
+				return entities.length;
+			}
+		}, count));
+	}
+
+	private void runIntegrate(int count)
+	{
+		String params = "entities=" + count;
+		if (!matches("EntityStore.integrate", params))
+			return;
+
+		final EntityStore store = createStore(createEntities(count));
+
+		report(runner.measure("EntityStore.integrate", params,
+				new Operation()
+				{
+					@Override
+					public long run()
+					{
+						int size = store.size();
+						for (int i = 0; i < size; i++)
+						{
+							store.step(i, CollisionScene.DELTA);
+						}
+
+						store.integrate();
+						return size;
+					}
+				}, count));
+	}
+
+	/**
+	 * Creates entities moving and turning in random directions, falling
+	 * slowly so the acceleration is used
+	 */
+	private static Entity[] createEntities(int count)
+	{
+		Random rand = new Random(SEED);
+		Entity[] entities = new Entity[count];
+
+		for (int i = 0; i < count; i++)
+		{
+			Entity e = new Entity();
+			e.setX((rand.nextFloat() - 0.5f) * 100);
+			e.setY((rand.nextFloat() - 0.5f) * 100);
+			e.setDX(rand.nextFloat() - 0.5f);
+			e.setDY(rand.nextFloat() - 0.5f);
+			e.setAY(-0.01f);
+			e.setRZ(rand.nextFloat() * 360);
+			entities[i] = e;
+		}
+
+		return entities;
+	}
+
+	private static EntityStore createStore(Entity[] entities)
+	{
+		EntityStore store = new EntityStore(entities.length);
+		for (Entity e : entities)
+		{
+			e.setStore(store);
+		}
+
+		return store;
+	}
+
+	private boolean matches(String name, String params)
+	{
+		return filter == null || name.contains(filter)
+				|| params.contains(filter);
+	}
+
+	private void report(Result result)
+	{
+		out.println(csv ? result.toCsv() : result.toString());
+		out.flush();
+	}
+}
@@ -0,0 +1,250 @@
+package funativity.age.benchmark;
+
+import java.io.PrintStream;
+import java.util.Random;
+
+import funativity.age.benchmark.BenchmarkRunner.Operation;
+import funativity.age.benchmark.BenchmarkRunner.Result;
+import funativity.age.opengl.AGEColor;
+import funativity.age.opengl.Drawable;
+import funativity.age.opengl.Entity;
+import funativity.age.state.JobSystem;
+import funativity.age.state.Scene;
+
+/**
+ * Benchmarks of a Scene's entity list and of its update on a JobSystem.
+ *
+ * Two groups of benchmarks are ran, for every entity count:
+ * <ul>
+ * <li>Scene.update: one frame of a scene whose entities move and play an
+ * animation, on a JobSystem with 1 to 8 threads. Shows how the moving and
+ * drawable phases scale with the cores of the machine.</li>
+ * <li>Scene.updateLists: every entity added to the scene, and then every
+ * entity removed with removeAllEntities, as on a level reset.</li>
+ * </ul>
+ * Times are per entity.
+ *
+ */
+public class SceneBenchmarks
+{
+	private static final int[] ENTITY_COUNTS = { 1000, 10000, 100000 };
+	private static final int[] QUICK_ENTITY_COUNTS = { 1000, 10000 };
+
+	private static final int[] THREADS = { 1, 2, 4, 8 };
+
+	private static final long SEED = 5678;
+
+	private final BenchmarkRunner runner;
+	private final int[] entityCounts;
+	private final boolean csv;
+	private final String filter;
+	private final PrintStream out;
+
+	/**
+	 * A scene that does nothing but update its entities
+	 */
+	private static class EmptyScene extends Scene
+	{
+		public EmptyScene()
+		{
+			super(null);
+		}
+
+		@Override
+		public void init()
+		{
+		}
+
+		@Override
+		public void loadResources()
+		{
+		}
+	}
+
+	/**
+	 * A drawable blending between two poses of a small skeleton, about the
+	 * work of a keyframed mesh animation
+	 */
+	private static class PoseDrawable implements Drawable
+	{
+		private static final int BONES = 16;
+		private static final float LENGTH = 1.5f;
+
+		private final float[] from = new float[BONES * 4];
+		private final float[] to = new float[BONES * 4];
+		private final float[] pose = new float[BONES * 4];
+		private float time;
+
+		public PoseDrawable(Random rand)
+		{
+			for (int i = 0; i < from.length; i++)
+			{
+				from[i] = rand.nextFloat();
+				to[i] = rand.nextFloat();
+			}
+			time = rand.nextFloat() * LENGTH;
+		}
+
+		@Override
+		public void draw()
+		{
+		}
+
+		@Override
+		public void update(float delta)
+		{
+			time += delta;
+			if (time >= LENGTH)
+				time -= LENGTH;
+
+			float t = time / LENGTH;
+			for (int i = 0; i < pose.length; i += 4)
+			{
+				// blend each bone's rotation, then keep it a unit quaternion
+				float x = from[i] + (to[i] - from[i]) * t;
+				float y = from[i + 1] + (to[i + 1] - from[i + 1]) * t;
+				float z = from[i + 2] + (to[i + 2] - from[i + 2]) * t;
+				float w = from[i + 3] + (to[i + 3] - from[i + 3]) * t;
+				float scale = 1 / (float) Math.sqrt(x * x + y * y + z * z + w
+						* w);
+
+				pose[i] = x * scale;
+				pose[i + 1] = y * scale;
+				pose[i + 2] = z * scale;
+				pose[i + 3] = w * scale;
+			}
+		}
+
+		@Override
+		public AGEColor getColor()
+		{
+			return null;
+		}
+
+		@Override
+		public void setColor(AGEColor color)
+		{
+		}
+	}
+
+	/**
+	 * Creates the benchmarks
+	 *
+	 * @param quick
+	 *            true for short runs over fewer entities
+	 * @param csv
+	 *            true to print comma separated values
+	 * @param filter
+	 *            only run benchmarks whose name or parameters contain this,
+	 *            or null to run all of them
+	 * @param out
+	 *            where to print the results
+	 */
+	public SceneBenchmarks(boolean quick, boolean csv, String filter,
+			PrintStream out)
+	{
+		this.runner = quick ? new BenchmarkRunner(300, 200, 3)
+				: new BenchmarkRunner(1000, 500, 5);
+		this.entityCounts = quick ? QUICK_ENTITY_COUNTS : ENTITY_COUNTS;
+		this.csv = csv;
+		this.filter = filter;
+		this.out = out;
+	}
+
+	/**
+	 * Runs every benchmark that matches the filter, printing each result as
+	 * it finishes
+	 */
+	public void runAll()
+	{
+		for (int count : entityCounts)
+		{
+			for (int threads : THREADS)
+			{
+				runUpdate(count, threads);
+			}
+
+			runUpdateLists(count);
+		}
+	}
+
+	private void runUpdate(int count, int threads)
+	{
+		String params = "entities=" + count + " threads=" + threads;
+		if (!matches("Scene.update", params))
+			return;
+
+		final Scene scene = new EmptyScene();
+		JobSystem jobs = new JobSystem(threads);
+		scene.setJobSystem(jobs);
+
+		Random rand = new Random(SEED);
+		for (int i = 0; i < count; i++)
+		{
+			Entity e = new Entity(new PoseDrawable(rand));
+			e.setX((rand.nextFloat() - 0.5f) * 100);
+			e.setY((rand.nextFloat() - 0.5f) * 100);
+			e.setDX(rand.nextFloat() - 0.5f);
+			e.setDY(rand.nextFloat() - 0.5f);
+			e.setAY(-0.01f);
+			scene.addEntity(e);
+		}
+		scene.updateLists();
+
+		final int entities = count;
+		report(runner.measure("Scene.update", params, new Operation()
+		{
+			@Override
+			public long run()
+			{
+				scene.update(CollisionScene.DELTA);
+				return entities;
+			}
+		}, count));
+
+		jobs.shutdown();
+	}
+
+	private void runUpdateLists(int count)
+	{
+		String params = "entities=" + count;
+		if (!matches("Scene.updateLists", params))
+			return;
+
+		final Scene scene = new EmptyScene();
+		final Entity[] entities = new Entity[count];
+		for (int i = 0; i < count; i++)
+		{
+			entities[i] = new Entity();
+		}
+
+		report(runner.measure("Scene.updateLists", params, new Operation()
+		{
+			@Override
+			public long run()
+			{
+				for (int i = 0; i < entities.length; i++)
+				{
+					scene.addEntity(entities[i]);
+				}
+				scene.updateLists();
+
+				scene.removeAllEntities();
+				scene.updateLists();
+				return entities.length;
+			}
+		}, count));
+	}
+
+	private boolean matches(String name, String params)
+	{
+		return filter == null || name.contains(filter)
+				|| params.contains(filter);
+	}
+
+	private void report(Result result)
+	{
+		out.println(csv ? result.toCsv() : result.toString());
+		out.flush();
+	}
+}
@@ -5,7 +5,6 @@ import age.asteroids.util.SingleCollisionListener;
 import android.opengl.Matrix;
 import funativity.age.collision.CollisionSphere;
 import funativity.age.opengl.Entity;
-import funativity.age.opengl.MM;
 import funativity.age.opengl.Mesh;
 import funativity.age.state.Scene;
 import funativity.age.util.Geometry3f;
@@ -20,6 +19,7 @@ public abstract class GameEntity extends Entity
 	private float yaw, pitch, roll;
 	private boolean directionsDirty = true;
 	public boolean useQuatRotations = true;
+	private final float[] drawMatrix = new float[16];
 
 	public CollisionSphere collisionShape;
 
@@ -102,6 +102,13 @@ public abstract class GameEntity extends Entity
 
 		super.update(scene, delta);
 
+		// wrap once the move is done
+		requestAfterMove(scene);
+	}
+
+	@Override
+	public void afterMove(Scene scene)
+	{
 		if (!(scene instanceof Level))
 			return;
 		Level l = (Level) scene;
@@ -118,30 +125,21 @@ public abstract class GameEntity extends Entity
 			setZ(-Integer.signum((int) getZ()) * hd);
 	}
 
+	/**
+	 * With quaternion rotations, the entity is drawn turned by its quaternion
+	 * rather than by its rotation angles
+	 */
 	@Override
-	public void render()
+	public float[] getDrawMatrix()
 	{
-		if (useQuatRotations)
-		{
-			MM.pushMatrix();
-			MM.loadIdentity();
-
-			float[] pos = new float[16];
-			Matrix.setIdentityM(pos, 0);
-			Matrix.translateM(pos, 0, getX(), getY(), getZ());
-
-			float[] rot = new float[16];
-			Quaternion.setMatrixFromQuaternion(rot, quat);
-
-			Matrix.multiplyMM(MM.getMMatrix(), 0, pos, 0, rot, 0);
-
-			getDrawable().draw();
-			MM.popMatrix();
-		}
-		else
-		{
-			super.render();
-		}
+		if (!useQuatRotations)
+			return super.getDrawMatrix();
+
+		Quaternion.setMatrixFromQuaternion(drawMatrix, quat);
+		drawMatrix[12] = getX();
+		drawMatrix[13] = getY();
+		drawMatrix[14] = getZ();
+		return drawMatrix;
 	}
 
 	/**
@@ -126,12 +126,6 @@ public class Player extends GameEntity
 
 		super.update(scene, delta);
 
-		// limit max speed
-		if (getVelocity().length() > PLAYER_MAX_SPEED)
-		{
-			getVelocity().normalize().scale(PLAYER_MAX_SPEED);
-		}
-
 		// update powerups
 		ArrayList<PowerUp> removePowerUps = new ArrayList<PowerUp>();
 		for (PowerUp p : powerUps)
@@ -143,6 +137,18 @@ public class Player extends GameEntity
 			powerUps.removeAll(removePowerUps);
 	}
 
+	@Override
+	public void afterMove(Scene scene)
+	{
+		super.afterMove(scene);
+
+		// limit max speed, once the acceleration is added
+		if (getVelocity().length() > PLAYER_MAX_SPEED)
+		{
+			getVelocity().normalize().scale(PLAYER_MAX_SPEED);
+		}
+	}
+
 	/**
 	 * Give this player a powerup. Some powerups MAY not have lasting effects
 	 * and will not be added to the powerup list. Those types of powerups will
@@ -169,12 +175,28 @@ public class Player extends GameEntity
 		thrusterDown = down;
 	}
 
+	/**
+	 * Get where the camera goes behind the player, as the player is drawn
+	 * this frame
+	 * 
+	 * @return
+	 */
 	public Geometry3f getCameraPos()
 	{
-		return Geometry3f.sub(getPosition(), new Geometry3f(
+		return Geometry3f.sub(getRenderPosition(), new Geometry3f(
 				getFacingDirection()).scale(camera_offset_scale));
 	}
 
+	/**
+	 * Get where the player is drawn this frame, part way between updates
+	 * 
+	 * @return
+	 */
+	public Geometry3f getRenderPosition()
+	{
+		return new Geometry3f(getRenderX(), getRenderY(), getRenderZ());
+	}
+
 	@Override
 	public void render()
 	{
@@ -143,6 +143,9 @@ public class Level extends Scene
 
 		setLevelSize(currentLevelNumber);
 
+		// entities wrap around at the edges, so collisions do too
+		getCollisionManager().setWorldSize(width, height, depth);
+
 		ArrayList<Integer> asteroidInfo = getLevelAsteroidSizes(currentLevelNumber);
 		Asteroid.count = asteroidInfo.size();
 		for (int i = 0; i < Asteroid.count; i++)
@@ -238,7 +241,7 @@ public class Level extends Scene
 
 		// move the camera to the location of the player
 		float[] eye = geomToArray(player.getCameraPos());
-		float[] at = geomToArray(Geometry3f.add(player.getPosition(),
+		float[] at = geomToArray(Geometry3f.add(player.getRenderPosition(),
 				player.getFacingDirection()));
 		float[] up = geomToArray(player.getVertical());
 		MM.lookAt(eye, up, at);
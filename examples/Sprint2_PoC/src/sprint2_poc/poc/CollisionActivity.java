@@ -63,9 +63,10 @@ public class CollisionActivity extends GameState
 
 			// Set the circle's collision.
 			CollisionListener listener1 = CollisionResult
-					.getSwapVelocityListener();
+					.getImpulseListener();
 			CollisionSphere collision1 = new CollisionSphere(entity1,
 					listener1, radius);
+			collision1.setRestitution(1);
 			collisionManager.addChild(collision1, 0);
 
 			// Circle 2.
@@ -85,9 +86,10 @@ public class CollisionActivity extends GameState
 
 			// Set the circle's collision.
 			CollisionListener listener2 = CollisionResult
-					.getSwapVelocityListener();
+					.getImpulseListener();
 			CollisionSphere collision2 = new CollisionSphere(entity2,
 					listener2, radius);
+			collision2.setRestitution(1);
 			collisionManager.addChild(collision2, 0);
 		}
 
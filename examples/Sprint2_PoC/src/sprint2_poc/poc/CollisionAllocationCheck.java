@@ -0,0 +1,261 @@
+package sprint2_poc.poc;
+
+import java.util.Random;
+
+import android.os.Debug;
+import funativity.age.collision.Broadphase;
+import funativity.age.collision.CollisionAAB;
+import funativity.age.collision.CollisionManager;
+import funativity.age.collision.CollisionResult;
+import funativity.age.collision.CollisionShape;
+import funativity.age.collision.CollisionSphere;
+import funativity.age.collision.Contact;
+import funativity.age.collision.ContactListener;
+import funativity.age.opengl.Entity;
+
+/**
+ * Counts the objects allocated by CollisionManager.checkForCollisions once the
+ * manager has warmed up. Collision checks run every frame, so anything they
+ * allocate ends up as garbage collector pauses; this check fails if a single
+ * allocation shows up.
+ *
+ * The same frames are run three times from the same starting positions. The
+ * first two runs let every buffer in the manager grow as big as the frames
+ * need, and only the last run is counted.
+ */
+public class CollisionAllocationCheck
+{
+	private static final long SEED = 4321;
+
+	private static final float SIZE = 1f;
+	private static final float MAX_SPEED = 7f;
+	private static final float AREA_PER_SHAPE = 16f;
+	private static final float STILL_FRACTION = 0.25f;
+	private static final float DELTA = 1 / 60f;
+
+	/**
+	 * Results of a single check
+	 */
+	public static class Result
+	{
+		public String name;
+		public int frames;
+		public long allocations;
+
+		public boolean isPassed()
+		{
+			return allocations == 0;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("%s: %s, %d allocations in %d frames", name,
+					isPassed() ? "passed" : "FAILED", allocations, frames);
+		}
+	}
+
+	private final int shapeCount;
+	private final int frames;
+
+	/**
+	 * Create an allocation check
+	 *
+	 * @param shapeCount
+	 *            number of shapes in the layer
+	 * @param frames
+	 *            number of frames to count
+	 */
+	public CollisionAllocationCheck(int shapeCount, int frames)
+	{
+		this.shapeCount = shapeCount;
+		this.frames = frames;
+	}
+
+	/**
+	 * Count the allocations of a layer of bouncing spheres and boxes, with
+	 * some static shapes and a ContactListener, using the specified broadphase
+	 *
+	 * @param name
+	 *            name to report the results under
+	 * @param broadphase
+	 *            broadphase to use, or null to test every pair
+	 * @param continuous
+	 *            true to use continuous collision detection on the layer
+	 * @return allocation count
+	 */
+	public Result run(String name, Broadphase broadphase, boolean continuous)
+	{
+		Result result = new Result();
+		result.name = name;
+		result.frames = frames;
+
+		CollisionManager manager = new CollisionManager(null);
+		manager.setBroadphase(0, broadphase);
+		manager.setContinuous(0, continuous);
+
+		final float size = (float) Math.sqrt(shapeCount * AREA_PER_SHAPE);
+		Entity[] entities = createShapes(manager, size);
+		float[] start = saveState(entities);
+
+		for (int run = 0; run < 3; run++)
+		{
+			loadState(entities, start);
+
+			boolean counted = run == 2;
+			if (counted)
+			{
+				Debug.resetThreadAllocCount();
+				Debug.startAllocCounting();
+			}
+
+			for (int frame = 0; frame < frames; frame++)
+			{
+				if (counted)
+				{
+					// only count the collision checks, not the moving
+					long before = Debug.getThreadAllocCount();
+					manager.checkForCollisions(DELTA);
+					result.allocations += Debug.getThreadAllocCount() - before;
+				}
+				else
+				{
+					manager.checkForCollisions(DELTA);
+				}
+
+				move(entities, size / 2f);
+			}
+
+			if (counted)
+				Debug.stopAllocCounting();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Move the entities, bouncing off of the edges of the world
+	 */
+	private void move(Entity[] entities, float half)
+	{
+		for (int i = 0; i < entities.length; i++)
+		{
+			Entity e = entities[i];
+			e.update(null, DELTA);
+
+			if ((e.getX() > half && e.getDX() > 0)
+					|| (e.getX() < -half && e.getDX() < 0))
+				e.setDX(-e.getDX());
+
+			if ((e.getY() > half && e.getDY() > 0)
+					|| (e.getY() < -half && e.getDY() < 0))
+				e.setDY(-e.getDY());
+		}
+	}
+
+	private static float[] saveState(Entity[] entities)
+	{
+		float[] state = new float[entities.length * 4];
+		for (int i = 0; i < entities.length; i++)
+		{
+			state[i * 4] = entities[i].getX();
+			state[i * 4 + 1] = entities[i].getY();
+			state[i * 4 + 2] = entities[i].getDX();
+			state[i * 4 + 3] = entities[i].getDY();
+		}
+		return state;
+	}
+
+	private static void loadState(Entity[] entities, float[] state)
+	{
+		for (int i = 0; i < entities.length; i++)
+		{
+			entities[i].setX(state[i * 4]);
+			entities[i].setY(state[i * 4 + 1]);
+			entities[i].setDX(state[i * 4 + 2]);
+			entities[i].setDY(state[i * 4 + 3]);
+		}
+	}
+
+	/**
+	 * Fill layer 0 with spheres and boxes that bounce off of each other. The
+	 * first shapes never move and are added as static shapes.
+	 */
+	private Entity[] createShapes(CollisionManager manager, float size)
+	{
+		Random rand = new Random(SEED);
+		Entity[] entities = new Entity[shapeCount];
+		int stillCount = (int) (shapeCount * STILL_FRACTION);
+
+		ContactListener listener = new ContactListener()
+		{
+			@Override
+			public boolean isCollide(CollisionShape shape1,
+					CollisionShape shape2, float delta)
+			{
+				return shape1.isIntersect(shape2);
+			}
+
+			@Override
+			public void onCollide(CollisionShape shape1,
+					CollisionShape shape2, float delta)
+			{
+				Entity other = shape2.getEntity();
+				if (other.getDX() == 0 && other.getDY() == 0)
+				{
+					// bounce off of still shapes, so they stay still
+					Entity e = shape1.getEntity();
+					e.setDX(-e.getDX());
+					e.setDY(-e.getDY());
+				}
+				else
+				{
+					CollisionResult.swapVelocity(shape1, shape2);
+				}
+			}
+
+			@Override
+			public void onCollisionEnter(Contact contact, float delta)
+			{
+			}
+
+			@Override
+			public void onCollisionStay(Contact contact, float delta)
+			{
+			}
+
+			@Override
+			public void onCollisionExit(Contact contact, float delta)
+			{
+			}
+		};
+
+		for (int i = 0; i < shapeCount; i++)
+		{
+			Entity e = new Entity();
+			e.setX((rand.nextFloat() - 0.5f) * size);
+			e.setY((rand.nextFloat() - 0.5f) * size);
+
+			boolean still = i < stillCount;
+			if (!still)
+			{
+				e.setDX((rand.nextFloat() - 0.5f) * MAX_SPEED);
+				e.setDY((rand.nextFloat() - 0.5f) * MAX_SPEED);
+			}
+			entities[i] = e;
+
+			if (i % 2 == 0)
+			{
+				manager.addChild(new CollisionSphere(e, listener, SIZE / 2f),
+						0, still);
+			}
+			else
+			{
+				manager.addChild(new CollisionAAB(e, listener, SIZE, SIZE), 0,
+						still);
+			}
+		}
+
+		return entities;
+	}
+}
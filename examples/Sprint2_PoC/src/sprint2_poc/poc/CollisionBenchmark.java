@@ -0,0 +1,251 @@
+package sprint2_poc.poc;
+
+import java.util.Random;
+
+import funativity.age.collision.Broadphase;
+import funativity.age.collision.CollisionAAB;
+import funativity.age.collision.CollisionListener;
+import funativity.age.collision.CollisionManager;
+import funativity.age.collision.CollisionShape;
+import funativity.age.collision.CollisionSphere;
+import funativity.age.opengl.Entity;
+
+/**
+ * Measures how long CollisionManager.checkForCollisions takes on a layer of
+ * moving spheres and boxes, and how many pairs of shapes it tests. Does not
+ * need OpenGL, so it can be ran off of the GL thread.
+ */
+public class CollisionBenchmark
+{
+	private static final long SEED = 1234;
+
+	private static final float MIN_SIZE = 0.5f;
+	private static final float MAX_SIZE = 2f;
+	private static final float MAX_SPEED = 7f;
+
+	// world area per shape, keeps the density the same for every shape count
+	private static final float AREA_PER_SHAPE = 16f;
+
+	private static final float DELTA = 1 / 60f;
+
+	/**
+	 * Results of a single benchmark run
+	 */
+	public static class Result
+	{
+		public String name;
+		public int shapes;
+		public int frames;
+		public long pairs;
+		public long collisions;
+		public long nanos;
+
+		public float getPairsPerFrame()
+		{
+			return pairs / (float) frames;
+		}
+
+		public float getCollisionsPerFrame()
+		{
+			return collisions / (float) frames;
+		}
+
+		public float getMillisPerFrame()
+		{
+			return nanos / 1000000f / frames;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("%s, %d shapes: %.3f ms/frame, "
+					+ "%.0f pairs/frame, %.1f collisions/frame", name, shapes,
+					getMillisPerFrame(), getPairsPerFrame(),
+					getCollisionsPerFrame());
+		}
+	}
+
+	private final int shapeCount;
+	private final int frames;
+	private final int stillCount;
+
+	/**
+	 * Create a benchmark where every shape moves
+	 *
+	 * @param shapeCount
+	 *            number of shapes in the layer
+	 * @param frames
+	 *            number of frames to time
+	 */
+	public CollisionBenchmark(int shapeCount, int frames)
+	{
+		this(shapeCount, frames, 0);
+	}
+
+	/**
+	 * Create a benchmark where some of the shapes never move, like the tiles
+	 * of a level
+	 *
+	 * @param shapeCount
+	 *            number of shapes in the layer
+	 * @param frames
+	 *            number of frames to time
+	 * @param stillFraction
+	 *            fraction of the shapes, from 0 to 1, that never move
+	 */
+	public CollisionBenchmark(int shapeCount, int frames, float stillFraction)
+	{
+		this.shapeCount = shapeCount;
+		this.frames = frames;
+		this.stillCount = (int) (shapeCount * stillFraction);
+	}
+
+	/**
+	 * Time the layer using the specified broadphase. Every run uses the same
+	 * shapes, so the number of collisions should match between runs.
+	 *
+	 * @param name
+	 *            name to report the results under
+	 * @param broadphase
+	 *            broadphase to use, or null to test every pair
+	 * @return timing results
+	 */
+	public Result run(String name, Broadphase broadphase)
+	{
+		return run(name, broadphase, false);
+	}
+
+	/**
+	 * Time the layer using the specified broadphase. Every run uses the same
+	 * shapes, so the number of collisions should match between runs.
+	 *
+	 * @param name
+	 *            name to report the results under
+	 * @param broadphase
+	 *            broadphase to use, or null to test every pair
+	 * @param addStatic
+	 *            true to add the shapes that never move as static shapes.
+	 *            Static shapes are not tested against each other, so
+	 *            collisions between them are not counted.
+	 * @return timing results
+	 */
+	public Result run(String name, Broadphase broadphase, boolean addStatic)
+	{
+		return run(name, broadphase, addStatic, false);
+	}
+
+	/**
+	 * Time the layer using the specified broadphase, with or without packed
+	 * shapes. Running the same setup both ways compares reading the shapes
+	 * through their entities against reading the manager's packed arrays.
+	 *
+	 * @param name
+	 *            name to report the results under
+	 * @param broadphase
+	 *            broadphase to use, or null to test every pair
+	 * @param addStatic
+	 *            true to add the shapes that never move as static shapes
+	 * @param packed
+	 *            true to turn on the manager's packed shapes
+	 * @return timing results
+	 */
+	public Result run(String name, Broadphase broadphase, boolean addStatic,
+			boolean packed)
+	{
+		final Result result = new Result();
+		result.name = name;
+		result.shapes = shapeCount;
+		result.frames = frames;
+
+		CollisionManager manager = new CollisionManager(null);
+		manager.setBroadphase(0, broadphase);
+		manager.setPackedShapes(packed);
+
+		final float size = (float) Math.sqrt(shapeCount * AREA_PER_SHAPE);
+		final float half = size / 2f;
+		Entity[] entities = createShapes(manager, size, addStatic,
+				new CollisionListener()
+		{
+			@Override
+			public boolean isCollide(CollisionShape shape1,
+					CollisionShape shape2, float delta)
+			{
+				return shape1.isIntersect(shape2);
+			}
+
+			@Override
+			public void onCollide(CollisionShape shape1,
+					CollisionShape shape2, float delta)
+			{
+				result.collisions++;
+			}
+		});
+
+		for (int frame = 0; frame < frames; frame++)
+		{
+			long start = System.nanoTime();
+			manager.checkForCollisions(DELTA);
+			result.nanos += System.nanoTime() - start;
+			result.pairs += manager.getPairCount();
+
+			// move everything, bouncing off of the edges of the world
+			for (Entity e : entities)
+			{
+				e.update(null, DELTA);
+
+				if ((e.getX() > half && e.getDX() > 0)
+						|| (e.getX() < -half && e.getDX() < 0))
+					e.setDX(-e.getDX());
+
+				if ((e.getY() > half && e.getDY() > 0)
+						|| (e.getY() < -half && e.getDY() < 0))
+					e.setDY(-e.getDY());
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Fill layer 0 with an even mix of spheres and boxes spread over the world
+	 */
+	private Entity[] createShapes(CollisionManager manager, float size,
+			boolean addStatic, CollisionListener listener)
+	{
+		Random rand = new Random(SEED);
+		Entity[] entities = new Entity[shapeCount];
+
+		for (int i = 0; i < shapeCount; i++)
+		{
+			Entity e = new Entity();
+			e.setX((rand.nextFloat() - 0.5f) * size);
+			e.setY((rand.nextFloat() - 0.5f) * size);
+			e.setDX((rand.nextFloat() - 0.5f) * MAX_SPEED);
+			e.setDY((rand.nextFloat() - 0.5f) * MAX_SPEED);
+			entities[i] = e;
+
+			// the first shapes stay where they are
+			boolean still = i < stillCount;
+			if (still)
+			{
+				e.setDX(0);
+				e.setDY(0);
+			}
+
+			float shapeSize = rand.nextFloat() * (MAX_SIZE - MIN_SIZE)
+					+ MIN_SIZE;
+			if (i % 2 == 0)
+			{
+				manager.addChild(new CollisionSphere(e, listener,
+						shapeSize / 2f), 0, still && addStatic);
+			}
+			else
+			{
+				manager.addChild(new CollisionAAB(e, listener, shapeSize,
+						shapeSize), 0, still && addStatic);
+			}
+		}
+
+		return entities;
+	}
+}
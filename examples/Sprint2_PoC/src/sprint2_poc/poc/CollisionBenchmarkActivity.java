@@ -0,0 +1,126 @@
+package sprint2_poc.poc;
+
+import android.os.AsyncTask;
+import android.view.Gravity;
+import android.widget.TextView;
+import funativity.age.collision.DynamicTreeBroadphase;
+import funativity.age.collision.SpatialHashBroadphase;
+import funativity.age.collision.SweepAndPruneBroadphase;
+import funativity.age.state.GameState;
+import funativity.age.state.layout.AGELinearLayout;
+
+/**
+ * Runs the CollisionBenchmark with each broadphase and lists the results,
+ * then runs the CollisionAllocationCheck with each broadphase.
+ */
+public class CollisionBenchmarkActivity extends GameState
+{
+	private static final int[] SHAPE_COUNTS = { 100, 500, 2000 };
+	private static final int FRAMES = 60;
+	private static final int TILE_SHAPES = 2000;
+	private static final float TILE_FRACTION = 0.75f;
+	private static final int ALLOCATION_SHAPES = 500;
+
+	private TextView output;
+
+	@Override
+	public void init()
+	{
+		AGELinearLayout ageLL = new AGELinearLayout(this);
+		setLayout(ageLL);
+
+		output = new TextView(this);
+		output.setGravity(Gravity.LEFT);
+		output.setText("Running collision benchmark...\n");
+		getViewGroup().addView(output);
+
+		new BenchmarkTask().execute();
+	}
+
+	/**
+	 * Runs the benchmark off of the UI thread, posting each result as it
+	 * finishes.
+	 */
+	private class BenchmarkTask extends AsyncTask<Void, String, Void>
+	{
+		@Override
+		protected Void doInBackground(Void... params)
+		{
+			for (int shapes : SHAPE_COUNTS)
+			{
+				CollisionBenchmark benchmark = new CollisionBenchmark(shapes,
+						FRAMES);
+
+				publishProgress(benchmark.run("Brute force", null).toString());
+				publishProgress(benchmark.run("Spatial hash",
+						new SpatialHashBroadphase()).toString());
+				publishProgress(benchmark.run("Sort and sweep",
+						new SweepAndPruneBroadphase()).toString());
+				publishProgress(benchmark.run("Dynamic tree",
+						new DynamicTreeBroadphase()).toString());
+
+				// the same layers again, read from the packed arrays
+				publishProgress(benchmark.run("Brute force, packed", null,
+						false, true).toString());
+				publishProgress(benchmark.run("Spatial hash, packed",
+						new SpatialHashBroadphase(), false, true).toString());
+				publishProgress(benchmark.run("Sort and sweep, packed",
+						new SweepAndPruneBroadphase(), false, true).toString());
+				publishProgress(benchmark.run("Dynamic tree, packed",
+						new DynamicTreeBroadphase(), false, true).toString());
+			}
+
+			// a level where most of the shapes are tiles that never move
+			CollisionBenchmark tiles = new CollisionBenchmark(TILE_SHAPES,
+					FRAMES, TILE_FRACTION);
+
+			publishProgress(tiles.run("Tiles, brute force", null).toString());
+			publishProgress(tiles.run("Tiles, static, brute force", null, true)
+					.toString());
+			publishProgress(tiles.run("Tiles, dynamic tree",
+					new DynamicTreeBroadphase()).toString());
+			publishProgress(tiles.run("Tiles, static, dynamic tree",
+					new DynamicTreeBroadphase(), true).toString());
+			publishProgress(tiles.run("Tiles, static, dynamic tree, packed",
+					new DynamicTreeBroadphase(), true, true).toString());
+
+			// once warmed up, checking for collisions should not allocate
+			CollisionAllocationCheck allocations = new CollisionAllocationCheck(
+					ALLOCATION_SHAPES, FRAMES);
+
+			for (int i = 0; i < 2; i++)
+			{
+				boolean continuous = i == 1;
+				String mode = continuous ? ", continuous" : "";
+
+				publishProgress(allocations.run("Allocations, brute force" + mode,
+						null, continuous).toString());
+				publishProgress(allocations.run("Allocations, spatial hash"
+						+ mode, new SpatialHashBroadphase(), continuous)
+						.toString());
+				publishProgress(allocations.run("Allocations, sort and sweep"
+						+ mode, new SweepAndPruneBroadphase(), continuous)
+						.toString());
+				publishProgress(allocations.run("Allocations, dynamic tree"
+						+ mode, new DynamicTreeBroadphase(), continuous)
+						.toString());
+			}
+			return null;
+		}
+
+		@Override
+		protected void onProgressUpdate(String... values)
+		{
+			for (String value : values)
+			{
+				output.append(value + "\n");
+			}
+		}
+
+		@Override
+		protected void onPostExecute(Void result)
+		{
+			output.append("Done.\n");
+		}
+	}
+}
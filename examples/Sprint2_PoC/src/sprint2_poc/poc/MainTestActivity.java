@@ -41,6 +41,7 @@ public class MainTestActivity extends GameState
 		addStateButton("Multi-Collision State", MultiCollisionActivity.class);
 		addStateButton("MeshLoader State", MeshLoaderActivity.class);
 		addStateButton("Mesh Animation State", AnimatedActivity.class);
+		addStateButton("Collision Benchmark", CollisionBenchmarkActivity.class);
 
 	}
 
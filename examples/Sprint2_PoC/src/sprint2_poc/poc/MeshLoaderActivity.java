@@ -9,6 +9,7 @@ import funativity.age.opengl.AGEColor;
 import funativity.age.opengl.Entity;
 import funativity.age.opengl.MM;
 import funativity.age.opengl.Mesh;
+import funativity.age.opengl.RenderQueue;
 import funativity.age.opengl.primitive.Sphere;
 import funativity.age.opengl.primitive.Sphere.Quality;
 import funativity.age.opengl.shaders.SimpleLightingTechnique;
@@ -62,6 +63,9 @@ public class MeshLoaderActivity extends GameState
 			GLES20.glCullFace(GLES20.GL_BACK);
 			GLES20.glEnable(GLES20.GL_CULL_FACE);
 
+			// nothing is blended, so the meshes can be drawn sorted
+			setRenderQueue(new RenderQueue());
+
 			/*
 			 * Mesh mesh = null; try { String fileName = "mesh/CarvingBall.obj";
 			 * InputStream is = MeshLoader.openAsset(fileName, getAssets());
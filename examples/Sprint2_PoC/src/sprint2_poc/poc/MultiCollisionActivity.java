@@ -129,7 +129,12 @@ public class MultiCollisionActivity extends GameState
 				{
 					// normal updates
 					super.update(scene, delta);
+					requestAfterMove(scene);
+				}
 
+				@Override
+				public void afterMove(Scene scene)
+				{
 					// if we hit a wall bounce back
 					if ((this.getX() > width / 2f && this.getDX() > 0)
 							|| (this.getX() < -width / 2f && this.getDX() < 0))